@@ -11,8 +11,11 @@ import cas.mcmaster.epsilon.emc.RhapsodyModel;
 
 public class RhapsodyModelConfigurationDialog extends AbstractCachedModelConfigurationDialog {
 
-	private Text fileText, rhapsodyText, mainPackageText;
+	private Text fileText, rhapsodyText, mainPackageText, rootElemText;
 	private Button setRootElemButton;
+	private Text cacheMaxSizeText, cacheMaxWeightText, cacheExpireAfterAccessText, cacheExpireAfterWriteText;
+	private Text prefetchThresholdText, prefetchWindowText, prefetchBudgetText;
+	private Button cacheDisabledButton, cacheSoftValuesButton;
 
 	@Override
 	protected String getModelName() {
@@ -32,6 +35,7 @@ public class RhapsodyModelConfigurationDialog extends AbstractCachedModelConfigu
 		createFileGroup(control);
 		createLoadStoreOptionsGroup(control);
 		createRhapsodyGroup(control);
+		createPropertyCacheGroup(control);
 	}
 
 	private void createFileGroup(Composite parent) {
@@ -78,9 +82,53 @@ public class RhapsodyModelConfigurationDialog extends AbstractCachedModelConfigu
 		mainPackageNameLabel.setText("Main package name: ");
 		mainPackageText = new Text(groupContent, SWT.BORDER);
 		mainPackageText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		final Label rootElemLabel = new Label(groupContent, SWT.NONE);
+		rootElemLabel.setText("Root package (name or GUID): ");
+		rootElemText = new Text(groupContent, SWT.BORDER);
+		rootElemText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
 		setRootElemButton = new Button(groupContent, SWT.CHECK);
 		setRootElemButton.setLayoutData(new GridData(SWT.BEGINNING, SWT.CENTER, false, false, 3, 1));
 		setRootElemButton.setText("Selected element as root");
+		setRootElemButton.addListener(SWT.Selection, e -> rootElemText.setEnabled(!setRootElemButton.getSelection()));
+	}
+	
+	private void createPropertyCacheGroup(Composite parent) {
+		final Composite groupContent = DialogUtil.createGroupContainer(parent, "Property cache", 2);
+		
+		cacheDisabledButton = new Button(groupContent, SWT.CHECK);
+		cacheDisabledButton.setLayoutData(new GridData(SWT.BEGINNING, SWT.CENTER, false, false, 2, 1));
+		cacheDisabledButton.setText("Disable property cache");
+		cacheDisabledButton.addListener(SWT.Selection, e -> updateCacheControls());
+		cacheMaxSizeText = createCacheText(groupContent, "Maximum size (entries): ");
+		cacheMaxWeightText = createCacheText(groupContent, "Maximum weight (instead of size): ");
+		cacheExpireAfterAccessText = createCacheText(groupContent, "Expire after access (seconds): ");
+		cacheExpireAfterWriteText = createCacheText(groupContent, "Expire after write (seconds): ");
+		cacheSoftValuesButton = new Button(groupContent, SWT.CHECK);
+		cacheSoftValuesButton.setLayoutData(new GridData(SWT.BEGINNING, SWT.CENTER, false, false, 2, 1));
+		cacheSoftValuesButton.setText("Soft values (release on memory pressure)");
+		prefetchThresholdText = createCacheText(groupContent, "Prefetch after reads per type (empty or 0 disables): ");
+		prefetchWindowText = createCacheText(groupContent, "Prefetch window (reads): ");
+		prefetchBudgetText = createCacheText(groupContent, "Prefetch budget (values): ");
+	}
+	
+	private Text createCacheText(Composite groupContent, String label) {
+		final Label textLabel = new Label(groupContent, SWT.NONE);
+		textLabel.setText(label);
+		Text text = new Text(groupContent, SWT.BORDER);
+		text.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		return text;
+	}
+	
+	private void updateCacheControls() {
+		boolean enabled = !cacheDisabledButton.getSelection();
+		cacheMaxSizeText.setEnabled(enabled);
+		cacheMaxWeightText.setEnabled(enabled);
+		cacheExpireAfterAccessText.setEnabled(enabled);
+		cacheExpireAfterWriteText.setEnabled(enabled);
+		cacheSoftValuesButton.setEnabled(enabled);
+		prefetchThresholdText.setEnabled(enabled);
+		prefetchWindowText.setEnabled(enabled);
+		prefetchBudgetText.setEnabled(enabled);
 	}
 	
 	@Override
@@ -89,10 +137,25 @@ public class RhapsodyModelConfigurationDialog extends AbstractCachedModelConfigu
 		if (properties == null) {
 			return;
 		}
-		setRootElemButton.setSelection(Boolean.parseBoolean(properties.getProperty(RhapsodyModel.PROPERTY_ROOT_ELEM)));
+		String rootElem = properties.getProperty(RhapsodyModel.PROPERTY_ROOT_ELEM, "");
+		setRootElemButton.setSelection(Boolean.parseBoolean(rootElem));
+		rootElemText.setEnabled(!setRootElemButton.getSelection());
+		if (!rootElem.equalsIgnoreCase("true") && !rootElem.equalsIgnoreCase("false")) {
+			rootElemText.setText(rootElem);
+		}
 		rhapsodyText.setText(properties.getProperty(RhapsodyModel.PROPERTY_INSTALLATION_DIRECTORY));
 		fileText.setText(properties.getProperty(RhapsodyModel.PROPERTY_PROJECT_PATH));
 		mainPackageText.setText(properties.getProperty(RhapsodyModel.PROPERTY_MAIN_PACKAGE_NAME));
+		cacheDisabledButton.setSelection(properties.getBooleanProperty(RhapsodyModel.PROPERTY_CACHE_DISABLED, false));
+		cacheMaxSizeText.setText(properties.getProperty(RhapsodyModel.PROPERTY_CACHE_MAX_SIZE, ""));
+		cacheMaxWeightText.setText(properties.getProperty(RhapsodyModel.PROPERTY_CACHE_MAX_WEIGHT, ""));
+		cacheExpireAfterAccessText.setText(properties.getProperty(RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_ACCESS, ""));
+		cacheExpireAfterWriteText.setText(properties.getProperty(RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_WRITE, ""));
+		cacheSoftValuesButton.setSelection(properties.getBooleanProperty(RhapsodyModel.PROPERTY_CACHE_SOFT_VALUES, false));
+		prefetchThresholdText.setText(properties.getProperty(RhapsodyModel.PROPERTY_PREFETCH_THRESHOLD, ""));
+		prefetchWindowText.setText(properties.getProperty(RhapsodyModel.PROPERTY_PREFETCH_WINDOW, ""));
+		prefetchBudgetText.setText(properties.getProperty(RhapsodyModel.PROPERTY_PREFETCH_BUDGET, ""));
+		updateCacheControls();
 	}
 
 	@Override
@@ -100,8 +163,17 @@ public class RhapsodyModelConfigurationDialog extends AbstractCachedModelConfigu
 		super.storeProperties();
 		properties.setProperty(RhapsodyModel.PROPERTY_PROJECT_PATH, fileText.getText());
 		properties.setProperty(RhapsodyModel.PROPERTY_INSTALLATION_DIRECTORY, rhapsodyText.getText());
-		properties.setProperty(RhapsodyModel.PROPERTY_ROOT_ELEM, String.valueOf(setRootElemButton.getSelection()));
+		properties.setProperty(RhapsodyModel.PROPERTY_ROOT_ELEM, setRootElemButton.getSelection() ? "true" : rootElemText.getText());
 		properties.setProperty(RhapsodyModel.PROPERTY_MAIN_PACKAGE_NAME, mainPackageText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_CACHE_DISABLED, String.valueOf(cacheDisabledButton.getSelection()));
+		properties.setProperty(RhapsodyModel.PROPERTY_CACHE_MAX_SIZE, cacheMaxSizeText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_CACHE_MAX_WEIGHT, cacheMaxWeightText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_ACCESS, cacheExpireAfterAccessText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_WRITE, cacheExpireAfterWriteText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_CACHE_SOFT_VALUES, String.valueOf(cacheSoftValuesButton.getSelection()));
+		properties.setProperty(RhapsodyModel.PROPERTY_PREFETCH_THRESHOLD, prefetchThresholdText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_PREFETCH_WINDOW, prefetchWindowText.getText());
+		properties.setProperty(RhapsodyModel.PROPERTY_PREFETCH_BUDGET, prefetchBudgetText.getText());
 	}
 	
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPApplication;
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPProject;
+
+/**
+ * The application of the fake API. Projects are opened by reading their files (see
+ * {@link FakeProjectReader}); opening a project that is already open returns it. Undo
+ * transactions can be started and ended, but changes are not undone.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class FakeApplication extends FakeObject {
+
+	FakeApplication(FakeRhapsody rhapsody) {
+		super(rhapsody, IRPApplication.class);
+		this.projects = new CopyOnWriteArrayList<>();
+		this.errorMessage = "";
+	}
+
+	public IRPProject activeProject() {
+		var result = this.active;
+		return result == null ? null : (IRPProject) result.proxy();
+	}
+
+	/**
+	 * @return the project, or null if it can't be read (see {@link #getErrorMessage()})
+	 */
+	public IRPProject openProject(String filename) {
+		try {
+			return (IRPProject) open(Path.of(filename)).proxy();
+		} catch (IOException | XMLStreamException | InvalidPathException e) {
+			LOG.error("Unable to read project {}", filename, e);
+			this.errorMessage = "Unable to open project " + filename + ": " + e.getMessage();
+			return null;
+		}
+	}
+
+	public void createNewProject(String projectLocation, String projectName) {
+		var project = new FakeProject(this.rhapsody, null, projectName, Path.of(projectLocation, projectName + ".rpyx"));
+		this.projects.add(project);
+		this.active = project;
+	}
+
+	public IRPCollection getProjects() {
+		return FakeCollection.of(this.rhapsody, this.projects);
+	}
+
+	public String getErrorMessage() {
+		return this.errorMessage;
+	}
+
+	public IRPModelElement getSelectedElement() {
+		var result = this.selected;
+		return result == null ? null : (IRPModelElement) result.proxy();
+	}
+
+	public void startUndoTransaction() {
+		// Changes are not recorded
+	}
+
+	public void endUndoTransaction() {
+		// Changes are not recorded
+	}
+
+	public int getApplicationStatus() {
+		return 0;
+	}
+
+	public void quit() {
+		this.rhapsody.quit(this);
+	}
+
+	@Override
+	public String toString() {
+		return "FakeApplication " + this.projects;
+	}
+
+	final List<FakeProject> projects;
+	volatile FakeProject active;
+	volatile FakeElement selected;
+
+	/**
+	 * Open a project, reading it if it is not open.
+	 */
+	synchronized FakeProject open(Path projectFile) throws IOException, XMLStreamException {
+		var path = projectFile.toAbsolutePath().normalize();
+		for (FakeProject project : this.projects) {
+			if (path.equals(project.path)) {
+				this.active = project;
+				return project;
+			}
+		}
+		var result = new FakeProjectReader(this.rhapsody).read(path, this.rhapsody.getNewTerms());
+		this.projects.add(result);
+		this.active = result;
+		return result;
+	}
+
+	void closed(FakeProject project) {
+		this.projects.remove(project);
+		if (this.active == project) {
+			this.active = this.projects.isEmpty() ? null : this.projects.get(0);
+		}
+	}
+
+	private static final Logger LOG = LogManager.getLogger(FakeApplication.class);
+
+	private volatile String errorMessage;
+
+}
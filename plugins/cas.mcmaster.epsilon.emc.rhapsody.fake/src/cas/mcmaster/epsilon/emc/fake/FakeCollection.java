@@ -0,0 +1,129 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPGraphElement;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * A collection of the fake API. As in Rhapsody, items are indexed from 1, and collections
+ * returned by the API are copies. The calls follow the {@link FakeProfile} of the application.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class FakeCollection implements IRPCollection {
+
+	FakeCollection(FakeRhapsody rhapsody, Collection<?> items) {
+		this.rhapsody = rhapsody;
+		this.items = new ArrayList<>(items);
+	}
+
+	/**
+	 * Create a collection with the proxies of the objects.
+	 */
+	static FakeCollection of(FakeRhapsody rhapsody, Collection<? extends FakeObject> objects) {
+		var result = new FakeCollection(rhapsody, List.of());
+		for (FakeObject object : objects) {
+			result.items.add(object.proxy());
+		}
+		return result;
+	}
+
+	@Override
+	public int getCount() {
+		call("getCount");
+		return this.items.size();
+	}
+
+	@Override
+	public Object getItem(int index) {
+		call("getItem");
+		return this.items.get(index - 1);
+	}
+
+	@Override
+	public void addItem(IRPModelElement item) {
+		call("addItem");
+		this.items.add(item);
+	}
+
+	@Override
+	public void addGraphicalItem(IRPGraphElement item) {
+		call("addGraphicalItem");
+		this.items.add(item);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public List toList() {
+		call("toList");
+		return new ArrayList<>(this.items);
+	}
+
+	@Override
+	public void setSize(int size) {
+		call("setSize");
+		while (this.items.size() > size) {
+			this.items.remove(this.items.size() - 1);
+		}
+		while (this.items.size() < size) {
+			this.items.add(null);
+		}
+	}
+
+	@Override
+	public void remove(int index) {
+		call("remove");
+		this.items.remove(index - 1);
+	}
+
+	@Override
+	public void setString(int index, String value) {
+		call("setString");
+		this.items.set(index - 1, value);
+	}
+
+	@Override
+	public void setModelElement(int index, IRPModelElement value) {
+		call("setModelElement");
+		this.items.set(index - 1, value);
+	}
+
+	@Override
+	public void setInteger(int index, int value) {
+		call("setInteger");
+		this.items.set(index - 1, value);
+	}
+
+	@Override
+	public void empty() {
+		call("empty");
+		this.items.clear();
+	}
+
+	@Override
+	public String toString() {
+		return this.items.toString();
+	}
+
+	private final FakeRhapsody rhapsody;
+	private final List<Object> items;
+
+	private void call(String operation) {
+		this.rhapsody.getProfile().call(operation);
+	}
+
+}
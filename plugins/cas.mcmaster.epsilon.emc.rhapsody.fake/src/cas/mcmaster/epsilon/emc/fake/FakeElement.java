@@ -0,0 +1,534 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPPackage;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.IRPStereotype;
+import com.telelogic.rhapsody.core.IRPTag;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+
+/**
+ * A model element of the fake API. The public methods implement the methods of the
+ * <code>IRPModelElement</code> interface, and of the interfaces of the metaclasses, that the
+ * driver uses (see {@link FakeHandler}). The proxy of the element implements the API interface of
+ * its metaclass, e.g. <code>IRPClass</code> for classes, so the driver can cast it.
+ * <p>
+ * Tags, values and stereotypes follow the file model: the tags of an element are its nested
+ * <code>Tag</code> elements and the tags of its stereotypes, and setting the value of a tag of
+ * a stereotype creates a local tag that overrides it. Calls to deleted elements fail with a
+ * {@link RhapsodyRuntimeException}, as in Rhapsody.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class FakeElement extends FakeObject {
+
+	FakeElement(FakeRhapsody rhapsody, String metaclass, String guid, String name) {
+		this(rhapsody, api(metaclass), metaclass, guid, name);
+	}
+
+	FakeElement(FakeRhapsody rhapsody, Class<?> api, String metaclass, String guid, String name) {
+		super(rhapsody, api);
+		this.metaclass = metaclass;
+		this.guid = guid == null ? newGUID() : guid;
+		this.name = name == null ? "" : name;
+		this.description = "";
+		this.kind = "";
+		this.ofMetaClass = "";
+		this.nested = new CopyOnWriteArrayList<>();
+		this.stereotypes = new CopyOnWriteArrayList<>();
+	}
+
+	@Override
+	void check(String operation) {
+		super.check(operation);
+		if (this.deleted) {
+			throw new RhapsodyRuntimeException("The element was deleted: " + operation);
+		}
+	}
+
+	// Identity
+
+	public String getGUID() {
+		return this.guid;
+	}
+
+	public void setGUID(String guid) {
+		String old = this.guid;
+		this.guid = guid;
+		if (this.project != null) {
+			this.project.moved(this, old);
+		}
+		modified();
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+		modified();
+	}
+
+	public String getDisplayName() {
+		return this.name;
+	}
+
+	public String getFullPathName() {
+		if (this.owner == null || this.owner.owner == null) {
+			return this.name;
+		}
+		return this.owner.getFullPathName() + "::" + this.name;
+	}
+
+	public String getMetaClass() {
+		return this.metaclass;
+	}
+
+	public String getUserDefinedMetaClass() {
+		FakeElement newTerm = newTerm();
+		return newTerm == null ? this.metaclass : newTerm.name;
+	}
+
+	public String getInterfaceName() {
+		String result = RhapsodyKindLattice.interfaceName(this.metaclass);
+		return result == null ? "IRP" + this.metaclass : result;
+	}
+
+	public String getDescription() {
+		return this.description;
+	}
+
+	public String getDescriptionPlainText() {
+		return this.description;
+	}
+
+	public void setDescription(String description) {
+		this.description = description;
+		modified();
+	}
+
+	public int getIsExternal() {
+		return this.external ? 1 : 0;
+	}
+
+	public int isReadOnly() {
+		return getIsExternal();
+	}
+
+	// Containment
+
+	public IRPModelElement getOwner() {
+		return proxy(this.owner);
+	}
+
+	public void setOwner(IRPModelElement owner) {
+		var newOwner = FakeObject.of(owner, FakeElement.class);
+		if (this.owner != null) {
+			this.owner.nested.remove(this);
+		}
+		newOwner.nested.add(this);
+		this.owner = newOwner;
+		modified();
+	}
+
+	public IRPProject getProject() {
+		return this.project == null ? null : (IRPProject) this.project.proxy();
+	}
+
+	public IRPCollection getNestedElements() {
+		return FakeCollection.of(this.rhapsody, this.nested);
+	}
+
+	/**
+	 * @return the element and all its nested elements, depth first
+	 */
+	public IRPCollection getNestedElementsRecursive() {
+		List<FakeElement> result = new ArrayList<>();
+		addRecursive(result);
+		return FakeCollection.of(this.rhapsody, result);
+	}
+
+	public IRPCollection getNestedElementsByMetaClass(String metaClass, int recursive) {
+		return FakeCollection.of(this.rhapsody, find(e -> e.metaclass.equals(metaClass), recursive != 0, false));
+	}
+
+	public int hasNestedElements() {
+		return this.nested.isEmpty() ? 0 : 1;
+	}
+
+	public IRPModelElement findNestedElement(String name, String metaClass) {
+		return first(find(matches(name, metaClass), false, true));
+	}
+
+	public IRPModelElement findNestedElementRecursive(String name, String metaClass) {
+		return first(find(matches(name, metaClass), true, true));
+	}
+
+	public IRPModelElement addNewAggr(String metaType, String name) {
+		if (this.external) {
+			throw new RhapsodyRuntimeException("Can't add elements to a read only element");
+		}
+		var result = new FakeElement(this.rhapsody, metaType, null, name);
+		add(result);
+		return (IRPModelElement) result.proxy();
+	}
+
+	public IRPPackage addPackage(String name) {
+		return (IRPPackage) addNewAggr("Package", name);
+	}
+
+	public IRPClass addClass(String name) {
+		return (IRPClass) addNewAggr("Class", name);
+	}
+
+	public void deleteFromProject() {
+		if (this.owner == null || this.external) {
+			throw new RhapsodyRuntimeException("The element can't be deleted");
+		}
+		modified();
+		this.owner.nested.remove(this);
+		List<FakeElement> contents = new ArrayList<>();
+		addRecursive(contents);
+		for (FakeElement element : contents) {
+			if (this.project != null) {
+				this.project.unregister(element);
+			}
+			element.deleted = true;
+		}
+	}
+
+	// Stereotypes
+
+	public IRPCollection getStereotypes() {
+		return FakeCollection.of(this.rhapsody, this.stereotypes);
+	}
+
+	public IRPStereotype getStereotype() {
+		return this.stereotypes.isEmpty() ? null : (IRPStereotype) this.stereotypes.get(0).proxy();
+	}
+
+	public IRPStereotype getNewTermStereotype() {
+		return (IRPStereotype) proxy(newTerm());
+	}
+
+	public void addSpecificStereotype(IRPStereotype stereotype) {
+		var added = FakeObject.of(stereotype, FakeElement.class);
+		if (!this.stereotypes.contains(added)) {
+			this.stereotypes.add(added);
+			modified();
+		}
+	}
+
+	public void removeStereotype(IRPStereotype stereotype) {
+		if (this.stereotypes.remove(FakeObject.of(stereotype, FakeElement.class))) {
+			modified();
+		}
+	}
+
+	/**
+	 * Apply the stereotype with the name, creating it in the package of the element if the
+	 * project does not have it.
+	 */
+	public IRPStereotype addStereotype(String name, String metaType) {
+		FakeElement result = this.project == null ? null : this.project.stereotype(name);
+		if (result == null) {
+			FakeElement pkg = this.owner;
+			while (pkg != null && !"Package".equals(pkg.metaclass) && pkg.owner != null) {
+				pkg = pkg.owner;
+			}
+			result = new FakeElement(this.rhapsody, STEREOTYPE, null, name);
+			result.ofMetaClass = metaType;
+			(pkg == null ? this : pkg).add(result);
+		}
+		var proxy = (IRPStereotype) result.proxy();
+		addSpecificStereotype(proxy);
+		return proxy;
+	}
+
+	public int getIsNewTerm() {
+		return this.newTermStereotype ? 1 : 0;
+	}
+
+	public void setIsNewTerm(int isNewTerm) {
+		this.newTermStereotype = isNewTerm != 0;
+		modified();
+	}
+
+	public String getOfMetaClass() {
+		return this.ofMetaClass;
+	}
+
+	// Tags and values
+
+	public IRPCollection getLocalTags() {
+		return FakeCollection.of(this.rhapsody, localTags());
+	}
+
+	public IRPCollection getAllTags() {
+		return FakeCollection.of(this.rhapsody, allTags());
+	}
+
+	public IRPTag getTag(String name) {
+		for (FakeElement tag : allTags()) {
+			if (tag.name.equals(name)) {
+				return (IRPTag) tag.proxy();
+			}
+		}
+		return null;
+	}
+
+	public IRPTag setTagValue(IRPTag tag, String val) {
+		FakeElement local = localTag(FakeObject.of(tag, FakeElement.class));
+		local.clearValueSpecifications();
+		local.value = val;
+		modified();
+		return (IRPTag) local.proxy();
+	}
+
+	public IRPTag setTagElementValue(IRPTag tag, IRPModelElement val) {
+		FakeElement local = localTag(FakeObject.of(tag, FakeElement.class));
+		local.clearValueSpecifications();
+		local.value = null;
+		if (val != null) {
+			local.addElementDefaultValue(val);
+		}
+		modified();
+		return (IRPTag) local.proxy();
+	}
+
+	public IRPCollection getValueSpecifications() {
+		return FakeCollection.of(this.rhapsody, valueSpecifications());
+	}
+
+	public Object addElementDefaultValue(IRPModelElement newDefaultVal) {
+		var result = new FakeElement(this.rhapsody, INSTANCE_VALUE, null, "");
+		result.value = FakeObject.of(newDefaultVal, FakeElement.class);
+		add(result);
+		return result.proxy();
+	}
+
+	public Object addStringDefaultValue(String newDefaultVal) {
+		var result = new FakeElement(this.rhapsody, LITERAL_SPECIFICATION, null, "");
+		result.value = newDefaultVal;
+		add(result);
+		return result.proxy();
+	}
+
+	/**
+	 * @return the value: a string, or the proxy of the element of an instance value
+	 */
+	public Object getValue() {
+		return this.value instanceof FakeElement ? ((FakeElement) this.value).proxy() : this.value;
+	}
+
+	public void setValue(String value) {
+		this.value = value;
+		modified();
+	}
+
+	public void setValue(IRPModelElement value) {
+		this.value = FakeObject.of(value, FakeElement.class);
+		modified();
+	}
+
+	public Object getType() {
+		return proxy(this.type);
+	}
+
+	public String getKind() {
+		return this.kind;
+	}
+
+	public int isKindEnumeration() {
+		return "Enumeration".equals(this.kind) ? 1 : 0;
+	}
+
+	public IRPCollection getEnumerationLiterals() {
+		return FakeCollection.of(this.rhapsody, find(e -> ENUMERATION_LITERAL.equals(e.metaclass), false, false));
+	}
+
+	@Override
+	public String toString() {
+		return this.metaclass + " " + this.name + " (" + this.guid + ")";
+	}
+
+	static final String TAG = "Tag";
+	static final String STEREOTYPE = "Stereotype";
+	static final String INSTANCE_VALUE = "InstanceValue";
+	static final String LITERAL_SPECIFICATION = "LiteralSpecification";
+	static final String ENUMERATION_LITERAL = "EnumerationLiteral";
+
+	final String metaclass;
+	final List<FakeElement> nested;
+	final List<FakeElement> stereotypes;
+	volatile String guid;
+	volatile String name;
+	volatile String description;
+	volatile String kind;
+	volatile String ofMetaClass;
+	volatile boolean newTermStereotype;
+	volatile boolean external;
+	/** A string, or the element of an instance value */
+	volatile Object value;
+	volatile FakeElement type;
+	volatile FakeElement owner;
+	volatile FakeProject project;
+	volatile boolean deleted;
+
+	/**
+	 * Add a nested element, and register it (and its contents) in the project.
+	 */
+	void add(FakeElement element) {
+		element.owner = this;
+		this.nested.add(element);
+		if (this.project != null) {
+			List<FakeElement> contents = new ArrayList<>();
+			element.addRecursive(contents);
+			for (FakeElement e : contents) {
+				this.project.register(e);
+			}
+		}
+		modified();
+	}
+
+	void addRecursive(List<FakeElement> result) {
+		result.add(this);
+		for (FakeElement element : this.nested) {
+			element.addRecursive(result);
+		}
+	}
+
+	void modified() {
+		if (this.project != null) {
+			this.project.modified = true;
+		}
+	}
+
+	static String newGUID() {
+		return "GUID " + UUID.randomUUID();
+	}
+
+	private FakeElement newTerm() {
+		for (FakeElement stereotype : this.stereotypes) {
+			if (stereotype.newTermStereotype) {
+				return stereotype;
+			}
+		}
+		return null;
+	}
+
+	private List<FakeElement> localTags() {
+		return find(e -> TAG.equals(e.metaclass), false, false);
+	}
+
+	private List<FakeElement> allTags() {
+		List<FakeElement> result = localTags();
+		for (FakeElement stereotype : this.stereotypes) {
+			for (FakeElement tag : stereotype.localTags()) {
+				if (result.stream().noneMatch(t -> t.name.equals(tag.name))) {
+					result.add(tag);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the local tag that overrides the tag, creating it if the tag is not local.
+	 */
+	private FakeElement localTag(FakeElement tag) {
+		if (tag.owner == this) {
+			return tag;
+		}
+		for (FakeElement local : localTags()) {
+			if (local.name.equals(tag.name)) {
+				return local;
+			}
+		}
+		var result = new FakeElement(this.rhapsody, TAG, null, tag.name);
+		result.type = tag.type;
+		add(result);
+		return result;
+	}
+
+	private List<FakeElement> valueSpecifications() {
+		return find(e -> LITERAL_SPECIFICATION.equals(e.metaclass) || INSTANCE_VALUE.equals(e.metaclass), false, false);
+	}
+
+	private void clearValueSpecifications() {
+		for (FakeElement specification : valueSpecifications()) {
+			specification.deleteFromProject();
+		}
+	}
+
+	private List<FakeElement> find(Predicate<FakeElement> filter, boolean recursive, boolean first) {
+		List<FakeElement> result = new ArrayList<>();
+		for (FakeElement element : this.nested) {
+			if (filter.test(element)) {
+				result.add(element);
+				if (first) {
+					return result;
+				}
+			}
+			if (recursive) {
+				result.addAll(element.find(filter, true, first));
+				if (first && !result.isEmpty()) {
+					return result;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static Predicate<FakeElement> matches(String name, String metaClass) {
+		return e -> e.name.equals(name) && (metaClass == null || metaClass.isEmpty() || e.metaclass.equals(metaClass));
+	}
+
+	private static IRPModelElement first(List<FakeElement> elements) {
+		return elements.isEmpty() ? null : (IRPModelElement) elements.get(0).proxy();
+	}
+
+	private static IRPModelElement proxy(FakeElement element) {
+		return element == null ? null : (IRPModelElement) element.proxy();
+	}
+
+	/**
+	 * @return the API interface of the metaclass, or <code>IRPModelElement</code> if it has none
+	 */
+	private static Class<?> api(String metaclass) {
+		String name = RhapsodyKindLattice.interfaceName(metaclass);
+		if (name == null) {
+			return IRPModelElement.class;
+		}
+		try {
+			return Class.forName(
+					IRPModelElement.class.getPackageName() + "." + name,
+					false,
+					IRPModelElement.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return IRPModelElement.class;
+		}
+	}
+
+}
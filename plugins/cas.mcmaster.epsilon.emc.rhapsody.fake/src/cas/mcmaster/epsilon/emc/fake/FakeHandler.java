@@ -0,0 +1,91 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatches the calls to the proxy of a {@link FakeObject} to the public method of the object
+ * with the same name and parameter types. Methods of the API that the object does not implement
+ * throw an {@link UnsupportedOperationException}. Proxies are equal if they are proxies of the
+ * same object.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class FakeHandler implements InvocationHandler {
+
+	FakeHandler(FakeObject target) {
+		this.target = target;
+	}
+
+	FakeObject target() {
+		return this.target;
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+			case "equals":
+				return args[0] != null
+						&& Proxy.isProxyClass(args[0].getClass())
+						&& Proxy.getInvocationHandler(args[0]) instanceof FakeHandler
+						&& ((FakeHandler) Proxy.getInvocationHandler(args[0])).target == this.target;
+			case "hashCode":
+				return System.identityHashCode(this.target);
+			default:
+				return this.target.toString();
+			}
+		}
+		this.target.check(method.getName());
+		Method implementation = METHODS.get(this.target.getClass())
+				.computeIfAbsent(method, m -> implementation(this.target.getClass(), m))
+				.orElseThrow(() -> new UnsupportedOperationException(
+						method.getDeclaringClass().getSimpleName() + "." + method.getName()));
+		try {
+			return implementation.invoke(this.target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/** The implementations of the API methods, by class of object */
+	private static final ClassValue<Map<Method, Optional<Method>>> METHODS = new ClassValue<>() {
+
+		@Override
+		protected Map<Method, Optional<Method>> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private final FakeObject target;
+
+	private static Optional<Method> implementation(Class<?> type, Method method) {
+		try {
+			Method result = type.getMethod(method.getName(), method.getParameterTypes());
+			if (Modifier.isStatic(result.getModifiers())) {
+				return Optional.empty();
+			}
+			result.setAccessible(true);
+			return Optional.of(result);
+		} catch (NoSuchMethodException e) {
+			return Optional.empty();
+		}
+	}
+
+}
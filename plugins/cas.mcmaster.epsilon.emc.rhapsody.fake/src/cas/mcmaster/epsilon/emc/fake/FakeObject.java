@@ -0,0 +1,90 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.lang.reflect.Proxy;
+
+import cas.mcmaster.epsilon.emc.RhapsodyExecutor;
+
+/**
+ * The state of an object of the fake API. Clients see the object through a proxy of its Rhapsody
+ * API interface (e.g. <code>IRPClass</code>), whose calls are dispatched by a {@link FakeHandler}
+ * to the public methods of the object with the same name and parameters.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+abstract class FakeObject {
+
+	FakeObject(FakeRhapsody rhapsody, Class<?> api) {
+		this.rhapsody = rhapsody;
+		this.api = api;
+	}
+
+	/**
+	 * @return the proxy of the object, that implements its API interface
+	 */
+	final Object proxy() {
+		Object result = this.proxy;
+		if (result == null) {
+			synchronized (this) {
+				result = this.proxy;
+				if (result == null) {
+					result = Proxy.newProxyInstance(
+							this.api.getClassLoader(),
+							new Class<?>[] {this.api},
+							new FakeHandler(this));
+					this.proxy = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Called before each call made via the proxy.
+	 *
+	 * @param operation the name of the called method
+	 */
+	void check(String operation) {
+		this.rhapsody.getProfile().call(operation);
+	}
+
+	/**
+	 * Get the object of a proxy of the fake API. Proxies confined by a {@link RhapsodyExecutor}
+	 * are unwrapped.
+	 *
+	 * @param <T> the type of the object
+	 * @param proxy the proxy
+	 * @param type the type of the object
+	 * @return the object, or null if the proxy is null
+	 * @throws IllegalArgumentException if the proxy is not an object of the fake API
+	 */
+	static <T extends FakeObject> T of(Object proxy, Class<T> type) {
+		Object target = RhapsodyExecutor.unwrap(proxy);
+		if (target == null) {
+			return null;
+		}
+		if (Proxy.isProxyClass(target.getClass())
+				&& Proxy.getInvocationHandler(target) instanceof FakeHandler) {
+			var object = ((FakeHandler) Proxy.getInvocationHandler(target)).target();
+			if (type.isInstance(object)) {
+				return type.cast(object);
+			}
+		}
+		throw new IllegalArgumentException("Not a " + type.getSimpleName() + " of the fake application: " + target);
+	}
+
+	protected final FakeRhapsody rhapsody;
+
+	private final Class<?> api;
+	private volatile Object proxy;
+
+}
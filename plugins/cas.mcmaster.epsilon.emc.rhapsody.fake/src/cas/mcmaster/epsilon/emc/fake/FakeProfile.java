@@ -0,0 +1,126 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+/**
+ * The behaviour of the calls to a {@link FakeRhapsody}: each call to the API (of the application,
+ * projects, elements and collections) takes <code>latencyNanos</code>, and fails with a
+ * {@link RhapsodyRuntimeException} with probability <code>failureRate</code>. Failures are drawn
+ * from a random generator with the given seed, so runs with a single thread are repeatable.
+ * <p>
+ * The latency is a busy wait, as the calls to Rhapsody are synchronous. The profile also counts
+ * the calls and the injected failures, e.g. to check how many calls an operation of the driver
+ * makes.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class FakeProfile {
+
+	/**
+	 * @return a profile without latency or failures
+	 */
+	public static FakeProfile none() {
+		return new FakeProfile(0, 0, 0);
+	}
+
+	/**
+	 * Create a profile.
+	 *
+	 * @param latencyNanos the time each call takes, in nanoseconds
+	 * @param failureRate the probability of a call failing, between 0 and 1
+	 * @param seed the seed of the failures
+	 * @throws IllegalArgumentException if the latency is negative or the rate is not a probability
+	 */
+	public FakeProfile(long latencyNanos, double failureRate, long seed) {
+		if (latencyNanos < 0) {
+			throw new IllegalArgumentException("The latency can't be negative: " + latencyNanos);
+		}
+		if (!(failureRate >= 0 && failureRate <= 1)) {
+			throw new IllegalArgumentException("The failure rate must be between 0 and 1: " + failureRate);
+		}
+		this.latencyNanos = latencyNanos;
+		this.failureRate = failureRate;
+		this.seed = seed;
+		this.random = new Random(seed);
+		this.calls = new LongAdder();
+		this.failures = new LongAdder();
+	}
+
+	public long getLatencyNanos() {
+		return this.latencyNanos;
+	}
+
+	public double getFailureRate() {
+		return this.failureRate;
+	}
+
+	public long getSeed() {
+		return this.seed;
+	}
+
+	/**
+	 * @return the number of calls made with this profile, including the failed ones
+	 */
+	public long callCount() {
+		return this.calls.sum();
+	}
+
+	/**
+	 * @return the number of calls that failed
+	 */
+	public long failureCount() {
+		return this.failures.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "FakeProfile [latencyNanos=" + this.latencyNanos + ", failureRate=" + this.failureRate
+				+ ", seed=" + this.seed + "]";
+	}
+
+	/**
+	 * Make a call: wait for the latency and fail at the failure rate.
+	 *
+	 * @param operation the name of the called method, for the failure message
+	 * @throws RhapsodyRuntimeException if the call fails
+	 */
+	void call(String operation) {
+		this.calls.increment();
+		spin(this.latencyNanos);
+		if (this.failureRate > 0 && this.random.nextDouble() < this.failureRate) {
+			this.failures.increment();
+			throw new RhapsodyRuntimeException("Injected failure in " + operation);
+		}
+	}
+
+	private final long latencyNanos;
+	private final double failureRate;
+	private final long seed;
+	private final Random random;
+	private final LongAdder calls;
+	private final LongAdder failures;
+
+	private static void spin(long nanos) {
+		if (nanos <= 0) {
+			return;
+		}
+		long end = System.nanoTime() + nanos;
+		while (System.nanoTime() < end) {
+			Thread.onSpinWait();
+		}
+	}
+
+}
@@ -0,0 +1,135 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPProject;
+
+/**
+ * A project of the fake API. The project keeps an index of its elements by GUID, its
+ * stereotypes, and a modified flag that is cleared when the project is saved. Saving does not
+ * write the project files.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class FakeProject extends FakeElement {
+
+	FakeProject(FakeRhapsody rhapsody, String guid, String name, Path path) {
+		super(rhapsody, IRPProject.class, "Project", guid, name);
+		this.path = path;
+		this.elements = new ConcurrentHashMap<>();
+		this.externals = new ArrayList<>();
+		this.ownStereotypes = new CopyOnWriteArraySet<>();
+		this.project = this;
+		register(this);
+	}
+
+	public IRPModelElement findElementByGUID(String theGUID) {
+		var result = this.elements.get(theGUID);
+		return result == null ? null : (IRPModelElement) result.proxy();
+	}
+
+	public IRPCollection getPackages() {
+		return getNestedElementsByMetaClass("Package", 0);
+	}
+
+	/**
+	 * @return the external stereotypes applied to the elements of the project (e.g. of
+	 * 	profiles), and the stereotypes of the project
+	 */
+	public IRPCollection getAllStereotypes() {
+		return FakeCollection.of(this.rhapsody, stereotypes());
+	}
+
+	public void save() {
+		this.modified = false;
+	}
+
+	public void save(int withSubs) {
+		save();
+	}
+
+	public void saveAs(String filename) {
+		this.path = Path.of(filename);
+		save();
+	}
+
+	public void close() {
+		this.rhapsody.closed(this);
+	}
+
+	public int isModifiedRecursive() {
+		return this.modified ? 1 : 0;
+	}
+
+	volatile Path path;
+	volatile boolean modified;
+	/** External stereotypes */
+	final List<FakeElement> externals;
+
+	FakeElement element(String guid) {
+		return this.elements.get(guid);
+	}
+
+	/**
+	 * Find an external stereotype, or a stereotype of the project, by name.
+	 */
+	FakeElement stereotype(String name) {
+		for (FakeElement element : stereotypes()) {
+			if (element.name.equals(name)) {
+				return element;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the external stereotypes, and the stereotypes of the project in the order they
+	 * 	were added
+	 */
+	List<FakeElement> stereotypes() {
+		List<FakeElement> result = new ArrayList<>(this.externals);
+		result.addAll(this.ownStereotypes);
+		return result;
+	}
+
+	void register(FakeElement element) {
+		element.project = this;
+		this.elements.put(element.guid, element);
+		if (STEREOTYPE.equals(element.metaclass)) {
+			this.ownStereotypes.add(element);
+		}
+	}
+
+	void unregister(FakeElement element) {
+		this.elements.remove(element.guid, element);
+		this.ownStereotypes.remove(element);
+	}
+
+	void moved(FakeElement element, String oldGUID) {
+		this.elements.remove(oldGUID, element);
+		this.elements.put(element.guid, element);
+	}
+
+	private final Map<String, FakeElement> elements;
+	/** The stereotypes of the project, so they are found without walking the project */
+	private final Set<FakeElement> ownStereotypes;
+
+}
@@ -0,0 +1,121 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+
+/**
+ * Reads a project of the fake API from the Rhapsody project files, via a
+ * {@link RhapsodyFileProject}. The elements of the files are copied in two passes: first the
+ * containment tree, and then the references (stereotypes, types and values), so references to
+ * elements of other units are resolved. Referenced elements that are not part of the project
+ * (e.g. stereotypes and types of profiles) are copied as external elements.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class FakeProjectReader {
+
+	FakeProjectReader(FakeRhapsody rhapsody) {
+		this.rhapsody = rhapsody;
+		this.copies = new IdentityHashMap<>();
+	}
+
+	/**
+	 * Read the project.
+	 *
+	 * @param projectFile the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of the external stereotypes that are new terms
+	 * @return the project
+	 */
+	FakeProject read(Path projectFile, Collection<String> newTerms) throws IOException, XMLStreamException {
+		var files = RhapsodyFileProject.load(projectFile, newTerms);
+		var root = files.getProject();
+		this.project = new FakeProject(this.rhapsody, root.getGUID(), root.getName(), projectFile);
+		this.copies.put(root, this.project);
+		for (RhapsodyFileElement element : root.getNestedElements()) {
+			this.project.add(copy(element));
+		}
+		for (Map.Entry<RhapsodyFileElement, FakeElement> entry : new IdentityHashMap<>(this.copies).entrySet()) {
+			link(entry.getKey(), entry.getValue());
+		}
+		this.project.modified = false;
+		return this.project;
+	}
+
+	private final FakeRhapsody rhapsody;
+	private final Map<RhapsodyFileElement, FakeElement> copies;
+	private FakeProject project;
+
+	/**
+	 * Copy the element and its contents, without references.
+	 */
+	private FakeElement copy(RhapsodyFileElement element) {
+		var result = new FakeElement(this.rhapsody, element.getMetaClass(), element.getGUID(), element.getName());
+		this.copies.put(element, result);
+		if (element.getField(DESCRIPTION) instanceof String) {
+			result.description = (String) element.getField(DESCRIPTION);
+		}
+		result.kind = element.getKind();
+		for (RhapsodyFileElement nested : element.getNestedElements()) {
+			var copy = copy(nested);
+			copy.owner = result;
+			result.nested.add(copy);
+		}
+		return result;
+	}
+
+	private void link(RhapsodyFileElement element, FakeElement copy) {
+		for (RhapsodyFileElement stereotype : element.getStereotypes()) {
+			copy.stereotypes.add(referenced(stereotype));
+		}
+		if (element.getValue() instanceof RhapsodyFileElement) {
+			copy.value = referenced((RhapsodyFileElement) element.getValue());
+		} else if (element.getValue() != null) {
+			copy.value = element.getValue().toString();
+		}
+		copy.type = referenced(element.getType());
+		copy.newTermStereotype = element.getIsNewTerm() == 1;
+		copy.ofMetaClass = element.getOfMetaClass();
+	}
+
+	/**
+	 * @return the copy of a referenced element, an external element if it is not in the project
+	 */
+	private FakeElement referenced(RhapsodyFileElement element) {
+		if (element == null) {
+			return null;
+		}
+		var result = this.copies.get(element);
+		if (result == null) {
+			result = new FakeElement(this.rhapsody, element.getMetaClass(), element.getGUID(), element.getName());
+			result.external = true;
+			result.newTermStereotype = element.getIsNewTerm() == 1;
+			result.ofMetaClass = element.getOfMetaClass();
+			this.copies.put(element, result);
+			if (FakeElement.STEREOTYPE.equals(element.getMetaClass())) {
+				this.project.externals.add(result);
+			}
+		}
+		return result;
+	}
+
+	private static final String DESCRIPTION = "_description";
+
+}
@@ -0,0 +1,223 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.fake;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.telelogic.rhapsody.core.IRPApplication;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.RPApplicationListener;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyApplicationFactory;
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+
+/**
+ * An in-memory Rhapsody, that implements the parts of the Rhapsody API used by the
+ * {@link RhapsodyModel}, so the driver can be tested and benchmarked without Rhapsody. Projects
+ * are read from the Rhapsody project files, and changes made via the API are kept in memory
+ * (saving a project does not write its files). The {@link FakeProfile} adds latency and
+ * failures to the calls.
+ * <p>
+ * The fake is a {@link RhapsodyApplicationFactory}: models connect to it via
+ * {@link RhapsodyModel#setApplicationFactory(RhapsodyApplicationFactory)}. As with Rhapsody, the
+ * model uses the running application (see {@link #start()}), or starts one, and a model that
+ * started the application quits it when disposed. The <code>install_dir</code> of the model can
+ * be created with {@link #installation(Path)}.
+ * <p>
+ * The application, projects, elements and collections are Java proxies of the API interfaces.
+ * API methods the fake does not implement throw an {@link UnsupportedOperationException}.
+ * Rhapsody events are not sent.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class FakeRhapsody implements RhapsodyApplicationFactory {
+
+	/** The metaclasses written to the installation, in addition to the ones of the projects */
+	public static final List<String> METACLASSES = List.of(
+			"Project", "Package", "Class", "Attribute", "Operation", "Type", "EnumerationLiteral",
+			"Dependency", "Stereotype", "Tag", "Comment", "Requirement", "Actor", "UseCase");
+
+	public FakeRhapsody() {
+		this(FakeProfile.none());
+	}
+
+	public FakeRhapsody(FakeProfile profile) {
+		this(profile, List.of());
+	}
+
+	/**
+	 * Create a Rhapsody.
+	 *
+	 * @param profile the profile of the calls
+	 * @param newTerms the names of stereotypes outside the projects (e.g. from the SysML profile)
+	 * 	that are new terms, as they are not read from the project files
+	 */
+	public FakeRhapsody(FakeProfile profile, Collection<String> newTerms) {
+		this.profile = profile;
+		this.newTerms = Set.copyOf(newTerms);
+	}
+
+	public FakeProfile getProfile() {
+		return this.profile;
+	}
+
+	/**
+	 * Change the profile, e.g. to inject failures after a model is loaded.
+	 *
+	 * @param profile the profile
+	 */
+	public void setProfile(FakeProfile profile) {
+		this.profile = profile;
+	}
+
+	public Set<String> getNewTerms() {
+		return this.newTerms;
+	}
+
+	/**
+	 * Start the application, if it is not running.
+	 *
+	 * @return the application
+	 */
+	public synchronized IRPApplication start() {
+		if (this.application == null) {
+			this.application = new FakeApplication(this);
+		}
+		return (IRPApplication) this.application.proxy();
+	}
+
+	public boolean isRunning() {
+		return this.application != null;
+	}
+
+	/**
+	 * Open a project in the application, starting it if needed. The project becomes the active
+	 * project. Opening the project does not use the profile.
+	 *
+	 * @param projectFile the project file (<code>.rpyx</code>)
+	 * @return the project
+	 * @throws IOException if a file can't be read
+	 * @throws XMLStreamException if a file is not valid
+	 */
+	public IRPProject open(Path projectFile) throws IOException, XMLStreamException {
+		start();
+		return (IRPProject) this.application.open(projectFile).proxy();
+	}
+
+	/**
+	 * Create an empty project in the application, starting it if needed. The project becomes the
+	 * active project.
+	 *
+	 * @param name the name of the project
+	 * @return the project
+	 */
+	public IRPProject create(String name) {
+		start();
+		var location = Path.of(System.getProperty("java.io.tmpdir"));
+		this.application.createNewProject(location.toString(), name);
+		return (IRPProject) this.application.active.proxy();
+	}
+
+	/**
+	 * Select an element, as returned by <code>IRPApplication#getSelectedElement()</code>.
+	 *
+	 * @param element the element, or null to clear the selection
+	 */
+	public void select(IRPModelElement element) {
+		start();
+		this.application.selected = FakeObject.of(element, FakeElement.class);
+	}
+
+	/**
+	 * Create a Rhapsody installation folder, with the <code>Doc/metaclasses.txt</code> file that
+	 * lists the {@link #METACLASSES} and the metaclasses of the open projects.
+	 *
+	 * @param directory the installation folder
+	 * @return the directory
+	 * @throws IOException if the file can't be written
+	 */
+	public Path installation(Path directory) throws IOException {
+		Set<String> metaclasses = new TreeSet<>(METACLASSES);
+		var app = this.application;
+		if (app != null) {
+			for (FakeProject project : app.projects) {
+				List<FakeElement> contents = new ArrayList<>();
+				project.addRecursive(contents);
+				contents.forEach(e -> metaclasses.add(e.metaclass));
+			}
+		}
+		Files.createDirectories(directory.resolve("Doc"));
+		Files.writeString(directory.resolve("Doc").resolve("metaclasses.txt"), String.join(",", metaclasses));
+		return directory;
+	}
+
+	@Override
+	public IRPApplication getActiveApplication() {
+		if (this.application == null) {
+			throw new RhapsodyRuntimeException("Rhapsody is not running");
+		}
+		return start();
+	}
+
+	@Override
+	public IRPApplication createApplication() {
+		return start();
+	}
+
+	@Override
+	public void closeSession() {
+		// No resources are held
+	}
+
+	/**
+	 * The fake does not send events.
+	 *
+	 * @return false
+	 */
+	@Override
+	public boolean listen(RPApplicationListener listener, IRPApplication app) {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "FakeRhapsody " + this.profile;
+	}
+
+	private final Set<String> newTerms;
+	private volatile FakeProfile profile;
+	private volatile FakeApplication application;
+
+	synchronized void quit(FakeApplication app) {
+		if (this.application == app) {
+			this.application = null;
+		}
+	}
+
+	void closed(FakeProject project) {
+		var app = this.application;
+		if (app != null) {
+			app.closed(project);
+		}
+	}
+
+}
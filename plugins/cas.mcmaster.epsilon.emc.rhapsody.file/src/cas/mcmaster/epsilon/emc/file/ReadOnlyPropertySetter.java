@@ -0,0 +1,31 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import org.eclipse.epsilon.eol.exceptions.EolReadOnlyPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertySetter;
+
+/**
+ * Properties can't be set in file and store models.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class ReadOnlyPropertySetter implements IPropertySetter {
+
+	@Override
+	public void invoke(Object target, String property, Object value, IEolContext context)
+			throws EolRuntimeException {
+		throw new EolReadOnlyPropertyException();
+	}
+
+}
@@ -0,0 +1,690 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+
+/**
+ * The elements of a Rhapsody project stored by column, for large offline models. Instead of an
+ * object per element (see {@link RhapsodyFileElement}), each element is an index, and its
+ * information is stored in arrays:
+ * <ul>
+ * 	<li> GUIDs are two longs (the most and least significant bits of the UUID).
+ * 	<li> Metaclass, name and string values are symbol ids, see {@link RhapsodySymbols}.
+ * 	<li> The containment tree is two int arrays: the owner of each element, and the end of its
+ * 		 subtree. Elements are in contents order (depth first), so the elements nested in an
+ * 		 element, at any depth, are the elements between it and the end of its subtree.
+ * 	<li> Stereotypes are element indices, grouped per element.
+ * 	<li> The fields of the files (attributes) and the local tag values are stored in typed
+ * 		 columns, see {@link RhapsodyStoreColumn}.
+ * </ul>
+ * The project elements are followed by the external elements they reference (e.g. profile
+ * stereotypes).
+ * <p>
+ * Elements are exposed as {@link RhapsodyStoreElement} flyweights, created when they are
+ * accessed, that provide the same accessors as {@link RhapsodyFileElement}. Columns are backed
+ * by {@link java.nio} buffers. The store is immutable, so it can be queried concurrently.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyElementStore {
+
+	/**
+	 * Store the elements of a project. The project is not referenced by the store, so it can be
+	 * discarded afterwards. Projects loaded on demand are read completely.
+	 *
+	 * @param project the project
+	 * @return the store
+	 */
+	public static RhapsodyElementStore of(RhapsodyFileProject project) {
+		return new RhapsodyStoreBuilder.FromProject(project).build();
+	}
+
+	/**
+	 * Store the elements of a live model, from its root (the project, or the root element of
+	 * scoped models). The attributes of the elements are the given properties, read with the
+	 * property getter of the model, and the tags are all the tags of each element.
+	 *
+	 * @param model the model
+	 * @param properties the names of the properties to store, e.g. <code>description</code>
+	 * @return the store
+	 */
+	public static RhapsodyElementStore of(RhapsodyModel model, Collection<String> properties) {
+		return of(model.getRoot(), model.getPropertyGetter(), properties);
+	}
+
+	/**
+	 * Store a live element and all its nested elements.
+	 *
+	 * @param root the root element
+	 * @param getter the property getter used to read the properties and tag values
+	 * @param properties the names of the properties to store
+	 * @return the store
+	 */
+	public static RhapsodyElementStore of(IRPModelElement root, IPropertyGetter getter, Collection<String> properties) {
+		return new RhapsodyStoreBuilder.FromModel(root, getter, properties).build();
+	}
+
+	/**
+	 * @return the number of elements, including external elements
+	 */
+	public int size() {
+		return this.names.limit();
+	}
+
+	/**
+	 * @return the number of project elements, external elements are not included
+	 */
+	public int contentSize() {
+		return this.contentSize;
+	}
+
+	/**
+	 * @return the project element
+	 */
+	public RhapsodyStoreElement getProject() {
+		return element(0);
+	}
+
+	/**
+	 * @return the project and all its nested elements, depth first
+	 */
+	public List<RhapsodyStoreElement> getContents() {
+		return range(0, this.contentSize);
+	}
+
+	/**
+	 * @param index the element index
+	 * @return the flyweight for the element
+	 */
+	public RhapsodyStoreElement element(int index) {
+		return new RhapsodyStoreElement(this, index);
+	}
+
+	/**
+	 * Find a project element by GUID.
+	 *
+	 * @param guid the GUID, e.g. <code>GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba</code>
+	 * @return the element, or null if there is no element with the GUID
+	 */
+	public RhapsodyStoreElement getElement(String guid) {
+		UUID uuid = uuid(guid);
+		if (uuid == null) {
+			return null;
+		}
+		int index = indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		return index < 0 ? null : element(index);
+	}
+
+	/**
+	 * Find the index of a project element by GUID.
+	 *
+	 * @param most the most significant bits of the GUID
+	 * @param least the least significant bits of the GUID
+	 * @return the element index, or -1 if there is no element with the GUID
+	 */
+	public int indexOf(long most, long least) {
+		int low = 0;
+		int high = this.guidOrder.limit() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int index = this.guidOrder.get(mid);
+			int compare = Long.compare(this.guids.get(2 * index), most);
+			if (compare == 0) {
+				compare = Long.compare(this.guids.get(2 * index + 1), least);
+			}
+			if (compare < 0) {
+				low = mid + 1;
+			} else if (compare > 0) {
+				high = mid - 1;
+			} else {
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find the first element with the given name and metaclass.
+	 *
+	 * @param name the name of the element
+	 * @param metaclass the metaclass of the element
+	 * @return the element, or null if not found
+	 */
+	public RhapsodyStoreElement find(String name, String metaclass) {
+		int nameId = this.symbols.find(name);
+		int metaclassId = this.symbols.find(metaclass);
+		for (int i = 0; i < this.contentSize && nameId != RhapsodySymbols.NONE; i++) {
+			if (this.metaclasses.get(i) == metaclassId && this.names.get(i) == nameId) {
+				return element(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param metaclass the metaclass name
+	 * @return the elements of the metaclass (not including sub-metaclasses), in contents order
+	 */
+	public List<RhapsodyStoreElement> ofMetaclass(String metaclass) {
+		int id = this.symbols.find(metaclass);
+		if (id == RhapsodySymbols.NONE) {
+			return Collections.emptyList();
+		}
+		return select(this.metaclasses, id);
+	}
+
+	/**
+	 * @param newTerm the new term stereotype name
+	 * @return the elements of the new term, in contents order
+	 */
+	public List<RhapsodyStoreElement> ofNewTerm(String newTerm) {
+		int id = this.symbols.find(newTerm);
+		if (id == RhapsodySymbols.NONE) {
+			return Collections.emptyList();
+		}
+		int[] result = new int[16];
+		int count = 0;
+		for (int i = 0; i < this.contentSize; i++) {
+			int stereotype = this.newTerms.get(i);
+			if (stereotype >= 0 && this.names.get(stereotype) == id) {
+				if (count == result.length) {
+					result = Arrays.copyOf(result, count * 2);
+				}
+				result[count++] = i;
+			}
+		}
+		return elements(Arrays.copyOf(result, count));
+	}
+
+	/**
+	 * @return the metaclasses of the project elements
+	 */
+	public Set<String> getMetaclasses() {
+		Set<String> result = new HashSet<>();
+		for (int i = 0; i < this.metaclassNames.limit(); i++) {
+			result.add(this.symbols.get(this.metaclassNames.get(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the names of the new term stereotypes: the project stereotypes marked as new terms
+	 * 	and the names given when the project was loaded
+	 */
+	public Set<String> getNewTerms() {
+		Set<String> result = new HashSet<>();
+		for (int i = 0; i < this.newTermNames.limit(); i++) {
+			result.add(this.symbols.get(this.newTermNames.get(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * @param element the element
+	 * @return true, if the element is a flyweight of this store
+	 */
+	public boolean contains(RhapsodyStoreElement element) {
+		return element.getStore() == this && element.getIndex() < this.contentSize;
+	}
+
+	public RhapsodySymbols getSymbols() {
+		return this.symbols;
+	}
+
+	/**
+	 * @param name the attribute (field) name, e.g. <code>_modifiedTime</code>
+	 * @return the column of the attribute, or null if no element has the attribute
+	 */
+	public RhapsodyStoreColumn getAttribute(String name) {
+		return this.attributes.get(this.symbols.find(name));
+	}
+
+	/**
+	 * @return the names of the attributes of the elements
+	 */
+	public Set<String> getAttributeNames() {
+		Set<String> result = new HashSet<>();
+		this.attributes.keySet().forEach(id -> result.add(this.symbols.get(id)));
+		return result;
+	}
+
+	/**
+	 * @param name the tag name
+	 * @return the column of the local values of the tag, or null if no element has the tag
+	 */
+	public RhapsodyStoreColumn getTag(String name) {
+		return this.tags.get(this.symbols.find(name));
+	}
+
+	/**
+	 * @return the files of the units the elements were read from, relative to the directory of
+	 * 	the project file. Empty for stores of live models.
+	 */
+	public List<String> getUnitFiles() {
+		List<String> result = new ArrayList<>(this.units.size());
+		for (int i = 0; i < this.units.size(); i++) {
+			result.add(this.symbols.get(this.units.file(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * Refresh the store after some units of its project changed. The stamp of each unit (its
+	 * modification time and size, and a hash of its contents if they differ) is compared with
+	 * the stamp of its file when the store was built. Only the units that changed, and the new
+	 * units they reference, are read; the elements of the other units are copied from this
+	 * store. Units that are no longer referenced are removed.
+	 * <p>
+	 * Stores of live models don't know their units, so the project is read completely.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms, as when the store
+	 * 	was built
+	 * @return this store if no unit changed, otherwise a new store
+	 * @throws IOException if a unit can't be read
+	 * @throws XMLStreamException if a unit is not well formed
+	 */
+	public RhapsodyElementStore refresh(Path projectFile, Collection<String> newTerms) throws IOException, XMLStreamException {
+		return refresh(projectFile, newTerms, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Refresh the store, parsing the units in the given pool.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms, as when the store
+	 * 	was built
+	 * @param pool the pool used to parse the units
+	 * @return this store if no unit changed, otherwise a new store
+	 * @throws IOException if a unit can't be read
+	 * @throws XMLStreamException if a unit is not well formed
+	 * @see #refresh(Path, Collection)
+	 */
+	public RhapsodyElementStore refresh(Path projectFile, Collection<String> newTerms, ForkJoinPool pool) throws IOException, XMLStreamException {
+		if (this.units.size() == 0) {
+			return of(RhapsodyFileProject.load(projectFile, newTerms, pool));
+		}
+		return new RhapsodyStorePatch(this, projectFile.toAbsolutePath(), newTerms, pool).apply();
+	}
+
+	/**
+	 * Find the elements that reference an element, see {@link RhapsodyStoreReferences}. The
+	 * references of all the elements are indexed the first time this method is called.
+	 *
+	 * @param element an element of this store
+	 * @return the content elements that reference the element, in contents order
+	 */
+	public List<RhapsodyStoreElement> getReferencesTo(RhapsodyStoreElement element) {
+		if (element.getStore() != this) {
+			throw new IllegalArgumentException("The element " + element + " is not an element of this store");
+		}
+		return elements(references().sources(element.getIndex()));
+	}
+
+	@Override
+	public String toString() {
+		return "RhapsodyElementStore [" + this.contentSize + " elements, " + this.symbols.size() + " symbols]";
+	}
+
+	/** Flag of external elements */
+	static final byte EXTERNAL = 1;
+	/** Flag of new term stereotypes */
+	static final byte NEW_TERM = 2;
+
+	private final RhapsodySymbols symbols;
+	private final int contentSize;
+	private final LongBuffer guids;
+	private final IntBuffer metaclasses;
+	private final IntBuffer names;
+	private final IntBuffer owners;
+	private final IntBuffer ends;
+	private final IntBuffer newTerms;
+	private final ByteBuffer flags;
+	private final IntBuffer stereotypeOffsets;
+	private final IntBuffer stereotypes;
+	private final IntBuffer guidOrder;
+	private final IntBuffer newTermNames;
+	private final IntBuffer metaclassNames;
+	private final Map<Integer, RhapsodyStoreColumn> attributes;
+	private final Map<Integer, RhapsodyStoreColumn> tags;
+	private final RhapsodyStoreUnits units;
+	private RhapsodyStoreReferences references;
+
+	RhapsodyElementStore(
+			RhapsodySymbols symbols,
+			int contentSize,
+			LongBuffer guids,
+			IntBuffer metaclasses,
+			IntBuffer names,
+			IntBuffer owners,
+			IntBuffer ends,
+			IntBuffer newTerms,
+			ByteBuffer flags,
+			IntBuffer stereotypeOffsets,
+			IntBuffer stereotypes,
+			IntBuffer guidOrder,
+			IntBuffer newTermNames,
+			IntBuffer metaclassNames,
+			Map<Integer, RhapsodyStoreColumn> attributes,
+			Map<Integer, RhapsodyStoreColumn> tags,
+			RhapsodyStoreUnits units) {
+		this.symbols = symbols;
+		this.contentSize = contentSize;
+		this.guids = guids;
+		this.metaclasses = metaclasses;
+		this.names = names;
+		this.owners = owners;
+		this.ends = ends;
+		this.newTerms = newTerms;
+		this.flags = flags;
+		this.stereotypeOffsets = stereotypeOffsets;
+		this.stereotypes = stereotypes;
+		this.guidOrder = guidOrder;
+		this.newTermNames = newTermNames;
+		this.metaclassNames = metaclassNames;
+		this.attributes = attributes;
+		this.tags = tags;
+		this.units = units;
+	}
+
+	LongBuffer getGuids() {
+		return this.guids.duplicate();
+	}
+
+	IntBuffer getMetaclassColumn() {
+		return this.metaclasses.duplicate();
+	}
+
+	IntBuffer getNames() {
+		return this.names.duplicate();
+	}
+
+	IntBuffer getOwners() {
+		return this.owners.duplicate();
+	}
+
+	IntBuffer getEnds() {
+		return this.ends.duplicate();
+	}
+
+	IntBuffer getNewTermColumn() {
+		return this.newTerms.duplicate();
+	}
+
+	ByteBuffer getFlags() {
+		return this.flags.duplicate();
+	}
+
+	IntBuffer getStereotypeOffsets() {
+		return this.stereotypeOffsets.duplicate();
+	}
+
+	IntBuffer getStereotypeColumn() {
+		return this.stereotypes.duplicate();
+	}
+
+	IntBuffer getGuidOrder() {
+		return this.guidOrder.duplicate();
+	}
+
+	IntBuffer getNewTermNames() {
+		return this.newTermNames.duplicate();
+	}
+
+	IntBuffer getMetaclassNames() {
+		return this.metaclassNames.duplicate();
+	}
+
+	Map<Integer, RhapsodyStoreColumn> getAttributes() {
+		return this.attributes;
+	}
+
+	Map<Integer, RhapsodyStoreColumn> getTags() {
+		return this.tags;
+	}
+
+	RhapsodyStoreUnits getUnits() {
+		return this.units;
+	}
+
+	/**
+	 * @return a store with the same elements, and other units
+	 */
+	RhapsodyElementStore withUnits(RhapsodyStoreUnits units) {
+		return new RhapsodyElementStore(
+				this.symbols,
+				this.contentSize,
+				this.guids,
+				this.metaclasses,
+				this.names,
+				this.owners,
+				this.ends,
+				this.newTerms,
+				this.flags,
+				this.stereotypeOffsets,
+				this.stereotypes,
+				this.guidOrder,
+				this.newTermNames,
+				this.metaclassNames,
+				this.attributes,
+				this.tags,
+				units);
+	}
+
+	String guid(int index) {
+		return GUID_PREFIX + new UUID(this.guids.get(2 * index), this.guids.get(2 * index + 1));
+	}
+
+	String name(int index) {
+		return this.symbols.get(this.names.get(index));
+	}
+
+	String metaclass(int index) {
+		return this.symbols.get(this.metaclasses.get(index));
+	}
+
+	int owner(int index) {
+		return this.owners.get(index);
+	}
+
+	/**
+	 * @return the index after the last element nested in the element
+	 */
+	int end(int index) {
+		return this.ends.get(index);
+	}
+
+	/**
+	 * @return the index of the new term stereotype of the element, -1 if it has none
+	 */
+	int newTerm(int index) {
+		return this.newTerms.get(index);
+	}
+
+	boolean hasFlag(int index, byte flag) {
+		return (this.flags.get(index) & flag) != 0;
+	}
+
+	int stereotypeCount(int index) {
+		return this.stereotypeOffsets.get(index + 1) - this.stereotypeOffsets.get(index);
+	}
+
+	int stereotype(int index, int position) {
+		return this.stereotypes.get(this.stereotypeOffsets.get(index) + position);
+	}
+
+	/**
+	 * @return the elements directly nested in the element
+	 */
+	List<RhapsodyStoreElement> children(int index) {
+		int end = end(index);
+		int count = 0;
+		for (int child = index + 1; child < end; child = end(child)) {
+			count++;
+		}
+		int[] result = new int[count];
+		count = 0;
+		for (int child = index + 1; child < end; child = end(child)) {
+			result[count++] = child;
+		}
+		return elements(result);
+	}
+
+	/**
+	 * @return the elements in the index range
+	 */
+	List<RhapsodyStoreElement> range(int from, int to) {
+		return new Elements(this, null, from, to - from);
+	}
+
+	/**
+	 * @return the elements with the indices
+	 */
+	List<RhapsodyStoreElement> elements(int[] indices) {
+		return new Elements(this, indices, 0, indices.length);
+	}
+
+	/**
+	 * Decode a value of a column.
+	 *
+	 * @param column the column
+	 * @param row the row of the value
+	 * @return the value: an Integer, Float, Boolean, String, {@link RhapsodyStoreElement} or a
+	 * 	list of them
+	 */
+	Object value(RhapsodyStoreColumn column, int row) {
+		byte kind = column.kind(row);
+		if (kind != RhapsodyStoreColumn.LIST) {
+			return value(kind, column.payload(row));
+		}
+		int count = column.itemCount(row);
+		List<Object> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(value(column.itemKind(row, i), column.item(row, i)));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the UUID of the GUID, or null if the string is not a GUID
+	 */
+	static UUID uuid(String guid) {
+		if (guid == null || !guid.startsWith(GUID_PREFIX)) {
+			return null;
+		}
+		try {
+			return UUID.fromString(guid.substring(GUID_PREFIX.length()));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static final String GUID_PREFIX = "GUID ";
+
+	private synchronized RhapsodyStoreReferences references() {
+		if (this.references == null) {
+			this.references = RhapsodyStoreReferences.of(this);
+		}
+		return this.references;
+	}
+
+	private Object value(byte kind, int payload) {
+		switch (kind) {
+			case RhapsodyStoreColumn.INT:
+				return payload;
+			case RhapsodyStoreColumn.FLOAT:
+				return Float.intBitsToFloat(payload);
+			case RhapsodyStoreColumn.BOOLEAN:
+				return payload != 0;
+			case RhapsodyStoreColumn.STRING:
+				return this.symbols.get(payload);
+			case RhapsodyStoreColumn.ELEMENT:
+				return element(payload);
+			default:
+				return null;
+		}
+	}
+
+	private List<RhapsodyStoreElement> select(IntBuffer column, int value) {
+		int count = 0;
+		for (int i = 0; i < this.contentSize; i++) {
+			if (column.get(i) == value) {
+				count++;
+			}
+		}
+		int[] result = new int[count];
+		count = 0;
+		for (int i = 0; i < this.contentSize; i++) {
+			if (column.get(i) == value) {
+				result[count++] = i;
+			}
+		}
+		return elements(result);
+	}
+
+	/**
+	 * A list of flyweights, backed by element indices (or a range of indices).
+	 */
+	private static class Elements extends AbstractList<RhapsodyStoreElement> implements RandomAccess {
+
+		Elements(RhapsodyElementStore store, int[] indices, int from, int size) {
+			this.store = store;
+			this.indices = indices;
+			this.from = from;
+			this.size = size;
+		}
+
+		@Override
+		public RhapsodyStoreElement get(int index) {
+			if (index < 0 || index >= this.size) {
+				throw new IndexOutOfBoundsException(index);
+			}
+			return this.store.element(this.indices == null ? this.from + index : this.indices[this.from + index]);
+		}
+
+		@Override
+		public int size() {
+			return this.size;
+		}
+
+		private final RhapsodyElementStore store;
+		private final int[] indices;
+		private final int from;
+		private final int size;
+
+	}
+
+}
@@ -0,0 +1,470 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+
+/**
+ * A model element read from the unit files of a Rhapsody project. The element keeps the raw
+ * fields of the file (e.g. <code>_name</code>, <code>_modifiedTime</code>), see
+ * {@link #getField(String)}, and provides the subset of the {@link IRPModelElement} accessors
+ * that can be answered from the files, using the same names, so EOL scripts can navigate
+ * elements the same way as in {@link cas.mcmaster.epsilon.emc.RhapsodyModel}.
+ * <p>
+ * Elements that are referenced but are not part of the project (e.g. the SysML profile
+ * stereotypes) are represented by external elements, that only know their name, GUID and
+ * metaclass (see {@link #getIsExternal()}).
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyFileElement {
+
+	/**
+	 * Create an element.
+	 *
+	 * @param fileClass the class of the element in the unit file, e.g. <code>IClass</code>
+	 * @param metaclass the metaclass name, e.g. <code>Class</code>
+	 */
+	public RhapsodyFileElement(String fileClass, String metaclass) {
+		this.fileClass = fileClass;
+		this.metaclass = metaclass;
+		this.fields = new HashMap<>();
+		this.aggregates = Collections.emptyList();
+		this.external = false;
+	}
+
+	public String getGUID() {
+		return (String) this.fields.get(ID);
+	}
+
+	/**
+	 * Receptions don't store a name, they take the name of their event.
+	 *
+	 * @return the name of the element, or an empty string if it has no name
+	 */
+	public String getName() {
+		Object name = this.fields.get(NAME);
+		if (name != null) {
+			return (String) name;
+		}
+		if (this.fields.get(EVENT) instanceof RhapsodyHandle) {
+			return this.project.resolve((RhapsodyHandle) this.fields.get(EVENT)).getName();
+		}
+		return "";
+	}
+
+	public String getMetaClass() {
+		return this.metaclass;
+	}
+
+	/**
+	 * @return the name of the new term stereotype of the element, or its metaclass if it has none
+	 */
+	public String getUserDefinedMetaClass() {
+		return this.newTerm == null ? this.metaclass : this.newTerm.getName();
+	}
+
+	/**
+	 * @return the name of the Rhapsody API interface of the element, e.g. <code>IRPClass</code>
+	 */
+	public String getInterfaceName() {
+		String name = RhapsodyKindLattice.interfaceName(this.metaclass);
+		return name == null ? "IRP" + this.metaclass : name;
+	}
+
+	public RhapsodyFileElement getOwner() {
+		if (this.owner == null && this.project != null) {
+			// The root of a unit loaded on demand
+			return this.project.unitOwner(this);
+		}
+		return this.owner;
+	}
+
+	public RhapsodyFileElement getProject() {
+		return this.project == null ? null : this.project.getProject();
+	}
+
+	/**
+	 * In projects loaded on demand, the nested elements stored in other units are read when
+	 * this method is called, see {@link RhapsodyFileProject#loadOnDemand}.
+	 *
+	 * @return the elements nested in this element
+	 */
+	public List<RhapsodyFileElement> getNestedElements() {
+		if (this.project == null || !this.project.isLoadOnDemand()) {
+			return Collections.unmodifiableList(this.nested);
+		}
+		// Merge the unit roots in aggregates order, as when the units are linked together
+		List<RhapsodyFileElement> result = new ArrayList<>();
+		int local = 0;
+		for (String guid : this.aggregates) {
+			if (local < this.nested.size() && guid.equals(this.nested.get(local).getGUID())) {
+				result.add(this.nested.get(local++));
+			} else {
+				RhapsodyFileElement root = this.project.unitRoot(guid);
+				if (root != null) {
+					result.add(root);
+				}
+			}
+		}
+		result.addAll(this.nested.subList(local, this.nested.size()));
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * @return the element and all its nested elements, depth first
+	 */
+	public List<RhapsodyFileElement> getNestedElementsRecursive() {
+		List<RhapsodyFileElement> result = new ArrayList<>();
+		addRecursive(result);
+		return result;
+	}
+
+	public int hasNestedElements() {
+		if (!this.nested.isEmpty()) {
+			return 1;
+		}
+		return this.project != null && this.project.aggregatesUnit(this) ? 1 : 0;
+	}
+
+	public List<RhapsodyFileElement> getStereotypes() {
+		return Collections.unmodifiableList(this.stereotypes);
+	}
+
+	/**
+	 * @return the first stereotype of the element, or null if it has none
+	 */
+	public RhapsodyFileElement getStereotype() {
+		return this.stereotypes.isEmpty() ? null : this.stereotypes.get(0);
+	}
+
+	/**
+	 * @return the new term stereotype of the element, or null if it has none
+	 */
+	public RhapsodyFileElement getNewTermStereotype() {
+		return this.newTerm;
+	}
+
+	/**
+	 * For stereotypes, only stereotypes in the project can be known as new terms from the files.
+	 * External stereotypes (e.g. from profiles) are new terms if they are listed in the
+	 * {@link RhapsodyFileModel#PROPERTY_NEW_TERMS} property.
+	 *
+	 * @return 1 if the element is a new term stereotype, 0 otherwise
+	 */
+	public int getIsNewTerm() {
+		return this.project != null && this.project.isNewTerm(this) ? 1 : 0;
+	}
+
+	/**
+	 * @return for stereotypes, the comma separated list of metaclasses the stereotype applies to
+	 */
+	public String getOfMetaClass() {
+		return getFieldValues(M2_CLASSES).stream()
+				.map(Object::toString)
+				.collect(Collectors.joining(","));
+	}
+
+	/**
+	 * @return the tags owned by the element
+	 */
+	public List<RhapsodyFileElement> getLocalTags() {
+		return this.nested.stream()
+				.filter(e -> TAG.equals(e.metaclass))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the local tags of the element, and the tags of its stereotypes that are not
+	 * 	overridden by a local tag
+	 */
+	public List<RhapsodyFileElement> getAllTags() {
+		List<RhapsodyFileElement> result = getLocalTags();
+		for (RhapsodyFileElement stereotype : this.stereotypes) {
+			for (RhapsodyFileElement tag : stereotype.getLocalTags()) {
+				if (result.stream().noneMatch(t -> t.getName().equals(tag.getName()))) {
+					result.add(tag);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find a tag by name, in the element or in its stereotypes.
+	 *
+	 * @param name the name of the tag
+	 * @return the tag, or null if the element does not have a tag with the name
+	 */
+	public RhapsodyFileElement getTag(String name) {
+		for (RhapsodyFileElement tag : getAllTags()) {
+			if (tag.getName().equals(name)) {
+				return tag;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return for tags, the value specifications (literal specifications and instance values)
+	 */
+	public List<RhapsodyFileElement> getValueSpecifications() {
+		return this.nested.stream()
+				.filter(e -> LITERAL_SPECIFICATION.equals(e.metaclass) || INSTANCE_VALUE.equals(e.metaclass))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * The value of the element, for example of a tag, literal specification or enumeration
+	 * literal. Values that reference other elements (e.g. of instance values) are resolved.
+	 *
+	 * @return the value, or null if the element has no value
+	 */
+	public Object getValue() {
+		Object value = this.fields.get(VALUE);
+		if (value instanceof RhapsodyHandle) {
+			return this.project.resolve((RhapsodyHandle) value);
+		}
+		return value;
+	}
+
+	/**
+	 * The type of the element, for example of a tag or an attribute. Tags that don't have a type
+	 * take the type of the tag they are based on (i.e. the tag of the stereotype).
+	 *
+	 * @return the type, or null if the element has no type
+	 */
+	public RhapsodyFileElement getType() {
+		Object type = this.fields.get(TYPE_OF);
+		if (type instanceof RhapsodyHandle) {
+			return this.project.resolve((RhapsodyHandle) type);
+		}
+		Object base = this.fields.get(BASE);
+		if (base instanceof RhapsodyHandle) {
+			RhapsodyFileElement baseElement = this.project.resolve((RhapsodyHandle) base);
+			if (baseElement != this) {
+				return baseElement.getType();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return for types, the kind of type, e.g. <code>Enumeration</code> or <code>Typedef</code>
+	 */
+	public String getKind() {
+		Object kind = this.fields.get(KIND);
+		return kind == null ? "" : kind.toString();
+	}
+
+	public int isKindEnumeration() {
+		return ENUMERATION.equals(getKind()) ? 1 : 0;
+	}
+
+	public List<RhapsodyFileElement> getEnumerationLiterals() {
+		return this.nested.stream()
+				.filter(e -> ENUMERATION_LITERAL.equals(e.metaclass))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the package path of the element, e.g. <code>TestingPkg::Block1</code>
+	 */
+	public String getFullPathName() {
+		RhapsodyFileElement owner = getOwner();
+		if (owner == null || owner.getOwner() == null) {
+			return getName();
+		}
+		return owner.getFullPathName() + "::" + getName();
+	}
+
+	/**
+	 * @return 1 if the element is not part of the project (e.g. it is defined in a profile)
+	 */
+	public int getIsExternal() {
+		return this.external ? 1 : 0;
+	}
+
+	/**
+	 * Elements can't be modified via the driver, but as in Rhapsody, only external elements are
+	 * reported as read only.
+	 *
+	 * @return 1 if the element is external, 0 otherwise
+	 */
+	public int isReadOnly() {
+		return getIsExternal();
+	}
+
+	/**
+	 * @return the class of the element in the unit file, e.g. <code>IClass</code>
+	 */
+	public String getFileClass() {
+		return this.fileClass;
+	}
+
+	/**
+	 * Get the raw value of a field of the file. Values are strings, {@link RhapsodyHandle}s or
+	 * lists of strings and handles.
+	 *
+	 * @param name the name of the field, e.g. <code>_modifiedTime</code>
+	 * @return the value, or null if the element does not have the field
+	 */
+	public Object getField(String name) {
+		return this.fields.get(name);
+	}
+
+	/**
+	 * @param name the name of the field
+	 * @return true, if the element has the field
+	 */
+	public boolean hasField(String name) {
+		return this.fields.containsKey(name);
+	}
+
+	/**
+	 * @return the names of the fields of the element
+	 */
+	public List<String> getFieldNames() {
+		return new ArrayList<>(this.fields.keySet());
+	}
+
+	/**
+	 * @return the GUIDs of the elements aggregated by this element, as listed in the file
+	 */
+	public List<String> getAggregates() {
+		return Collections.unmodifiableList(this.aggregates);
+	}
+
+	@Override
+	public String toString() {
+		return this.metaclass + " " + getName() + " (" + getGUID() + ")";
+	}
+
+	static final String ID = "_id";
+	static final String NAME = "_name";
+	static final String STEREOTYPES = "Stereotypes";
+	static final String NEW_TERM = "_newTerm";
+	static final String FILE_NAME = "fileName";
+	static final String PERSIST_AS = "_persistAs";
+	private static final String EVENT = "_event";
+	private static final String VALUE = "_value";
+	private static final String TYPE_OF = "_typeOf";
+	private static final String BASE = "_base";
+	private static final String KIND = "_kind";
+	private static final String M2_CLASSES = "_m2Classes";
+	private static final String TAG = "Tag";
+	private static final String LITERAL_SPECIFICATION = "LiteralSpecification";
+	private static final String INSTANCE_VALUE = "InstanceValue";
+	private static final String ENUMERATION = "Enumeration";
+	private static final String ENUMERATION_LITERAL = "EnumerationLiteral";
+
+	private final String fileClass;
+	private final String metaclass;
+	private final Map<String, Object> fields;
+	private List<String> aggregates;
+	private RhapsodyFileElement owner;
+	private final List<RhapsodyFileElement> nested = new ArrayList<>();
+	private final List<RhapsodyFileElement> stereotypes = new ArrayList<>();
+	private RhapsodyFileElement newTerm;
+	private RhapsodyFileProject project;
+	private boolean external;
+	/** Loaded on demand: the elements of the unit, keeps the unit loaded while in use */
+	private Map<String, RhapsodyFileElement> unit;
+
+	/**
+	 * Create an external element, for a reference to an element outside the project.
+	 */
+	static RhapsodyFileElement external(RhapsodyHandle handle, String metaclass, RhapsodyFileProject project) {
+		var result = new RhapsodyFileElement(handle.getM2Class(), metaclass);
+		result.fields.put(ID, handle.getGUID());
+		if (handle.getName() != null) {
+			result.fields.put(NAME, handle.getName());
+		}
+		result.project = project;
+		result.external = true;
+		return result;
+	}
+
+	void putField(String name, Object value) {
+		this.fields.put(name, value);
+	}
+
+	void setAggregates(List<String> aggregates) {
+		this.aggregates = aggregates;
+	}
+
+	/**
+	 * @return true, if the element is a reference to a unit file (i.e. it has no contents)
+	 */
+	boolean isUnitReference() {
+		return this.fields.containsKey(FILE_NAME) && !this.fields.containsKey(NAME);
+	}
+
+	void setProject(RhapsodyFileProject project) {
+		this.project = project;
+	}
+
+	void addNested(RhapsodyFileElement child) {
+		child.owner = this;
+		this.nested.add(child);
+	}
+
+	Map<String, RhapsodyFileElement> getUnit() {
+		return this.unit;
+	}
+
+	void setUnit(Map<String, RhapsodyFileElement> unit) {
+		this.unit = unit;
+	}
+
+	void addStereotype(RhapsodyFileElement stereotype) {
+		this.stereotypes.add(stereotype);
+	}
+
+	void setNewTerm(RhapsodyFileElement newTerm) {
+		this.newTerm = newTerm;
+	}
+
+	/**
+	 * @return the element referenced by the handle, or the handle if the element is not linked
+	 */
+	Object resolve(RhapsodyHandle handle) {
+		return this.project == null ? handle : this.project.resolve(handle);
+	}
+
+	/**
+	 * @return the values of a container field, empty if the element does not have the field
+	 */
+	List<?> getFieldValues(String name) {
+		Object value = this.fields.get(name);
+		if (value instanceof List) {
+			return (List<?>) value;
+		}
+		return Collections.emptyList();
+	}
+
+	private void addRecursive(List<RhapsodyFileElement> result) {
+		result.add(this);
+		for (RhapsodyFileElement child : getNestedElements()) {
+			child.addRecursive(result);
+		}
+	}
+
+}
@@ -0,0 +1,478 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolEnumerationValueNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.exceptions.models.EolNotInstantiableModelElementTypeException;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertySetter;
+import org.eclipse.epsilon.eol.models.CachedModel;
+import org.eclipse.epsilon.eol.models.IRelativePathResolver;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+
+/**
+ * A read-only IModel for Rhapsody projects that reads the project files directly, see
+ * {@link RhapsodyFileProject}, so Rhapsody is not needed. Types, stereotypes, tags and
+ * properties behave as in {@link RhapsodyModel}:
+ * <ul>
+ * 	<li> Types are metaclasses (e.g. <code>Class</code>) or new term stereotypes (e.g.
+ * 		 <code>Block</code>), and kinds follow the {@link RhapsodyKindLattice}.
+ * 	<li> Properties are resolved by the {@link RhapsodyFilePropertyGetter}: element accessors,
+ * 		 file fields and stereotype tags.
+ * </ul>
+ * The model can't be modified: elements can't be created or deleted and properties can't be
+ * set. Storing the model does nothing.
+ * <p>
+ * The following properties are supported:
+ * <ul>
+ * 	<li> {@link #PROPERTY_PROJECT_PATH}: the path to the Rhapsody project file
+ * 		 (<code>.rpyx</code>).
+ * 	<li> {@link #PROPERTY_INSTALLATION_DIRECTORY}: (optional) the path to the Rhapsody
+ * 		 installation, to read the metaclass names from <code>metaclasses.txt</code>. If absent,
+ * 		 the metaclasses are the ones used in the project and those with an API interface.
+ * 	<li> {@link #PROPERTY_NEW_TERMS}: (optional) comma separated names of stereotypes outside the
+ * 		 project (e.g. from the SysML profile) that are new terms. Profiles in the Rhapsody
+ * 		 installation are not read, so whether their stereotypes are new terms is not known.
+ * 	<li> {@link #PROPERTY_PARSE_PARALLELISM}: (optional) the number of threads used to parse the
+ * 		 project units. Defaults to 0, that uses the common fork-join pool.
+ * 	<li> {@link #PROPERTY_LOAD_ON_DEMAND}: (optional) if <code>true</code>, only the project file
+ * 		 is read when the model is loaded, and units are read when first needed, see
+ * 		 {@link RhapsodyFileProject#loadOnDemand}. Unless the {@link #PROPERTY_CACHED} property
+ * 		 is set, caching is disabled, so type queries don't keep all units loaded.
+ * </ul>
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyFileModel extends CachedModel<RhapsodyFileElement> {
+
+	public static final String PROPERTY_PROJECT_PATH = RhapsodyModel.PROPERTY_PROJECT_PATH;
+	public static final String PROPERTY_INSTALLATION_DIRECTORY = RhapsodyModel.PROPERTY_INSTALLATION_DIRECTORY;
+	public static final String PROPERTY_NEW_TERMS = "new_terms";
+	public static final String PROPERTY_PARSE_PARALLELISM = "parse_parallelism";
+	public static final String PROPERTY_LOAD_ON_DEMAND = "load_on_demand";
+
+	public RhapsodyFileModel() {
+		this.propertyGetter = new RhapsodyFilePropertyGetter();
+		this.propertySetter = new ReadOnlyPropertySetter();
+	}
+
+	@Override
+	public void load(
+		StringProperties properties,
+		IRelativePathResolver relativePathResolver) throws EolModelLoadingException {
+		super.load(properties, relativePathResolver);
+		if (!properties.hasProperty(PROPERTY_PROJECT_PATH)) {
+			LOG.error("No path to the Rhapsody project provided");
+			throw new EolModelLoadingException(new IllegalArgumentException("No path to the Rhapsody project provided"), this);
+		}
+		this.projectFile = Paths.get(relativePathResolver.resolve(properties.getProperty(PROPERTY_PROJECT_PATH))).toAbsolutePath();
+		this.newTerms = Arrays.stream(properties.getProperty(PROPERTY_NEW_TERMS, "").split(","))
+				.map(String::trim)
+				.filter(s -> !s.isEmpty())
+				.collect(Collectors.toSet());
+		this.parseParallelism = properties.getIntegerProperty(PROPERTY_PARSE_PARALLELISM, 0);
+		this.loadOnDemand = properties.getBooleanProperty(PROPERTY_LOAD_ON_DEMAND, false);
+		if (this.loadOnDemand && !properties.hasProperty(PROPERTY_CACHED)) {
+			setCachingEnabled(false);
+		}
+		this.installedMetaclasses = Collections.emptySet();
+		if (properties.hasProperty(PROPERTY_INSTALLATION_DIRECTORY)) {
+			this.installedMetaclasses = installedMetaclasses(Paths.get(properties.getProperty(PROPERTY_INSTALLATION_DIRECTORY)));
+		}
+		load();
+	}
+
+	/**
+	 * Set the project file, for models that are loaded without properties.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 */
+	public void setProjectFile(Path projectFile) {
+		this.projectFile = projectFile;
+	}
+
+	public Path getProjectFile() {
+		return this.projectFile;
+	}
+
+	/**
+	 * Set the number of threads used to parse the project units, for models that are loaded
+	 * without properties.
+	 *
+	 * @param parseParallelism the number of threads, 0 to use the common fork-join pool
+	 */
+	public void setParseParallelism(int parseParallelism) {
+		this.parseParallelism = parseParallelism;
+	}
+
+	public int getParseParallelism() {
+		return this.parseParallelism;
+	}
+
+	/**
+	 * Set if units are read when first needed, for models that are loaded without properties.
+	 *
+	 * @param loadOnDemand true, to load units on demand
+	 */
+	public void setLoadOnDemand(boolean loadOnDemand) {
+		this.loadOnDemand = loadOnDemand;
+	}
+
+	public boolean isLoadOnDemand() {
+		return this.loadOnDemand;
+	}
+
+	/**
+	 * @return the loaded project, null if the model is not loaded
+	 */
+	public RhapsodyFileProject getProject() {
+		return this.project;
+	}
+
+	@Override
+	public Object getEnumerationValue(String enumeration, String label) throws EolEnumerationValueNotFoundException {
+		RhapsodyFileElement type = this.project.find(enumeration, "Type");
+		if (type == null || type.isKindEnumeration() == 0) {
+			LOG.error("Unable to find an enumeration Type that matches the name: {}", enumeration);
+			throw new EolEnumerationValueNotFoundException(enumeration, label, getName());
+		}
+		for (RhapsodyFileElement literal : type.getEnumerationLiterals()) {
+			if (literal.getName().equals(label)) {
+				return literal.getValue();
+			}
+		}
+		LOG.error("Found a Type that matches the enumeration {}, but none of its EnumerationLiterals matched the label: {}", enumeration, label);
+		throw new EolEnumerationValueNotFoundException(enumeration, label, getName());
+	}
+
+	@Override
+	public Object getTypeOf(Object instance) {
+		return element(instance).getInterfaceName();
+	}
+
+	@Override
+	public String getTypeNameOf(Object instance) {
+		return element(instance).getUserDefinedMetaClass();
+	}
+
+	@Override
+	public String getFullyQualifiedTypeNameOf(Object instance) {
+		return getTypeNameOf(instance);
+	}
+
+	@Override
+	public Object getElementById(String id) {
+		return this.project == null ? null : this.project.getElement(id);
+	}
+
+	@Override
+	public String getElementId(Object instance) {
+		return element(instance).getGUID();
+	}
+
+	@Override
+	public void setElementId(Object instance, String newId) {
+		throw new UnsupportedOperationException("Rhapsody file models are read only");
+	}
+
+	@Override
+	public boolean isOfType(Object instance, String type) throws EolModelElementTypeNotFoundException {
+		if (instance == null) {
+			LOG.warn("Checking the type of null");
+			return false;
+		}
+		var element = element(instance);
+		if (isMetaclass(type)) {
+			return Objects.equals(RhapsodyKindLattice.canonical(type), element.getMetaClass());
+		} else if (isNewTerm(type)) {
+			return Objects.equals(type, element.getUserDefinedMetaClass());
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), type);
+	}
+
+	@Override
+	public boolean isOfKind(Object instance, String kind) throws EolModelElementTypeNotFoundException {
+		if (instance == null) {
+			LOG.warn("Checking the kind of null");
+			return false;
+		}
+		var element = element(instance);
+		if (isMetaclass(kind)) {
+			String metaclass = element.getMetaClass();
+			RhapsodyKindLattice current = this.lattice;
+			if (!current.contains(kind) || !current.contains(metaclass)) {
+				current = extendLattice(List.of(kind, metaclass));
+			}
+			return current.isKindOf(metaclass, kind);
+		} else if (isNewTerm(kind)) {
+			return Objects.equals(kind, element.getUserDefinedMetaClass());
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), kind);
+	}
+
+	@Override
+	public boolean owns(Object instance) {
+		return instance instanceof RhapsodyFileElement
+				&& this.project != null
+				&& this.project.contains((RhapsodyFileElement) instance);
+	}
+
+	@Override
+	public boolean knowsAboutProperty(Object instance, String property) {
+		return this.propertyGetter.hasProperty(instance, property, null);
+	}
+
+	@Override
+	public boolean isPropertySet(Object instance, String property) throws EolRuntimeException {
+		return true;
+	}
+
+	@Override
+	public boolean isInstantiable(String type) {
+		return false;
+	}
+
+	@Override
+	public boolean isModelElement(Object instance) {
+		return instance instanceof RhapsodyFileElement;
+	}
+
+	@Override
+	public boolean hasType(String type) {
+		return isMetaclass(type) || isNewTerm(type);
+	}
+
+	@Override
+	public boolean store(String location) {
+		LOG.warn("Rhapsody file models are read only, the model will not be stored");
+		return false;
+	}
+
+	@Override
+	public boolean store() {
+		LOG.warn("Rhapsody file models are read only, the model will not be stored");
+		return false;
+	}
+
+	@Override
+	public IPropertyGetter getPropertyGetter() {
+		return this.propertyGetter;
+	}
+
+	@Override
+	public IPropertySetter getPropertySetter() {
+		return this.propertySetter;
+	}
+
+	@Override
+	protected Collection<RhapsodyFileElement> allContentsFromModel() {
+		return this.project.getContents();
+	}
+
+	@Override
+	protected Collection<RhapsodyFileElement> getAllOfTypeFromModel(String type) throws EolModelElementTypeNotFoundException {
+		if (isMetaclass(type)) {
+			return this.project.ofMetaclass(RhapsodyKindLattice.canonical(type));
+		} else if (isNewTerm(type)) {
+			return this.project.ofNewTerm(type);
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), type);
+	}
+
+	@Override
+	protected Collection<RhapsodyFileElement> getAllOfKindFromModel(String kind) throws EolModelElementTypeNotFoundException {
+		if (isMetaclass(kind)) {
+			if (this.project.isLoadOnDemand()) {
+				// The metaclasses of the units loaded since the last query
+				extendLattice(this.project.getMetaclasses());
+			}
+			RhapsodyKindLattice current = this.lattice;
+			if (!current.contains(kind)) {
+				current = extendLattice(List.of(kind));
+			}
+			Set<String> subKinds = current.subKindsOf(kind);
+			if (this.project.isLoadOnDemand()) {
+				return this.project.getContents().stream()
+						.filter(e -> subKinds.contains(e.getMetaClass()))
+						.collect(Collectors.toList());
+			}
+			List<RhapsodyFileElement> result = new ArrayList<>();
+			for (String subKind : subKinds) {
+				result.addAll(this.project.ofMetaclass(subKind));
+			}
+			return result;
+		} else if (isNewTerm(kind)) {
+			return this.project.ofNewTerm(kind);
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), kind);
+	}
+
+	@Override
+	protected RhapsodyFileElement createInstanceInModel(String type)
+			throws EolModelElementTypeNotFoundException, EolNotInstantiableModelElementTypeException {
+		if (!hasType(type)) {
+			throw new EolModelElementTypeNotFoundException(getName(), type);
+		}
+		throw new EolNotInstantiableModelElementTypeException(getName(), type);
+	}
+
+	@Override
+	protected boolean deleteElementInModel(Object instance) throws EolRuntimeException {
+		throw new EolRuntimeException("Rhapsody file models are read only, elements can't be deleted");
+	}
+
+	@Override
+	protected void loadModel() throws EolModelLoadingException {
+		if (this.projectFile == null) {
+			LOG.error("No path to the Rhapsody project provided");
+			throw new EolModelLoadingException(new IllegalArgumentException("No path to the Rhapsody project provided"), this);
+		}
+		if (!Files.isRegularFile(this.projectFile)) {
+			LOG.error("The Rhapsody project {} does not exist", this.projectFile);
+			throw new EolModelLoadingException(new IllegalArgumentException("The Rhapsody project " + this.projectFile + " does not exist"), this);
+		}
+		ForkJoinPool pool = this.parseParallelism > 0 && !this.loadOnDemand
+				? new ForkJoinPool(this.parseParallelism)
+				: ForkJoinPool.commonPool();
+		try {
+			this.project = this.loadOnDemand
+					? RhapsodyFileProject.loadOnDemand(this.projectFile, this.newTerms)
+					: RhapsodyFileProject.load(this.projectFile, this.newTerms, pool);
+		} catch (IOException | XMLStreamException e) {
+			LOG.error("Unable to read the Rhapsody project {}", this.projectFile, e);
+			throw new EolModelLoadingException(e, this);
+		} finally {
+			if (pool != ForkJoinPool.commonPool()) {
+				pool.shutdown();
+			}
+		}
+		LOG.info("Loaded {}", this.project);
+		this.metaclasses = new HashSet<>(this.installedMetaclasses);
+		this.metaclasses.addAll(this.project.getMetaclasses());
+		this.lattice = new RhapsodyKindLattice(this.metaclasses);
+	}
+
+	@Override
+	protected void disposeModel() {
+		this.project = null;
+		this.lattice = null;
+	}
+
+	@Override
+	protected Object getCacheKeyForType(String type) throws EolModelElementTypeNotFoundException {
+		return type;
+	}
+
+	@Override
+	protected Collection<String> getAllTypeNamesOf(Object instance) {
+		Set<String> result = new HashSet<>();
+		if (instance instanceof RhapsodyFileElement) {
+			var element = (RhapsodyFileElement) instance;
+			result.add(element.getMetaClass());
+			result.add(element.getUserDefinedMetaClass());
+		}
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyFileModel.class);
+
+	private Path projectFile;
+	private Set<String> newTerms = Collections.emptySet();
+	private int parseParallelism;
+	private boolean loadOnDemand;
+	private Set<String> installedMetaclasses = Collections.emptySet();
+	private RhapsodyFileProject project;
+	/** The metaclasses of the lattice, only modified when the lattice is extended */
+	private Set<String> metaclasses;
+	/** Replaced when it is extended, so it is read without locking */
+	private volatile RhapsodyKindLattice lattice;
+
+	/**
+	 * A type is a metaclass if it is used in the project, listed in the Rhapsody installation,
+	 * or has an API interface.
+	 */
+	private boolean isMetaclass(String type) {
+		String name = RhapsodyKindLattice.canonical(type);
+		return this.lattice.contains(name) || RhapsodyKindLattice.interfaceName(name) != null;
+	}
+
+	private boolean isNewTerm(String type) {
+		return this.project.getNewTerms().contains(type);
+	}
+
+	/**
+	 * The lattice is created when the model is loaded, and only extended with the kinds that are
+	 * queried but not used in the project, and with the metaclasses of units loaded on demand
+	 * after the model was loaded.
+	 */
+	private synchronized RhapsodyKindLattice extendLattice(Collection<String> names) {
+		boolean added = false;
+		for (String name : names) {
+			added |= this.metaclasses.add(RhapsodyKindLattice.canonical(name));
+		}
+		if (added) {
+			this.lattice = new RhapsodyKindLattice(this.metaclasses);
+		}
+		return this.lattice;
+	}
+
+	private static RhapsodyFileElement element(Object instance) {
+		if (instance instanceof RhapsodyFileElement) {
+			return (RhapsodyFileElement) instance;
+		}
+		LOG.error("The instance is not a RhapsodyFileElement: {}", instance);
+		throw new IllegalArgumentException("Instance is not a model element");
+	}
+
+	/**
+	 * Read the metaclass names from the <code>metaclasses.txt</code> of the installation.
+	 */
+	private Set<String> installedMetaclasses(Path installation) throws EolModelLoadingException {
+		try {
+			List<String> lines = Files.readAllLines(installation.resolve("Doc/metaclasses.txt"));
+			if (lines.isEmpty()) {
+				return Collections.emptySet();
+			}
+			return Arrays.stream(lines.get(0).split(","))
+					.map(RhapsodyKindLattice::canonical)
+					.collect(Collectors.toSet());
+		} catch (IOException e) {
+			LOG.error("Unable to read the metaclasses file at given path: {}", installation);
+			throw new EolModelLoadingException(e, this);
+		}
+	}
+
+}
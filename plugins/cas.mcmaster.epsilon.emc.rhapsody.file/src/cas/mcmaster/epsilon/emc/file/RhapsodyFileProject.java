@@ -0,0 +1,982 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The elements of a Rhapsody project, read from its unit files. Loading has two phases:
+ * <ol>
+ * 	<li> Parse: the project file (<code>.rpyx</code>) is parsed, and then the units it references
+ * 		 (and the units they reference), see {@link RhapsodyUnitParser}. Units are found in the
+ * 		 <code>&lt;project&gt;_rpy</code> folder. Units outside the project (e.g. profiles in the
+ * 		 Rhapsody installation, <code>$OMROOT</code>) are not read. Units are independent files,
+ * 		 so they are parsed in parallel on a {@link ForkJoinPool}: each unit is a task that forks
+ * 		 a task for each unit it references.
+ * 	<li> Link: single threaded. The units are ordered as if they were parsed breadth first from
+ * 		 the project file, so the result does not depend on the parse order. Then the elements of
+ * 		 all units are indexed by GUID, and linked: containment (from the
+ * 		 <code>AggregatesList</code> of each element), stereotypes and new terms. Elements that
+ * 		 are not aggregated by any element are nested in the root of their unit. Finally, the
+ * 		 elements are indexed by metaclass and new term.
+ * </ol>
+ * References to elements that are not in the project are resolved to external elements, see
+ * {@link RhapsodyFileElement#getIsExternal()}.
+ * <p>
+ * Projects can also be loaded on demand ({@link #loadOnDemand}), like Rhapsody does, so only the
+ * units used by a script are read. See {@link #loadOnDemand} for the differences.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyFileProject {
+
+	/**
+	 * Load the project, parsing the units in the common pool.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms
+	 * @return the project
+	 * @throws IOException if a unit can't be read
+	 * @throws XMLStreamException if a unit is not well formed
+	 */
+	public static RhapsodyFileProject load(Path projectFile, Collection<String> newTerms) throws IOException, XMLStreamException {
+		return load(projectFile, newTerms, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Load the project, parsing the units in the given pool.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms
+	 * @param pool the pool used to parse the units
+	 * @return the project
+	 * @throws IOException if a unit can't be read
+	 * @throws XMLStreamException if a unit is not well formed
+	 */
+	public static RhapsodyFileProject load(Path projectFile, Collection<String> newTerms, ForkJoinPool pool) throws IOException, XMLStreamException {
+		var result = new RhapsodyFileProject(projectFile, newTerms);
+		result.link(result.parseUnits(pool));
+		return result;
+	}
+
+	/**
+	 * Load the project on demand. Only the project file is read; each unit is read when it is
+	 * first needed:
+	 * <ul>
+	 * 	<li> The nested elements of an element that aggregates the root of a unit are read
+	 * 		 (see {@link RhapsodyFileElement#getNestedElements()}).
+	 * 	<li> A reference is resolved to an element of the unit. References to other units name the
+	 * 		 unit (the <code>_hsubsystem</code> or <code>_hfilename</code> of the handle).
+	 * 	<li> An element is looked up by GUID. The GUIDs of the read units are mapped to their
+	 * 		 unit; if the GUID is not mapped, units are read until the element is found.
+	 * </ul>
+	 * Reading a unit reads the references to its nested units, but not the units. Operations on
+	 * all the elements (e.g. {@link #getContents()}, {@link #ofMetaclass(String)},
+	 * {@link #getNewTerms()}) read all units. The results of these operations are not kept, so
+	 * units can be evicted.
+	 * <p>
+	 * Units are evicted when memory is low, if none of their elements are in use, and read again
+	 * when needed. Units are read and linked one at a time.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms
+	 * @return the project
+	 * @throws IOException if the project file can't be read
+	 * @throws XMLStreamException if the project file is not well formed
+	 */
+	public static RhapsodyFileProject loadOnDemand(Path projectFile, Collection<String> newTerms) throws IOException, XMLStreamException {
+		var result = new RhapsodyFileProject(projectFile, newTerms);
+		result.loadOnDemand = true;
+		result.parser = new RhapsodyUnitParser();
+		result.projectUnit = new RhapsodyFileUnit(null, result.projectFile.getFileName().toString(), result.projectFile);
+		try {
+			Map<String, RhapsodyFileElement> elements = result.elementsOf(result.projectUnit);
+			result.project = elements.isEmpty() ? null : elements.values().iterator().next();
+		} catch (RuntimeException e) {
+			rethrowParseFailure(e);
+			throw e;
+		}
+		if (result.project == null) {
+			LOG.warn("The project file {} has no elements", result.projectFile);
+		}
+		return result;
+	}
+
+	/**
+	 * Load some units of a project, e.g. the units that changed since a store of the project was
+	 * built (see {@link RhapsodyElementStore#refresh}). Units referenced by the loaded units that
+	 * are not known are loaded too, as they are new. Each unit is linked on its own, as when
+	 * loaded on demand: the roots of other units are not nested in the elements that aggregate
+	 * them. References to elements that are not in the loaded units are resolved by the outside
+	 * function (the elements it finds are linked to the project, so their references are
+	 * resolved too), or to external elements if it does not find them.
+	 * <p>
+	 * The project has no contents: the elements are found from the roots of the loaded units,
+	 * see {@link #getUnitRoot(Path)}. The project element is only known if the project file is
+	 * one of the units.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms
+	 * @param units the unit files to load
+	 * @param known true for the unit files that are known, i.e. are not new
+	 * @param outside finds the elements of other units, returns null if not found
+	 * @param pool the pool used to parse the units
+	 * @return the project
+	 * @throws IOException if a unit can't be read
+	 * @throws XMLStreamException if a unit is not well formed
+	 */
+	static RhapsodyFileProject loadUnits(
+			Path projectFile,
+			Collection<String> newTerms,
+			Collection<Path> units,
+			Predicate<Path> known,
+			Function<RhapsodyHandle, RhapsodyFileElement> outside,
+			ForkJoinPool pool) throws IOException, XMLStreamException {
+		var result = new RhapsodyFileProject(projectFile, newTerms);
+		result.outside = outside;
+		// The units are parsed in parallel, and then linked one at a time
+		Map<Path, Unit> parsed = new ConcurrentHashMap<>();
+		Set<Path> claimed = ConcurrentHashMap.newKeySet();
+		claimed.addAll(units);
+		Predicate<Path> claim = p -> !known.test(p) && claimed.add(p);
+		var parsers = ThreadLocal.withInitial(RhapsodyUnitParser::new);
+		List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+		for (Path unit : units) {
+			tasks.add(pool.submit(result.new ParseUnit(unit, parsed, claim, parsers)));
+		}
+		try {
+			tasks.forEach(ForkJoinTask::join);
+		} catch (RuntimeException e) {
+			rethrowParseFailure(e);
+			throw e;
+		}
+		Set<Path> visited = new HashSet<>();
+		Deque<Path> pending = new ArrayDeque<>(units);
+		while (!pending.isEmpty()) {
+			Path path = pending.poll();
+			if (!visited.add(path)) {
+				continue;
+			}
+			Unit unit = parsed.get(path);
+			RhapsodyFileElement root = result.linkUnit(unit.elements);
+			if (root != null) {
+				result.unitRoots.put(path, root);
+			}
+			if (path.equals(result.projectFile)) {
+				result.project = root;
+			}
+			result.unitStamps.put(path, unit.stamp);
+			for (Path reference : unit.references) {
+				if (parsed.containsKey(reference)) {
+					pending.add(reference);
+				}
+			}
+		}
+		result.unitCount = result.unitStamps.size();
+		result.linkStereotypes(result.elements.values());
+		LOG.info("Loaded {} units, {} elements", result.unitCount, result.elements.size());
+		return result;
+	}
+
+	/**
+	 * @return true, if the units of the project are loaded on demand
+	 */
+	public boolean isLoadOnDemand() {
+		return this.loadOnDemand;
+	}
+
+	/**
+	 * @return the number of units known: all units if the project is not loaded on demand,
+	 * 	otherwise the units referenced by the units read so far, and the project file
+	 */
+	public int getUnitCount() {
+		return this.loadOnDemand ? this.units.size() + 1 : this.unitCount;
+	}
+
+	/**
+	 * @return the number of units loaded, including the project file
+	 */
+	public synchronized int getLoadedUnitCount() {
+		if (!this.loadOnDemand) {
+			return this.unitCount;
+		}
+		return 1 + (int) this.units.values().stream().filter(RhapsodyFileUnit::isLoaded).count();
+	}
+
+	/**
+	 * Unload all the units of a project loaded on demand, except the project file. Elements that
+	 * are in use remain valid, but are not the same objects that are read after unloading. Does
+	 * nothing if the project is not loaded on demand.
+	 */
+	public synchronized void unloadUnits() {
+		this.units.values().forEach(RhapsodyFileUnit::unload);
+	}
+
+	/**
+	 * @param element the element
+	 * @return true, if the element is a (not external) element of this project
+	 */
+	public boolean contains(RhapsodyFileElement element) {
+		if (element.getIsExternal() == 1) {
+			return false;
+		}
+		if (!this.loadOnDemand) {
+			return this.elements.get(element.getGUID()) == element;
+		}
+		Map<String, RhapsodyFileElement> unit = element.getUnit();
+		return unit != null && unit.get(element.getGUID()) == element && element.getProject() == this.project;
+	}
+
+	/**
+	 * @return the project element
+	 */
+	public RhapsodyFileElement getProject() {
+		return this.project;
+	}
+
+	public Path getProjectFile() {
+		return this.projectFile;
+	}
+
+	/**
+	 * @return the stamp of each unit file read, in breadth first order from the project file.
+	 * 	Empty if the project is loaded on demand.
+	 */
+	Map<Path, RhapsodyUnitStamp> getUnitStamps() {
+		return Collections.unmodifiableMap(this.unitStamps);
+	}
+
+	/**
+	 * @param unit the unit file
+	 * @return the root element of the unit, or null if the unit was not read or has no elements
+	 */
+	RhapsodyFileElement getUnitRoot(Path unit) {
+		return this.unitRoots.get(unit);
+	}
+
+	/**
+	 * @return the project and all its nested elements, depth first
+	 */
+	public List<RhapsodyFileElement> getContents() {
+		if (this.loadOnDemand) {
+			return this.project == null ? Collections.emptyList() : this.project.getNestedElementsRecursive();
+		}
+		return this.contents;
+	}
+
+	/**
+	 * Find an element of the project by GUID.
+	 *
+	 * @param guid the GUID, e.g. <code>GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba</code>
+	 * @return the element, or null if there is no element with the GUID
+	 */
+	public RhapsodyFileElement getElement(String guid) {
+		if (!this.loadOnDemand) {
+			return this.elements.get(guid);
+		}
+		RhapsodyFileElement result = loadedElement(guid);
+		if (result == null) {
+			result = unitRoot(guid);
+		}
+		if (result == null) {
+			result = search(guid);
+		}
+		return result;
+	}
+
+	/**
+	 * Find the first element with the given name and metaclass.
+	 *
+	 * @param name the name of the element
+	 * @param metaclass the metaclass of the element
+	 * @return the element, or null if not found
+	 */
+	public RhapsodyFileElement find(String name, String metaclass) {
+		for (RhapsodyFileElement element : ofMetaclass(metaclass)) {
+			if (element.getName().equals(name)) {
+				return element;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolve a handle to the element it references. Elements that are not in the project are
+	 * resolved to external elements.
+	 *
+	 * @param handle the handle
+	 * @return the element
+	 */
+	public RhapsodyFileElement resolve(RhapsodyHandle handle) {
+		RhapsodyFileElement result = this.loadOnDemand ? resolveOnDemand(handle) : this.elements.get(handle.getGUID());
+		if (result == null && this.outside != null) {
+			result = this.outside.apply(handle);
+			if (result != null) {
+				result.setProject(this);
+			}
+		}
+		if (result != null) {
+			return result;
+		}
+		return this.externals.computeIfAbsent(
+				handle.getGUID(),
+				g -> RhapsodyFileElement.external(handle, RhapsodyUnitParser.metaclassOf(handle.getM2Class()), this));
+	}
+
+	/**
+	 * @param metaclass the metaclass name
+	 * @return the elements of the metaclass (not including sub-metaclasses), in contents order
+	 */
+	public List<RhapsodyFileElement> ofMetaclass(String metaclass) {
+		if (this.loadOnDemand) {
+			return getContents().stream()
+					.filter(e -> e.getMetaClass().equals(metaclass))
+					.collect(Collectors.toList());
+		}
+		return this.byMetaclass.getOrDefault(metaclass, Collections.emptyList());
+	}
+
+	/**
+	 * @param newTerm the new term stereotype name
+	 * @return the elements of the new term, in contents order
+	 */
+	public List<RhapsodyFileElement> ofNewTerm(String newTerm) {
+		if (this.loadOnDemand) {
+			return getContents().stream()
+					.filter(e -> e.getNewTermStereotype() != null && e.getNewTermStereotype().getName().equals(newTerm))
+					.collect(Collectors.toList());
+		}
+		return this.byNewTerm.getOrDefault(newTerm, Collections.emptyList());
+	}
+
+	/**
+	 * @return the metaclasses of the project elements. If the project is loaded on demand, the
+	 * 	metaclasses of the elements of the loaded units.
+	 */
+	public synchronized Set<String> getMetaclasses() {
+		if (this.loadOnDemand) {
+			Set<String> result = new HashSet<>();
+			loadedElements().forEach(e -> result.add(e.getMetaClass()));
+			return result;
+		}
+		return Collections.unmodifiableSet(this.byMetaclass.keySet());
+	}
+
+	/**
+	 * @return the names of the new term stereotypes: the project stereotypes marked as new terms
+	 * 	and the names given when the project was loaded
+	 */
+	public Set<String> getNewTerms() {
+		if (this.loadOnDemand) {
+			Set<String> result = new HashSet<>(this.externalNewTerms);
+			for (RhapsodyFileElement element : getContents()) {
+				if (isNewTerm(element)) {
+					result.add(element.getName());
+				}
+			}
+			return result;
+		}
+		return Collections.unmodifiableSet(this.newTermNames);
+	}
+
+	/**
+	 * @param stereotype the stereotype
+	 * @return true, if the stereotype is a new term
+	 */
+	public boolean isNewTerm(RhapsodyFileElement stereotype) {
+		if (!STEREOTYPE.equals(stereotype.getMetaClass())) {
+			return false;
+		}
+		return this.externalNewTerms.contains(stereotype.getName())
+				|| (stereotype.getIsExternal() == 0
+					&& NEW_TERM_VALUE.equals(stereotype.getField(RhapsodyFileElement.NEW_TERM)));
+	}
+
+	@Override
+	public String toString() {
+		if (this.loadOnDemand) {
+			return "RhapsodyFileProject [" + this.projectFile + ", " + getLoadedUnitCount() + " of " + getUnitCount() + " units loaded]";
+		}
+		return "RhapsodyFileProject [" + this.projectFile + ", " + this.elements.size() + " elements]";
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyFileProject.class);
+	private static final String STEREOTYPE = "Stereotype";
+	private static final String NEW_TERM_VALUE = "1";
+	private static final String INSTALLATION_ROOT = "$OMROOT";
+	private static final String UNITS_SUFFIX = "_rpy";
+	// The extension of the unit files, by file class
+	private static final Map<String, String> EXTENSIONS = Map.of(
+			"ISubsystem", "sbsx",
+			"IProfile", "sbsx",
+			"IComponent", "cmpx",
+			"IClass", "clsx");
+	private static final Set<String> UNIT_EXTENSIONS = Set.of("sbsx", "cmpx", "clsx", "ctdx", "msdx", "omdx", "stdx", "ucdx", "cmdx", "dpdx", "ctd");
+
+	private final Path projectFile;
+	private final Path unitsDirectory;
+	private final Set<String> externalNewTerms;
+	private final Map<String, RhapsodyFileElement> elements = new LinkedHashMap<>();
+	private final Map<String, RhapsodyFileElement> externals = new ConcurrentHashMap<>();
+	private final Map<String, List<RhapsodyFileElement>> byMetaclass = new HashMap<>();
+	private final Map<String, List<RhapsodyFileElement>> byNewTerm = new HashMap<>();
+	private final Set<String> newTermNames = new HashSet<>();
+	private RhapsodyFileElement project;
+	private List<RhapsodyFileElement> contents = Collections.emptyList();
+	private int unitCount;
+	private boolean loadOnDemand;
+	// Not loaded on demand: the stamp and root of each unit file, in breadth first order
+	private final Map<Path, RhapsodyUnitStamp> unitStamps = new LinkedHashMap<>();
+	private final Map<Path, RhapsodyFileElement> unitRoots = new HashMap<>();
+	// Loaded units: finds the elements of the other units
+	private Function<RhapsodyHandle, RhapsodyFileElement> outside;
+	// Loaded on demand: the units by the GUID of their root and by name, and the unit of each element read
+	private RhapsodyUnitParser parser;
+	private RhapsodyFileUnit projectUnit;
+	private final Map<String, RhapsodyFileUnit> units = new LinkedHashMap<>();
+	private final Map<String, RhapsodyFileUnit> unitsByName = new HashMap<>();
+	private final Map<String, RhapsodyFileUnit> unitOfElement = new HashMap<>();
+	private final Deque<RhapsodyFileUnit> unread = new ArrayDeque<>();
+
+	private RhapsodyFileProject(Path projectFile, Collection<String> newTerms) {
+		this.projectFile = projectFile.toAbsolutePath();
+		String fileName = this.projectFile.getFileName().toString();
+		int dot = fileName.lastIndexOf('.');
+		String baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+		this.unitsDirectory = this.projectFile.resolveSibling(baseName + UNITS_SUFFIX);
+		this.externalNewTerms = new HashSet<>(newTerms);
+	}
+
+	/**
+	 * A parsed unit, its stamp, and the paths of the units it references, in file order.
+	 */
+	private static class Unit {
+
+		private final List<RhapsodyFileElement> elements;
+		private final RhapsodyUnitStamp stamp;
+		private final List<Path> references;
+
+		private Unit(List<RhapsodyFileElement> elements, RhapsodyUnitStamp stamp, List<Path> references) {
+			this.elements = elements;
+			this.stamp = stamp;
+			this.references = references;
+		}
+
+	}
+
+	/**
+	 * Parse a unit, and fork the parsing of the units it references that it claims (i.e. that
+	 * have not been claimed by other tasks). Each worker thread uses its own parser.
+	 */
+	private class ParseUnit extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+		private final Map<Path, Unit> parsed;
+		private final Predicate<Path> claim;
+		private final ThreadLocal<RhapsodyUnitParser> parsers;
+
+		private ParseUnit(Path path, Map<Path, Unit> parsed, Predicate<Path> claim, ThreadLocal<RhapsodyUnitParser> parsers) {
+			this.path = path;
+			this.parsed = parsed;
+			this.claim = claim;
+			this.parsers = parsers;
+		}
+
+		@Override
+		protected void compute() {
+			List<RhapsodyFileElement> elements;
+			RhapsodyUnitStamp stamp;
+			List<Path> references = new ArrayList<>();
+			try {
+				// The file is read once, to parse and stamp it
+				FileTime modified = Files.getLastModifiedTime(this.path);
+				byte[] contents = Files.readAllBytes(this.path);
+				stamp = RhapsodyUnitStamp.of(modified, contents);
+				elements = this.parsers.get().parse(new ByteArrayInputStream(contents));
+				for (RhapsodyFileElement element : elements) {
+					if (element.isUnitReference()) {
+						unitPath(element).ifPresent(references::add);
+					}
+				}
+			} catch (IOException | XMLStreamException e) {
+				throw new CompletionException(e);
+			}
+			this.parsed.put(this.path, new Unit(elements, stamp, references));
+			List<ParseUnit> forked = new ArrayList<>();
+			for (Path reference : references) {
+				if (this.claim.test(reference)) {
+					forked.add(new ParseUnit(reference, this.parsed, this.claim, this.parsers));
+				}
+			}
+			invokeAll(forked);
+		}
+
+	}
+
+	/**
+	 * Parse the project file and all the units it references, directly or via other units.
+	 *
+	 * @param pool the pool used to parse the units
+	 * @return the elements of each unit, in breadth first order from the project unit
+	 */
+	private List<List<RhapsodyFileElement>> parseUnits(ForkJoinPool pool) throws IOException, XMLStreamException {
+		Map<Path, Unit> parsed = new ConcurrentHashMap<>();
+		Set<Path> claimed = ConcurrentHashMap.newKeySet();
+		claimed.add(this.projectFile);
+		long start = System.nanoTime();
+		try {
+			pool.invoke(new ParseUnit(this.projectFile, parsed, claimed::add, ThreadLocal.withInitial(RhapsodyUnitParser::new)));
+		} catch (RuntimeException e) {
+			rethrowParseFailure(e);
+			throw e;
+		}
+		List<List<RhapsodyFileElement>> result = new ArrayList<>();
+		Set<Path> visited = new HashSet<>();
+		Deque<Path> pending = new ArrayDeque<>();
+		pending.add(this.projectFile);
+		while (!pending.isEmpty()) {
+			Path path = pending.poll();
+			if (!visited.add(path)) {
+				continue;
+			}
+			Unit unit = parsed.get(path);
+			result.add(unit.elements);
+			this.unitStamps.put(path, unit.stamp);
+			pending.addAll(unit.references);
+		}
+		this.unitCount = result.size();
+		LOG.info("Parsed {} units in {} ms, parallelism {}", result.size(), (System.nanoTime() - start) / 1_000_000, pool.getParallelism());
+		return result;
+	}
+
+	/**
+	 * Rethrow the IO or XML exception that made reading a unit fail. The pool can wrap the
+	 * exception thrown by a parse task, so the cause chain is searched.
+	 *
+	 * @param failure the exception thrown by the pool
+	 */
+	private static void rethrowParseFailure(RuntimeException failure) throws IOException, XMLStreamException {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof XMLStreamException) {
+				throw (XMLStreamException) cause;
+			}
+		}
+	}
+
+	/**
+	 * Find the file of a referenced unit.
+	 *
+	 * @param reference the unit reference
+	 * @return the path of the unit file, empty if the unit is outside the project or not found
+	 */
+	private Optional<Path> unitPath(RhapsodyFileElement reference) throws IOException {
+		String fileName = (String) reference.getField(RhapsodyFileElement.FILE_NAME);
+		Path directory = this.unitsDirectory;
+		Object persistAs = reference.getField(RhapsodyFileElement.PERSIST_AS);
+		if (persistAs != null) {
+			String location = persistAs.toString();
+			if (location.startsWith(INSTALLATION_ROOT)) {
+				LOG.info("Unit {} is outside the project ({}), it will not be read", fileName, location);
+				return Optional.empty();
+			}
+			directory = this.projectFile.resolveSibling(location.replace('\\', '/'));
+		}
+		String extension = EXTENSIONS.get(reference.getFileClass());
+		if (extension != null) {
+			Path candidate = directory.resolve(fileName + "." + extension);
+			if (Files.isRegularFile(candidate)) {
+				return Optional.of(candidate);
+			}
+		}
+		if (Files.isDirectory(directory)) {
+			try (Stream<Path> files = Files.list(directory)) {
+				Optional<Path> found = files
+						.filter(f -> isUnitFile(f, fileName))
+						.findFirst();
+				if (found.isPresent()) {
+					return found;
+				}
+			}
+		}
+		LOG.warn("The file for unit {} was not found in {}", fileName, directory);
+		return Optional.empty();
+	}
+
+	private static boolean isUnitFile(Path file, String unitName) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot > 0
+				&& name.substring(0, dot).equals(unitName)
+				&& UNIT_EXTENSIONS.contains(name.substring(dot + 1));
+	}
+
+	/**
+	 * Link the elements of all the units and index them.
+	 *
+	 * @param units the elements of each unit, the project unit first
+	 */
+	private void link(List<List<RhapsodyFileElement>> units) {
+		for (List<RhapsodyFileElement> unit : units) {
+			for (RhapsodyFileElement element : unit) {
+				if (element.isUnitReference() || element.getGUID() == null) {
+					continue;
+				}
+				element.setProject(this);
+				if (this.elements.putIfAbsent(element.getGUID(), element) != null) {
+					LOG.warn("Duplicate element {}, only the first one is used", element.getGUID());
+				}
+			}
+		}
+		this.project = units.isEmpty() || units.get(0).isEmpty() ? null : units.get(0).get(0);
+		if (this.project == null) {
+			LOG.warn("The project file {} has no elements", this.projectFile);
+			return;
+		}
+		// Containment
+		for (RhapsodyFileElement element : this.elements.values()) {
+			for (String guid : element.getAggregates()) {
+				RhapsodyFileElement child = this.elements.get(guid);
+				if (child != null && child != element && child != this.project && child.getOwner() == null) {
+					element.addNested(child);
+				}
+			}
+		}
+		List<Path> files = new ArrayList<>(this.unitStamps.keySet());
+		for (int i = 0; i < units.size(); i++) {
+			List<RhapsodyFileElement> unit = units.get(i);
+			RhapsodyFileElement root = unit.stream()
+					.filter(e -> this.elements.get(e.getGUID()) == e)
+					.findFirst()
+					.orElse(null);
+			if (root != null) {
+				this.unitRoots.put(files.get(i), root);
+			}
+			for (RhapsodyFileElement element : unit) {
+				if (element != root && element != this.project && element.getOwner() == null
+						&& this.elements.get(element.getGUID()) == element) {
+					root.addNested(element);
+				}
+			}
+		}
+		linkStereotypes(this.elements.values());
+		index();
+		LOG.info("Linked {} elements, {} in the project contents", this.elements.size(), this.contents.size());
+	}
+
+	/**
+	 * Loaded units: index the elements of a unit by GUID and link their containment, as in
+	 * {@link #elementsOf(RhapsodyFileUnit)}.
+	 *
+	 * @return the root of the unit, or null if it has no elements
+	 */
+	private RhapsodyFileElement linkUnit(List<RhapsodyFileElement> parsed) {
+		Map<String, RhapsodyFileElement> unit = new LinkedHashMap<>();
+		for (RhapsodyFileElement element : parsed) {
+			if (element.isUnitReference() || element.getGUID() == null) {
+				continue;
+			}
+			element.setProject(this);
+			if (this.elements.putIfAbsent(element.getGUID(), element) != null) {
+				LOG.warn("Duplicate element {}, only the first one is used", element.getGUID());
+			} else {
+				unit.put(element.getGUID(), element);
+			}
+		}
+		RhapsodyFileElement root = unit.isEmpty() ? null : unit.values().iterator().next();
+		for (RhapsodyFileElement element : unit.values()) {
+			for (String guid : element.getAggregates()) {
+				RhapsodyFileElement child = unit.get(guid);
+				if (child != null && child != element && child != root && child.getOwner() == null) {
+					element.addNested(child);
+				}
+			}
+		}
+		for (RhapsodyFileElement element : unit.values()) {
+			if (element != root && element.getOwner() == null) {
+				root.addNested(element);
+			}
+		}
+		return root;
+	}
+
+	private void linkStereotypes(Collection<RhapsodyFileElement> elements) {
+		for (RhapsodyFileElement element : elements) {
+			for (Object value : element.getFieldValues(RhapsodyFileElement.STEREOTYPES)) {
+				if (value instanceof RhapsodyHandle) {
+					RhapsodyFileElement stereotype = resolve((RhapsodyHandle) value);
+					element.addStereotype(stereotype);
+					if (element.getNewTermStereotype() == null && isNewTerm(stereotype)) {
+						element.setNewTerm(stereotype);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loaded on demand: get the elements of a unit, reading the unit if it is not loaded. The
+	 * elements are linked as in {@link #link(List)}, but the roots of the nested units are not
+	 * nested in the elements that aggregate them, so the nested units can be evicted. Instead,
+	 * the owner of the nested unit is recorded.
+	 *
+	 * @param unit the unit
+	 * @return the elements of the unit by GUID, in file order
+	 */
+	private synchronized Map<String, RhapsodyFileElement> elementsOf(RhapsodyFileUnit unit) {
+		Map<String, RhapsodyFileElement> result = unit.getElements();
+		if (result != null) {
+			return result;
+		}
+		List<RhapsodyFileElement> parsed;
+		try {
+			parsed = this.parser.parse(unit.getPath());
+		} catch (IOException | XMLStreamException e) {
+			LOG.error("Unable to read the unit {}", unit.getPath(), e);
+			throw new IllegalStateException("Unable to read the unit " + unit.getPath(), e);
+		}
+		result = new LinkedHashMap<>();
+		List<RhapsodyFileElement> references = new ArrayList<>();
+		for (RhapsodyFileElement element : parsed) {
+			if (element.isUnitReference()) {
+				references.add(element);
+				continue;
+			}
+			if (element.getGUID() == null) {
+				continue;
+			}
+			element.setProject(this);
+			element.setUnit(result);
+			if (result.putIfAbsent(element.getGUID(), element) != null) {
+				LOG.warn("Duplicate element {}, only the first one is used", element.getGUID());
+			} else {
+				this.unitOfElement.putIfAbsent(element.getGUID(), unit);
+			}
+		}
+		// Register before linking, references back to this unit use the elements being linked
+		unit.setElements(result);
+		for (RhapsodyFileElement reference : references) {
+			if (this.units.containsKey(reference.getGUID())) {
+				continue;
+			}
+			Optional<Path> path;
+			try {
+				path = unitPath(reference);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read the unit " + unit.getPath(), e);
+			}
+			if (path.isPresent()) {
+				String fileName = (String) reference.getField(RhapsodyFileElement.FILE_NAME);
+				var nestedUnit = new RhapsodyFileUnit(reference.getGUID(), fileName, path.get());
+				this.units.put(nestedUnit.getGUID(), nestedUnit);
+				this.unitsByName.putIfAbsent(fileName, nestedUnit);
+				this.unread.add(nestedUnit);
+			}
+		}
+		RhapsodyFileElement root = result.isEmpty() ? null : result.values().iterator().next();
+		for (RhapsodyFileElement element : result.values()) {
+			for (String guid : element.getAggregates()) {
+				RhapsodyFileElement child = result.get(guid);
+				if (child != null) {
+					if (child != element && child != root && child.getOwner() == null) {
+						element.addNested(child);
+					}
+				} else {
+					RhapsodyFileUnit nestedUnit = this.units.get(guid);
+					if (nestedUnit != null && nestedUnit.getOwnerGUID() == null) {
+						nestedUnit.setOwnerGUID(element.getGUID());
+					}
+				}
+			}
+		}
+		for (RhapsodyFileElement element : result.values()) {
+			if (element != root && element.getOwner() == null) {
+				root.addNested(element);
+			}
+		}
+		linkStereotypes(result.values());
+		LOG.info("Loaded unit {}, {} elements", unit.getFileName(), result.size());
+		return result;
+	}
+
+	/**
+	 * Loaded on demand: find an element of a unit that has been read, reading the unit again if
+	 * it was evicted.
+	 */
+	private synchronized RhapsodyFileElement loadedElement(String guid) {
+		RhapsodyFileUnit unit = this.unitOfElement.get(guid);
+		return unit == null ? null : elementsOf(unit).get(guid);
+	}
+
+	/**
+	 * Loaded on demand: read units that have not been read, until the element is found.
+	 *
+	 * @return the element, or null if the element is not in any unit
+	 */
+	private synchronized RhapsodyFileElement search(String guid) {
+		RhapsodyFileUnit unit;
+		while ((unit = this.unread.poll()) != null) {
+			if (unit.isRead()) {
+				continue;
+			}
+			elementsOf(unit);
+			RhapsodyFileElement result = loadedElement(guid);
+			if (result != null) {
+				return result;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Loaded on demand: resolve a handle. Handles to elements in other units name the unit, by
+	 * package path (<code>_hsubsystem</code>) or file (<code>_hfilename</code>); the named units
+	 * are read.
+	 *
+	 * @return the element, or null if it is not in the project
+	 */
+	private synchronized RhapsodyFileElement resolveOnDemand(RhapsodyHandle handle) {
+		String guid = handle.getGUID();
+		RhapsodyFileElement result = loadedElement(guid);
+		if (result == null) {
+			result = unitRoot(guid);
+		}
+		if (result == null && readHintedUnits(handle)) {
+			result = loadedElement(guid);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true, if a unit named by the handle was found (and read)
+	 */
+	private boolean readHintedUnits(RhapsodyHandle handle) {
+		boolean result = false;
+		if (handle.getSubsystem() != null) {
+			// Nested units are known once their parent unit is read
+			for (String name : handle.getSubsystem().split("::")) {
+				RhapsodyFileUnit unit = this.unitsByName.get(name);
+				if (unit != null) {
+					elementsOf(unit);
+					result = true;
+				}
+			}
+		}
+		if (!result && handle.getFileName() != null) {
+			String fileName = Paths.get(handle.getFileName().replace('\\', '/')).getFileName().toString();
+			int dot = fileName.lastIndexOf('.');
+			RhapsodyFileUnit unit = this.unitsByName.get(dot > 0 ? fileName.substring(0, dot) : fileName);
+			if (unit != null) {
+				elementsOf(unit);
+				result = true;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Loaded on demand: the root of a unit.
+	 *
+	 * @param guid the GUID of the unit root
+	 * @return the root, or null if the GUID is not of a unit root
+	 */
+	synchronized RhapsodyFileElement unitRoot(String guid) {
+		if (!this.loadOnDemand) {
+			return null;
+		}
+		RhapsodyFileUnit unit = this.units.get(guid);
+		return unit == null ? null : elementsOf(unit).get(guid);
+	}
+
+	/**
+	 * Loaded on demand: the owner of a unit root, that is in another unit.
+	 *
+	 * @return the owner, or null if the element is not a unit root
+	 */
+	synchronized RhapsodyFileElement unitOwner(RhapsodyFileElement root) {
+		if (!this.loadOnDemand) {
+			return null;
+		}
+		RhapsodyFileUnit unit = this.units.get(root.getGUID());
+		if (unit == null || unit.getOwnerGUID() == null) {
+			return null;
+		}
+		return getElement(unit.getOwnerGUID());
+	}
+
+	/**
+	 * @return true, if the element aggregates the root of a unit loaded on demand
+	 */
+	synchronized boolean aggregatesUnit(RhapsodyFileElement element) {
+		return this.loadOnDemand && element.getAggregates().stream().anyMatch(this.units::containsKey);
+	}
+
+	private List<RhapsodyFileElement> loadedElements() {
+		List<RhapsodyFileElement> result = new ArrayList<>();
+		Stream.concat(Stream.of(this.projectUnit), this.units.values().stream())
+				.map(RhapsodyFileUnit::getElements)
+				.filter(Objects::nonNull)
+				.forEach(elements -> result.addAll(elements.values()));
+		return result;
+	}
+
+	private void index() {
+		this.contents = Collections.unmodifiableList(this.project.getNestedElementsRecursive());
+		this.newTermNames.addAll(this.externalNewTerms);
+		for (RhapsodyFileElement element : this.contents) {
+			this.byMetaclass.computeIfAbsent(element.getMetaClass(), k -> new ArrayList<>()).add(element);
+			RhapsodyFileElement newTerm = element.getNewTermStereotype();
+			if (newTerm != null) {
+				this.byNewTerm.computeIfAbsent(newTerm.getName(), k -> new ArrayList<>()).add(element);
+			}
+			if (isNewTerm(element)) {
+				this.newTermNames.add(element.getName());
+			}
+		}
+	}
+
+}
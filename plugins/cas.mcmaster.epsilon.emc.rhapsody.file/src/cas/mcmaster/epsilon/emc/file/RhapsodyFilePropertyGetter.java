@@ -0,0 +1,180 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.exceptions.EolIllegalPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
+
+import cas.mcmaster.epsilon.emc.RhapsodyAccessors;
+import cas.mcmaster.epsilon.emc.RhapsodyAccessors.Accessor;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Property getter for {@link RhapsodyFileElement}s. Follows the same resolution as
+ * {@link RhapsodyPropertyGetter}:
+ * <ol>
+ * 	<li> An accessor of the element (getX, isX, hasX), or a no arguments method named X.
+ * 	<li> A field of the file, named <code>_X</code>, <code>X</code> or <code>m_X</code>
+ * 		 (ignoring case), so file information not exposed by an accessor can also be used.
+ * 	<li> A stereotype tag named X. Literal values are cast to the tag type, and instance values
+ * 		 are resolved to the referenced elements.
+ * </ol>
+ * The elements are in memory, so values are not cached.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyFilePropertyGetter implements IPropertyGetter {
+
+	@Override
+	public boolean hasProperty(Object object, String property, IEolContext context) {
+		if (!(object instanceof RhapsodyFileElement)) {
+			return false;
+		}
+		var element = (RhapsodyFileElement) object;
+		return method(property) != null
+				|| field(element, property) != null
+				|| element.getTag(property) != null;
+	}
+
+	@Override
+	public Object invoke(Object target, String property, IEolContext context) throws EolRuntimeException {
+		if (!(target instanceof RhapsodyFileElement)) {
+			throw new IllegalArgumentException("Can't get property of none RhapsodyFileElement");
+		}
+		var element = (RhapsodyFileElement) target;
+		Method method = method(property);
+		if (method != null) {
+			try {
+				return method.invoke(element);
+			} catch (ReflectiveOperationException e) {
+				throw new EolInternalException(e);
+			}
+		}
+		String field = field(element, property);
+		if (field != null) {
+			return fieldValue(element, element.getField(field));
+		}
+		RhapsodyFileElement tag = element.getTag(property);
+		if (tag == null) {
+			LOG.error("Could not find a property or tag with name {}", property);
+			throw new EolIllegalPropertyException(
+					element,
+					property,
+					context == null ? null : context.getExecutorFactory().getActiveModuleElement(),
+					context);
+		}
+		return tagValue(tag);
+	}
+
+	/**
+	 * Get the value of a tag, as {@link RhapsodyPropertyGetter} does for the tags of Rhapsody
+	 * elements.
+	 *
+	 * @param tag the tag
+	 * @return the value of the tag value specifications, a list if the tag has more than one
+	 */
+	public static Object tagValue(RhapsodyFileElement tag) {
+		var result = new ArrayList<Object>();
+		for (RhapsodyFileElement valSpec : tag.getValueSpecifications()) {
+			Object value = valSpec.getValue();
+			if (value instanceof RhapsodyFileElement) {
+				result.add(value);
+			} else if (value != null) {
+				RhapsodyFileElement type = tag.getType();
+				result.add(RhapsodyPropertyGetter.literalValue(
+						value.toString(),
+						type == null ? "" : type.getName()));
+			}
+		}
+		if (result.isEmpty()) {
+			LOG.info("Tag does not have value specifications, returning value.");
+			return tag.getValue();
+		}
+		if (result.size() == 1) {
+			return result.get(0);
+		}
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyFilePropertyGetter.class);
+	private static final RhapsodyAccessors ACCESSORS = new RhapsodyAccessors();
+	private static final String[] FIELD_PREFIXES = {"_", "", "m_"};
+
+	/** The no arguments methods of the element, by lower case name */
+	private final Map<String, Method> methods = methods();
+
+	private Method method(String property) {
+		Accessor accessor = ACCESSORS.find(RhapsodyFileElement.class, property);
+		if (accessor != null) {
+			return accessor.method();
+		}
+		return this.methods.get(property.toLowerCase());
+	}
+
+	/**
+	 * @return the name of the field for the property, or null if the element has none
+	 */
+	private static String field(RhapsodyFileElement element, String property) {
+		for (String prefix : FIELD_PREFIXES) {
+			String name = prefix + property;
+			if (element.hasField(name)) {
+				return name;
+			}
+		}
+		for (String name : element.getFieldNames()) {
+			for (String prefix : FIELD_PREFIXES) {
+				if (name.equalsIgnoreCase(prefix + property)) {
+					return name;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static Object fieldValue(RhapsodyFileElement element, Object value) {
+		if (value instanceof RhapsodyHandle) {
+			return element.resolve((RhapsodyHandle) value);
+		}
+		if (value instanceof List) {
+			List<Object> result = new ArrayList<>();
+			for (Object item : (List<?>) value) {
+				result.add(fieldValue(element, item));
+			}
+			return result;
+		}
+		return value;
+	}
+
+	private static Map<String, Method> methods() {
+		Map<String, Method> result = new ConcurrentHashMap<>();
+		for (Method m : RhapsodyFileElement.class.getMethods()) {
+			if (m.getParameterCount() == 0
+					&& !Modifier.isStatic(m.getModifiers())
+					&& m.getDeclaringClass() == RhapsodyFileElement.class) {
+				result.putIfAbsent(m.getName().toLowerCase(), m);
+			}
+		}
+		return result;
+	}
+
+}
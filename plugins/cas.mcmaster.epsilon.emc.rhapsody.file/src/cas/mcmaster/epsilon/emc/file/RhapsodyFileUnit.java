@@ -0,0 +1,101 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A unit of a project loaded on demand, see {@link RhapsodyFileProject#loadOnDemand}. The unit
+ * is known from the reference in its parent unit; its elements are read when they are first
+ * needed.
+ * <p>
+ * The elements of a loaded unit are softly referenced, so the unit is evicted when memory is
+ * low. Each element references the elements of its unit, so a unit is only evicted if none of
+ * its elements are in use. An evicted unit is read again when needed.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class RhapsodyFileUnit {
+
+	RhapsodyFileUnit(String guid, String fileName, Path path) {
+		this.guid = guid;
+		this.fileName = fileName;
+		this.path = path;
+	}
+
+	/**
+	 * @return the GUID of the root element of the unit
+	 */
+	String getGUID() {
+		return this.guid;
+	}
+
+	String getFileName() {
+		return this.fileName;
+	}
+
+	Path getPath() {
+		return this.path;
+	}
+
+	/**
+	 * @return the GUID of the element that aggregates the root of the unit, null if not known
+	 */
+	String getOwnerGUID() {
+		return this.ownerGUID;
+	}
+
+	void setOwnerGUID(String ownerGUID) {
+		this.ownerGUID = ownerGUID;
+	}
+
+	/**
+	 * @return the elements of the unit by GUID, in file order; null if the unit is not loaded
+	 */
+	Map<String, RhapsodyFileElement> getElements() {
+		return this.elements == null ? null : this.elements.get();
+	}
+
+	void setElements(Map<String, RhapsodyFileElement> elements) {
+		this.elements = new SoftReference<>(elements);
+		this.read = true;
+	}
+
+	/**
+	 * @return true, if the unit has been read, even if it was evicted afterwards
+	 */
+	boolean isRead() {
+		return this.read;
+	}
+
+	boolean isLoaded() {
+		return getElements() != null;
+	}
+
+	void unload() {
+		this.elements = null;
+	}
+
+	@Override
+	public String toString() {
+		return "RhapsodyFileUnit [" + this.fileName + ", " + (isLoaded() ? "loaded" : "not loaded") + "]";
+	}
+
+	private final String guid;
+	private final String fileName;
+	private final Path path;
+	private String ownerGUID;
+	private SoftReference<Map<String, RhapsodyFileElement>> elements;
+	private boolean read;
+
+}
@@ -0,0 +1,74 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+/**
+ * A reference to an element, as stored in the unit files (<code>IHandle</code>,
+ * <code>ISubsystemHandle</code>, etc.). The referenced element can be in the same unit, in
+ * another unit of the project, or in a unit outside the project (e.g. a profile in the Rhapsody
+ * installation).
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyHandle {
+
+	public RhapsodyHandle(String m2Class, String name, String guid, String fileName, String subsystem) {
+		this.m2Class = m2Class;
+		this.name = name;
+		this.guid = guid;
+		this.fileName = fileName;
+		this.subsystem = subsystem;
+	}
+
+	/**
+	 * @return the file class of the referenced element, e.g. <code>IClass</code>
+	 */
+	public String getM2Class() {
+		return this.m2Class;
+	}
+
+	/**
+	 * @return the name of the referenced element, can be null
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	public String getGUID() {
+		return this.guid;
+	}
+
+	/**
+	 * @return the unit file of the referenced element, null if it is in the project
+	 */
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * @return the (<code>::</code> separated) package path of the referenced element, can be null
+	 */
+	public String getSubsystem() {
+		return this.subsystem;
+	}
+
+	@Override
+	public String toString() {
+		return this.m2Class + " " + this.name + " (" + this.guid + ")";
+	}
+
+	private final String m2Class;
+	private final String name;
+	private final String guid;
+	private final String fileName;
+	private final String subsystem;
+
+}
@@ -0,0 +1,449 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Binary snapshots of a {@link RhapsodyElementStore}. A snapshot is written once, after a
+ * project or a live model is loaded, and later opened read-only with
+ * {@link FileChannel#map}: the store reads its columns directly from the mapped file, so opening
+ * a snapshot does not depend on the size of the model and nothing is deserialised. Symbols are
+ * decoded when they are read, and found with a hash table stored in the snapshot.
+ * <p>
+ * The snapshot is a header followed by sections, in little endian order. Each section is the
+ * number of values, padded to 8 bytes, followed by the values:
+ * <ol>
+ * 	<li> Header: magic number, version, content size and number of attribute and tag columns.
+ * 	<li> The structure of the store: GUIDs, metaclasses, names, owners, subtree ends, new terms,
+ * 		 flags, stereotype offsets, stereotypes, GUID order, new term names and metaclass names.
+ * 	<li> Units: the file, root and stamp of each unit, see {@link RhapsodyStoreUnits}.
+ * 	<li> Symbols: the offset of each symbol, the UTF-8 bytes, and the hash table.
+ * 	<li> Columns: for each column, its name symbol and kind, then its rows, kinds, values, item
+ * 		 kinds and items (empty sections for the buffers the column does not have).
+ * </ol>
+ * A snapshot is mapped as a single buffer, so it can't be larger than 2GB.
+ * <p>
+ * Snapshots of projects read from files can be refreshed when the project changes, see
+ * {@link #refresh(Path, Path, Collection)}. While a snapshot is refreshed it is not mapped, so
+ * the refreshed snapshot can replace it.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodySnapshot {
+
+	/**
+	 * Write a snapshot of a store. The snapshot is written to a temporary file that then replaces
+	 * the target, so processes that have the previous snapshot open are not affected.
+	 *
+	 * @param store the store
+	 * @param file the snapshot file
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(RhapsodyElementStore store, Path file) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			Output out = new Output(channel);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(store.contentSize());
+			out.putInt(store.getAttributes().size());
+			out.putInt(store.getTags().size());
+			out.longs(store.getGuids());
+			out.ints(store.getMetaclassColumn());
+			out.ints(store.getNames());
+			out.ints(store.getOwners());
+			out.ints(store.getEnds());
+			out.ints(store.getNewTermColumn());
+			out.bytes(store.getFlags());
+			out.ints(store.getStereotypeOffsets());
+			out.ints(store.getStereotypeColumn());
+			out.ints(store.getGuidOrder());
+			out.ints(store.getNewTermNames());
+			out.ints(store.getMetaclassNames());
+			out.ints(store.getUnits().getFiles());
+			out.ints(store.getUnits().getRoots());
+			out.longs(store.getUnits().getStamps());
+			symbols(store.getSymbols(), out);
+			columns(store.getAttributes(), out);
+			columns(store.getTags(), out);
+			out.flush();
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporary);
+			throw e;
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Open a snapshot. The file is mapped read-only, and the returned store reads the mapped
+	 * buffers.
+	 *
+	 * @param file the snapshot file
+	 * @return the store
+	 * @throws IOException if the file can't be read, or is not a snapshot
+	 */
+	public static RhapsodyElementStore open(Path file) throws IOException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The snapshot " + file + " is larger than 2GB");
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return store(file, mapped);
+	}
+
+	/**
+	 * Refresh a snapshot of a project: the snapshot is read and refreshed (see
+	 * {@link RhapsodyElementStore#refresh}), and if any unit changed, the refreshed store is
+	 * written to the snapshot and opened again. If the snapshot does not exist, the project is
+	 * read and the snapshot is written.
+	 * <p>
+	 * The snapshot is read to memory instead of mapped, as a mapped file can't be replaced on
+	 * some platforms (e.g. Windows) while the mapping is alive.
+	 *
+	 * @param file the snapshot file
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms
+	 * @return the store of the refreshed snapshot
+	 * @throws IOException if the snapshot or a unit can't be read, or the snapshot can't be
+	 * 	written
+	 * @throws XMLStreamException if a unit is not well formed
+	 */
+	public static RhapsodyElementStore refresh(Path file, Path projectFile, Collection<String> newTerms) throws IOException, XMLStreamException {
+		return refresh(file, projectFile, newTerms, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Refresh a snapshot of a project, parsing the units in the given pool.
+	 *
+	 * @param file the snapshot file
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 * @param newTerms the names of external stereotypes that are new terms
+	 * @param pool the pool used to parse the units
+	 * @return the store of the refreshed snapshot
+	 * @throws IOException if the snapshot or a unit can't be read, or the snapshot can't be
+	 * 	written
+	 * @throws XMLStreamException if a unit is not well formed
+	 * @see #refresh(Path, Path, Collection)
+	 */
+	public static RhapsodyElementStore refresh(Path file, Path projectFile, Collection<String> newTerms, ForkJoinPool pool) throws IOException, XMLStreamException {
+		RhapsodyElementStore store = isSnapshot(file) ? read(file) : null;
+		RhapsodyElementStore refreshed = store == null
+				? RhapsodyElementStore.of(RhapsodyFileProject.load(projectFile, newTerms, pool))
+				: store.refresh(projectFile, newTerms, pool);
+		if (refreshed != store) {
+			write(refreshed, file);
+		}
+		return open(file);
+	}
+
+	/**
+	 * @param file the file
+	 * @return true, if the file exists and starts with the snapshot magic number and version
+	 */
+	public static boolean isSnapshot(Path file) {
+		if (!Files.isRegularFile(file)) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			channel.read(header, 0);
+			header.flip();
+			return header.remaining() == 8 && header.getInt() == MAGIC && header.getInt() == VERSION;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/** "RHSN" */
+	private static final int MAGIC = 0x4e534852;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 20;
+	/** Sections are aligned to 8 bytes, so the values of long sections are aligned */
+	private static final int ALIGNMENT = 8;
+
+	/**
+	 * Read a snapshot to heap buffers, so the file is not kept open.
+	 */
+	private static RhapsodyElementStore read(Path file) throws IOException {
+		if (Files.size(file) > Integer.MAX_VALUE) {
+			throw new IOException("The snapshot " + file + " is larger than 2GB");
+		}
+		return store(file, ByteBuffer.wrap(Files.readAllBytes(file)));
+	}
+
+	/**
+	 * Create the store of a snapshot, that reads the buffer.
+	 */
+	private static RhapsodyElementStore store(Path file, ByteBuffer buffer) throws IOException {
+		Input in = new Input(buffer.order(ByteOrder.LITTLE_ENDIAN));
+		if (buffer.limit() < HEADER_SIZE || in.getInt() != MAGIC) {
+			throw new IOException("The file " + file + " is not a Rhapsody snapshot");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IOException("The snapshot " + file + " has version " + version + ", expected " + VERSION);
+		}
+		int contentSize = in.getInt();
+		int attributeCount = in.getInt();
+		int tagCount = in.getInt();
+		LongBuffer guids = in.longs();
+		IntBuffer metaclasses = in.ints();
+		IntBuffer names = in.ints();
+		IntBuffer owners = in.ints();
+		IntBuffer ends = in.ints();
+		IntBuffer newTerms = in.ints();
+		ByteBuffer flags = in.bytes();
+		IntBuffer stereotypeOffsets = in.ints();
+		IntBuffer stereotypes = in.ints();
+		IntBuffer guidOrder = in.ints();
+		IntBuffer newTermNames = in.ints();
+		IntBuffer metaclassNames = in.ints();
+		RhapsodyStoreUnits units = new RhapsodyStoreUnits(in.ints(), in.ints(), in.longs());
+		RhapsodySymbols symbols = new RhapsodySymbols.Mapped(in.ints(), in.bytes(), in.ints());
+		Map<Integer, RhapsodyStoreColumn> attributes = columns(attributeCount, in);
+		Map<Integer, RhapsodyStoreColumn> tags = columns(tagCount, in);
+		return new RhapsodyElementStore(
+				symbols,
+				contentSize,
+				guids,
+				metaclasses,
+				names,
+				owners,
+				ends,
+				newTerms,
+				flags,
+				stereotypeOffsets,
+				stereotypes,
+				guidOrder,
+				newTermNames,
+				metaclassNames,
+				attributes,
+				tags,
+				units);
+	}
+
+	private static void symbols(RhapsodySymbols symbols, Output out) throws IOException {
+		int count = symbols.size();
+		byte[][] utf8 = new byte[count][];
+		IntBuffer offsets = IntBuffer.allocate(count + 1);
+		int length = 0;
+		for (int id = 0; id < count; id++) {
+			utf8[id] = symbols.get(id).getBytes(StandardCharsets.UTF_8);
+			offsets.put(length);
+			length += utf8[id].length;
+		}
+		offsets.put(length).flip();
+		out.ints(offsets);
+		out.section(length);
+		for (byte[] bytes : utf8) {
+			out.put(bytes);
+		}
+		int size = Integer.highestOneBit(Math.max(1, count) * 2) * 2;
+		int[] table = new int[size];
+		for (int id = 0; id < count; id++) {
+			int slot = RhapsodySymbols.hash(utf8[id]) & (size - 1);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (size - 1);
+			}
+			table[slot] = id + 1;
+		}
+		out.ints(IntBuffer.wrap(table));
+	}
+
+	private static void columns(Map<Integer, RhapsodyStoreColumn> columns, Output out) throws IOException {
+		for (Map.Entry<Integer, RhapsodyStoreColumn> entry : columns.entrySet()) {
+			RhapsodyStoreColumn column = entry.getValue();
+			out.putInt(entry.getKey());
+			out.putInt(column.getKind());
+			out.ints(column.getRows().duplicate());
+			out.bytes(column.getKinds() == null ? null : column.getKinds().duplicate());
+			out.ints(column.getValues().duplicate());
+			out.bytes(column.getItemKinds() == null ? null : column.getItemKinds().duplicate());
+			out.ints(column.getItems() == null ? null : column.getItems().duplicate());
+		}
+	}
+
+	private static Map<Integer, RhapsodyStoreColumn> columns(int count, Input in) {
+		Map<Integer, RhapsodyStoreColumn> result = new HashMap<>();
+		for (int i = 0; i < count; i++) {
+			int name = in.getInt();
+			byte kind = (byte) in.getInt();
+			IntBuffer rows = in.ints();
+			ByteBuffer kinds = in.bytes();
+			IntBuffer values = in.ints();
+			ByteBuffer itemKinds = in.bytes();
+			IntBuffer items = in.ints();
+			result.put(name, new RhapsodyStoreColumn(
+					kind,
+					rows,
+					kind == RhapsodyStoreColumn.NULL ? kinds : null,
+					values,
+					items.limit() == 0 ? null : itemKinds,
+					items.limit() == 0 ? null : items));
+		}
+		return result;
+	}
+
+	/**
+	 * Writes sections to a channel, through a little endian buffer.
+	 */
+	private static class Output {
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(Integer.BYTES);
+			this.buffer.putInt(value);
+			this.position += Integer.BYTES;
+		}
+
+		void put(byte[] bytes) throws IOException {
+			int offset = 0;
+			while (offset < bytes.length) {
+				ensure(1);
+				int length = Math.min(this.buffer.remaining(), bytes.length - offset);
+				this.buffer.put(bytes, offset, length);
+				offset += length;
+				this.position += length;
+			}
+		}
+
+		/**
+		 * Start a section: the number of values, and the padding to align the values.
+		 */
+		void section(int count) throws IOException {
+			putInt(count);
+			while (this.position % ALIGNMENT != 0) {
+				ensure(1);
+				this.buffer.put((byte) 0);
+				this.position++;
+			}
+		}
+
+		void longs(LongBuffer values) throws IOException {
+			int count = values.remaining();
+			section(count);
+			for (int i = 0; i < count; i++) {
+				ensure(Long.BYTES);
+				this.buffer.putLong(values.get());
+				this.position += Long.BYTES;
+			}
+		}
+
+		void ints(IntBuffer values) throws IOException {
+			int count = values == null ? 0 : values.remaining();
+			section(count);
+			for (int i = 0; i < count; i++) {
+				putInt(values.get());
+			}
+		}
+
+		void bytes(ByteBuffer values) throws IOException {
+			int count = values == null ? 0 : values.remaining();
+			section(count);
+			for (int i = 0; i < count; i++) {
+				ensure(1);
+				this.buffer.put(values.get());
+				this.position++;
+			}
+		}
+
+		void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		private long position;
+
+		private void ensure(int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+	}
+
+	/**
+	 * Reads sections from the mapped buffer, as views of the buffer.
+	 */
+	private static class Input {
+
+		Input(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		int getInt() {
+			return this.buffer.getInt();
+		}
+
+		LongBuffer longs() {
+			int count = section();
+			return slice(count * Long.BYTES).asLongBuffer();
+		}
+
+		IntBuffer ints() {
+			int count = section();
+			return slice(count * Integer.BYTES).asIntBuffer();
+		}
+
+		ByteBuffer bytes() {
+			int count = section();
+			return slice(count);
+		}
+
+		private final ByteBuffer buffer;
+
+		private int section() {
+			int count = this.buffer.getInt();
+			while (this.buffer.position() % ALIGNMENT != 0) {
+				this.buffer.get();
+			}
+			return count;
+		}
+
+		private ByteBuffer slice(int bytes) {
+			ByteBuffer result = this.buffer.slice(this.buffer.position(), bytes).order(ByteOrder.LITTLE_ENDIAN);
+			this.buffer.position(this.buffer.position() + bytes);
+			return result;
+		}
+
+	}
+
+}
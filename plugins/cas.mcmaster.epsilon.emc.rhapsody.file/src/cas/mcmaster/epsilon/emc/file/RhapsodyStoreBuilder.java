@@ -0,0 +1,485 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPStereotype;
+import com.telelogic.rhapsody.core.IRPTag;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyCollectionList;
+
+/**
+ * Copies the elements of a source to the columns of a {@link RhapsodyElementStore}. The contents
+ * get their index in depth first order, and the external elements they reference are indexed
+ * after them, as they are found. Subclasses read the elements of each kind of source:
+ * {@link FromProject} for projects read from files, and {@link FromModel} for live models.
+ *
+ * @param <E> the type of the source elements
+ * @author Horacio Hoyos Rodriguez
+ */
+abstract class RhapsodyStoreBuilder<E> {
+
+	RhapsodyElementStore build() {
+		List<E> contents = contents();
+		int contentSize = contents.size();
+		for (E element : contents) {
+			this.indices.put(key(element), this.elements.size());
+			this.elements.add(element);
+		}
+		Map<Integer, RhapsodyStoreColumn.Builder> attributeColumns = new HashMap<>();
+		Map<Integer, RhapsodyStoreColumn.Builder> tagColumns = new HashMap<>();
+		List<int[]> elementStereotypes = new ArrayList<>(contentSize);
+		int[] newTerms = new int[contentSize];
+		for (int i = 0; i < contentSize; i++) {
+			int index = i;
+			E element = contents.get(i);
+			elementStereotypes.add(stereotypes(element).stream().mapToInt(this::indexOf).toArray());
+			E newTerm = newTerm(element);
+			newTerms[i] = newTerm == null ? -1 : indexOf(newTerm);
+			attributes(element, (name, value) -> attributeColumns
+					.computeIfAbsent(this.symbols.intern(name), n -> new RhapsodyStoreColumn.Builder())
+					.addValue(index, value, this::valueIndex, this.symbols));
+			tags(element, (name, value) -> tagColumns
+					.computeIfAbsent(this.symbols.intern(name), n -> new RhapsodyStoreColumn.Builder())
+					.addValue(index, value, this::valueIndex, this.symbols));
+		}
+		int size = this.elements.size();
+		int[] allNewTerms = Arrays.copyOf(newTerms, size);
+		Arrays.fill(allNewTerms, contentSize, size, -1);
+		long[] guids = new long[2 * size];
+		int[] metaclasses = new int[size];
+		int[] names = new int[size];
+		int[] owners = new int[size];
+		int[] ends = new int[size];
+		byte[] flags = new byte[size];
+		int[] stereotypeOffsets = new int[size + 1];
+		int[] stereotypes = new int[elementStereotypes.stream().mapToInt(s -> s.length).sum()];
+		Set<Integer> metaclassNames = new LinkedHashSet<>();
+		for (int i = 0; i < size; i++) {
+			E element = this.elements.get(i);
+			UUID uuid = RhapsodyElementStore.uuid(guid(element));
+			if (uuid == null) {
+				throw new IllegalArgumentException("The element " + element + " does not have a valid GUID");
+			}
+			guids[2 * i] = uuid.getMostSignificantBits();
+			guids[2 * i + 1] = uuid.getLeastSignificantBits();
+			metaclasses[i] = this.symbols.intern(metaclass(element));
+			if (i < contentSize) {
+				metaclassNames.add(metaclasses[i]);
+			}
+			names[i] = this.symbols.intern(name(element));
+			E owner = i < contentSize && i > 0 ? owner(element) : null;
+			owners[i] = owner == null ? -1 : this.indices.getOrDefault(key(owner), -1);
+			ends[i] = i + 1;
+			flags[i] = (byte) ((isExternal(element) ? RhapsodyElementStore.EXTERNAL : 0)
+					| (isNewTerm(element) ? RhapsodyElementStore.NEW_TERM : 0));
+			int[] local = i < contentSize ? elementStereotypes.get(i) : new int[0];
+			System.arraycopy(local, 0, stereotypes, stereotypeOffsets[i], local.length);
+			stereotypeOffsets[i + 1] = stereotypeOffsets[i] + local.length;
+		}
+		// Contents are depth first, so each subtree ends where the last of its children ends
+		for (int i = contentSize - 1; i > 0; i--) {
+			if (owners[i] >= 0) {
+				ends[owners[i]] = Math.max(ends[owners[i]], ends[i]);
+			}
+		}
+		int[] guidOrder = IntStream.range(0, contentSize)
+				.boxed()
+				.sorted((a, b) -> {
+					int compare = Long.compare(guids[2 * a], guids[2 * b]);
+					return compare != 0 ? compare : Long.compare(guids[2 * a + 1], guids[2 * b + 1]);
+				})
+				.mapToInt(Integer::intValue)
+				.toArray();
+		return new RhapsodyElementStore(
+				this.symbols,
+				contentSize,
+				LongBuffer.wrap(guids),
+				IntBuffer.wrap(metaclasses),
+				IntBuffer.wrap(names),
+				IntBuffer.wrap(owners),
+				IntBuffer.wrap(ends),
+				IntBuffer.wrap(allNewTerms),
+				ByteBuffer.wrap(flags),
+				IntBuffer.wrap(stereotypeOffsets),
+				IntBuffer.wrap(stereotypes),
+				IntBuffer.wrap(guidOrder),
+				IntBuffer.wrap(newTermNames().stream().mapToInt(this.symbols::intern).toArray()),
+				IntBuffer.wrap(metaclassNames.stream().mapToInt(Integer::intValue).toArray()),
+				columns(attributeColumns),
+				columns(tagColumns),
+				units(this.symbols, e -> this.indices.getOrDefault(key(e), -1)));
+	}
+
+	/**
+	 * @return the elements of the store, depth first: each element is followed by its nested
+	 * 	elements
+	 */
+	abstract List<E> contents();
+
+	/**
+	 * @return the key that identifies the element in the source
+	 */
+	abstract Object key(E element);
+
+	abstract String guid(E element);
+
+	abstract String metaclass(E element);
+
+	abstract String name(E element);
+
+	abstract E owner(E element);
+
+	abstract boolean isExternal(E element);
+
+	abstract boolean isNewTerm(E element);
+
+	abstract List<E> stereotypes(E element);
+
+	abstract E newTerm(E element);
+
+	/**
+	 * Give the attributes of the element to the consumer, as name and value.
+	 */
+	abstract void attributes(E element, BiConsumer<String, Object> consumer);
+
+	/**
+	 * Give the tag values of the element to the consumer, as name and value.
+	 */
+	abstract void tags(E element, BiConsumer<String, Object> consumer);
+
+	/**
+	 * @return the value as an element of the source, or null if the value is not an element
+	 */
+	abstract E asElement(Object value);
+
+	abstract Collection<String> newTermNames();
+
+	/**
+	 * @param symbols the symbols of the store, to intern the unit files
+	 * @param index gives the index of the content elements
+	 * @return the units the elements were read from, see {@link RhapsodyStoreUnits}
+	 */
+	RhapsodyStoreUnits units(RhapsodySymbols.Table symbols, ToIntFunction<E> index) {
+		return RhapsodyStoreUnits.NONE;
+	}
+
+	private final RhapsodySymbols.Table symbols = new RhapsodySymbols.Table();
+	private final List<E> elements = new ArrayList<>();
+	private final Map<Object, Integer> indices = new HashMap<>();
+
+	private int indexOf(E element) {
+		Object key = key(element);
+		Integer index = this.indices.get(key);
+		if (index == null) {
+			index = this.elements.size();
+			this.indices.put(key, index);
+			this.elements.add(element);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the index of a value that is an element, -1 if the value is not an element
+	 */
+	private int valueIndex(Object value) {
+		E element = asElement(value);
+		return element == null ? -1 : indexOf(element);
+	}
+
+	private static Map<Integer, RhapsodyStoreColumn> columns(Map<Integer, RhapsodyStoreColumn.Builder> builders) {
+		Map<Integer, RhapsodyStoreColumn> result = new HashMap<>();
+		builders.forEach((name, builder) -> result.put(name, builder.build()));
+		return result;
+	}
+
+	/**
+	 * Stores the elements of a project read from its files. The attributes are the fields of the
+	 * files, and the tags are the local tags of each element (the tags of stereotypes are found
+	 * via the stereotypes, as they are also stored).
+	 */
+	static class FromProject extends RhapsodyStoreBuilder<RhapsodyFileElement> {
+
+		FromProject(RhapsodyFileProject project) {
+			this.project = project;
+		}
+
+		@Override
+		List<RhapsodyFileElement> contents() {
+			return this.project.getContents();
+		}
+
+		@Override
+		Object key(RhapsodyFileElement element) {
+			return element;
+		}
+
+		@Override
+		String guid(RhapsodyFileElement element) {
+			return element.getGUID();
+		}
+
+		@Override
+		String metaclass(RhapsodyFileElement element) {
+			return element.getMetaClass();
+		}
+
+		@Override
+		String name(RhapsodyFileElement element) {
+			return element.getName();
+		}
+
+		@Override
+		RhapsodyFileElement owner(RhapsodyFileElement element) {
+			return element.getOwner();
+		}
+
+		@Override
+		boolean isExternal(RhapsodyFileElement element) {
+			return element.getIsExternal() == 1;
+		}
+
+		@Override
+		boolean isNewTerm(RhapsodyFileElement element) {
+			return this.project.isNewTerm(element);
+		}
+
+		@Override
+		List<RhapsodyFileElement> stereotypes(RhapsodyFileElement element) {
+			return element.getStereotypes();
+		}
+
+		@Override
+		RhapsodyFileElement newTerm(RhapsodyFileElement element) {
+			return element.getNewTermStereotype();
+		}
+
+		@Override
+		void attributes(RhapsodyFileElement element, BiConsumer<String, Object> consumer) {
+			for (String field : element.getFieldNames()) {
+				if (!STRUCTURAL_FIELDS.contains(field)) {
+					consumer.accept(field, element.getField(field));
+				}
+			}
+		}
+
+		@Override
+		void tags(RhapsodyFileElement element, BiConsumer<String, Object> consumer) {
+			for (RhapsodyFileElement tag : element.getLocalTags()) {
+				consumer.accept(tag.getName(), RhapsodyFilePropertyGetter.tagValue(tag));
+			}
+		}
+
+		@Override
+		RhapsodyFileElement asElement(Object value) {
+			if (value instanceof RhapsodyFileElement) {
+				return (RhapsodyFileElement) value;
+			} else if (value instanceof RhapsodyHandle) {
+				return this.project.resolve((RhapsodyHandle) value);
+			}
+			return null;
+		}
+
+		@Override
+		Collection<String> newTermNames() {
+			return this.project.getNewTerms();
+		}
+
+		@Override
+		RhapsodyStoreUnits units(RhapsodySymbols.Table symbols, ToIntFunction<RhapsodyFileElement> index) {
+			var result = new RhapsodyStoreUnits.Builder();
+			Path directory = this.project.getProjectFile().getParent();
+			for (Map.Entry<Path, RhapsodyUnitStamp> unit : this.project.getUnitStamps().entrySet()) {
+				RhapsodyFileElement root = this.project.getUnitRoot(unit.getKey());
+				int rootIndex = root == null ? -1 : index.applyAsInt(root);
+				if (rootIndex >= 0) {
+					result.add(symbols.intern(RhapsodyStoreUnits.file(directory, unit.getKey())), rootIndex, unit.getValue());
+				}
+			}
+			return result.build();
+		}
+
+		/** Fields stored in the structure of the store */
+		private static final Set<String> STRUCTURAL_FIELDS = Set.of(
+				RhapsodyFileElement.ID,
+				RhapsodyFileElement.NAME,
+				RhapsodyFileElement.STEREOTYPES);
+
+		private final RhapsodyFileProject project;
+
+	}
+
+	/**
+	 * Stores the elements of a live model, from a root element (e.g. the project). Elements are
+	 * identified by GUID, as the Rhapsody API returns a new object on each call. The attributes
+	 * are the selected properties, and the tags are all the tags of each element (including the
+	 * tags of stereotypes defined outside the root). Values are read with the property getter of
+	 * the model, so they are the same values a script gets. Properties that an element does not
+	 * have, or that fail, are not stored.
+	 */
+	static class FromModel extends RhapsodyStoreBuilder<IRPModelElement> {
+
+		FromModel(IRPModelElement root, IPropertyGetter getter, Collection<String> properties) {
+			this.root = root;
+			this.getter = getter;
+			this.properties = properties;
+		}
+
+		@Override
+		List<IRPModelElement> contents() {
+			List<IRPModelElement> result = new ArrayList<>();
+			Deque<IRPModelElement> pending = new ArrayDeque<>();
+			pending.push(this.root);
+			while (!pending.isEmpty()) {
+				IRPModelElement element = pending.pop();
+				result.add(element);
+				List<IRPModelElement> nested = list(element.getNestedElements());
+				for (int i = nested.size() - 1; i >= 0; i--) {
+					pending.push(nested.get(i));
+				}
+			}
+			return result;
+		}
+
+		@Override
+		Object key(IRPModelElement element) {
+			return element.getGUID();
+		}
+
+		@Override
+		String guid(IRPModelElement element) {
+			return element.getGUID();
+		}
+
+		@Override
+		String metaclass(IRPModelElement element) {
+			return element.getMetaClass();
+		}
+
+		@Override
+		String name(IRPModelElement element) {
+			return element.getName();
+		}
+
+		@Override
+		IRPModelElement owner(IRPModelElement element) {
+			return element.getOwner();
+		}
+
+		@Override
+		boolean isExternal(IRPModelElement element) {
+			return element.getIsExternal() == 1;
+		}
+
+		@Override
+		boolean isNewTerm(IRPModelElement element) {
+			if (element instanceof IRPStereotype && ((IRPStereotype) element).getIsNewTerm() == 1) {
+				this.newTermNames.add(element.getName());
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		List<IRPModelElement> stereotypes(IRPModelElement element) {
+			return list(element.getStereotypes());
+		}
+
+		@Override
+		IRPModelElement newTerm(IRPModelElement element) {
+			IRPStereotype newTerm = element.getNewTermStereotype();
+			if (newTerm != null) {
+				this.newTermNames.add(newTerm.getName());
+			}
+			return newTerm;
+		}
+
+		@Override
+		void attributes(IRPModelElement element, BiConsumer<String, Object> consumer) {
+			for (String property : this.properties) {
+				value(element, property, consumer);
+			}
+		}
+
+		@Override
+		void tags(IRPModelElement element, BiConsumer<String, Object> consumer) {
+			for (IRPModelElement tag : list(element.getAllTags())) {
+				if (tag instanceof IRPTag) {
+					value(element, tag.getName(), consumer);
+				}
+			}
+		}
+
+		@Override
+		IRPModelElement asElement(Object value) {
+			return value instanceof IRPModelElement ? (IRPModelElement) value : null;
+		}
+
+		@Override
+		Collection<String> newTermNames() {
+			return this.newTermNames;
+		}
+
+		private static final Logger LOG = LogManager.getLogger(FromModel.class);
+
+		private final IRPModelElement root;
+		private final IPropertyGetter getter;
+		private final Collection<String> properties;
+		private final Set<String> newTermNames = new LinkedHashSet<>();
+
+		private void value(IRPModelElement element, String property, BiConsumer<String, Object> consumer) {
+			if (!this.getter.hasProperty(element, property, null)) {
+				return;
+			}
+			try {
+				Object value = this.getter.invoke(element, property, null);
+				if (value instanceof IRPCollection) {
+					value = list((IRPCollection) value);
+				}
+				consumer.accept(property, value);
+			} catch (EolRuntimeException | RhapsodyRuntimeException e) {
+				LOG.warn("Unable to read property {} of {}, it is not stored", property, element.getGUID(), e);
+			}
+		}
+
+		private static List<IRPModelElement> list(IRPCollection collection) {
+			return collection == null ? List.of() : new RhapsodyCollectionList(collection);
+		}
+
+	}
+
+}
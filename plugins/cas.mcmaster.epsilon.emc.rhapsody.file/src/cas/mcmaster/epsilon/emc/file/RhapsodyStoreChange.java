@@ -0,0 +1,133 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change of an element between two stores, reported by {@link RhapsodyStoreDiff}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyStoreChange {
+
+	public enum Kind {
+		/** The element is only in the right store */
+		ADDED,
+		/** The element is only in the left store */
+		REMOVED,
+		/** The element has a different owner in the right store */
+		MOVED,
+		/** The element has different properties or tag values in the right store */
+		CHANGED
+	}
+
+	public RhapsodyStoreChange(Kind kind, RhapsodyStoreElement left, RhapsodyStoreElement right, List<Delta> deltas) {
+		this.kind = kind;
+		this.left = left;
+		this.right = right;
+		this.deltas = deltas;
+	}
+
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * @return the element in the left store, null if it was added
+	 */
+	public RhapsodyStoreElement getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * @return the element in the right store, null if it was removed
+	 */
+	public RhapsodyStoreElement getRight() {
+		return this.right;
+	}
+
+	/**
+	 * @return the GUID of the element
+	 */
+	public String getGUID() {
+		return this.left == null ? this.right.getGUID() : this.left.getGUID();
+	}
+
+	/**
+	 * @return the properties and tags that changed, empty if the element was not changed
+	 */
+	public List<Delta> getDeltas() {
+		return this.deltas == null ? Collections.emptyList() : this.deltas;
+	}
+
+	@Override
+	public String toString() {
+		return this.kind + " " + (this.right == null ? this.left : this.right) + (this.deltas == null ? "" : " " + this.deltas);
+	}
+
+	private final Kind kind;
+	private final RhapsodyStoreElement left;
+	private final RhapsodyStoreElement right;
+	private final List<Delta> deltas;
+
+	/**
+	 * The values of a property or tag of an element in the left and right stores. Values that
+	 * reference elements are elements of their store.
+	 */
+	public static class Delta {
+
+		public Delta(String name, boolean tag, Object left, Object right) {
+			this.name = name;
+			this.tag = tag;
+			this.left = left;
+			this.right = right;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return true, if the delta is of the value of a tag, false if it is of a property
+		 */
+		public boolean isTag() {
+			return this.tag;
+		}
+
+		/**
+		 * @return the value in the left store, null if the element does not have it
+		 */
+		public Object getLeft() {
+			return this.left;
+		}
+
+		/**
+		 * @return the value in the right store, null if the element does not have it
+		 */
+		public Object getRight() {
+			return this.right;
+		}
+
+		@Override
+		public String toString() {
+			return (this.tag ? "tag " : "") + this.name + ": " + this.left + " -> " + this.right;
+		}
+
+		private final String name;
+		private final boolean tag;
+		private final Object left;
+		private final Object right;
+
+	}
+
+}
@@ -0,0 +1,279 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * A sparse column of a {@link RhapsodyElementStore}: the values of one attribute or tag, for the
+ * elements that have it. Rows are element indices, in increasing order, so the value of an
+ * element is found by binary search.
+ * <p>
+ * Each value is a kind and an int payload:
+ * <ul>
+ * 	<li> {@link #INT}: the value.
+ * 	<li> {@link #FLOAT}: the bits of the value, see {@link Float#floatToIntBits(float)}.
+ * 	<li> {@link #BOOLEAN}: 1 for true, 0 for false.
+ * 	<li> {@link #STRING}: the id of the value in the {@link RhapsodySymbols}.
+ * 	<li> {@link #ELEMENT}: the index of the element.
+ * 	<li> {@link #LIST}: the position of the list in the items, where the first item is the size
+ * 		 of the list, followed by the payload of each value. Lists are not nested.
+ * 	<li> {@link #NULL}: no value, the payload is not used.
+ * </ul>
+ * Columns are typed: if all values have the same kind, only the kind of the column is stored.
+ * Per row kinds are only stored for columns that mix kinds, e.g. a tag that is an integer in
+ * some elements and a string in others.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyStoreColumn {
+
+	public static final byte NULL = 0;
+	public static final byte INT = 1;
+	public static final byte FLOAT = 2;
+	public static final byte BOOLEAN = 3;
+	public static final byte STRING = 4;
+	public static final byte ELEMENT = 5;
+	public static final byte LIST = 6;
+
+	/**
+	 * Create a column from its buffers.
+	 *
+	 * @param kind the kind of all values, or {@link #NULL} if the column has per row kinds
+	 * @param rows the element indices, in increasing order
+	 * @param kinds the kind of each row, null if the column has a single kind
+	 * @param values the payload of each row
+	 * @param itemKinds the kind of each list item, null if the column has no lists
+	 * @param items the payload of the list items, null if the column has no lists
+	 */
+	public RhapsodyStoreColumn(byte kind, IntBuffer rows, ByteBuffer kinds, IntBuffer values, ByteBuffer itemKinds, IntBuffer items) {
+		this.kind = kind;
+		this.rows = rows;
+		this.kinds = kinds;
+		this.values = values;
+		this.itemKinds = itemKinds;
+		this.items = items;
+	}
+
+	/**
+	 * @param element the element index
+	 * @return the row of the element, or -1 if the element does not have a value
+	 */
+	public int find(int element) {
+		int low = 0;
+		int high = this.rows.limit() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int row = this.rows.get(mid);
+			if (row < element) {
+				low = mid + 1;
+			} else if (row > element) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of elements that have a value
+	 */
+	public int size() {
+		return this.rows.limit();
+	}
+
+	/**
+	 * @param row the row
+	 * @return the index of the element of the row
+	 */
+	public int element(int row) {
+		return this.rows.get(row);
+	}
+
+	public byte kind(int row) {
+		return this.kinds == null ? this.kind : this.kinds.get(row);
+	}
+
+	public int payload(int row) {
+		return this.values.get(row);
+	}
+
+	/**
+	 * @param row the row of a {@link #LIST} value
+	 * @return the size of the list
+	 */
+	public int itemCount(int row) {
+		return this.items.get(payload(row));
+	}
+
+	public byte itemKind(int row, int item) {
+		return this.itemKinds.get(payload(row) + 1 + item);
+	}
+
+	public int item(int row, int item) {
+		return this.items.get(payload(row) + 1 + item);
+	}
+
+	/**
+	 * @return the kind of all values, or {@link #NULL} if the column mixes kinds
+	 */
+	public byte getKind() {
+		return this.kind;
+	}
+
+	IntBuffer getRows() {
+		return this.rows;
+	}
+
+	ByteBuffer getKinds() {
+		return this.kinds;
+	}
+
+	IntBuffer getValues() {
+		return this.values;
+	}
+
+	ByteBuffer getItemKinds() {
+		return this.itemKinds;
+	}
+
+	IntBuffer getItems() {
+		return this.items;
+	}
+
+	private final byte kind;
+	private final IntBuffer rows;
+	private final ByteBuffer kinds;
+	private final IntBuffer values;
+	private final ByteBuffer itemKinds;
+	private final IntBuffer items;
+
+	/**
+	 * Builds a column. Values must be added in increasing element order.
+	 */
+	static class Builder {
+
+		void add(int element, byte kind, int payload) {
+			if (this.size == this.rows.length) {
+				this.rows = Arrays.copyOf(this.rows, this.size * 2);
+				this.kinds = Arrays.copyOf(this.kinds, this.size * 2);
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.rows[this.size] = element;
+			this.kinds[this.size] = kind;
+			this.values[this.size] = payload;
+			this.size++;
+		}
+
+		/**
+		 * Add a list value. The items are added with {@link #addItem(byte, int)}.
+		 *
+		 * @param element the element
+		 * @param size the size of the list
+		 */
+		void addList(int element, int size) {
+			add(element, LIST, this.itemCount);
+			addItem(NULL, size);
+		}
+
+		/**
+		 * Add a value of a source element: lists are added as lists of their items, values that
+		 * are elements as element indices, numbers and booleans as such, and other values as
+		 * symbols.
+		 *
+		 * @param element the element
+		 * @param value the value
+		 * @param elements gives the index of the values that are elements, -1 for other values
+		 * @param symbols the symbols of the store
+		 */
+		void addValue(int element, Object value, ToIntFunction<Object> elements, RhapsodySymbols.Table symbols) {
+			if (value instanceof List) {
+				List<?> list = (List<?>) value;
+				addList(element, list.size());
+				for (Object item : list) {
+					long encoded = encode(item, elements, symbols);
+					addItem((byte) (encoded >>> 32), (int) encoded);
+				}
+			} else {
+				long encoded = encode(value, elements, symbols);
+				add(element, (byte) (encoded >>> 32), (int) encoded);
+			}
+		}
+
+		void addItem(byte kind, int payload) {
+			if (this.itemCount == this.items.length) {
+				this.items = Arrays.copyOf(this.items, this.itemCount * 2);
+				this.itemKinds = Arrays.copyOf(this.itemKinds, this.itemCount * 2);
+			}
+			this.items[this.itemCount] = payload;
+			this.itemKinds[this.itemCount] = kind;
+			this.itemCount++;
+		}
+
+		RhapsodyStoreColumn build() {
+			byte kind = this.size == 0 ? NULL : this.kinds[0];
+			for (int i = 1; i < this.size && kind != NULL; i++) {
+				if (this.kinds[i] != kind) {
+					kind = NULL;
+				}
+			}
+			boolean lists = this.itemCount > 0;
+			return new RhapsodyStoreColumn(
+					kind,
+					IntBuffer.wrap(Arrays.copyOf(this.rows, this.size)),
+					kind == NULL ? ByteBuffer.wrap(Arrays.copyOf(this.kinds, this.size)) : null,
+					IntBuffer.wrap(Arrays.copyOf(this.values, this.size)),
+					lists ? ByteBuffer.wrap(Arrays.copyOf(this.itemKinds, this.itemCount)) : null,
+					lists ? IntBuffer.wrap(Arrays.copyOf(this.items, this.itemCount)) : null);
+		}
+
+		/**
+		 * @return the kind (high int) and payload (low int) of a value
+		 */
+		private static long encode(Object value, ToIntFunction<Object> elements, RhapsodySymbols.Table symbols) {
+			byte kind;
+			int payload;
+			if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+				kind = INT;
+				payload = ((Number) value).intValue();
+			} else if (value instanceof Float || value instanceof Double) {
+				kind = FLOAT;
+				payload = Float.floatToIntBits(((Number) value).floatValue());
+			} else if (value instanceof Boolean) {
+				kind = BOOLEAN;
+				payload = (Boolean) value ? 1 : 0;
+			} else if (value == null) {
+				kind = NULL;
+				payload = 0;
+			} else {
+				int index = elements.applyAsInt(value);
+				kind = index < 0 ? STRING : ELEMENT;
+				payload = index < 0 ? symbols.intern(value.toString()) : index;
+			}
+			return ((long) kind << 32) | (payload & 0xffffffffL);
+		}
+
+		private int[] rows = new int[8];
+		private byte[] kinds = new byte[8];
+		private int[] values = new int[8];
+		private int size;
+		private int[] items = new int[8];
+		private byte[] itemKinds = new byte[8];
+		private int itemCount;
+
+	}
+
+}
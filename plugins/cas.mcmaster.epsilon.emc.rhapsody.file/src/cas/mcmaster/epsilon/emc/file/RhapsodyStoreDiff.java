@@ -0,0 +1,299 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreChange.Delta;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreChange.Kind;
+
+/**
+ * Compares two {@link RhapsodyElementStore}s, e.g. two baselines of a project. Elements are
+ * matched by GUID, so the stores can come from any source: project files
+ * ({@link RhapsodyElementStore#of(RhapsodyFileProject)}), snapshots
+ * ({@link RhapsodySnapshot#open}) or live models
+ * ({@link RhapsodyElementStore#of(cas.mcmaster.epsilon.emc.RhapsodyModel, java.util.Collection)}).
+ * Values are compared as stored, so both stores should be built the same way (e.g. live stores
+ * with the same properties).
+ * <p>
+ * The diff reports the elements that were added, removed or moved (have another owner), and
+ * the elements whose name, metaclass, stereotypes, attributes or local tag values changed, with
+ * the values that differ. Each store is hashed once (see {@link RhapsodyStoreHashes}); the diff
+ * then walks both containment trees from the project, and skips the elements whose subtree hash
+ * is the same in both stores, so unchanged packages are skipped without reading them. Changes
+ * are given to a consumer as they are found, in containment order of the right store (removed
+ * elements after the changes of their owner), so the diff does not hold the values of either
+ * store.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyStoreDiff {
+
+	/**
+	 * @param left the store to compare from, e.g. the previous baseline
+	 * @param right the store to compare to
+	 */
+	public RhapsodyStoreDiff(RhapsodyElementStore left, RhapsodyElementStore right) {
+		this.left = left;
+		this.right = right;
+		this.leftHashes = RhapsodyStoreHashes.of(left);
+		this.rightHashes = RhapsodyStoreHashes.of(right);
+		this.leftGuids = left.getGuids();
+		this.rightGuids = right.getGuids();
+		this.attributes = columns(left.getAttributeNames(), right.getAttributeNames(), left, right, false);
+		this.tags = columns(tagNames(left), tagNames(right), left, right, true);
+	}
+
+	/**
+	 * Compare the stores.
+	 *
+	 * @param changes receives the changes, as they are found
+	 */
+	public void diff(Consumer<? super RhapsodyStoreChange> changes) {
+		if (this.left.contentSize() == 0 || this.right.contentSize() == 0) {
+			if (this.left.contentSize() > 0) {
+				removed(0, changes);
+			}
+			if (this.right.contentSize() > 0) {
+				added(0, changes);
+			}
+		} else if (rightIndex(0) == 0) {
+			compare(0, 0, changes);
+		} else {
+			removed(0, changes);
+			added(0, changes);
+		}
+	}
+
+	/**
+	 * @return all the changes
+	 */
+	public List<RhapsodyStoreChange> changes() {
+		List<RhapsodyStoreChange> result = new ArrayList<>();
+		diff(result::add);
+		return result;
+	}
+
+	/**
+	 * @return true, if the stores have the same elements and values
+	 */
+	public boolean isEmpty() {
+		return this.left.contentSize() == this.right.contentSize()
+				&& (this.left.contentSize() == 0
+						|| (rightIndex(0) == 0 && this.leftHashes.subtree(0) == this.rightHashes.subtree(0)));
+	}
+
+	private final RhapsodyElementStore left;
+	private final RhapsodyElementStore right;
+	private final RhapsodyStoreHashes leftHashes;
+	private final RhapsodyStoreHashes rightHashes;
+	private final LongBuffer leftGuids;
+	private final LongBuffer rightGuids;
+	private final List<Column> attributes;
+	private final List<Column> tags;
+
+	/**
+	 * Compare an element that is in both stores, and its nested elements.
+	 */
+	private void compare(int left, int right, Consumer<? super RhapsodyStoreChange> changes) {
+		if (this.leftHashes.subtree(left) == this.rightHashes.subtree(right)) {
+			return;
+		}
+		if (this.leftHashes.own(left) != this.rightHashes.own(right)) {
+			List<Delta> deltas = deltas(left, right);
+			if (!deltas.isEmpty()) {
+				changes.accept(new RhapsodyStoreChange(Kind.CHANGED, this.left.element(left), this.right.element(right), deltas));
+			}
+		}
+		int end = this.right.end(right);
+		for (int child = right + 1; child < end; child = this.right.end(child)) {
+			int leftChild = leftIndex(child);
+			if (leftChild < 0) {
+				added(child, changes);
+			} else {
+				if (this.left.owner(leftChild) != left) {
+					moved(leftChild, child, changes);
+				}
+				compare(leftChild, child, changes);
+			}
+		}
+		end = this.left.end(left);
+		for (int child = left + 1; child < end; child = this.left.end(child)) {
+			if (rightIndex(child) < 0) {
+				removed(child, changes);
+			}
+		}
+	}
+
+	/**
+	 * Report an element of the right store that is not in the left store, and its nested
+	 * elements. Nested elements that are in the left store were moved.
+	 */
+	private void added(int right, Consumer<? super RhapsodyStoreChange> changes) {
+		int left = leftIndex(right);
+		if (left >= 0) {
+			moved(left, right, changes);
+			compare(left, right, changes);
+			return;
+		}
+		changes.accept(new RhapsodyStoreChange(Kind.ADDED, null, this.right.element(right), null));
+		int end = this.right.end(right);
+		for (int child = right + 1; child < end; child = this.right.end(child)) {
+			added(child, changes);
+		}
+	}
+
+	/**
+	 * Report an element of the left store that is not in the right store, and its nested
+	 * elements. Nested elements that are in the right store were moved, and are reported from
+	 * their new owner.
+	 */
+	private void removed(int left, Consumer<? super RhapsodyStoreChange> changes) {
+		int end = this.left.end(left);
+		for (int element = left; element < end; element++) {
+			if (rightIndex(element) < 0) {
+				changes.accept(new RhapsodyStoreChange(Kind.REMOVED, this.left.element(element), null, null));
+			}
+		}
+	}
+
+	private void moved(int left, int right, Consumer<? super RhapsodyStoreChange> changes) {
+		changes.accept(new RhapsodyStoreChange(Kind.MOVED, this.left.element(left), this.right.element(right), null));
+	}
+
+	/**
+	 * @return the index in the left store of an element of the right store, or -1
+	 */
+	private int leftIndex(int right) {
+		return this.left.indexOf(this.rightGuids.get(2 * right), this.rightGuids.get(2 * right + 1));
+	}
+
+	/**
+	 * @return the index in the right store of an element of the left store, or -1
+	 */
+	private int rightIndex(int left) {
+		return this.right.indexOf(this.leftGuids.get(2 * left), this.leftGuids.get(2 * left + 1));
+	}
+
+	private List<Delta> deltas(int left, int right) {
+		List<Delta> result = new ArrayList<>();
+		RhapsodyStoreElement leftElement = this.left.element(left);
+		RhapsodyStoreElement rightElement = this.right.element(right);
+		delta(result, "name", leftElement.getName(), rightElement.getName());
+		delta(result, "metaClass", leftElement.getMetaClass(), rightElement.getMetaClass());
+		delta(result, "isExternal", leftElement.getIsExternal(), rightElement.getIsExternal());
+		delta(result, "stereotypes", leftElement.getStereotypes(), rightElement.getStereotypes());
+		for (Column column : this.attributes) {
+			column.delta(left, right, result);
+		}
+		for (Column column : this.tags) {
+			column.delta(left, right, result);
+		}
+		return result;
+	}
+
+	private static void delta(List<Delta> deltas, String name, Object left, Object right) {
+		if (!same(left, right)) {
+			deltas.add(new Delta(name, false, left, right));
+		}
+	}
+
+	/**
+	 * @return true, if the values are equal, or are elements with the same GUID
+	 */
+	private static boolean same(Object left, Object right) {
+		if (left instanceof RhapsodyStoreElement && right instanceof RhapsodyStoreElement) {
+			return ((RhapsodyStoreElement) left).getGUID().equals(((RhapsodyStoreElement) right).getGUID());
+		}
+		if (left instanceof List && right instanceof List) {
+			List<?> leftList = (List<?>) left;
+			List<?> rightList = (List<?>) right;
+			if (leftList.size() != rightList.size()) {
+				return false;
+			}
+			for (int i = 0; i < leftList.size(); i++) {
+				if (!same(leftList.get(i), rightList.get(i))) {
+					return false;
+				}
+			}
+			return true;
+		}
+		return Objects.equals(left, right);
+	}
+
+	private static Iterable<String> tagNames(RhapsodyElementStore store) {
+		List<String> result = new ArrayList<>();
+		store.getTags().keySet().forEach(id -> result.add(store.getSymbols().get(id)));
+		return result;
+	}
+
+	/**
+	 * @return the columns of the attribute or tag names of either store
+	 */
+	private static List<Column> columns(
+			Iterable<String> leftNames,
+			Iterable<String> rightNames,
+			RhapsodyElementStore left,
+			RhapsodyElementStore right,
+			boolean tag) {
+		Map<String, Column> result = new LinkedHashMap<>();
+		for (String name : leftNames) {
+			result.put(name, new Column(name, tag, left, right));
+		}
+		for (String name : rightNames) {
+			result.computeIfAbsent(name, n -> new Column(n, tag, left, right));
+		}
+		return new ArrayList<>(result.values());
+	}
+
+	/**
+	 * The columns of an attribute or a tag in both stores.
+	 */
+	private static class Column {
+
+		Column(String name, boolean tag, RhapsodyElementStore left, RhapsodyElementStore right) {
+			this.name = name;
+			this.tag = tag;
+			this.left = left;
+			this.right = right;
+			this.leftColumn = tag ? left.getTag(name) : left.getAttribute(name);
+			this.rightColumn = tag ? right.getTag(name) : right.getAttribute(name);
+		}
+
+		void delta(int left, int right, List<Delta> deltas) {
+			Object leftValue = value(this.left, this.leftColumn, left);
+			Object rightValue = value(this.right, this.rightColumn, right);
+			if (!same(leftValue, rightValue)) {
+				deltas.add(new Delta(this.name, this.tag, leftValue, rightValue));
+			}
+		}
+
+		private final String name;
+		private final boolean tag;
+		private final RhapsodyElementStore left;
+		private final RhapsodyElementStore right;
+		private final RhapsodyStoreColumn leftColumn;
+		private final RhapsodyStoreColumn rightColumn;
+
+		private static Object value(RhapsodyElementStore store, RhapsodyStoreColumn column, int element) {
+			int row = column == null ? -1 : column.find(element);
+			return row < 0 ? null : store.value(column, row);
+		}
+
+	}
+
+}
@@ -0,0 +1,353 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+
+/**
+ * A flyweight for an element of a {@link RhapsodyElementStore}: the store and the index of the
+ * element. Flyweights are created when elements are accessed, and two flyweights are equal if
+ * they are for the same element. The accessors are the ones of {@link RhapsodyFileElement}, and
+ * the fields of the files are the attributes of the element (see {@link #getField(String)}).
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public final class RhapsodyStoreElement {
+
+	/**
+	 * Create a flyweight.
+	 *
+	 * @param store the store
+	 * @param index the element index
+	 */
+	public RhapsodyStoreElement(RhapsodyElementStore store, int index) {
+		this.store = store;
+		this.index = index;
+	}
+
+	public String getGUID() {
+		return this.store.guid(this.index);
+	}
+
+	/**
+	 * Receptions don't store a name, they take the name of their event.
+	 *
+	 * @return the name of the element, or an empty string if it has no name
+	 */
+	public String getName() {
+		return this.store.name(this.index);
+	}
+
+	public String getMetaClass() {
+		return this.store.metaclass(this.index);
+	}
+
+	/**
+	 * @return the name of the new term stereotype of the element, or its metaclass if it has none
+	 */
+	public String getUserDefinedMetaClass() {
+		int newTerm = this.store.newTerm(this.index);
+		return newTerm < 0 ? getMetaClass() : this.store.name(newTerm);
+	}
+
+	/**
+	 * @return the name of the Rhapsody API interface of the element, e.g. <code>IRPClass</code>
+	 */
+	public String getInterfaceName() {
+		String metaclass = getMetaClass();
+		String name = RhapsodyKindLattice.interfaceName(metaclass);
+		return name == null ? "IRP" + metaclass : name;
+	}
+
+	public RhapsodyStoreElement getOwner() {
+		int owner = this.store.owner(this.index);
+		return owner < 0 ? null : this.store.element(owner);
+	}
+
+	public RhapsodyStoreElement getProject() {
+		return this.store.getProject();
+	}
+
+	/**
+	 * @return the elements nested in this element
+	 */
+	public List<RhapsodyStoreElement> getNestedElements() {
+		return this.store.children(this.index);
+	}
+
+	/**
+	 * @return the element and all its nested elements, depth first
+	 */
+	public List<RhapsodyStoreElement> getNestedElementsRecursive() {
+		return this.store.range(this.index, this.store.end(this.index));
+	}
+
+	public int hasNestedElements() {
+		return this.store.end(this.index) > this.index + 1 ? 1 : 0;
+	}
+
+	/**
+	 * Unlike the Rhapsody API, the references are found in an index of the store, see
+	 * {@link RhapsodyElementStore#getReferencesTo(RhapsodyStoreElement)}.
+	 *
+	 * @return the elements that reference this element
+	 */
+	public List<RhapsodyStoreElement> getReferences() {
+		return this.store.getReferencesTo(this);
+	}
+
+	public List<RhapsodyStoreElement> getStereotypes() {
+		int count = this.store.stereotypeCount(this.index);
+		List<RhapsodyStoreElement> result = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			result.add(this.store.element(this.store.stereotype(this.index, i)));
+		}
+		return result;
+	}
+
+	/**
+	 * @return the first stereotype of the element, or null if it has none
+	 */
+	public RhapsodyStoreElement getStereotype() {
+		return this.store.stereotypeCount(this.index) == 0
+				? null
+				: this.store.element(this.store.stereotype(this.index, 0));
+	}
+
+	/**
+	 * @return the new term stereotype of the element, or null if it has none
+	 */
+	public RhapsodyStoreElement getNewTermStereotype() {
+		int newTerm = this.store.newTerm(this.index);
+		return newTerm < 0 ? null : this.store.element(newTerm);
+	}
+
+	/**
+	 * @return 1 if the element is a new term stereotype, 0 otherwise
+	 */
+	public int getIsNewTerm() {
+		return this.store.hasFlag(this.index, RhapsodyElementStore.NEW_TERM) ? 1 : 0;
+	}
+
+	/**
+	 * @return for stereotypes, the comma separated list of metaclasses the stereotype applies to
+	 */
+	public String getOfMetaClass() {
+		Object value = getField(M2_CLASSES);
+		if (value instanceof List) {
+			return ((List<?>) value).stream()
+					.map(Object::toString)
+					.collect(Collectors.joining(","));
+		}
+		return "";
+	}
+
+	/**
+	 * @return the tags owned by the element
+	 */
+	public List<RhapsodyStoreElement> getLocalTags() {
+		return nested(TAG);
+	}
+
+	/**
+	 * @return the local tags of the element, and the tags of its stereotypes that are not
+	 * 	overridden by a local tag
+	 */
+	public List<RhapsodyStoreElement> getAllTags() {
+		List<RhapsodyStoreElement> result = getLocalTags();
+		for (RhapsodyStoreElement stereotype : getStereotypes()) {
+			for (RhapsodyStoreElement tag : stereotype.getLocalTags()) {
+				if (result.stream().noneMatch(t -> t.getName().equals(tag.getName()))) {
+					result.add(tag);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find a tag by name, in the element or in its stereotypes.
+	 *
+	 * @param name the name of the tag
+	 * @return the tag, or null if the element does not have a tag with the name
+	 */
+	public RhapsodyStoreElement getTag(String name) {
+		for (RhapsodyStoreElement tag : getAllTags()) {
+			if (tag.getName().equals(name)) {
+				return tag;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The value of the element, for example of a tag, literal specification or enumeration
+	 * literal. Values that reference other elements (e.g. of instance values) are resolved.
+	 *
+	 * @return the value, or null if the element has no value
+	 */
+	public Object getValue() {
+		return getField(VALUE);
+	}
+
+	/**
+	 * The type of the element, for example of a tag or an attribute. Tags that don't have a type
+	 * take the type of the tag they are based on (i.e. the tag of the stereotype).
+	 *
+	 * @return the type, or null if the element has no type
+	 */
+	public RhapsodyStoreElement getType() {
+		Object type = getField(TYPE_OF);
+		if (type instanceof RhapsodyStoreElement) {
+			return (RhapsodyStoreElement) type;
+		}
+		Object base = getField(BASE);
+		if (base instanceof RhapsodyStoreElement && !base.equals(this)) {
+			return ((RhapsodyStoreElement) base).getType();
+		}
+		return null;
+	}
+
+	/**
+	 * @return for types, the kind of type, e.g. <code>Enumeration</code> or <code>Typedef</code>
+	 */
+	public String getKind() {
+		Object kind = getField(KIND);
+		return kind == null ? "" : kind.toString();
+	}
+
+	public int isKindEnumeration() {
+		return ENUMERATION.equals(getKind()) ? 1 : 0;
+	}
+
+	public List<RhapsodyStoreElement> getEnumerationLiterals() {
+		return nested(ENUMERATION_LITERAL);
+	}
+
+	/**
+	 * @return the package path of the element, e.g. <code>TestingPkg::Block1</code>
+	 */
+	public String getFullPathName() {
+		RhapsodyStoreElement owner = getOwner();
+		if (owner == null || owner.getOwner() == null) {
+			return getName();
+		}
+		return owner.getFullPathName() + "::" + getName();
+	}
+
+	/**
+	 * @return 1 if the element is not part of the project (e.g. it is defined in a profile)
+	 */
+	public int getIsExternal() {
+		return this.store.hasFlag(this.index, RhapsodyElementStore.EXTERNAL) ? 1 : 0;
+	}
+
+	/**
+	 * Elements can't be modified, but as in Rhapsody, only external elements are reported as read
+	 * only.
+	 *
+	 * @return 1 if the element is external, 0 otherwise
+	 */
+	public int isReadOnly() {
+		return getIsExternal();
+	}
+
+	/**
+	 * Get the value of a field of the file. String values are not converted; references are
+	 * resolved to elements.
+	 *
+	 * @param name the name of the field, e.g. <code>_modifiedTime</code>
+	 * @return the value, or null if the element does not have the field
+	 */
+	public Object getField(String name) {
+		RhapsodyStoreColumn column = this.store.getAttribute(name);
+		if (column == null) {
+			return null;
+		}
+		int row = column.find(this.index);
+		return row < 0 ? null : this.store.value(column, row);
+	}
+
+	/**
+	 * @param name the name of the field
+	 * @return true, if the element has the field
+	 */
+	public boolean hasField(String name) {
+		RhapsodyStoreColumn column = this.store.getAttribute(name);
+		return column != null && column.find(this.index) >= 0;
+	}
+
+	/**
+	 * @return the names of the fields of the element
+	 */
+	public List<String> getFieldNames() {
+		return this.store.getAttributeNames().stream()
+				.filter(this::hasField)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return the index of the element in the store
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	public RhapsodyElementStore getStore() {
+		return this.store;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.store, this.index);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof RhapsodyStoreElement)) {
+			return false;
+		}
+		RhapsodyStoreElement other = (RhapsodyStoreElement) obj;
+		return this.store == other.store && this.index == other.index;
+	}
+
+	@Override
+	public String toString() {
+		return getMetaClass() + " " + getName() + " (" + getGUID() + ")";
+	}
+
+	private static final String VALUE = "_value";
+	private static final String TYPE_OF = "_typeOf";
+	private static final String BASE = "_base";
+	private static final String KIND = "_kind";
+	private static final String M2_CLASSES = "_m2Classes";
+	private static final String TAG = "Tag";
+	private static final String ENUMERATION = "Enumeration";
+	private static final String ENUMERATION_LITERAL = "EnumerationLiteral";
+
+	private final RhapsodyElementStore store;
+	private final int index;
+
+	private List<RhapsodyStoreElement> nested(String metaclass) {
+		return getNestedElements().stream()
+				.filter(e -> metaclass.equals(e.getMetaClass()))
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,159 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Map;
+
+/**
+ * Hashes of the content elements of a {@link RhapsodyElementStore}, to compare stores (see
+ * {@link RhapsodyStoreDiff}). The hash of an element covers its GUID, name, metaclass,
+ * stereotypes, attributes and local tag values; the hash of a subtree covers the hash of the
+ * element and the subtree hashes of its nested elements. Strings are hashed by value and
+ * references by the GUID of the element, so hashes of different stores can be compared.
+ * Attributes and nested elements are combined by addition, so their order does not change the
+ * hash.
+ * <p>
+ * The hashes are computed in a pass over the columns of the store: as contents are depth
+ * first, subtree hashes are added to their owner from the last element to the first.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+final class RhapsodyStoreHashes {
+
+	/**
+	 * @param store the store
+	 * @return the hashes of the content elements of the store
+	 */
+	static RhapsodyStoreHashes of(RhapsodyElementStore store) {
+		return new RhapsodyStoreHashes(store);
+	}
+
+	/**
+	 * @param index the index of a content element
+	 * @return the hash of the element, without its nested elements
+	 */
+	long own(int index) {
+		return this.own[index];
+	}
+
+	/**
+	 * @param index the index of a content element
+	 * @return the hash of the element and its nested elements
+	 */
+	long subtree(int index) {
+		return this.subtree[index];
+	}
+
+	private static final long TAG = 0x5bd1e9955bd1e995L;
+	private static final long LIST = 0x27d4eb2f165667c5L;
+	private static final long STRING = 0x165667b19e3779f9L;
+
+	private final LongBuffer guids;
+	private final long[] symbols;
+	private final long[] own;
+	private final long[] subtree;
+
+	private RhapsodyStoreHashes(RhapsodyElementStore store) {
+		int size = store.contentSize();
+		this.guids = store.getGuids();
+		RhapsodySymbols symbols = store.getSymbols();
+		this.symbols = new long[symbols.size()];
+		for (int i = 0; i < this.symbols.length; i++) {
+			this.symbols[i] = hash(symbols.get(i));
+		}
+		IntBuffer names = store.getNames();
+		IntBuffer metaclasses = store.getMetaclassColumn();
+		ByteBuffer flags = store.getFlags();
+		this.own = new long[size];
+		for (int i = 0; i < size; i++) {
+			long hash = mix(guid(i) + this.symbols[names.get(i)]);
+			hash = mix(hash + this.symbols[metaclasses.get(i)]);
+			hash = mix(hash + (flags.get(i) & RhapsodyElementStore.EXTERNAL));
+			for (int s = 0; s < store.stereotypeCount(i); s++) {
+				hash = mix(31 * hash + guid(store.stereotype(i, s)));
+			}
+			this.own[i] = hash;
+		}
+		addColumns(store.getAttributes(), size, 0);
+		addColumns(store.getTags(), size, TAG);
+		this.subtree = this.own.clone();
+		for (int i = size - 1; i > 0; i--) {
+			int owner = store.owner(i);
+			if (owner >= 0) {
+				this.subtree[owner] += mix(this.subtree[i]);
+			}
+		}
+	}
+
+	private void addColumns(Map<Integer, RhapsodyStoreColumn> columns, int size, long seed) {
+		for (Map.Entry<Integer, RhapsodyStoreColumn> entry : columns.entrySet()) {
+			long name = this.symbols[entry.getKey()] ^ seed;
+			RhapsodyStoreColumn column = entry.getValue();
+			for (int row = 0; row < column.size(); row++) {
+				int element = column.element(row);
+				if (element < size) {
+					this.own[element] += mix(name + 31 * value(column, row));
+				}
+			}
+		}
+	}
+
+	private long value(RhapsodyStoreColumn column, int row) {
+		byte kind = column.kind(row);
+		if (kind != RhapsodyStoreColumn.LIST) {
+			return value(kind, column.payload(row));
+		}
+		long result = LIST;
+		for (int item = 0; item < column.itemCount(row); item++) {
+			result = mix(31 * result + value(column.itemKind(row, item), column.item(row, item)));
+		}
+		return result;
+	}
+
+	private long value(byte kind, int payload) {
+		switch (kind) {
+		case RhapsodyStoreColumn.STRING:
+			return this.symbols[payload] ^ STRING;
+		case RhapsodyStoreColumn.ELEMENT:
+			return guid(payload);
+		default:
+			return mix(((long) kind << 32) | (payload & 0xffffffffL));
+		}
+	}
+
+	private long guid(int index) {
+		return mix(this.guids.get(2 * index) ^ mix(this.guids.get(2 * index + 1)));
+	}
+
+	/**
+	 * @return a 64 bit FNV-1a hash of the string
+	 */
+	private static long hash(String value) {
+		long result = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			result = (result ^ value.charAt(i)) * 0x100000001b3L;
+		}
+		return mix(result);
+	}
+
+	/**
+	 * The finalizer of SplitMix64, so sums of hashes don't cancel out.
+	 */
+	private static long mix(long value) {
+		value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+		value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+		return value ^ (value >>> 31);
+	}
+
+}
@@ -0,0 +1,485 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolEnumerationValueNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.exceptions.models.EolNotInstantiableModelElementTypeException;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertySetter;
+import org.eclipse.epsilon.eol.models.CachedModel;
+import org.eclipse.epsilon.eol.models.IRelativePathResolver;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+
+/**
+ * A read-only IModel for Rhapsody projects, backed by a {@link RhapsodyElementStore}. The project
+ * files are read as in {@link RhapsodyFileModel} and then copied to the store, so large projects
+ * use less memory. Elements are {@link RhapsodyStoreElement} flyweights; types, kinds and
+ * properties behave as in {@link RhapsodyFileModel} (and so, as in {@link RhapsodyModel}).
+ * <p>
+ * The model can't be modified. The supported properties are the ones of
+ * {@link RhapsodyFileModel}, except loading on demand: {@link #PROPERTY_PROJECT_PATH},
+ * {@link #PROPERTY_INSTALLATION_DIRECTORY}, {@link #PROPERTY_NEW_TERMS} and
+ * {@link #PROPERTY_PARSE_PARALLELISM}; and {@link #PROPERTY_SNAPSHOT}, the path to a
+ * {@link RhapsodySnapshot}:
+ * <ul>
+ * 	<li> With a project path, the project is read and the snapshot is written, so later runs can
+ * 		 use it. If the snapshot exists, it is refreshed instead: only the units that changed
+ * 		 since it was written are read (see {@link RhapsodySnapshot#refresh}).
+ * 	<li> Without a project path, the snapshot is opened, and the elements are read from the
+ * 		 mapped file.
+ * </ul>
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyStoreModel extends CachedModel<RhapsodyStoreElement> {
+
+	public static final String PROPERTY_PROJECT_PATH = RhapsodyFileModel.PROPERTY_PROJECT_PATH;
+	public static final String PROPERTY_INSTALLATION_DIRECTORY = RhapsodyFileModel.PROPERTY_INSTALLATION_DIRECTORY;
+	public static final String PROPERTY_NEW_TERMS = RhapsodyFileModel.PROPERTY_NEW_TERMS;
+	public static final String PROPERTY_PARSE_PARALLELISM = RhapsodyFileModel.PROPERTY_PARSE_PARALLELISM;
+	public static final String PROPERTY_SNAPSHOT = "snapshot";
+
+	public RhapsodyStoreModel() {
+		this.propertyGetter = new RhapsodyStorePropertyGetter();
+		this.propertySetter = new ReadOnlyPropertySetter();
+	}
+
+	@Override
+	public void load(
+		StringProperties properties,
+		IRelativePathResolver relativePathResolver) throws EolModelLoadingException {
+		super.load(properties, relativePathResolver);
+		if (!properties.hasProperty(PROPERTY_PROJECT_PATH) && !properties.hasProperty(PROPERTY_SNAPSHOT)) {
+			LOG.error("No path to the Rhapsody project or snapshot provided");
+			throw new EolModelLoadingException(new IllegalArgumentException("No path to the Rhapsody project or snapshot provided"), this);
+		}
+		this.projectFile = null;
+		if (properties.hasProperty(PROPERTY_PROJECT_PATH)) {
+			this.projectFile = Paths.get(relativePathResolver.resolve(properties.getProperty(PROPERTY_PROJECT_PATH))).toAbsolutePath();
+		}
+		this.snapshotFile = null;
+		if (properties.hasProperty(PROPERTY_SNAPSHOT)) {
+			this.snapshotFile = Paths.get(relativePathResolver.resolve(properties.getProperty(PROPERTY_SNAPSHOT))).toAbsolutePath();
+		}
+		this.newTerms = Arrays.stream(properties.getProperty(PROPERTY_NEW_TERMS, "").split(","))
+				.map(String::trim)
+				.filter(s -> !s.isEmpty())
+				.collect(Collectors.toSet());
+		this.parseParallelism = properties.getIntegerProperty(PROPERTY_PARSE_PARALLELISM, 0);
+		this.installedMetaclasses = Collections.emptySet();
+		if (properties.hasProperty(PROPERTY_INSTALLATION_DIRECTORY)) {
+			this.installedMetaclasses = installedMetaclasses(Paths.get(properties.getProperty(PROPERTY_INSTALLATION_DIRECTORY)));
+		}
+		load();
+	}
+
+	/**
+	 * Set the project file, for models that are loaded without properties.
+	 *
+	 * @param projectFile the path to the project file (<code>.rpyx</code>)
+	 */
+	public void setProjectFile(Path projectFile) {
+		this.projectFile = projectFile;
+	}
+
+	public Path getProjectFile() {
+		return this.projectFile;
+	}
+
+	/**
+	 * Set the snapshot file, for models that are loaded without properties, see
+	 * {@link #PROPERTY_SNAPSHOT}.
+	 *
+	 * @param snapshotFile the path to the snapshot
+	 */
+	public void setSnapshotFile(Path snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	public Path getSnapshotFile() {
+		return this.snapshotFile;
+	}
+
+	/**
+	 * @return the element store, null if the model is not loaded
+	 */
+	public RhapsodyElementStore getStore() {
+		return this.store;
+	}
+
+	/**
+	 * Get the elements that reference the given element, as the model operation of
+	 * {@link RhapsodyModel#getReferencesTo(Object)}. For example, in EOL (where <code>M</code>
+	 * is the name of the model): <code>M.getReferencesTo(block).println();</code>
+	 *
+	 * @param element the referenced element
+	 * @return the referencing elements, in contents order
+	 * @see RhapsodyElementStore#getReferencesTo(RhapsodyStoreElement)
+	 */
+	public List<RhapsodyStoreElement> getReferencesTo(Object element) {
+		return this.store.getReferencesTo(element(element));
+	}
+
+	@Override
+	public Object getEnumerationValue(String enumeration, String label) throws EolEnumerationValueNotFoundException {
+		RhapsodyStoreElement type = this.store.find(enumeration, "Type");
+		if (type == null || type.isKindEnumeration() == 0) {
+			LOG.error("Unable to find an enumeration Type that matches the name: {}", enumeration);
+			throw new EolEnumerationValueNotFoundException(enumeration, label, getName());
+		}
+		for (RhapsodyStoreElement literal : type.getEnumerationLiterals()) {
+			if (literal.getName().equals(label)) {
+				return literal.getValue();
+			}
+		}
+		LOG.error("Found a Type that matches the enumeration {}, but none of its EnumerationLiterals matched the label: {}", enumeration, label);
+		throw new EolEnumerationValueNotFoundException(enumeration, label, getName());
+	}
+
+	@Override
+	public Object getTypeOf(Object instance) {
+		return element(instance).getInterfaceName();
+	}
+
+	@Override
+	public String getTypeNameOf(Object instance) {
+		return element(instance).getUserDefinedMetaClass();
+	}
+
+	@Override
+	public String getFullyQualifiedTypeNameOf(Object instance) {
+		return getTypeNameOf(instance);
+	}
+
+	@Override
+	public Object getElementById(String id) {
+		return this.store == null ? null : this.store.getElement(id);
+	}
+
+	@Override
+	public String getElementId(Object instance) {
+		return element(instance).getGUID();
+	}
+
+	@Override
+	public void setElementId(Object instance, String newId) {
+		throw new UnsupportedOperationException("Rhapsody store models are read only");
+	}
+
+	@Override
+	public boolean isOfType(Object instance, String type) throws EolModelElementTypeNotFoundException {
+		if (instance == null) {
+			LOG.warn("Checking the type of null");
+			return false;
+		}
+		var element = element(instance);
+		if (isMetaclass(type)) {
+			return Objects.equals(RhapsodyKindLattice.canonical(type), element.getMetaClass());
+		} else if (isNewTerm(type)) {
+			return Objects.equals(type, element.getUserDefinedMetaClass());
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), type);
+	}
+
+	@Override
+	public boolean isOfKind(Object instance, String kind) throws EolModelElementTypeNotFoundException {
+		if (instance == null) {
+			LOG.warn("Checking the kind of null");
+			return false;
+		}
+		var element = element(instance);
+		if (isMetaclass(kind)) {
+			return lattice(List.of(kind)).isKindOf(element.getMetaClass(), kind);
+		} else if (isNewTerm(kind)) {
+			return Objects.equals(kind, element.getUserDefinedMetaClass());
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), kind);
+	}
+
+	@Override
+	public boolean owns(Object instance) {
+		return instance instanceof RhapsodyStoreElement
+				&& this.store != null
+				&& this.store.contains((RhapsodyStoreElement) instance);
+	}
+
+	@Override
+	public boolean knowsAboutProperty(Object instance, String property) {
+		return this.propertyGetter.hasProperty(instance, property, null);
+	}
+
+	@Override
+	public boolean isPropertySet(Object instance, String property) throws EolRuntimeException {
+		return true;
+	}
+
+	@Override
+	public boolean isInstantiable(String type) {
+		return false;
+	}
+
+	@Override
+	public boolean isModelElement(Object instance) {
+		return instance instanceof RhapsodyStoreElement;
+	}
+
+	@Override
+	public boolean hasType(String type) {
+		return isMetaclass(type) || isNewTerm(type);
+	}
+
+	@Override
+	public boolean store(String location) {
+		LOG.warn("Rhapsody store models are read only, the model will not be stored");
+		return false;
+	}
+
+	@Override
+	public boolean store() {
+		LOG.warn("Rhapsody store models are read only, the model will not be stored");
+		return false;
+	}
+
+	@Override
+	public IPropertyGetter getPropertyGetter() {
+		return this.propertyGetter;
+	}
+
+	@Override
+	public IPropertySetter getPropertySetter() {
+		return this.propertySetter;
+	}
+
+	@Override
+	protected Collection<RhapsodyStoreElement> allContentsFromModel() {
+		return this.store.getContents();
+	}
+
+	@Override
+	protected Collection<RhapsodyStoreElement> getAllOfTypeFromModel(String type) throws EolModelElementTypeNotFoundException {
+		if (isMetaclass(type)) {
+			return this.store.ofMetaclass(RhapsodyKindLattice.canonical(type));
+		} else if (isNewTerm(type)) {
+			return this.store.ofNewTerm(type);
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), type);
+	}
+
+	@Override
+	protected Collection<RhapsodyStoreElement> getAllOfKindFromModel(String kind) throws EolModelElementTypeNotFoundException {
+		if (isMetaclass(kind)) {
+			Set<String> subKinds = lattice(List.of(kind)).subKindsOf(kind);
+			return this.store.getContents().stream()
+					.filter(e -> subKinds.contains(e.getMetaClass()))
+					.collect(Collectors.toList());
+		} else if (isNewTerm(kind)) {
+			return this.store.ofNewTerm(kind);
+		}
+		throw new EolModelElementTypeNotFoundException(getName(), kind);
+	}
+
+	@Override
+	protected RhapsodyStoreElement createInstanceInModel(String type)
+			throws EolModelElementTypeNotFoundException, EolNotInstantiableModelElementTypeException {
+		if (!hasType(type)) {
+			throw new EolModelElementTypeNotFoundException(getName(), type);
+		}
+		throw new EolNotInstantiableModelElementTypeException(getName(), type);
+	}
+
+	@Override
+	protected boolean deleteElementInModel(Object instance) throws EolRuntimeException {
+		throw new EolRuntimeException("Rhapsody store models are read only, elements can't be deleted");
+	}
+
+	@Override
+	protected void loadModel() throws EolModelLoadingException {
+		if (this.projectFile == null && this.snapshotFile == null) {
+			LOG.error("No path to the Rhapsody project or snapshot provided");
+			throw new EolModelLoadingException(new IllegalArgumentException("No path to the Rhapsody project or snapshot provided"), this);
+		}
+		this.store = this.projectFile == null ? openSnapshot() : readProject();
+		LOG.info("Loaded {}", this.store);
+		this.metaclasses = new HashSet<>(this.installedMetaclasses);
+		this.metaclasses.addAll(this.store.getMetaclasses());
+		this.lattice = new RhapsodyKindLattice(this.metaclasses);
+		this.newTermNames = this.store.getNewTerms();
+	}
+
+	@Override
+	protected void disposeModel() {
+		this.store = null;
+		this.lattice = null;
+	}
+
+	@Override
+	protected Object getCacheKeyForType(String type) throws EolModelElementTypeNotFoundException {
+		return type;
+	}
+
+	@Override
+	protected Collection<String> getAllTypeNamesOf(Object instance) {
+		Set<String> result = new HashSet<>();
+		if (instance instanceof RhapsodyStoreElement) {
+			var element = (RhapsodyStoreElement) instance;
+			result.add(element.getMetaClass());
+			result.add(element.getUserDefinedMetaClass());
+		}
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyStoreModel.class);
+
+	private Path projectFile;
+	private Path snapshotFile;
+	private Set<String> newTerms = Collections.emptySet();
+	private int parseParallelism;
+	private Set<String> installedMetaclasses = Collections.emptySet();
+	private RhapsodyElementStore store;
+	private Set<String> metaclasses;
+	private Set<String> newTermNames;
+	private RhapsodyKindLattice lattice;
+
+	/**
+	 * Read the project files to a store, and write the snapshot if a snapshot file is given. If
+	 * the snapshot exists, it is refreshed from the units that changed.
+	 */
+	private RhapsodyElementStore readProject() throws EolModelLoadingException {
+		if (!Files.isRegularFile(this.projectFile)) {
+			LOG.error("The Rhapsody project {} does not exist", this.projectFile);
+			throw new EolModelLoadingException(new IllegalArgumentException("The Rhapsody project " + this.projectFile + " does not exist"), this);
+		}
+		ForkJoinPool pool = this.parseParallelism > 0
+				? new ForkJoinPool(this.parseParallelism)
+				: ForkJoinPool.commonPool();
+		try {
+			return readProject(pool);
+		} finally {
+			if (pool != ForkJoinPool.commonPool()) {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private RhapsodyElementStore readProject(ForkJoinPool pool) throws EolModelLoadingException {
+		if (this.snapshotFile != null && RhapsodySnapshot.isSnapshot(this.snapshotFile)) {
+			try {
+				return RhapsodySnapshot.refresh(this.snapshotFile, this.projectFile, this.newTerms, pool);
+			} catch (IOException | XMLStreamException e) {
+				LOG.error("Unable to refresh the snapshot {}", this.snapshotFile, e);
+				throw new EolModelLoadingException(e, this);
+			}
+		}
+		RhapsodyElementStore result;
+		try {
+			result = RhapsodyElementStore.of(RhapsodyFileProject.load(this.projectFile, this.newTerms, pool));
+		} catch (IOException | XMLStreamException e) {
+			LOG.error("Unable to read the Rhapsody project {}", this.projectFile, e);
+			throw new EolModelLoadingException(e, this);
+		}
+		if (this.snapshotFile != null) {
+			try {
+				RhapsodySnapshot.write(result, this.snapshotFile);
+			} catch (IOException e) {
+				LOG.error("Unable to write the snapshot {}", this.snapshotFile, e);
+				throw new EolModelLoadingException(e, this);
+			}
+		}
+		return result;
+	}
+
+	private RhapsodyElementStore openSnapshot() throws EolModelLoadingException {
+		try {
+			return RhapsodySnapshot.open(this.snapshotFile);
+		} catch (IOException e) {
+			LOG.error("Unable to open the snapshot {}", this.snapshotFile, e);
+			throw new EolModelLoadingException(e, this);
+		}
+	}
+
+	/**
+	 * A type is a metaclass if it is used in the project, listed in the Rhapsody installation,
+	 * or has an API interface.
+	 */
+	private boolean isMetaclass(String type) {
+		String name = RhapsodyKindLattice.canonical(type);
+		return this.metaclasses.contains(name) || RhapsodyKindLattice.interfaceName(name) != null;
+	}
+
+	private boolean isNewTerm(String type) {
+		return this.newTermNames.contains(type);
+	}
+
+	/**
+	 * The lattice is extended with the kinds that are queried but not used in the project.
+	 */
+	private synchronized RhapsodyKindLattice lattice(Collection<String> names) {
+		boolean added = false;
+		for (String name : names) {
+			added |= this.metaclasses.add(RhapsodyKindLattice.canonical(name));
+		}
+		if (added) {
+			this.lattice = new RhapsodyKindLattice(this.metaclasses);
+		}
+		return this.lattice;
+	}
+
+	private static RhapsodyStoreElement element(Object instance) {
+		if (instance instanceof RhapsodyStoreElement) {
+			return (RhapsodyStoreElement) instance;
+		}
+		LOG.error("The instance is not a RhapsodyStoreElement: {}", instance);
+		throw new IllegalArgumentException("Instance is not a model element");
+	}
+
+	/**
+	 * Read the metaclass names from the <code>metaclasses.txt</code> of the installation.
+	 */
+	private Set<String> installedMetaclasses(Path installation) throws EolModelLoadingException {
+		try {
+			List<String> lines = Files.readAllLines(installation.resolve("Doc/metaclasses.txt"));
+			if (lines.isEmpty()) {
+				return Collections.emptySet();
+			}
+			return Arrays.stream(lines.get(0).split(","))
+					.map(RhapsodyKindLattice::canonical)
+					.collect(Collectors.toSet());
+		} catch (IOException e) {
+			LOG.error("Unable to read the metaclasses file at given path: {}", installation);
+			throw new EolModelLoadingException(e, this);
+		}
+	}
+
+}
@@ -0,0 +1,714 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Refreshes a {@link RhapsodyElementStore} after some units of its project changed, see
+ * {@link RhapsodyElementStore#refresh}. Only the units that changed are read (see
+ * {@link RhapsodyFileProject#loadUnits}); references from them to the elements of other units
+ * are resolved to stand-ins of the store elements, so tag types and values resolve as if the
+ * whole project was read.
+ * <p>
+ * The new store has the same contents order as a store built from the whole project: the
+ * containment tree of the store is walked depth first, and each changed unit is replaced by the
+ * elements read from its file. Subtrees that don't have a changed unit are copied from the store
+ * as a whole: as contents are depth first, a subtree is a range of indices, and its owners and
+ * ends only need to be shifted. The other columns are copied with the element indices they
+ * reference remapped. Symbol ids are kept, so strings are not interned again. The cost of a
+ * refresh is reading the changed units plus a linear copy of the store, not reading the whole
+ * project.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+class RhapsodyStorePatch {
+
+	RhapsodyStorePatch(RhapsodyElementStore store, Path projectFile, Collection<String> newTerms, ForkJoinPool pool) {
+		this.store = store;
+		this.units = store.getUnits();
+		this.projectFile = projectFile;
+		this.directory = projectFile.getParent();
+		this.newTerms = newTerms;
+		this.pool = pool;
+		this.stamps = new RhapsodyUnitStamp[this.units.size()];
+		this.changed = new boolean[this.units.size()];
+	}
+
+	/**
+	 * @return the refreshed store, or the store if no unit changed
+	 */
+	RhapsodyElementStore apply() throws IOException, XMLStreamException {
+		if (!Files.isRegularFile(this.projectFile)) {
+			throw new NoSuchFileException(this.projectFile.toString());
+		}
+		if (!unitPath(0).equals(this.projectFile)) {
+			LOG.info("The store was not read from {}, reading the project", this.projectFile);
+			return RhapsodyElementStore.of(RhapsodyFileProject.load(this.projectFile, this.newTerms, this.pool));
+		}
+		List<Path> changedFiles = new ArrayList<>();
+		boolean touched = false;
+		for (int unit = 0; unit < this.units.size(); unit++) {
+			Path path = unitPath(unit);
+			this.known.add(path);
+			RhapsodyUnitStamp stamp = this.units.stamp(unit);
+			this.stamps[unit] = stamp.check(path);
+			this.changed[unit] = !stamp.sameContents(this.stamps[unit]);
+			touched |= this.stamps[unit] != stamp;
+			if (this.changed[unit] && this.stamps[unit] != null) {
+				changedFiles.add(path);
+			}
+			this.unitOfRoot.put(this.units.root(unit), unit);
+		}
+		for (int i = this.store.contentSize(); i < this.store.size(); i++) {
+			this.storeExternals.put(storeUuid(i), i);
+		}
+		if (changedFiles.isEmpty() && !hasChanges()) {
+			return touched ? this.store.withUnits(currentUnits()) : this.store;
+		}
+		long start = System.nanoTime();
+		this.loaded = RhapsodyFileProject.loadUnits(
+				this.projectFile,
+				this.newTerms,
+				changedFiles,
+				this.known::contains,
+				this::outside,
+				this.pool);
+		for (Path path : this.loaded.getUnitStamps().keySet()) {
+			RhapsodyFileElement root = this.loaded.getUnitRoot(path);
+			if (root != null) {
+				this.loadedRoots.put(root.getGUID(), root);
+			}
+		}
+		RhapsodyElementStore result = build();
+		LOG.info("Refreshed {}, read {} of {} units in {} ms",
+				result, this.loaded.getUnitStamps().size(), this.units.size(), (System.nanoTime() - start) / 1_000_000);
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyStorePatch.class);
+
+	private final RhapsodyElementStore store;
+	private final RhapsodyStoreUnits units;
+	private final Path projectFile;
+	private final Path directory;
+	private final Collection<String> newTerms;
+	private final ForkJoinPool pool;
+	// The current stamp of each unit (null if its file was removed), and if its contents changed
+	private final RhapsodyUnitStamp[] stamps;
+	private final boolean[] changed;
+	private final Set<Path> known = new HashSet<>();
+	private final Map<Integer, Integer> unitOfRoot = new HashMap<>();
+	// The changed units, read, and the roots of their units by GUID
+	private RhapsodyFileProject loaded;
+	private final Map<String, RhapsodyFileElement> loadedRoots = new HashMap<>();
+	// Stand-ins of the store elements referenced from the changed units
+	private final Map<Integer, RhapsodyFileElement> standIns = new HashMap<>();
+	private final Map<RhapsodyFileElement, Integer> standInIndices = new IdentityHashMap<>();
+	// The new store: the source of each element (a store index, or ~position in added), and the
+	// owner and end of the contents
+	private final Ints order = new Ints();
+	private final Ints owners = new Ints();
+	private final Ints ends = new Ints();
+	private final List<RhapsodyFileElement> added = new ArrayList<>();
+	private final Map<RhapsodyFileElement, Integer> addedIndices = new IdentityHashMap<>();
+	// The new index of each store element, -1 if it was removed
+	private int[] remap;
+	// Store elements that were removed but are still referenced, kept as external elements
+	private final Map<Integer, Integer> removedExternals = new HashMap<>();
+	private final BitSet forcedExternal = new BitSet();
+	private final Map<UUID, Integer> storeExternals = new HashMap<>();
+	private int contentSize;
+
+	private boolean hasChanges() {
+		for (boolean c : this.changed) {
+			if (c) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private UUID storeUuid(int index) {
+		LongBuffer guids = this.store.getGuids();
+		return new UUID(guids.get(2 * index), guids.get(2 * index + 1));
+	}
+
+	private Path unitPath(int unit) {
+		return RhapsodyStoreUnits.path(this.directory, this.store.getSymbols().get(this.units.file(unit)));
+	}
+
+	private RhapsodyElementStore build() {
+		RhapsodySymbols.Table symbols = new RhapsodySymbols.Table();
+		RhapsodySymbols previous = this.store.getSymbols();
+		for (int i = 0; i < previous.size(); i++) {
+			symbols.intern(previous.get(i));
+		}
+		boolean[] dirty = new boolean[this.store.contentSize()];
+		for (int unit = 0; unit < this.units.size(); unit++) {
+			if (this.changed[unit]) {
+				for (int owner = this.store.owner(this.units.root(unit)); owner >= 0 && !dirty[owner]; owner = this.store.owner(owner)) {
+					dirty[owner] = true;
+				}
+			}
+		}
+		this.remap = new int[this.store.size()];
+		Arrays.fill(this.remap, -1);
+		emitStored(0, -1, dirty);
+		this.contentSize = this.order.size();
+		// Elements of changed units that were read again replace their previous version
+		for (RhapsodyFileElement element : this.added) {
+			int previousIndex = storeIndex(element.getGUID());
+			if (previousIndex >= 0 && this.remap[previousIndex] < 0) {
+				this.remap[previousIndex] = this.addedIndices.get(element);
+			}
+		}
+		for (int i = this.store.contentSize(); i < this.store.size(); i++) {
+			this.remap[i] = this.order.size();
+			this.order.add(i);
+		}
+		// Stereotypes and new terms
+		int[] newTermColumn = new int[this.contentSize];
+		Ints stereotypeOffsets = new Ints();
+		Ints stereotypes = new Ints();
+		for (int i = 0; i < this.contentSize; i++) {
+			stereotypeOffsets.add(stereotypes.size());
+			int source = this.order.get(i);
+			if (source >= 0) {
+				boolean recompute = false;
+				for (int s = 0; s < this.store.stereotypeCount(source); s++) {
+					int stereotype = storedReference(this.store.stereotype(source, s));
+					recompute |= this.order.get(stereotype) < 0;
+					stereotypes.add(stereotype);
+				}
+				newTermColumn[i] = recompute
+						? newTerm(stereotypes, stereotypeOffsets.get(i))
+						: this.store.newTerm(source) < 0 ? -1 : storedReference(this.store.newTerm(source));
+			} else {
+				RhapsodyFileElement element = this.added.get(~source);
+				for (RhapsodyFileElement stereotype : element.getStereotypes()) {
+					stereotypes.add(reference(stereotype));
+				}
+				RhapsodyFileElement newTerm = element.getNewTermStereotype();
+				newTermColumn[i] = newTerm == null ? -1 : reference(newTerm);
+			}
+		}
+		stereotypeOffsets.add(stereotypes.size());
+		var values = new RhapsodyStoreBuilder.FromProject(this.loaded);
+		Map<Integer, RhapsodyStoreColumn> attributes = columns(this.store.getAttributes(), symbols, values::attributes);
+		Map<Integer, RhapsodyStoreColumn> tags = columns(this.store.getTags(), symbols, values::tags);
+		// Structure, the external elements found while copying the columns are last
+		int size = this.order.size();
+		long[] guids = new long[2 * size];
+		int[] metaclasses = new int[size];
+		int[] names = new int[size];
+		int[] owners = Arrays.copyOf(this.owners.toArray(), size);
+		int[] ends = Arrays.copyOf(this.ends.toArray(), size);
+		int[] newTermIndices = Arrays.copyOf(newTermColumn, size);
+		byte[] flags = new byte[size];
+		int[] offsets = Arrays.copyOf(stereotypeOffsets.toArray(), size + 1);
+		LongBuffer storeGuids = this.store.getGuids();
+		IntBuffer storeMetaclasses = this.store.getMetaclassColumn();
+		IntBuffer storeNames = this.store.getNames();
+		ByteBuffer storeFlags = this.store.getFlags();
+		BitSet metaclassNames = new BitSet();
+		Set<Integer> newTermNames = new LinkedHashSet<>();
+		this.newTerms.forEach(n -> newTermNames.add(symbols.intern(n)));
+		for (int i = 0; i < size; i++) {
+			int source = this.order.get(i);
+			if (source >= 0) {
+				guids[2 * i] = storeGuids.get(2 * source);
+				guids[2 * i + 1] = storeGuids.get(2 * source + 1);
+				metaclasses[i] = storeMetaclasses.get(source);
+				names[i] = storeNames.get(source);
+				flags[i] = (byte) (storeFlags.get(source) | (this.forcedExternal.get(i) ? RhapsodyElementStore.EXTERNAL : 0));
+			} else {
+				RhapsodyFileElement element = this.added.get(~source);
+				UUID uuid = RhapsodyElementStore.uuid(element.getGUID());
+				if (uuid == null) {
+					throw new IllegalArgumentException("The element " + element + " does not have a valid GUID");
+				}
+				guids[2 * i] = uuid.getMostSignificantBits();
+				guids[2 * i + 1] = uuid.getLeastSignificantBits();
+				metaclasses[i] = symbols.intern(element.getMetaClass());
+				names[i] = symbols.intern(element.getName());
+				flags[i] = (byte) ((element.getIsExternal() == 1 ? RhapsodyElementStore.EXTERNAL : 0)
+						| (this.loaded.isNewTerm(element) ? RhapsodyElementStore.NEW_TERM : 0));
+			}
+			if (i < this.contentSize) {
+				metaclassNames.set(metaclasses[i]);
+				if ((flags[i] & RhapsodyElementStore.NEW_TERM) != 0) {
+					newTermNames.add(names[i]);
+				}
+			} else {
+				owners[i] = -1;
+				ends[i] = i + 1;
+				newTermIndices[i] = -1;
+				offsets[i + 1] = offsets[i];
+			}
+		}
+		return new RhapsodyElementStore(
+				symbols,
+				this.contentSize,
+				LongBuffer.wrap(guids),
+				IntBuffer.wrap(metaclasses),
+				IntBuffer.wrap(names),
+				IntBuffer.wrap(owners),
+				IntBuffer.wrap(ends),
+				IntBuffer.wrap(newTermIndices),
+				ByteBuffer.wrap(flags),
+				IntBuffer.wrap(offsets),
+				IntBuffer.wrap(stereotypes.toArray()),
+				IntBuffer.wrap(guidOrder(guids)),
+				IntBuffer.wrap(newTermNames.stream().mapToInt(Integer::intValue).toArray()),
+				IntBuffer.wrap(metaclassNames.stream().toArray()),
+				attributes,
+				tags,
+				units(symbols));
+	}
+
+	/**
+	 * Add a store element to the contents. If the element is the root of a changed unit, the
+	 * elements read from the unit are added instead; if no changed unit is nested in it, its
+	 * subtree is copied.
+	 */
+	private void emitStored(int index, int owner, boolean[] dirty) {
+		Integer unit = this.unitOfRoot.get(index);
+		if (unit != null && this.changed[unit]) {
+			RhapsodyFileElement root = this.stamps[unit] == null ? null : this.loaded.getUnitRoot(unitPath(unit));
+			if (root != null && !this.addedIndices.containsKey(root)) {
+				emitAdded(root, owner, dirty);
+			}
+			return;
+		}
+		if (this.remap[index] >= 0) {
+			return;
+		}
+		int start = this.order.size();
+		int end = this.store.end(index);
+		if (!dirty[index]) {
+			for (int i = index; i < end; i++) {
+				this.remap[i] = start + i - index;
+				this.order.add(i);
+				this.owners.add(i == index ? owner : this.store.owner(i) - index + start);
+				this.ends.add(this.store.end(i) - index + start);
+			}
+			return;
+		}
+		this.remap[index] = start;
+		this.order.add(index);
+		this.owners.add(owner);
+		this.ends.add(-1);
+		for (int child = index + 1; child < end; child = this.store.end(child)) {
+			emitStored(child, start, dirty);
+		}
+		this.ends.set(start, this.order.size());
+	}
+
+	/**
+	 * Add an element read from a changed unit, and its nested elements: the elements nested in
+	 * it in its unit, and the roots of the units it aggregates, in aggregates order (as when the
+	 * units of a project are linked).
+	 */
+	private void emitAdded(RhapsodyFileElement element, int owner, boolean[] dirty) {
+		int start = add(element);
+		this.owners.add(owner);
+		this.ends.add(-1);
+		List<RhapsodyFileElement> nested = element.getNestedElements();
+		int local = 0;
+		for (String guid : element.getAggregates()) {
+			if (local < nested.size() && guid.equals(nested.get(local).getGUID())) {
+				emitAdded(nested.get(local++), start, dirty);
+				continue;
+			}
+			RhapsodyFileElement root = this.loadedRoots.get(guid);
+			if (root != null) {
+				if (root.getOwner() == null && !this.addedIndices.containsKey(root)) {
+					emitAdded(root, start, dirty);
+				}
+				continue;
+			}
+			int index = storeIndex(guid);
+			if (index >= 0 && this.unitOfRoot.containsKey(index)) {
+				emitStored(index, start, dirty);
+			}
+		}
+		for (RhapsodyFileElement child : nested.subList(local, nested.size())) {
+			emitAdded(child, start, dirty);
+		}
+		this.ends.set(start, this.order.size());
+	}
+
+	/**
+	 * @return the index of an element read from a unit, in the new store
+	 */
+	private int add(RhapsodyFileElement element) {
+		int index = this.order.size();
+		this.order.add(~this.added.size());
+		this.added.add(element);
+		this.addedIndices.put(element, index);
+		return index;
+	}
+
+	/**
+	 * @return the index of a content element of the store, or -1 if there is no element with
+	 * 	the GUID
+	 */
+	private int storeIndex(String guid) {
+		UUID uuid = RhapsodyElementStore.uuid(guid);
+		return uuid == null ? -1 : this.store.indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+
+	/**
+	 * @return the new index of an element referenced by a store element. Removed elements are
+	 * 	kept as external elements.
+	 */
+	private int storedReference(int index) {
+		int result = this.remap[index];
+		if (result >= 0) {
+			return result;
+		}
+		return this.removedExternals.computeIfAbsent(index, i -> {
+			int external = this.order.size();
+			this.order.add(i);
+			this.forcedExternal.set(external);
+			return external;
+		});
+	}
+
+	/**
+	 * @return the new index of an element referenced by an element read from a unit
+	 */
+	private int reference(RhapsodyFileElement element) {
+		Integer result = this.addedIndices.get(element);
+		if (result != null) {
+			return result;
+		}
+		Integer standIn = this.standInIndices.get(element);
+		if (standIn != null) {
+			return storedReference(standIn);
+		}
+		UUID uuid = RhapsodyElementStore.uuid(element.getGUID());
+		Integer external = uuid == null ? null : this.storeExternals.get(uuid);
+		if (external != null) {
+			return this.remap[external];
+		}
+		return add(element);
+	}
+
+	/**
+	 * @return the new index of a value that is an element, or -1 if the value is not an element
+	 */
+	private int valueReference(Object value) {
+		if (value instanceof RhapsodyHandle) {
+			return reference(this.loaded.resolve((RhapsodyHandle) value));
+		} else if (value instanceof RhapsodyFileElement) {
+			return reference((RhapsodyFileElement) value);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the first of the stereotypes that is a new term, or -1
+	 */
+	private int newTerm(Ints stereotypes, int from) {
+		for (int i = from; i < stereotypes.size(); i++) {
+			int stereotype = stereotypes.get(i);
+			int source = this.order.get(stereotype);
+			boolean newTerm = source >= 0
+					? this.store.hasFlag(source, RhapsodyElementStore.NEW_TERM)
+					: this.loaded.isNewTerm(this.added.get(~source));
+			if (newTerm) {
+				return stereotype;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Find a store element referenced from a changed unit.
+	 *
+	 * @return a stand-in of the element, or null if the store has no element with the GUID
+	 */
+	private RhapsodyFileElement outside(RhapsodyHandle handle) {
+		int index = storeIndex(handle.getGUID());
+		if (index < 0) {
+			UUID uuid = RhapsodyElementStore.uuid(handle.getGUID());
+			index = uuid == null ? -1 : this.storeExternals.getOrDefault(uuid, -1);
+		}
+		return index < 0 ? null : this.standIns.computeIfAbsent(index, this::standIn);
+	}
+
+	/**
+	 * A stand-in has the name, metaclass and fields of a store element, with references to
+	 * elements as handles, so they are resolved as references of the changed units.
+	 */
+	private RhapsodyFileElement standIn(int index) {
+		RhapsodyStoreElement element = this.store.element(index);
+		String fileClass = "I" + element.getMetaClass();
+		RhapsodyFileElement result = element.getIsExternal() == 1
+				? RhapsodyFileElement.external(new RhapsodyHandle(fileClass, element.getName(), element.getGUID(), null, null), element.getMetaClass(), null)
+				: new RhapsodyFileElement(fileClass, element.getMetaClass());
+		result.putField(RhapsodyFileElement.ID, element.getGUID());
+		result.putField(RhapsodyFileElement.NAME, element.getName());
+		for (String field : element.getFieldNames()) {
+			result.putField(field, handles(element.getField(field)));
+		}
+		this.standInIndices.put(result, index);
+		return result;
+	}
+
+	private static Object handles(Object value) {
+		if (value instanceof RhapsodyStoreElement) {
+			var element = (RhapsodyStoreElement) value;
+			return new RhapsodyHandle("I" + element.getMetaClass(), element.getName(), element.getGUID(), null, null);
+		}
+		if (value instanceof List) {
+			List<Object> result = new ArrayList<>();
+			for (Object item : (List<?>) value) {
+				result.add(handles(item));
+			}
+			return result;
+		}
+		return value;
+	}
+
+	/**
+	 * Copy the columns of the store, and add the values of the elements read from the units.
+	 */
+	private Map<Integer, RhapsodyStoreColumn> columns(
+			Map<Integer, RhapsodyStoreColumn> stored,
+			RhapsodySymbols.Table symbols,
+			BiConsumer<RhapsodyFileElement, BiConsumer<String, Object>> values) {
+		// The values of the elements read, by column, in contents order
+		Map<Integer, List<Object>> addedValues = new HashMap<>();
+		for (int i = 0; i < this.contentSize; i++) {
+			int source = this.order.get(i);
+			if (source < 0) {
+				int index = i;
+				values.accept(this.added.get(~source), (name, value) -> {
+					List<Object> column = addedValues.computeIfAbsent(symbols.intern(name), n -> new ArrayList<>());
+					column.add(index);
+					column.add(value);
+				});
+			}
+		}
+		Set<Integer> names = new LinkedHashSet<>(stored.keySet());
+		names.addAll(addedValues.keySet());
+		Map<Integer, RhapsodyStoreColumn> result = new HashMap<>();
+		for (Integer name : names) {
+			RhapsodyStoreColumn column = stored.get(name);
+			long[] rows = column == null ? new long[0] : storedRows(column);
+			List<Object> fromUnits = addedValues.getOrDefault(name, List.of());
+			var builder = new RhapsodyStoreColumn.Builder();
+			int next = 0;
+			for (long row : rows) {
+				int element = (int) (row >>> 32);
+				for (; next < fromUnits.size() && (Integer) fromUnits.get(next) < element; next += 2) {
+					builder.addValue((Integer) fromUnits.get(next), fromUnits.get(next + 1), this::valueReference, symbols);
+				}
+				copy(column, (int) row, element, builder);
+			}
+			for (; next < fromUnits.size(); next += 2) {
+				builder.addValue((Integer) fromUnits.get(next), fromUnits.get(next + 1), this::valueReference, symbols);
+			}
+			RhapsodyStoreColumn built = builder.build();
+			if (built.size() > 0) {
+				result.put(name, built);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the rows of the store column that are kept, as the new element index (high int)
+	 * 	and the row (low int), in new element order
+	 */
+	private long[] storedRows(RhapsodyStoreColumn column) {
+		long[] result = new long[column.size()];
+		int count = 0;
+		boolean sorted = true;
+		for (int row = 0; row < column.size(); row++) {
+			int source = column.element(row);
+			int index = this.remap[source];
+			if (index >= 0 && index < this.contentSize && this.order.get(index) == source) {
+				result[count] = ((long) index << 32) | row;
+				sorted &= count == 0 || result[count - 1] < result[count];
+				count++;
+			}
+		}
+		result = Arrays.copyOf(result, count);
+		if (!sorted) {
+			Arrays.sort(result);
+		}
+		return result;
+	}
+
+	private void copy(RhapsodyStoreColumn column, int row, int element, RhapsodyStoreColumn.Builder builder) {
+		byte kind = column.kind(row);
+		if (kind != RhapsodyStoreColumn.LIST) {
+			builder.add(element, kind, payload(kind, column.payload(row)));
+			return;
+		}
+		int count = column.itemCount(row);
+		builder.addList(element, count);
+		for (int item = 0; item < count; item++) {
+			byte itemKind = column.itemKind(row, item);
+			builder.addItem(itemKind, payload(itemKind, column.item(row, item)));
+		}
+	}
+
+	private int payload(byte kind, int payload) {
+		return kind == RhapsodyStoreColumn.ELEMENT ? storedReference(payload) : payload;
+	}
+
+	/**
+	 * Merge the content elements copied from the store, that are in GUID order in the store,
+	 * with the elements read from the units.
+	 */
+	private int[] guidOrder(long[] guids) {
+		IntBuffer stored = this.store.getGuidOrder();
+		Ints read = new Ints();
+		for (int i = 0; i < this.contentSize; i++) {
+			if (this.order.get(i) < 0) {
+				read.add(i);
+			}
+		}
+		int[] fromUnits = read.toArray();
+		Integer[] boxed = Arrays.stream(fromUnits).boxed().toArray(Integer[]::new);
+		Arrays.sort(boxed, (a, b) -> compare(guids, a, b));
+		int[] result = new int[this.contentSize];
+		int count = 0;
+		int next = 0;
+		for (int i = 0; i < stored.limit(); i++) {
+			int source = stored.get(i);
+			int index = this.remap[source];
+			if (index < 0 || index >= this.contentSize || this.order.get(index) != source) {
+				continue;
+			}
+			for (; next < boxed.length && compare(guids, boxed[next], index) < 0; next++) {
+				result[count++] = boxed[next];
+			}
+			result[count++] = index;
+		}
+		for (; next < boxed.length; next++) {
+			result[count++] = boxed[next];
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static int compare(long[] guids, int a, int b) {
+		int compare = Long.compare(guids[2 * a], guids[2 * b]);
+		return compare != 0 ? compare : Long.compare(guids[2 * a + 1], guids[2 * b + 1]);
+	}
+
+	/**
+	 * @param symbols the symbols of the new store
+	 * @return the units of the new store: the units that were not removed, and the new units
+	 */
+	private RhapsodyStoreUnits units(RhapsodySymbols.Table symbols) {
+		var result = new RhapsodyStoreUnits.Builder();
+		for (int unit = 0; unit < this.units.size(); unit++) {
+			if (this.stamps[unit] == null) {
+				continue;
+			}
+			int root;
+			if (this.changed[unit]) {
+				Integer index = this.addedIndices.get(this.loaded.getUnitRoot(unitPath(unit)));
+				root = index == null || index >= this.contentSize ? -1 : index;
+			} else {
+				root = this.remap[this.units.root(unit)];
+			}
+			if (root >= 0) {
+				result.add(this.units.file(unit), root, this.stamps[unit]);
+			}
+		}
+		for (Map.Entry<Path, RhapsodyUnitStamp> unit : this.loaded.getUnitStamps().entrySet()) {
+			if (!this.known.contains(unit.getKey())) {
+				Integer root = this.addedIndices.get(this.loaded.getUnitRoot(unit.getKey()));
+				if (root != null && root < this.contentSize) {
+					result.add(symbols.intern(RhapsodyStoreUnits.file(this.directory, unit.getKey())), root, unit.getValue());
+				}
+			}
+		}
+		return result.build();
+	}
+
+	/**
+	 * @return the units of the store with their current stamps, when no unit changed
+	 */
+	private RhapsodyStoreUnits currentUnits() {
+		var result = new RhapsodyStoreUnits.Builder();
+		for (int unit = 0; unit < this.units.size(); unit++) {
+			result.add(this.units.file(unit), this.units.root(unit), this.stamps[unit]);
+		}
+		return result.build();
+	}
+
+	/**
+	 * A growable list of ints.
+	 */
+	private static class Ints {
+
+		void add(int value) {
+			if (this.size == this.values.length) {
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			this.values[this.size++] = value;
+		}
+
+		int get(int index) {
+			return this.values[index];
+		}
+
+		void set(int index, int value) {
+			this.values[index] = value;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(this.values, this.size);
+		}
+
+		private int[] values = new int[16];
+		private int size;
+
+	}
+
+}
@@ -0,0 +1,156 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.exceptions.EolIllegalPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
+
+import cas.mcmaster.epsilon.emc.RhapsodyAccessors;
+import cas.mcmaster.epsilon.emc.RhapsodyAccessors.Accessor;
+
+/**
+ * Property getter for {@link RhapsodyStoreElement}s. Follows the same resolution as
+ * {@link RhapsodyFilePropertyGetter}:
+ * <ol>
+ * 	<li> An accessor of the element (getX, isX, hasX), or a no arguments method named X.
+ * 	<li> An attribute (file field) named <code>_X</code>, <code>X</code> or <code>m_X</code>
+ * 		 (ignoring case).
+ * 	<li> A tag named X, of the element or of its stereotypes. Tag values are stored already
+ * 		 cast to the tag type.
+ * </ol>
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyStorePropertyGetter implements IPropertyGetter {
+
+	@Override
+	public boolean hasProperty(Object object, String property, IEolContext context) {
+		if (!(object instanceof RhapsodyStoreElement)) {
+			return false;
+		}
+		var element = (RhapsodyStoreElement) object;
+		return method(property) != null
+				|| attribute(element, property) != null
+				|| tagValue(element, property) != NO_TAG;
+	}
+
+	@Override
+	public Object invoke(Object target, String property, IEolContext context) throws EolRuntimeException {
+		if (!(target instanceof RhapsodyStoreElement)) {
+			throw new IllegalArgumentException("Can't get property of none RhapsodyStoreElement");
+		}
+		var element = (RhapsodyStoreElement) target;
+		Method method = method(property);
+		if (method != null) {
+			try {
+				return method.invoke(element);
+			} catch (ReflectiveOperationException e) {
+				throw new EolInternalException(e);
+			}
+		}
+		String attribute = attribute(element, property);
+		if (attribute != null) {
+			return element.getField(attribute);
+		}
+		Object value = tagValue(element, property);
+		if (value == NO_TAG) {
+			LOG.error("Could not find a property or tag with name {}", property);
+			throw new EolIllegalPropertyException(
+					element,
+					property,
+					context == null ? null : context.getExecutorFactory().getActiveModuleElement(),
+					context);
+		}
+		return value;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyStorePropertyGetter.class);
+	private static final RhapsodyAccessors ACCESSORS = new RhapsodyAccessors();
+	private static final String[] FIELD_PREFIXES = {"_", "", "m_"};
+	/** Returned by {@link #tagValue} if the element has no tag, tags can have null values */
+	private static final Object NO_TAG = new Object();
+
+	/** The no arguments methods of the element, by lower case name */
+	private final Map<String, Method> methods = methods();
+
+	private Method method(String property) {
+		Accessor accessor = ACCESSORS.find(RhapsodyStoreElement.class, property);
+		if (accessor != null) {
+			return accessor.method();
+		}
+		return this.methods.get(property.toLowerCase());
+	}
+
+	/**
+	 * @return the name of the attribute for the property, or null if the element has none
+	 */
+	private static String attribute(RhapsodyStoreElement element, String property) {
+		for (String prefix : FIELD_PREFIXES) {
+			String name = prefix + property;
+			if (element.hasField(name)) {
+				return name;
+			}
+		}
+		for (String name : element.getFieldNames()) {
+			for (String prefix : FIELD_PREFIXES) {
+				if (name.equalsIgnoreCase(prefix + property)) {
+					return name;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The value of the local tag of the element, or else of the first stereotype that has the tag.
+	 */
+	private static Object tagValue(RhapsodyStoreElement element, String name) {
+		RhapsodyElementStore store = element.getStore();
+		RhapsodyStoreColumn column = store.getTag(name);
+		if (column == null) {
+			return NO_TAG;
+		}
+		int row = column.find(element.getIndex());
+		if (row >= 0) {
+			return store.value(column, row);
+		}
+		for (int i = 0; i < store.stereotypeCount(element.getIndex()); i++) {
+			row = column.find(store.stereotype(element.getIndex(), i));
+			if (row >= 0) {
+				return store.value(column, row);
+			}
+		}
+		return NO_TAG;
+	}
+
+	private static Map<String, Method> methods() {
+		Map<String, Method> result = new ConcurrentHashMap<>();
+		for (Method m : RhapsodyStoreElement.class.getMethods()) {
+			if (m.getParameterCount() == 0
+					&& !Modifier.isStatic(m.getModifiers())
+					&& m.getDeclaringClass() == RhapsodyStoreElement.class) {
+				result.putIfAbsent(m.getName().toLowerCase(), m);
+			}
+		}
+		return result;
+	}
+
+}
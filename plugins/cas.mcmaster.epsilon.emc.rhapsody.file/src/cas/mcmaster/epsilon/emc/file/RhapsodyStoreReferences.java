@@ -0,0 +1,157 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The reverse references of a {@link RhapsodyElementStore}: for each element, the content
+ * elements that reference it. An element references the elements in the values of its
+ * attributes (e.g. the <code>_dependsOn</code> of a dependency, the <code>_otherClass</code> of a
+ * relation or the <code>_typeOf</code> of an attribute) and of its local tags, and the project
+ * elements whose GUID is the value of a text field (<code>type="s"</code> fields of the unit
+ * files, e.g. <code>_defaultComposite</code>).
+ * <p>
+ * The references are indexed in two passes over the columns of the store, and kept in compressed
+ * rows: the sources of the references to an element are a sorted range of an int array, so they
+ * are found in time proportional to their number, in contents order and without duplicates.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+final class RhapsodyStoreReferences {
+
+	/**
+	 * @param store the store
+	 * @return the reverse references of the store elements
+	 */
+	static RhapsodyStoreReferences of(RhapsodyElementStore store) {
+		return new RhapsodyStoreReferences(store);
+	}
+
+	/**
+	 * @param index the index of an element
+	 * @return the indices of the content elements that reference the element, in increasing order
+	 */
+	int[] sources(int index) {
+		return Arrays.copyOfRange(this.sources, this.offsets[index], this.offsets[index + 1]);
+	}
+
+	/** Marks symbols that have not been resolved yet */
+	private static final int UNKNOWN = -2;
+
+	private final RhapsodyElementStore store;
+	private final int[] symbolTargets;
+	private int[] offsets;
+	private int[] sources;
+
+	private RhapsodyStoreReferences(RhapsodyElementStore store) {
+		this.store = store;
+		this.symbolTargets = new int[store.getSymbols().size()];
+		Arrays.fill(this.symbolTargets, UNKNOWN);
+		int size = store.size();
+		int[] counts = new int[size + 1];
+		visit((source, target) -> counts[target + 1]++);
+		for (int i = 0; i < size; i++) {
+			counts[i + 1] += counts[i];
+		}
+		int[] next = Arrays.copyOf(counts, size);
+		int[] all = new int[counts[size]];
+		visit((source, target) -> all[next[target]++] = source);
+		compact(counts, all);
+	}
+
+	/**
+	 * Sort the sources of each element and remove the duplicates, e.g. an element that
+	 * references another one from two fields.
+	 */
+	private void compact(int[] counts, int[] all) {
+		int size = counts.length - 1;
+		this.offsets = new int[size + 1];
+		int length = 0;
+		for (int i = 0; i < size; i++) {
+			this.offsets[i] = length;
+			Arrays.sort(all, counts[i], counts[i + 1]);
+			for (int j = counts[i]; j < counts[i + 1]; j++) {
+				if (j == counts[i] || all[j] != all[j - 1]) {
+					all[length++] = all[j];
+				}
+			}
+		}
+		this.offsets[size] = length;
+		this.sources = Arrays.copyOf(all, length);
+	}
+
+	private void visit(Reference reference) {
+		visit(this.store.getAttributes(), reference);
+		visit(this.store.getTags(), reference);
+	}
+
+	private void visit(Map<Integer, RhapsodyStoreColumn> columns, Reference reference) {
+		int contentSize = this.store.contentSize();
+		for (RhapsodyStoreColumn column : columns.values()) {
+			byte kind = column.getKind();
+			if (kind != RhapsodyStoreColumn.NULL
+					&& kind != RhapsodyStoreColumn.ELEMENT
+					&& kind != RhapsodyStoreColumn.STRING
+					&& kind != RhapsodyStoreColumn.LIST) {
+				continue;
+			}
+			for (int row = 0; row < column.size(); row++) {
+				int source = column.element(row);
+				if (source >= contentSize) {
+					continue;
+				}
+				if (column.kind(row) == RhapsodyStoreColumn.LIST) {
+					for (int item = 0; item < column.itemCount(row); item++) {
+						visit(source, column.itemKind(row, item), column.item(row, item), reference);
+					}
+				} else {
+					visit(source, column.kind(row), column.payload(row), reference);
+				}
+			}
+		}
+	}
+
+	private void visit(int source, byte kind, int payload, Reference reference) {
+		int target = -1;
+		if (kind == RhapsodyStoreColumn.ELEMENT) {
+			target = payload;
+		} else if (kind == RhapsodyStoreColumn.STRING) {
+			target = target(payload);
+		}
+		if (target >= 0 && target != source) {
+			reference.add(source, target);
+		}
+	}
+
+	/**
+	 * @return the index of the element whose GUID is the symbol, or -1
+	 */
+	private int target(int symbol) {
+		int result = this.symbolTargets[symbol];
+		if (result == UNKNOWN) {
+			UUID uuid = RhapsodyElementStore.uuid(this.store.getSymbols().get(symbol));
+			result = uuid == null ? -1 : this.store.indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			this.symbolTargets[symbol] = result;
+		}
+		return result;
+	}
+
+	@FunctionalInterface
+	private interface Reference {
+
+		void add(int source, int target);
+
+	}
+
+}
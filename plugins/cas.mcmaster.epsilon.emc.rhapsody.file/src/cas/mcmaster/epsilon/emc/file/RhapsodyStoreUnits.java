@@ -0,0 +1,140 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The units a {@link RhapsodyElementStore} was read from, so the store can be refreshed when
+ * some of the units change (see {@link RhapsodyElementStore#refresh}). For each unit, the store
+ * keeps its file (relative to the directory of the project file, as a symbol), the index of its
+ * root element, and the stamp of the file when it was read (see {@link RhapsodyUnitStamp}). The
+ * project file is the first unit.
+ * <p>
+ * Stores of live models don't have units.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+final class RhapsodyStoreUnits {
+
+	/** The units of stores that don't have units */
+	static final RhapsodyStoreUnits NONE = new RhapsodyStoreUnits(IntBuffer.allocate(0), IntBuffer.allocate(0), LongBuffer.allocate(0));
+
+	/**
+	 * @param files the symbol of the file of each unit
+	 * @param roots the index of the root element of each unit
+	 * @param stamps the modification time, size and hash of each unit
+	 */
+	RhapsodyStoreUnits(IntBuffer files, IntBuffer roots, LongBuffer stamps) {
+		this.files = files;
+		this.roots = roots;
+		this.stamps = stamps;
+	}
+
+	/**
+	 * @return the number of units
+	 */
+	int size() {
+		return this.files.limit();
+	}
+
+	/**
+	 * @param unit the unit
+	 * @return the symbol of the path of the unit file, relative to the directory of the project
+	 * 	file and with <code>/</code> separators
+	 */
+	int file(int unit) {
+		return this.files.get(unit);
+	}
+
+	/**
+	 * @param unit the unit
+	 * @return the index of the root element of the unit
+	 */
+	int root(int unit) {
+		return this.roots.get(unit);
+	}
+
+	/**
+	 * @param directory the directory of the project file
+	 * @param unit the path of a unit file
+	 * @return the path of the unit file as stored, relative to the directory
+	 */
+	static String file(Path directory, Path unit) {
+		return directory.relativize(unit.normalize()).toString().replace('\\', '/');
+	}
+
+	/**
+	 * @param directory the directory of the project file
+	 * @param file the path of a unit file, as stored
+	 * @return the path of the unit file
+	 */
+	static Path path(Path directory, String file) {
+		return directory.resolve(file).normalize();
+	}
+
+	RhapsodyUnitStamp stamp(int unit) {
+		return new RhapsodyUnitStamp(this.stamps.get(3 * unit), this.stamps.get(3 * unit + 1), this.stamps.get(3 * unit + 2));
+	}
+
+	IntBuffer getFiles() {
+		return this.files.duplicate();
+	}
+
+	IntBuffer getRoots() {
+		return this.roots.duplicate();
+	}
+
+	LongBuffer getStamps() {
+		return this.stamps.duplicate();
+	}
+
+	private final IntBuffer files;
+	private final IntBuffer roots;
+	private final LongBuffer stamps;
+
+	/**
+	 * Builds the units of a store.
+	 */
+	static class Builder {
+
+		void add(int file, int root, RhapsodyUnitStamp stamp) {
+			if (this.size == this.files.length) {
+				this.files = Arrays.copyOf(this.files, this.size * 2);
+				this.roots = Arrays.copyOf(this.roots, this.size * 2);
+				this.stamps = Arrays.copyOf(this.stamps, this.size * 6);
+			}
+			this.files[this.size] = file;
+			this.roots[this.size] = root;
+			this.stamps[3 * this.size] = stamp.getModified();
+			this.stamps[3 * this.size + 1] = stamp.getLength();
+			this.stamps[3 * this.size + 2] = stamp.getHash();
+			this.size++;
+		}
+
+		RhapsodyStoreUnits build() {
+			return new RhapsodyStoreUnits(
+					IntBuffer.wrap(Arrays.copyOf(this.files, this.size)),
+					IntBuffer.wrap(Arrays.copyOf(this.roots, this.size)),
+					LongBuffer.wrap(Arrays.copyOf(this.stamps, 3 * this.size)));
+		}
+
+		private int[] files = new int[8];
+		private int[] roots = new int[8];
+		private long[] stamps = new long[24];
+		private int size;
+
+	}
+
+}
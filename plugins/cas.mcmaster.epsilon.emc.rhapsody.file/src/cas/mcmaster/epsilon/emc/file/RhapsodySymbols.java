@@ -0,0 +1,164 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interned strings of a {@link RhapsodyElementStore}: metaclass, property and tag names, and
+ * string values. Each distinct string is stored once and identified by an int id, so columns
+ * store ids instead of strings.
+ * <p>
+ * Symbols are either a {@link Table} in memory, used to build stores, or read from the buffers
+ * of a {@link RhapsodySnapshot}, where strings are decoded when they are accessed.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public abstract class RhapsodySymbols {
+
+	/** The id returned for strings that are not symbols */
+	public static final int NONE = -1;
+
+	/**
+	 * @param symbol the string
+	 * @return the id of the string, or {@link #NONE} if it is not a symbol
+	 */
+	public abstract int find(String symbol);
+
+	/**
+	 * @param id the id
+	 * @return the string with the id, or null if the id is {@link #NONE}
+	 */
+	public abstract String get(int id);
+
+	public abstract int size();
+
+	/**
+	 * The hash of the UTF-8 bytes of a symbol (FNV-1a), used by the hash table of snapshots.
+	 */
+	static int hash(byte[] bytes) {
+		int result = 0x811c9dc5;
+		for (byte b : bytes) {
+			result = (result ^ (b & 0xff)) * 0x01000193;
+		}
+		return result;
+	}
+
+	/**
+	 * Symbols in memory. Strings are added with {@link #intern(String)}.
+	 */
+	static class Table extends RhapsodySymbols {
+
+		/**
+		 * Get the id of a string, adding it if it is not a symbol.
+		 *
+		 * @param symbol the string
+		 * @return the id
+		 */
+		int intern(String symbol) {
+			Integer id = this.ids.get(symbol);
+			if (id == null) {
+				id = this.symbols.size();
+				this.symbols.add(symbol);
+				this.ids.put(symbol, id);
+			}
+			return id;
+		}
+
+		@Override
+		public int find(String symbol) {
+			return this.ids.getOrDefault(symbol, NONE);
+		}
+
+		@Override
+		public String get(int id) {
+			return id == NONE ? null : this.symbols.get(id);
+		}
+
+		@Override
+		public int size() {
+			return this.symbols.size();
+		}
+
+		private final List<String> symbols = new ArrayList<>();
+		private final Map<String, Integer> ids = new HashMap<>();
+
+	}
+
+	/**
+	 * Symbols stored in buffers: the UTF-8 bytes of all symbols, the offset of each symbol in the
+	 * bytes, and an open addressing hash table (of id + 1, 0 for empty slots) to find symbols.
+	 */
+	static class Mapped extends RhapsodySymbols {
+
+		Mapped(IntBuffer offsets, ByteBuffer bytes, IntBuffer table) {
+			this.offsets = offsets;
+			this.bytes = bytes;
+			this.table = table;
+		}
+
+		@Override
+		public int find(String symbol) {
+			byte[] utf8 = symbol.getBytes(StandardCharsets.UTF_8);
+			int mask = this.table.limit() - 1;
+			for (int slot = hash(utf8) & mask; ; slot = (slot + 1) & mask) {
+				int id = this.table.get(slot) - 1;
+				if (id == NONE) {
+					return NONE;
+				}
+				if (matches(id, utf8)) {
+					return id;
+				}
+			}
+		}
+
+		@Override
+		public String get(int id) {
+			if (id == NONE) {
+				return null;
+			}
+			int start = this.offsets.get(id);
+			byte[] utf8 = new byte[this.offsets.get(id + 1) - start];
+			this.bytes.get(start, utf8);
+			return new String(utf8, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public int size() {
+			return this.offsets.limit() - 1;
+		}
+
+		private final IntBuffer offsets;
+		private final ByteBuffer bytes;
+		private final IntBuffer table;
+
+		private boolean matches(int id, byte[] utf8) {
+			int start = this.offsets.get(id);
+			if (this.offsets.get(id + 1) - start != utf8.length) {
+				return false;
+			}
+			for (int i = 0; i < utf8.length; i++) {
+				if (this.bytes.get(start + i) != utf8[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,334 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the elements of a Rhapsody unit file (<code>.rpyx</code>, <code>.sbsx</code>,
+ * <code>.cmpx</code>, etc.) with a StAX stream reader.
+ * <p>
+ * The elements of a unit are stored as a flat list under the <code>RHAPSODY-MODEL</code> tag.
+ * Each element is a tag named after its class (e.g. <code>IClass</code>), with a child tag per
+ * field. The <code>type</code> attribute of a field tells how its value is stored:
+ * <ul>
+ * 	<li> <code>a</code> and <code>s</code>: text.
+ * 	<li> <code>r</code>: a reference to another element (a handle), see {@link RhapsodyHandle}.
+ * 	<li> <code>c</code> and <code>w</code>: a container of values and/or handles.
+ * 	<li> <code>p</code>: the element's Rhapsody properties, which are not read.
+ * </ul>
+ * The containment is given by the <code>AggregatesList</code> field, that lists the GUIDs of the
+ * nested elements. Nested elements can be in the same unit or in other units, so the elements
+ * are not linked by the parser, see {@link RhapsodyFileProject}. Graphical elements (diagram
+ * contents, <code>CGI*</code> classes) are skipped.
+ * <p>
+ * A parser is not thread safe, but different parsers can be used in parallel.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyUnitParser {
+
+	public RhapsodyUnitParser() {
+		this.factory = XMLInputFactory.newInstance();
+		this.factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		this.factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		this.factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
+	/**
+	 * Read the elements of the unit, in file order. The first element is the unit's root (e.g.
+	 * the project or the package).
+	 *
+	 * @param unit the path to the unit file
+	 * @return the elements of the unit
+	 * @throws IOException if the file can't be read
+	 * @throws XMLStreamException if the file is not well formed
+	 */
+	public List<RhapsodyFileElement> parse(Path unit) throws IOException, XMLStreamException {
+		LOG.info("Parsing unit {}", unit);
+		try (InputStream in = Files.newInputStream(unit)) {
+			return parse(in);
+		}
+	}
+
+	/**
+	 * Read the elements of the unit, in file order.
+	 *
+	 * @param in the contents of the unit file
+	 * @return the elements of the unit
+	 * @throws XMLStreamException if the contents are not well formed
+	 */
+	public List<RhapsodyFileElement> parse(InputStream in) throws XMLStreamException {
+		List<RhapsodyFileElement> result = new ArrayList<>();
+		XMLStreamReader reader = this.factory.createXMLStreamReader(in);
+		try {
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& MODEL.equals(reader.getLocalName())) {
+					readElements(reader, result);
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Map the class of an element in the unit files to the name of its metaclass, e.g.
+	 * <code>IClass</code> to <code>Class</code>.
+	 *
+	 * @param fileClass the file class
+	 * @return the metaclass name
+	 */
+	public static String metaclassOf(String fileClass) {
+		String metaclass = METACLASSES.get(fileClass);
+		if (metaclass != null) {
+			return metaclass;
+		}
+		if (fileClass.length() > 1 && fileClass.charAt(0) == 'I' && Character.isUpperCase(fileClass.charAt(1))) {
+			return fileClass.substring(1);
+		}
+		return fileClass;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyUnitParser.class);
+	private static final String MODEL = "RHAPSODY-MODEL";
+	private static final String AGGREGATES = "AggregatesList";
+	private static final String RAW_CONTAINER = "IRPYRawContainer";
+	private static final String VALUE = "value";
+	private static final String TYPE = "type";
+	private static final String GRAPHICS_PREFIX = "CGI";
+	private static final String HANDLE_ID = "_hid";
+	// File classes that don't match the metaclass name
+	private static final Map<String, String> METACLASSES = Map.of(
+			"ISubsystem", "Package",
+			"IPrimitiveOperation", "Operation",
+			"IReception", "EventReception",
+			"IMSC", "SequenceDiagram",
+			"IStateChart", "Statechart",
+			"ICodeGenConfigInfo", "Configuration",
+			"IDiagram", "ObjectModelDiagram");
+
+	private final XMLInputFactory factory;
+	/** Share the field names (map keys) between elements */
+	private final Map<String, String> names = new HashMap<>();
+
+	private void readElements(XMLStreamReader reader, List<RhapsodyFileElement> result) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String fileClass = reader.getLocalName();
+				if (fileClass.startsWith(GRAPHICS_PREFIX)) {
+					skip(reader);
+				} else {
+					result.add(readElement(reader, fileClass));
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				return;
+			}
+		}
+	}
+
+	private RhapsodyFileElement readElement(XMLStreamReader reader, String fileClass) throws XMLStreamException {
+		var element = new RhapsodyFileElement(name(fileClass), metaclassOf(fileClass));
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				readField(reader, element);
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		return element;
+	}
+
+	private void readField(XMLStreamReader reader, RhapsodyFileElement element) throws XMLStreamException {
+		String field = name(reader.getLocalName());
+		if (AGGREGATES.equals(field)) {
+			List<String> guids = new ArrayList<>();
+			for (Object value : readContainer(reader)) {
+				if (value instanceof String) {
+					guids.add((String) value);
+				}
+			}
+			element.setAggregates(guids);
+			return;
+		}
+		String type = reader.getAttributeValue(null, TYPE);
+		if (type == null) {
+			skip(reader);
+			return;
+		}
+		switch (type) {
+		case "a":
+		case "s":
+			element.putField(field, readText(reader));
+			break;
+		case "r":
+			RhapsodyHandle handle = readReference(reader);
+			if (handle != null) {
+				element.putField(field, handle);
+			}
+			break;
+		case "c":
+		case "w":
+			element.putField(field, readContainer(reader));
+			break;
+		default:
+			skip(reader);
+		}
+	}
+
+	/**
+	 * Read the handle of a reference field.
+	 *
+	 * @return the handle, or null if the reference is empty
+	 */
+	private RhapsodyHandle readReference(XMLStreamReader reader) throws XMLStreamException {
+		RhapsodyHandle result = null;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (result == null) {
+					result = readHandle(reader);
+				} else {
+					skip(reader);
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read the values and handles of a container field, nested containers are flattened.
+	 */
+	private List<Object> readContainer(XMLStreamReader reader) throws XMLStreamException {
+		List<Object> result = new ArrayList<>();
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (VALUE.equals(name)) {
+					result.add(readText(reader));
+				} else if (RAW_CONTAINER.equals(name)) {
+					depth++;
+				} else {
+					RhapsodyHandle handle = readHandle(reader);
+					if (handle != null) {
+						result.add(handle);
+					}
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Read a handle, the reader must be at the start of the handle tag.
+	 *
+	 * @return the handle, or null if the tag is not a handle (or is empty)
+	 */
+	private RhapsodyHandle readHandle(XMLStreamReader reader) throws XMLStreamException {
+		Map<String, String> values = new HashMap<>();
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				values.put(name, readText(reader));
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				break;
+			}
+		}
+		String guid = values.get(HANDLE_ID);
+		if (guid == null) {
+			return null;
+		}
+		return new RhapsodyHandle(
+				name(values.get("_hm2Class")),
+				values.get("_hname"),
+				guid,
+				values.get("_hfilename"),
+				values.get("_hsubsystem"));
+	}
+
+	/**
+	 * Read the text of the current tag. Text in nested tags is ignored.
+	 */
+	private String readText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			switch (event) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+				if (depth == 1) {
+					text.append(reader.getText());
+				}
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Skip the current tag and all its contents.
+	 */
+	private void skip(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private String name(String name) {
+		if (name == null) {
+			return null;
+		}
+		return this.names.computeIfAbsent(name, n -> n);
+	}
+
+}
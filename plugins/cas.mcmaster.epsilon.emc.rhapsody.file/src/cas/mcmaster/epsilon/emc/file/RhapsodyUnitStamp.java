@@ -0,0 +1,122 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32C;
+
+/**
+ * The version of a unit file when it was read: its modification time, size and a hash of its
+ * contents. A unit is current if its file has the same modification time and size; if only the
+ * modification time differs (e.g. the unit was saved without changes), the contents are hashed
+ * to find if the unit changed.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+final class RhapsodyUnitStamp {
+
+	RhapsodyUnitStamp(long modified, long length, long hash) {
+		this.modified = modified;
+		this.length = length;
+		this.hash = hash;
+	}
+
+	/**
+	 * Stamp the contents of a unit file, read after its modification time. If the file changes
+	 * while it is read, the stamp is older than the file, so the unit is read again later.
+	 *
+	 * @param modified the modification time of the file
+	 * @param contents the contents of the file
+	 * @return the stamp
+	 */
+	static RhapsodyUnitStamp of(FileTime modified, byte[] contents) {
+		CRC32C crc = new CRC32C();
+		crc.update(contents);
+		return new RhapsodyUnitStamp(modified.toMillis(), contents.length, crc.getValue());
+	}
+
+	/**
+	 * Stamp a unit file, reading its contents.
+	 *
+	 * @param file the unit file
+	 * @return the stamp
+	 * @throws IOException if the file can't be read
+	 */
+	static RhapsodyUnitStamp of(Path file) throws IOException {
+		FileTime modified = Files.getLastModifiedTime(file);
+		CRC32C crc = new CRC32C();
+		long length = 0;
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, read);
+				length += read;
+			}
+		}
+		return new RhapsodyUnitStamp(modified.toMillis(), length, crc.getValue());
+	}
+
+	/**
+	 * Stamp the file of this unit again. The contents are only read if the modification time or
+	 * the size of the file changed.
+	 *
+	 * @param file the unit file
+	 * @return this stamp if the file has the same modification time and size, the current stamp
+	 * 	of the file otherwise, or null if the file does not exist
+	 * @throws IOException if the file can't be read
+	 */
+	RhapsodyUnitStamp check(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		if (Files.getLastModifiedTime(file).toMillis() == this.modified && Files.size(file) == this.length) {
+			return this;
+		}
+		return of(file);
+	}
+
+	/**
+	 * @param other another stamp of the unit
+	 * @return true, if the contents of the unit are the same in both stamps
+	 */
+	boolean sameContents(RhapsodyUnitStamp other) {
+		return other != null && other.length == this.length && other.hash == this.hash;
+	}
+
+	long getModified() {
+		return this.modified;
+	}
+
+	long getLength() {
+		return this.length;
+	}
+
+	long getHash() {
+		return this.hash;
+	}
+
+	@Override
+	public String toString() {
+		return "RhapsodyUnitStamp [" + this.modified + ", " + this.length + " bytes, " + Long.toHexString(this.hash) + "]";
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final long modified;
+	private final long length;
+	private final long hash;
+
+}
@@ -11,23 +11,30 @@
 package cas.mcmaster.epsilon.emc;
 
 import java.util.Objects;
+import java.util.UUID;
 
 /**
- * Key for the property caches.
+ * Key for the property caches. The element is identified by its GUID, kept as a {@link UUID}
+ * (see {@link RhapsodyElementIds}).
  * 
  * @author Horacio Hoyos Rodriguez
  */
 public class IRPKey {
 	
 	public IRPKey(String gUID, String property) {
+		this(RhapsodyElementIds.parse(gUID), property);
+	}
+	
+	public IRPKey(UUID id, String property) {
 		super();
-		this.GUID = gUID;
+		this.GUID = id;
 		this.property = property;
+		this.hash = 31 * id.hashCode() + property.hashCode();
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(this.GUID, this.property);
+		return this.hash;
 	}
 	
 	@Override
@@ -39,12 +46,19 @@ public class IRPKey {
 		if (getClass() != obj.getClass())
 			return false;
 		IRPKey other = (IRPKey) obj;
-		return Objects.equals(this.GUID, other.GUID) && Objects.equals(this.property, other.property);
+		return this.hash == other.hash
+				&& Objects.equals(this.GUID, other.GUID)
+				&& Objects.equals(this.property, other.property);
 	}
 	
+	@Override
+	public String toString() {
+		return "GUID " + this.GUID + "#" + this.property;
+	}
 	
-	private final String GUID;
+	private final UUID GUID;
 	private final String property;
+	private final int hash;
 	
 
 }
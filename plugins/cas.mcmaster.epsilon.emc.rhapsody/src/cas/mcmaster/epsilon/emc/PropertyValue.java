@@ -10,6 +10,8 @@
  ********************************************************************************/
 package cas.mcmaster.epsilon.emc;
 
+import java.util.Collection;
+
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 
 /**
@@ -33,6 +35,21 @@ public class PropertyValue {
 		return this.value;
 	}
 	
+	boolean isError() {
+		return this.error != null;
+	}
+	
+	/**
+	 * The weight of the value for caches with a maximum weight: collections weight one plus
+	 * their size, other values one.
+	 */
+	int weight() {
+		if (this.value instanceof Collection) {
+			return 1 + ((Collection<?>) this.value).size();
+		}
+		return 1;
+	}
+	
 	private PropertyValue(Object value, EolRuntimeException error) {
 		super();
 		this.value = value;
@@ -0,0 +1,170 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A table of the Java (native) methods used to get the value of a property, per element class
+ * and property name. The accessor for a property X is the first public, no arguments, method
+ * named getX(), isX() or hasX() (ignoring case, as {@link org.eclipse.epsilon.eol.util.ReflectionUtil}).
+ * <p>
+ * Accessors are resolved the first time a property is requested for a class, and the result
+ * (including the lack of an accessor) is kept for the life of the class. The method is invoked
+ * through a {@link MethodHandle} bound to the public Rhapsody API interface that declares it,
+ * so implementation classes (e.g. JNI proxies) don't need to be accessible.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyAccessors {
+
+	/**
+	 * The table used by the driver (the property getter, the mirror and the search), so the
+	 * accessors of each element class are resolved once.
+	 */
+	public static final RhapsodyAccessors SHARED = new RhapsodyAccessors();
+
+	/**
+	 * The accessor of a property.
+	 */
+	public static final class Accessor {
+
+		/**
+		 * @return the Java method
+		 */
+		public Method method() {
+			return this.method;
+		}
+
+		/**
+		 * Invoke the accessor. Exceptions thrown by the method are not wrapped.
+		 *
+		 * @param target the element
+		 * @return the value of the property
+		 * @throws Throwable if the method throws an exception
+		 */
+		public Object invoke(Object target) throws Throwable {
+			return this.handle.invokeExact(target);
+		}
+
+		private final Method method;
+		private final MethodHandle handle;
+
+		private Accessor(Method method, MethodHandle handle) {
+			this.method = method;
+			this.handle = handle;
+		}
+	}
+
+	/**
+	 * Find the accessor for the property.
+	 *
+	 * @param type the class of the element
+	 * @param property the property name
+	 * @return the accessor, or null if the class has no accessor for the property
+	 */
+	public Accessor find(Class<?> type, String property) {
+		Accessor result = this.table.get(type).computeIfAbsent(property, p -> resolve(type, p));
+		return result == NONE ? null : result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyAccessors.class);
+	private static final String[] PREFIXES = {"get", "is", "has"};
+	private static final MethodType GENERIC = MethodType.methodType(Object.class, Object.class);
+	private static final Accessor NONE = new Accessor(null, null);
+
+	private final ClassValue<Map<String, Accessor>> table = new ClassValue<>() {
+		@Override
+		protected Map<String, Accessor> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private static Accessor resolve(Class<?> type, String property) {
+		LOG.info("Resolving accessor for property {} in {}", property, type.getName());
+		Method[] methods;
+		try {
+			methods = type.getMethods();
+		} catch (SecurityException e) {
+			// We can't determine if the method exists
+			LOG.error("Unable to get property methods", e);
+			return NONE;
+		}
+		for (String prefix : PREFIXES) {
+			String name = prefix + property;
+			for (Method m : methods) {
+				if (m.getParameterCount() == 0
+						&& !Modifier.isStatic(m.getModifiers())
+						&& m.getName().equalsIgnoreCase(name)) {
+					Accessor accessor = accessor(type, m);
+					if (accessor != null) {
+						return accessor;
+					}
+				}
+			}
+		}
+		LOG.info("No accessor for property {} in {}", property, type.getName());
+		return NONE;
+	}
+
+	private static Accessor accessor(Class<?> type, Method method) {
+		Method api = publicDeclaration(type, method);
+		try {
+			MethodHandle handle = MethodHandles.publicLookup().unreflect(api).asType(GENERIC);
+			return new Accessor(method, handle);
+		} catch (IllegalAccessException e) {
+			LOG.warn("Method {} is not accessible", method, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Find a declaration of the method in a public type, preferring interfaces. Rhapsody elements
+	 * are accessed via their API interfaces.
+	 */
+	private static Method publicDeclaration(Class<?> type, Method method) {
+		Deque<Class<?>> pending = new ArrayDeque<>();
+		Set<Class<?>> visited = new HashSet<>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			Collections.addAll(pending, c.getInterfaces());
+		}
+		while (!pending.isEmpty()) {
+			Class<?> i = pending.poll();
+			if (!visited.add(i)) {
+				continue;
+			}
+			if (Modifier.isPublic(i.getModifiers())) {
+				try {
+					return i.getMethod(method.getName());
+				} catch (NoSuchMethodException e) {
+					// Try the super interfaces
+				}
+			}
+			Collections.addAll(pending, i.getInterfaces());
+		}
+		return method;
+	}
+
+}
@@ -0,0 +1,399 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+/**
+ * Detects when a script reads the same property of many elements of a type, and decides when
+ * the property should be prefetched for the elements of the type (see
+ * {@link RhapsodyPropertyGetter#prefetch(Collection, Collection)}).
+ * <p>
+ * The type of an element is its new term stereotype, or its metaclass. When a property has not
+ * been cached for <i>threshold</i> elements of the same type, within the last <i>window</i>
+ * property cache misses, the property is prefetched for the elements of the type in batches of
+ * <i>batch</i> elements, in the order of the type. The next batch is prefetched when the
+ * script has read half of the values of the previous ones, so the prefetch follows the script
+ * and only the values it is about to read are held in the cache. The total number of prefetched
+ * values is limited by the <i>budget</i>. The prefetcher keeps track of how many of the
+ * prefetched values were read, see {@link #hitRatio()}; values that are evicted from the cache
+ * before they are read must be reported, see {@link #removed(IRPKey)}.
+ * <p>
+ * Types that are not metaclasses or new terms of the model (e.g. metaclasses missing from the
+ * <code>metaclasses.txt</code> of the installation) are not prefetched.
+ * <p>
+ * The settings are read from the model load properties (see the <code>PROPERTY_PREFETCH_*</code>
+ * keys in {@link RhapsodyModel}). Adaptive prefetching is disabled by default: prefetching reads
+ * a property for the elements of a type, in the thread that reads the property, so it is
+ * enabled by setting a threshold.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyAdaptivePrefetcher {
+
+	/**
+	 * Provides the elements of a type.
+	 */
+	@FunctionalInterface
+	public interface TypeElements {
+
+		/**
+		 * @param type the name of the metaclass or new term
+		 * @return the elements of the type
+		 * @throws Exception if the elements can't be retrieved
+		 */
+		Collection<?> of(String type) throws Exception;
+	}
+
+	/**
+	 * The elements to prefetch a property for.
+	 */
+	public final class Batch {
+
+		/**
+		 * @return the elements
+		 */
+		public List<?> elements() {
+			return this.elements;
+		}
+
+		/**
+		 * @return the property to prefetch
+		 */
+		public String property() {
+			return this.scan.property;
+		}
+
+		/**
+		 * Record a value of the batch that was prefetched.
+		 *
+		 * @param key the key of the value
+		 */
+		public void fetched(IRPKey key) {
+			if (RhapsodyAdaptivePrefetcher.this.pending.put(key, this.scan) == null) {
+				RhapsodyAdaptivePrefetcher.this.fetched.incrementAndGet();
+				this.scan.fetched();
+			}
+		}
+
+		private final Scan scan;
+		private final List<?> elements;
+
+		private Batch(Scan scan, List<?> elements) {
+			this.scan = scan;
+			this.elements = elements;
+		}
+
+	}
+
+	/** Adaptive prefetching is opt-in */
+	public static final int DEFAULT_THRESHOLD = 0;
+	public static final int DEFAULT_WINDOW = 512;
+	/** Half of the default cache size, so prefetched values leave room for the values read */
+	public static final long DEFAULT_BUDGET = RhapsodyCachePolicy.DEFAULT_MAX_SIZE / 2;
+	public static final int DEFAULT_BATCH = 256;
+
+	public RhapsodyAdaptivePrefetcher(int threshold, int window, long budget, TypeElements elements) {
+		this(threshold, window, budget, DEFAULT_BATCH, elements);
+	}
+
+	public RhapsodyAdaptivePrefetcher(int threshold, int window, long budget, int batch, TypeElements elements) {
+		if (threshold < 1 || window < threshold || budget < 0 || batch < 1) {
+			throw new IllegalArgumentException(
+					"The prefetch threshold and batch must be positive, the threshold not larger than the window, and the budget can't be negative.");
+		}
+		this.threshold = threshold;
+		this.window = window;
+		this.budget = budget;
+		this.batch = batch;
+		this.elements = elements;
+	}
+
+	/**
+	 * Create the prefetcher from the model load properties. Missing properties take the default
+	 * values.
+	 *
+	 * @param properties the load properties
+	 * @param elements provides the elements of a type
+	 * @return the prefetcher, or null if adaptive prefetching is disabled (threshold of 0)
+	 * @throws IllegalArgumentException if a value is not a number, or the settings are not valid
+	 */
+	public static RhapsodyAdaptivePrefetcher fromProperties(StringProperties properties, TypeElements elements) {
+		int threshold = (int) RhapsodyCachePolicy.longProperty(properties, RhapsodyModel.PROPERTY_PREFETCH_THRESHOLD, DEFAULT_THRESHOLD);
+		if (threshold == 0) {
+			LOG.info("Adaptive prefetch disabled");
+			return null;
+		}
+		int window = (int) RhapsodyCachePolicy.longProperty(properties, RhapsodyModel.PROPERTY_PREFETCH_WINDOW,
+				Math.max(DEFAULT_WINDOW, threshold));
+		long budget = RhapsodyCachePolicy.longProperty(properties, RhapsodyModel.PROPERTY_PREFETCH_BUDGET, DEFAULT_BUDGET);
+		return new RhapsodyAdaptivePrefetcher(threshold, window, budget, elements);
+	}
+
+	/**
+	 * Record that the value of the property was not cached for the element. The type of the
+	 * element is read from Rhapsody, and the elements of a type are retrieved, without holding
+	 * the lock of the prefetcher.
+	 *
+	 * @param element the element
+	 * @param property the property name
+	 * @return the elements for which the property should be prefetched, or null if none
+	 */
+	public Batch missed(IRPModelElement element, String property) {
+		if (remainingBudget() == 0) {
+			return null;
+		}
+		String type;
+		try {
+			type = typeOf(element);
+		} catch (RhapsodyRuntimeException e) {
+			LOG.warn("Unable to get the type of an element, property {} is not prefetched: {}", property, e.getMessage());
+			return null;
+		}
+		String pattern = type + "#" + property;
+		Scan scan;
+		boolean started = false;
+		synchronized (this) {
+			if (this.unknownTypes.contains(type)) {
+				return null;
+			}
+			scan = this.scans.get(pattern);
+			if (scan == null) {
+				if (++this.misses > this.window) {
+					this.counts.clear();
+					this.misses = 1;
+				}
+				int count = this.counts.merge(pattern, 1, Integer::sum);
+				if (count < this.threshold) {
+					return null;
+				}
+				LOG.info("Property {} read for {} elements of type {}, prefetching", property, count, type);
+				this.counts.remove(pattern);
+				scan = new Scan(property);
+				this.scans.put(pattern, scan);
+				started = true;
+			}
+		}
+		if (started) {
+			List<?> all = elementsOf(type);
+			if (all == null) {
+				return null;
+			}
+			scan.start(all);
+		}
+		return scan.next();
+	}
+
+	/**
+	 * Record that a cached value was read.
+	 *
+	 * @param key the key of the value
+	 * @return the next elements for which the property should be prefetched, or null if none
+	 */
+	public Batch read(IRPKey key) {
+		if (this.pending.isEmpty()) {
+			return null;
+		}
+		Scan scan = this.pending.remove(key);
+		if (scan == null) {
+			return null;
+		}
+		this.hits.incrementAndGet();
+		scan.done();
+		return scan.next();
+	}
+
+	/**
+	 * Record that a value was removed from the cache (e.g. evicted), so it is no longer waiting
+	 * to be read.
+	 *
+	 * @param key the key of the value
+	 */
+	public void removed(IRPKey key) {
+		if (this.pending.isEmpty()) {
+			return;
+		}
+		Scan scan = this.pending.remove(key);
+		if (scan != null) {
+			scan.done();
+		}
+	}
+
+	/**
+	 * @return the number of values that can still be prefetched
+	 */
+	public long remainingBudget() {
+		return Math.max(0, this.budget - this.fetched.get());
+	}
+
+	/**
+	 * @return the number of values prefetched
+	 */
+	public long fetchedCount() {
+		return this.fetched.get();
+	}
+
+	/**
+	 * @return the number of prefetched values that were read
+	 */
+	public long hitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of prefetched values that are in the cache and were not read yet
+	 */
+	public int pendingCount() {
+		return this.pending.size();
+	}
+
+	/**
+	 * @return the ratio of prefetched values that were read, 0 if no values were prefetched
+	 */
+	public double hitRatio() {
+		long total = this.fetched.get();
+		return total == 0 ? 0 : (double) this.hits.get() / total;
+	}
+
+	public int getThreshold() {
+		return this.threshold;
+	}
+
+	public int getWindow() {
+		return this.window;
+	}
+
+	public long getBudget() {
+		return this.budget;
+	}
+
+	public int getBatch() {
+		return this.batch;
+	}
+
+	@Override
+	public String toString() {
+		return "RhapsodyAdaptivePrefetcher [threshold=" + this.threshold + ", window=" + this.window
+				+ ", budget=" + this.budget + ", batch=" + this.batch + ", fetched=" + this.fetched
+				+ ", hits=" + this.hits + "]";
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyAdaptivePrefetcher.class);
+
+	private final int threshold;
+	private final int window;
+	private final long budget;
+	private final int batch;
+	private final TypeElements elements;
+	/** Misses per type#property in the current window */
+	private final Map<String, Integer> counts = new HashMap<>();
+	/** The type#property pairs being prefetched */
+	private final Map<String, Scan> scans = new HashMap<>();
+	/** The types whose elements can't be retrieved */
+	private final Set<String> unknownTypes = new HashSet<>();
+	/** Prefetched values that have not been read yet, and the scan that fetched them */
+	private final Map<IRPKey, Scan> pending = new ConcurrentHashMap<>();
+	private final AtomicLong fetched = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private int misses;
+
+	/**
+	 * The prefetch of a property for the elements of a type, one batch at a time.
+	 */
+	private final class Scan {
+
+		private final String property;
+		private List<?> elements;
+		/** The index of the first element of the next batch */
+		private int next;
+		/** The values of the scan waiting to be read */
+		private int outstanding;
+
+		private Scan(String property) {
+			this.property = property;
+		}
+
+		private synchronized void start(List<?> elements) {
+			this.elements = elements;
+		}
+
+		/**
+		 * @return the next batch, or null if the elements are not known yet, more than half a
+		 * 		   batch of values is waiting to be read, or all the elements were visited
+		 */
+		private synchronized Batch next() {
+			if (this.elements == null
+					|| this.outstanding > RhapsodyAdaptivePrefetcher.this.batch / 2
+					|| this.next >= this.elements.size()
+					|| remainingBudget() == 0) {
+				return null;
+			}
+			int end = Math.min(this.elements.size(), this.next + RhapsodyAdaptivePrefetcher.this.batch);
+			Batch result = new Batch(this, this.elements.subList(this.next, end));
+			this.next = end;
+			return result;
+		}
+
+		private synchronized void fetched() {
+			this.outstanding++;
+		}
+
+		private synchronized void done() {
+			this.outstanding--;
+		}
+
+	}
+
+	private static String typeOf(IRPModelElement element) {
+		String type = element.getUserDefinedMetaClass();
+		if (type == null || type.isEmpty()) {
+			type = element.getMetaClass();
+		}
+		return type;
+	}
+
+	/**
+	 * @return the elements of the type, or null if they can't be retrieved
+	 */
+	private List<?> elementsOf(String type) {
+		Collection<?> result;
+		try {
+			result = this.elements.of(type);
+		} catch (EolModelElementTypeNotFoundException e) {
+			LOG.warn("{} is not a metaclass or new term of the model, its properties are not prefetched", type);
+			synchronized (this) {
+				this.unknownTypes.add(type);
+			}
+			return null;
+		} catch (Exception e) {
+			LOG.warn("Unable to get the elements of type {}", type, e);
+			return null;
+		}
+		return result instanceof List ? (List<?>) result : new ArrayList<>(result);
+	}
+
+}
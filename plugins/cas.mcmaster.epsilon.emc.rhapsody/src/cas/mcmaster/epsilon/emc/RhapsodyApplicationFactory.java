@@ -0,0 +1,83 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import com.telelogic.rhapsody.core.IRPApplication;
+import com.telelogic.rhapsody.core.RPApplicationListener;
+import com.telelogic.rhapsody.core.RhapsodyAppServer;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+/**
+ * Provides the Rhapsody application a {@link RhapsodyModel} connects to. By default the model
+ * uses the {@link #APP_SERVER}, that connects to the running Rhapsody (or launches it) through
+ * the {@link RhapsodyAppServer}. Other factories can provide applications that are not backed by
+ * Rhapsody, e.g. in-memory applications for tests and benchmarks, see
+ * {@link RhapsodyModel#setApplicationFactory(RhapsodyApplicationFactory)}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public interface RhapsodyApplicationFactory {
+
+	/**
+	 * Connect through the {@link RhapsodyAppServer}.
+	 */
+	RhapsodyApplicationFactory APP_SERVER = new RhapsodyApplicationFactory() {
+
+		@Override
+		public IRPApplication getActiveApplication() {
+			return RhapsodyAppServer.getActiveRhapsodyApplication();
+		}
+
+		@Override
+		public IRPApplication createApplication() {
+			return RhapsodyAppServer.createRhapsodyApplication();
+		}
+
+		@Override
+		public void closeSession() {
+			RhapsodyAppServer.CloseSession();
+		}
+
+		@Override
+		public String toString() {
+			return "RhapsodyAppServer";
+		}
+	};
+
+	/**
+	 * @return the running application
+	 * @throws RhapsodyRuntimeException if there is no running application
+	 */
+	IRPApplication getActiveApplication();
+
+	/**
+	 * @return a new application
+	 * @throws RhapsodyRuntimeException if the application can't be created
+	 */
+	IRPApplication createApplication();
+
+	/**
+	 * Release the resources of the connection, after the model is disposed.
+	 */
+	void closeSession();
+
+	/**
+	 * Connect a listener to the events of the application.
+	 *
+	 * @param listener the listener
+	 * @param app the application, as returned by this factory
+	 * @return true, if the listener was connected
+	 */
+	default boolean listen(RPApplicationListener listener, IRPApplication app) {
+		return listener.connect(app);
+	}
+
+}
@@ -0,0 +1,206 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.common.util.StringProperties;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Weigher;
+
+/**
+ * The eviction policy of the property caches. The policy is read from the model load
+ * properties (see the <code>PROPERTY_CACHE_*</code> keys in {@link RhapsodyModel}):
+ * <ul>
+ * 	<li> maximum size (number of entries) or maximum weight (entries weighted by the
+ * 		 {@link Weigher} given to {@link #build(Weigher)}). Defaults to a maximum size of 10,000.
+ * 	<li> expire after access and/or expire after write, in seconds. Defaults to expire
+ * 		 10 minutes after write. A value of 0 disables expiry.
+ * 	<li> soft values, so values can be garbage collected on memory pressure.
+ * 	<li> disabled, in which case values are never kept.
+ * </ul>
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyCachePolicy {
+
+	public static final long DEFAULT_MAX_SIZE = 10_000;
+	public static final long DEFAULT_EXPIRE_AFTER_WRITE = TimeUnit.MINUTES.toSeconds(10);
+
+	/**
+	 * Create a policy with the default values.
+	 */
+	public RhapsodyCachePolicy() {
+		this(false, DEFAULT_MAX_SIZE, 0, 0, DEFAULT_EXPIRE_AFTER_WRITE, false);
+	}
+
+	public RhapsodyCachePolicy(
+		boolean disabled,
+		long maxSize,
+		long maxWeight,
+		long expireAfterAccess,
+		long expireAfterWrite,
+		boolean softValues) {
+		if (maxSize > 0 && maxWeight > 0) {
+			throw new IllegalArgumentException("Only one of the cache maximum size or maximum weight can be set.");
+		}
+		if (maxSize < 0 || maxWeight < 0 || expireAfterAccess < 0 || expireAfterWrite < 0) {
+			throw new IllegalArgumentException("Cache sizes and expiry times can't be negative.");
+		}
+		this.disabled = disabled;
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.expireAfterAccess = expireAfterAccess;
+		this.expireAfterWrite = expireAfterWrite;
+		this.softValues = softValues;
+	}
+
+	/**
+	 * Create the policy from the model load properties. Missing properties take the default
+	 * values. If a maximum weight is given, the default maximum size is not used; and if an
+	 * expire after access time is given, the default expire after write time is not used.
+	 *
+	 * @param properties the load properties
+	 * @return the policy
+	 * @throws IllegalArgumentException if a value is not a number, or the policy is not valid
+	 */
+	public static RhapsodyCachePolicy fromProperties(StringProperties properties) {
+		boolean disabled = properties.getBooleanProperty(RhapsodyModel.PROPERTY_CACHE_DISABLED, false);
+		long maxWeight = longProperty(properties, RhapsodyModel.PROPERTY_CACHE_MAX_WEIGHT, 0);
+		long maxSize = longProperty(properties, RhapsodyModel.PROPERTY_CACHE_MAX_SIZE,
+				maxWeight > 0 ? 0 : DEFAULT_MAX_SIZE);
+		long expireAfterAccess = longProperty(properties, RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_ACCESS, 0);
+		long expireAfterWrite = longProperty(properties, RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_WRITE,
+				expireAfterAccess > 0 ? 0 : DEFAULT_EXPIRE_AFTER_WRITE);
+		boolean softValues = properties.getBooleanProperty(RhapsodyModel.PROPERTY_CACHE_SOFT_VALUES, false);
+		return new RhapsodyCachePolicy(disabled, maxSize, maxWeight, expireAfterAccess, expireAfterWrite, softValues);
+	}
+
+	/**
+	 * Build a cache that follows the policy. Each entry has a weight of 1.
+	 *
+	 * @param <K> the type of keys
+	 * @param <V> the type of values
+	 * @return the cache
+	 */
+	public <K, V> Cache<K, V> build() {
+		return build((k, v) -> 1);
+	}
+
+	/**
+	 * Build a cache that follows the policy.
+	 *
+	 * @param <K> the type of keys
+	 * @param <V> the type of values
+	 * @param weigher the weigher used if the policy has a maximum weight
+	 * @return the cache
+	 */
+	public <K, V> Cache<K, V> build(Weigher<? super K, ? super V> weigher) {
+		return build(weigher, null);
+	}
+
+	/**
+	 * Build a cache that follows the policy, and notifies the removal of entries.
+	 *
+	 * @param <K> the type of keys
+	 * @param <V> the type of values
+	 * @param weigher the weigher used if the policy has a maximum weight
+	 * @param listener called when an entry is removed (evicted, expired, invalidated or
+	 * 		  replaced), or null
+	 * @return the cache
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> Cache<K, V> build(Weigher<? super K, ? super V> weigher, RemovalListener<? super K, ? super V> listener) {
+		Caffeine<K, V> builder = (Caffeine<K, V>) (Caffeine<?, ?>) Caffeine.newBuilder();
+		if (listener != null) {
+			builder.removalListener(listener);
+		}
+		if (this.disabled) {
+			LOG.info("Property cache disabled");
+			return builder.maximumSize(0).build();
+		}
+		if (this.maxSize > 0) {
+			builder.maximumSize(this.maxSize);
+		}
+		if (this.expireAfterAccess > 0) {
+			builder.expireAfterAccess(this.expireAfterAccess, TimeUnit.SECONDS);
+		}
+		if (this.expireAfterWrite > 0) {
+			builder.expireAfterWrite(this.expireAfterWrite, TimeUnit.SECONDS);
+		}
+		if (this.softValues) {
+			builder.softValues();
+		}
+		if (this.maxWeight > 0) {
+			return builder.maximumWeight(this.maxWeight).weigher(weigher).build();
+		}
+		return builder.build();
+	}
+
+	public boolean isDisabled() {
+		return this.disabled;
+	}
+
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+
+	public long getMaxWeight() {
+		return this.maxWeight;
+	}
+
+	public long getExpireAfterAccess() {
+		return this.expireAfterAccess;
+	}
+
+	public long getExpireAfterWrite() {
+		return this.expireAfterWrite;
+	}
+
+	public boolean hasSoftValues() {
+		return this.softValues;
+	}
+
+	@Override
+	public String toString() {
+		return "RhapsodyCachePolicy [disabled=" + this.disabled + ", maxSize=" + this.maxSize
+				+ ", maxWeight=" + this.maxWeight + ", expireAfterAccess=" + this.expireAfterAccess
+				+ ", expireAfterWrite=" + this.expireAfterWrite + ", softValues=" + this.softValues + "]";
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyCachePolicy.class);
+
+	private final boolean disabled;
+	private final long maxSize;
+	private final long maxWeight;
+	private final long expireAfterAccess;
+	private final long expireAfterWrite;
+	private final boolean softValues;
+
+	static long longProperty(StringProperties properties, String key, long defaultValue) {
+		if (!properties.hasProperty(key)) {
+			return defaultValue;
+		}
+		String value = properties.getProperty(key).trim();
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			LOG.error("The value {} of property {} is not a number", value, key);
+			throw new IllegalArgumentException("The value " + value + " of property " + key + " is not a number.");
+		}
+	}
+
+}
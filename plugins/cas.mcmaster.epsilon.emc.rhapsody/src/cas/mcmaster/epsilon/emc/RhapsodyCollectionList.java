@@ -0,0 +1,201 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * A lazy {@link List} view of an {@link IRPCollection} of model elements. Items are fetched from
+ * Rhapsody in pages, the first time an index in the page is accessed, and the size is provided
+ * by {@link IRPCollection#getCount()}. As a result, operations like <code>exists</code>,
+ * <code>first</code> or <code>select().first()</code> only fetch the elements they visit.
+ * <p>
+ * The list can be modified (e.g. by the {@link org.eclipse.epsilon.eol.models.CachedModel}
+ * caches), in which case all the items are fetched and the list becomes a regular
+ * {@link ArrayList}.
+ * <p>
+ * Items that are not model elements keep their slot, so the size and the indexes of the elements
+ * always match the collection: {@link #get(int)} returns null for them, and iterators and streams
+ * skip them, so they only return elements.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyCollectionList extends AbstractList<IRPModelElement> implements RandomAccess {
+
+	public static final int DEFAULT_PAGE_SIZE = 256;
+
+	public RhapsodyCollectionList(IRPCollection collection) {
+		this(collection, DEFAULT_PAGE_SIZE);
+	}
+
+	public RhapsodyCollectionList(IRPCollection collection, int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be positive");
+		}
+		this.collection = collection;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public synchronized IRPModelElement get(int index) {
+		if (this.materialised == null) {
+			Objects.checkIndex(index, size());
+			return element(fetch(index / this.pageSize)[index % this.pageSize]);
+		}
+		return this.materialised.get(index);
+	}
+
+	@Override
+	public synchronized int size() {
+		if (this.materialised != null) {
+			return this.materialised.size();
+		}
+		if (this.count < 0) {
+			this.count = this.collection.getCount();
+			this.pages = new Object[(this.count + this.pageSize - 1) / this.pageSize][];
+		}
+		return this.count;
+	}
+
+	@Override
+	public synchronized IRPModelElement set(int index, IRPModelElement element) {
+		return materialise().set(index, element);
+	}
+
+	@Override
+	public synchronized void add(int index, IRPModelElement element) {
+		materialise().add(index, element);
+		this.modCount++;
+	}
+
+	@Override
+	public synchronized IRPModelElement remove(int index) {
+		var result = materialise().remove(index);
+		this.modCount++;
+		return result;
+	}
+
+	@Override
+	public Iterator<IRPModelElement> iterator() {
+		return new Iterator<IRPModelElement>() {
+
+			@Override
+			public boolean hasNext() {
+				this.next = nextElement(this.next);
+				return this.next < size();
+			}
+
+			@Override
+			public IRPModelElement next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				this.last = this.next++;
+				return get(this.last);
+			}
+
+			@Override
+			public void remove() {
+				if (this.last < 0) {
+					throw new IllegalStateException();
+				}
+				RhapsodyCollectionList.this.remove(this.last);
+				this.next = this.last;
+				this.last = -1;
+			}
+
+			private int next;
+			private int last = -1;
+
+		};
+	}
+
+	@Override
+	public Spliterator<IRPModelElement> spliterator() {
+		return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED);
+	}
+
+	/**
+	 * @return the number of pages fetched from Rhapsody
+	 */
+	public synchronized int fetchedPages() {
+		if (this.pages == null) {
+			return 0;
+		}
+		int result = 0;
+		for (Object[] page : this.pages) {
+			if (page != null) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	private final IRPCollection collection;
+	private final int pageSize;
+	private int count = -1;
+	private Object[][] pages;
+	private List<IRPModelElement> materialised;
+
+	/**
+	 * @return the index of the first element at or after the index, or the size if there is none
+	 */
+	private synchronized int nextElement(int index) {
+		while (index < size() && get(index) == null) {
+			index++;
+		}
+		return index;
+	}
+
+	private static IRPModelElement element(Object item) {
+		return item instanceof IRPModelElement ? (IRPModelElement) item : null;
+	}
+
+	private Object[] fetch(int number) {
+		var page = this.pages[number];
+		if (page == null) {
+			int first = number * this.pageSize;
+			page = new Object[Math.min(this.pageSize, this.count - first)];
+			for (int i = 0; i < page.length; i++) {
+				// IRPCollection indexes start at 1
+				page[i] = this.collection.getItem(first + i + 1);
+			}
+			this.pages[number] = page;
+		}
+		return page;
+	}
+
+	private List<IRPModelElement> materialise() {
+		if (this.materialised == null) {
+			List<IRPModelElement> result = new ArrayList<>(size());
+			for (int i = 0; i < this.pages.length; i++) {
+				for (Object item : fetch(i)) {
+					result.add(element(item));
+				}
+			}
+			this.materialised = result;
+			this.pages = null;
+		}
+		return this.materialised;
+	}
+
+}
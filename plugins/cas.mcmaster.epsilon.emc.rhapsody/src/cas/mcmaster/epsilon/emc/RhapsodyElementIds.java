@@ -0,0 +1,81 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * Provides a compact (128 bit) id for model elements, to be used as the element part of cache
+ * keys. The element's GUID is fetched from Rhapsody the first time the id of an element (Java
+ * proxy) is requested, and kept in a weak identity map. As a result, as long as the same proxy
+ * is used, getting the id does not require a call to the Rhapsody API.
+ * <p>
+ * If the GUID of an element is changed, {@link #forget(IRPModelElement)} must be called so the
+ * new GUID is used.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyElementIds {
+
+	public RhapsodyElementIds() {
+		// Weak keys are compared by identity
+		this.ids = Caffeine.newBuilder()
+				.weakKeys()
+				.build();
+	}
+
+	/**
+	 * Get the id of the element.
+	 *
+	 * @param element the element
+	 * @return the id
+	 */
+	public UUID idOf(IRPModelElement element) {
+		return this.ids.get(element, e -> parse(e.getGUID()));
+	}
+
+	/**
+	 * Remove the element from the identity map, so the next call to {@link #idOf(IRPModelElement)}
+	 * gets the GUID from Rhapsody.
+	 *
+	 * @param element the element
+	 */
+	public void forget(IRPModelElement element) {
+		this.ids.invalidate(element);
+	}
+
+	/**
+	 * Parse a Rhapsody GUID (<code>GUID xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx</code>). GUIDs that
+	 * don't follow the format are mapped to a name based UUID.
+	 *
+	 * @param guid the Rhapsody GUID
+	 * @return the equivalent UUID
+	 */
+	public static UUID parse(String guid) {
+		if (guid.startsWith(GUID_PREFIX)) {
+			try {
+				return UUID.fromString(guid.substring(GUID_PREFIX.length()));
+			} catch (IllegalArgumentException e) {
+				// Fall through
+			}
+		}
+		return UUID.nameUUIDFromBytes(guid.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static final String GUID_PREFIX = "GUID ";
+	private final Cache<IRPModelElement, UUID> ids;
+
+}
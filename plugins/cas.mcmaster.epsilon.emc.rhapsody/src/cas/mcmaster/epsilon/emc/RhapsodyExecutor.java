@@ -0,0 +1,430 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+/**
+ * Runs the calls to the Rhapsody API in a single (affinity) thread. The JNI/COM layer of the API
+ * is not thread safe, so a model used by several threads (e.g. by the parallel EOL and EVL
+ * modules) must not call it from each of them. Instead, the calls are put in a queue and run, in
+ * order, by the affinity thread; the calling thread waits for the result.
+ * <p>
+ * Rhapsody objects are confined to the thread with {@link #confine(Object)}: the confined object
+ * runs all its methods in the affinity thread, and confines the Rhapsody objects they return (e.g.
+ * the elements of a collection, or of the list it is converted to). Hence, once the application is confined, so is every element
+ * reached from it, and the code that uses them (e.g. the {@link RhapsodyPropertyGetter}) needs no
+ * changes. Values served from the caches don't call Rhapsody, so they are read in the calling
+ * thread without waiting for the queue.
+ * <p>
+ * Calls made from the affinity thread (e.g. a Rhapsody event while a call is running) run
+ * directly. The <code>equals</code> and <code>hashCode</code> of confined objects don't call
+ * Rhapsody: they are answered in the calling thread from the identity of the confined object.
+ * <p>
+ * As the threads share the affinity thread, they often read the same value at the same time
+ * (e.g. the name of an element). Reads of a confined object (methods without arguments named
+ * <code>getX</code>, <code>isX</code> or <code>hasX</code>) that are already queued are not
+ * queued again: the readers share the result of the queued call. The affinity thread takes the
+ * queued calls in batches (of at most {@link #BATCH_SIZE}), so the cost of taking a call from the
+ * queue is paid once per batch.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyExecutor implements AutoCloseable {
+
+	/** The maximum number of calls taken from the queue at once */
+	public static final int BATCH_SIZE = 64;
+
+	public RhapsodyExecutor() {
+		this.thread = new Thread(this::serve, THREAD_NAME);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Run a task in the affinity thread, and wait for its result. Exceptions thrown by the task
+	 * are thrown to the caller.
+	 *
+	 * @param <T> the type of the result
+	 * @param task the task
+	 * @return the result of the task
+	 * @throws RhapsodyRuntimeException if the executor is closed, or the caller is interrupted
+	 * 		   while waiting
+	 */
+	public <T> T call(Supplier<T> task) {
+		try {
+			return submit(task::get);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return true, if the current thread is the affinity thread
+	 */
+	public boolean isAffinityThread() {
+		return Thread.currentThread() == this.thread;
+	}
+
+	/**
+	 * @return the number of calls waiting in the queue
+	 */
+	public int pendingCount() {
+		return this.queue.size();
+	}
+
+	/**
+	 * @return the number of calls run by the affinity thread
+	 */
+	public long callCount() {
+		return this.calls.sum();
+	}
+
+	/**
+	 * @return the number of batches of calls taken from the queue
+	 */
+	public long batchCount() {
+		return this.batches.sum();
+	}
+
+	/**
+	 * @return the number of reads that shared the result of a queued read, instead of calling
+	 * 		   Rhapsody
+	 */
+	public long coalescedCount() {
+		return this.coalesced.sum();
+	}
+
+	/**
+	 * Confine a Rhapsody object to the affinity thread. Objects that are not Rhapsody objects, or
+	 * are already confined, are returned as is.
+	 *
+	 * @param <T> the type of the object
+	 * @param target the object
+	 * @return a proxy of the object that runs its methods in the affinity thread
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T confine(T target) {
+		if (target == null || isConfined(target)) {
+			return target;
+		}
+		Class<?>[] interfaces = API_INTERFACES.get(target.getClass());
+		if (interfaces.length == 0) {
+			return target;
+		}
+		return (T) Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces, new Confined(target));
+	}
+
+	/**
+	 * Get the Rhapsody object of a confined object, e.g. to pass it to native code.
+	 *
+	 * @param <T> the type of the object
+	 * @param object the object
+	 * @return the Rhapsody object, or the object if it is not confined
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T unwrap(T object) {
+		if (isConfined(object)) {
+			return (T) ((Confined) Proxy.getInvocationHandler(object)).target;
+		}
+		return object;
+	}
+
+	/**
+	 * Stop the affinity thread. Calls waiting in the queue fail.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		this.thread.interrupt();
+		LOG.info("Rhapsody executor closed: {} calls in {} batches, {} reads coalesced",
+				callCount(), batchCount(), coalescedCount());
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyExecutor.class);
+	private static final String THREAD_NAME = "Rhapsody";
+	private static final String API_PACKAGE = IRPModelElement.class.getPackageName();
+
+	/**
+	 * The public Rhapsody API interfaces implemented by a class, used as the interfaces of its
+	 * confined proxies.
+	 */
+	private static final ClassValue<Class<?>[]> API_INTERFACES = new ClassValue<>() {
+		@Override
+		protected Class<?>[] computeValue(Class<?> type) {
+			Set<Class<?>> result = new LinkedHashSet<>();
+			Deque<Class<?>> pending = new ArrayDeque<>();
+			for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+				Collections.addAll(pending, c.getInterfaces());
+			}
+			while (!pending.isEmpty()) {
+				Class<?> i = pending.poll();
+				if (API_PACKAGE.equals(i.getPackageName()) && Modifier.isPublic(i.getModifiers())) {
+					result.add(i);
+				}
+				Collections.addAll(pending, i.getInterfaces());
+			}
+			return result.toArray(new Class<?>[0]);
+		}
+	};
+
+	private static final String[] READ_PREFIXES = {"get", "is", "has"};
+
+	private final BlockingQueue<FutureTask<?>> queue = new LinkedBlockingQueue<>();
+	/** The queued (or running) reads, by object and method */
+	private final Map<Read, FutureTask<Object>> reads = new ConcurrentHashMap<>();
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final Thread thread;
+	private volatile boolean closed;
+
+	/**
+	 * A task that can throw the exceptions of the Rhapsody methods.
+	 */
+	@FunctionalInterface
+	private interface Task<T> {
+		T run() throws Exception;
+	}
+
+	/**
+	 * Runs the methods of a Rhapsody object in the affinity thread.
+	 */
+	private final class Confined implements InvocationHandler {
+
+		private final Object target;
+
+		private Confined(Object target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getDeclaringClass() == Object.class) {
+				switch (method.getName()) {
+				case "equals":
+					return this.target == unwrap(args[0]);
+				case "hashCode":
+					return System.identityHashCode(this.target);
+				default:
+					break;
+				}
+			}
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					args[i] = unwrap(args[i]);
+				}
+			}
+			Task<Object> task = () -> {
+				try {
+					return method.invoke(this.target, args);
+				} catch (InvocationTargetException e) {
+					throw rethrow(e.getCause());
+				}
+			};
+			Object result = args == null && isRead(method)
+					? read(new Read(this.target, method), task)
+					: submit(task);
+			if (result instanceof List) {
+				// e.g. IRPCollection#toList(), whose elements are not confined by the collection
+				List<Object> confined = new ArrayList<>(((List<?>) result).size());
+				for (Object item : (List<?>) result) {
+					confined.add(confine(item));
+				}
+				return confined;
+			}
+			return confine(result);
+		}
+
+	}
+
+	/**
+	 * A read of a Rhapsody object, the same object (not an equal one) and method.
+	 */
+	private static final class Read {
+
+		private final Object target;
+		private final Method method;
+
+		private Read(Object target, Method method) {
+			this.target = target;
+			this.method = method;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(this.target) + this.method.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Read)) {
+				return false;
+			}
+			Read other = (Read) obj;
+			return this.target == other.target && this.method.equals(other.method);
+		}
+
+	}
+
+	private static boolean isRead(Method method) {
+		String name = method.getName();
+		for (String prefix : READ_PREFIXES) {
+			if (name.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isConfined(Object object) {
+		return object != null
+				&& Proxy.isProxyClass(object.getClass())
+				&& Proxy.getInvocationHandler(object) instanceof Confined;
+	}
+
+	/**
+	 * Run a task in the affinity thread, or directly if the caller is the affinity thread.
+	 */
+	private <T> T submit(Task<T> task) throws Exception {
+		if (isAffinityThread()) {
+			return task.run();
+		}
+		FutureTask<T> future = new FutureTask<>(task::run);
+		enqueue(future);
+		return await(future, true);
+	}
+
+	/**
+	 * Run a read in the affinity thread, or share the result of the same read if it is already
+	 * queued.
+	 */
+	private Object read(Read read, Task<Object> task) throws Exception {
+		if (isAffinityThread()) {
+			return task.run();
+		}
+		FutureTask<Object> future = new FutureTask<>(() -> {
+			try {
+				return task.run();
+			} finally {
+				// Later reads must call Rhapsody again
+				this.reads.remove(read);
+			}
+		});
+		FutureTask<Object> queued = this.reads.putIfAbsent(read, future);
+		if (queued != null) {
+			this.coalesced.increment();
+			return await(queued, false);
+		}
+		try {
+			enqueue(future);
+		} catch (RuntimeException e) {
+			this.reads.remove(read, future);
+			throw e;
+		}
+		// Other readers may wait for the result
+		return await(future, false);
+	}
+
+	private void enqueue(FutureTask<?> future) {
+		if (this.closed) {
+			throw new RhapsodyRuntimeException("The Rhapsody executor is closed");
+		}
+		this.queue.add(future);
+		if (this.closed && this.queue.remove(future)) {
+			throw new RhapsodyRuntimeException("The Rhapsody executor is closed");
+		}
+	}
+
+	private <T> T await(Future<T> future, boolean cancel) throws Exception {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (cancel) {
+				future.cancel(false);
+			}
+			throw new RhapsodyRuntimeException("Interrupted while waiting for Rhapsody");
+		} catch (CancellationException e) {
+			throw new RhapsodyRuntimeException("The Rhapsody executor is closed");
+		} catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	/**
+	 * The exception thrown by a Rhapsody method, to be thrown by its caller.
+	 */
+	private static Exception rethrow(Throwable cause) {
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return (Exception) cause;
+	}
+
+	/**
+	 * Run the queued tasks in batches, until the executor is closed.
+	 */
+	private void serve() {
+		LOG.info("Rhapsody affinity thread started");
+		List<FutureTask<?>> batch = new ArrayList<>(BATCH_SIZE);
+		while (!this.closed) {
+			try {
+				batch.add(this.queue.take());
+			} catch (InterruptedException e) {
+				break;
+			}
+			this.queue.drainTo(batch, BATCH_SIZE - 1);
+			this.batches.increment();
+			this.calls.add(batch.size());
+			for (FutureTask<?> task : batch) {
+				task.run();
+			}
+			batch.clear();
+		}
+		FutureTask<?> task;
+		while ((task = this.queue.poll()) != null) {
+			task.cancel(false);
+		}
+		this.reads.clear();
+		LOG.info("Rhapsody affinity thread stopped");
+	}
+
+}
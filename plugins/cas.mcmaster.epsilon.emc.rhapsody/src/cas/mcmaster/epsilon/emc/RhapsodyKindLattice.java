@@ -0,0 +1,158 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * The kind (sub-metaclass) relation between the Rhapsody metaclasses. The lattice is computed
+ * once from the list of metaclasses names (<code>metaclasses.txt</code>) and the inheritance of
+ * the matching <code>IRP*</code> interfaces in the Rhapsody API: metaclass A is a kind of
+ * metaclass B if the interface for A extends the interface for B.
+ * <p>
+ * Metaclasses that don't have a matching interface are only a kind of themselves.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyKindLattice {
+
+	public RhapsodyKindLattice(Collection<String> metaclasses) {
+		this.superKinds = new HashMap<>();
+		this.subKinds = new HashMap<>();
+		Map<String, Class<?>> interfaces = new HashMap<>();
+		for (String mc : metaclasses) {
+			var name = canonical(mc);
+			var api = apiInterface(name);
+			if (api != null) {
+				interfaces.put(name, api);
+			}
+		}
+		for (String mc : metaclasses) {
+			var name = canonical(mc);
+			Set<String> supers = new HashSet<>();
+			supers.add(name);
+			var api = interfaces.get(name);
+			if (api != null) {
+				interfaces.forEach((other, otherApi) -> {
+					if (otherApi.isAssignableFrom(api)) {
+						supers.add(other);
+					}
+				});
+			}
+			this.superKinds.put(name, supers);
+			supers.forEach(s -> this.subKinds.computeIfAbsent(s, k -> new HashSet<>()).add(name));
+		}
+		LOG.info("Kind lattice created for {} metaclasses, {} with API interfaces",
+				this.superKinds.size(), interfaces.size());
+	}
+
+	/**
+	 * Checks if the metaclass is a kind of the other metaclass, i.e. it is the same metaclass or
+	 * one of its sub-metaclasses.
+	 *
+	 * @param metaclass the metaclass to test
+	 * @param kind the expected kind
+	 * @return true, if metaclass is kind of kind
+	 */
+	public boolean isKindOf(String metaclass, String kind) {
+		var name = canonical(metaclass);
+		var supers = this.superKinds.get(name);
+		if (supers == null) {
+			return name.equals(canonical(kind));
+		}
+		return supers.contains(canonical(kind));
+	}
+
+	/**
+	 * @param metaclass the metaclass name
+	 * @return true, if the metaclass is one of the metaclasses of the lattice
+	 */
+	public boolean contains(String metaclass) {
+		return this.superKinds.containsKey(canonical(metaclass));
+	}
+
+	/**
+	 * Get all the metaclasses that are a kind of the given metaclass, including itself.
+	 *
+	 * @param kind the metaclass name
+	 * @return the set of metaclasses names
+	 */
+	public Set<String> subKindsOf(String kind) {
+		var name = canonical(kind);
+		return this.subKinds.getOrDefault(name, Set.of(name));
+	}
+
+	/**
+	 * Get all the metaclasses the given metaclass is a kind of, including itself.
+	 *
+	 * @param metaclass the metaclass name
+	 * @return the set of metaclasses names
+	 */
+	public Set<String> superKindsOf(String metaclass) {
+		var name = canonical(metaclass);
+		return this.superKinds.getOrDefault(name, Set.of(name));
+	}
+
+	/**
+	 * Some names in <code>metaclasses.txt</code> don't match the name returned by
+	 * {@link IRPModelElement#getMetaClass()}.
+	 *
+	 * @param metaclass the metaclass name
+	 * @return the name used by the Rhapsody API
+	 */
+	public static String canonical(String metaclass) {
+		return ALIASES.getOrDefault(metaclass, metaclass);
+	}
+
+	/**
+	 * Get the name of the Rhapsody API interface for the metaclass, e.g. <code>IRPClass</code>
+	 * for <code>Class</code>.
+	 *
+	 * @param metaclass the metaclass name
+	 * @return the simple name of the interface, or null if the metaclass has no API interface
+	 */
+	public static String interfaceName(String metaclass) {
+		var api = apiInterface(canonical(metaclass));
+		return api == null ? null : api.getSimpleName();
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyKindLattice.class);
+	private static final String API_PACKAGE = IRPModelElement.class.getPackageName();
+	// Bug 1. Metaclasses.txt lists Reception, but correct MetaClass is 'EventReception'
+	private static final Map<String, String> ALIASES = Map.of("Reception", "EventReception");
+	// Metaclasses whose API interface does not follow the IRP<Metaclass> pattern
+	private static final Map<String, String> INTERFACES = Map.of("Object", "Instance");
+
+	private final Map<String, Set<String>> superKinds;
+	private final Map<String, Set<String>> subKinds;
+
+	private static Class<?> apiInterface(String metaclass) {
+		var name = API_PACKAGE + ".IRP" + INTERFACES.getOrDefault(metaclass, metaclass);
+		try {
+			var api = Class.forName(name, false, IRPModelElement.class.getClassLoader());
+			if (IRPModelElement.class.isAssignableFrom(api)) {
+				return api;
+			}
+		} catch (ClassNotFoundException e) {
+			LOG.debug("No API interface for metaclass {}", metaclass);
+		}
+		return null;
+	}
+}
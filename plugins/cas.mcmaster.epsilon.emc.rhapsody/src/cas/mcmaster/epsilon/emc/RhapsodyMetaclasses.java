@@ -14,9 +14,11 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -43,7 +45,21 @@ public class RhapsodyMetaclasses {
 		boolean cachingEnabled,
 		IRPProject prj,
 		String modelName) {
-		this(Path.of(path), cachingEnabled, prj, modelName, new HashSet<>(), new HashSet<>());
+		this(path, cachingEnabled, prj, prj, modelName);
+	}
+	
+	/**
+	 * Create a new metaclasses instance whose type queries are limited to the elements contained
+	 * in the root element (including the root).
+	 */
+	public RhapsodyMetaclasses(
+		String path,
+		boolean cachingEnabled,
+		IRPProject prj,
+		IRPModelElement root,
+		String modelName) {
+		this(Path.of(path), cachingEnabled, prj, root, modelName, new HashSet<>(), new HashSet<>(),
+				new RhapsodyKindLattice(Set.of()));
 	}
 	
 	/**
@@ -52,13 +68,16 @@ public class RhapsodyMetaclasses {
 	 * @throws IllegalStateException if the type information can't be loaded 
 	 */
 	public RhapsodyMetaclasses load() {
+		var metaclasses = this.metaclasses();
 		return new RhapsodyMetaclasses(
 				this.path,
 				this.cachingEnabled,
 				this.prj,
+				this.root,
 				this.modelName,
-				this.metaclasses(),
-				this.stereotypes());
+				metaclasses,
+				this.stereotypes(),
+				new RhapsodyKindLattice(metaclasses));
 	}
 	
 	/**
@@ -105,7 +124,6 @@ public class RhapsodyMetaclasses {
 	 * @throws EolModelElementTypeNotFoundException if the type is not a known metaclass or stereotype
 	 */
 	public Collection<IRPModelElement> getAllOfType(final String type) throws EolModelElementTypeNotFoundException {
-		HashSet<IRPModelElement> matching = new HashSet<>();
 		LOG.info("get All Of Type {}", type);
 		if (this.metaclasses.contains(type)) {
 			LOG.info("Type {} found in metaclasses", type);
@@ -115,21 +133,14 @@ public class RhapsodyMetaclasses {
 				LOG.info("Type is Reception, using EventReception");
 				actualType = "EventReception";
 			}
-			var contents = prj.getNestedElementsRecursive();
-			for (int i=1; i <= contents.getCount(); i++) {
-				var element = (IRPModelElement) contents.getItem(i);
-				if (Objects.equals(actualType, element.getMetaClass())) {
-					matching.add(element);
-				}
-			}
+			return ofMetaclass(actualType);
 		} else if (stereotypes().contains(type)) {
 			LOG.info("Type {} found in stereotypes", type);
-			matching.addAll(this.getAllByStereotype(type));
+			return this.getAllByStereotype(type);
 		} else {
 			LOG.error("Type {} is not in the list of valid metaclasses or a known stereotype", type);
 			throw new EolModelElementTypeNotFoundException(this.modelName, type);	
 		}
-		return matching;
 	}
 	
 	/**
@@ -143,21 +154,52 @@ public class RhapsodyMetaclasses {
 	 */
 	public Collection<IRPModelElement> getAllOfKind(String kind) throws EolModelElementTypeNotFoundException {
 		LOG.info("get All Of Kind {}", kind);
-		HashSet<IRPModelElement> matching = new HashSet<>();
 		if (this.metaclasses.contains(kind)) {
 			LOG.info("Kind {} found in metaclasses", kind);
-			var it = prj.getNestedElementsByMetaClass(kind, 1).toList().iterator();
-			while(it.hasNext()) {
-				IRPModelElement element = (IRPModelElement) it.next();
-				matching.add(element);
-			}
+			return ofKind(kind);
 		} else if (stereotypes().contains(kind)) {
 			LOG.info("Kind {} found in stereotypes", kind);
-			matching.addAll(this.getAllByStereotype(kind));
+			return this.getAllByStereotype(kind);
 		} else {
 			throw new EolModelElementTypeNotFoundException(this.modelName, kind);	
 		}
-		return matching;
+	}
+	
+	/**
+	 * Checks if the element is of the given type, using only the element's metaclass and new term
+	 * stereotype.
+	 * 
+	 * @param element the element
+	 * @param type the metaclass or stereotype to match
+	 * @return true, if the element's metaclass or new term matches the type
+	 * @throws EolModelElementTypeNotFoundException if the type is not a known metaclass or stereotype
+	 */
+	public boolean isOfType(IRPModelElement element, String type) throws EolModelElementTypeNotFoundException {
+		if (this.metaclasses.contains(type)) {
+			return Objects.equals(RhapsodyKindLattice.canonical(type), metaclassOf(element));
+		} else if (stereotypes().contains(type)) {
+			return Objects.equals(type, newTermOf(element));
+		}
+		throw new EolModelElementTypeNotFoundException(this.modelName, type);
+	}
+	
+	/**
+	 * Checks if the element is of the given kind, using only the element's metaclass and new term
+	 * stereotype. For metaclasses, the {@link RhapsodyKindLattice} is used to determine if the
+	 * element's metaclass is a sub-metaclass of the kind.
+	 * 
+	 * @param element the element
+	 * @param kind the metaclass or stereotype to match
+	 * @return true, if the element's metaclass is a kind of the metaclass, or its new term matches
+	 * @throws EolModelElementTypeNotFoundException if the type is not a known metaclass or stereotype
+	 */
+	public boolean isOfKind(IRPModelElement element, String kind) throws EolModelElementTypeNotFoundException {
+		if (this.metaclasses.contains(kind)) {
+			return this.lattice.isKindOf(metaclassOf(element), kind);
+		} else if (stereotypes().contains(kind)) {
+			return Objects.equals(kind, newTermOf(element));
+		}
+		throw new EolModelElementTypeNotFoundException(this.modelName, kind);
 	}
 	
 	/**
@@ -171,8 +213,8 @@ public class RhapsodyMetaclasses {
 		Set<String> result = new HashSet<>();
 		if (instance instanceof IRPModelElement) {
 			var element = (IRPModelElement) instance;
-			result.add(element.getMetaClass());
-			String newTerm = element.getUserDefinedMetaClass();
+			result.add(metaclassOf(element));
+			String newTerm = newTermOf(element);
 			if (newTerm != null) {
 				result.add(newTerm);
 			}
@@ -210,6 +252,71 @@ public class RhapsodyMetaclasses {
 	public boolean isMetaclass(String type) {
 		return this.metaclasses.contains(type);
 	}
+	
+	/**
+	 * Get the element types to use in a search for the elements of a type, see
+	 * {@link RhapsodySearch}. The element types of a metaclass kind are the metaclass and its
+	 * sub-metaclasses, the element type of a stereotype (new term) is the stereotype.
+	 * 
+	 * @param type the metaclass or stereotype
+	 * @param kind true, to include the sub-metaclasses
+	 * @return the element type names
+	 */
+	public Collection<String> elementTypesOf(String type, boolean kind) {
+		if (kind && this.metaclasses.contains(type)) {
+			return this.lattice.subKindsOf(type);
+		}
+		return Set.of(type);
+	}
+	
+	/**
+	 * Notify that a new element was added to the model, so it is included in the type index.
+	 * 
+	 * @param element the new element
+	 * @return true if the element was not indexed
+	 */
+	public boolean elementAdded(IRPModelElement element) {
+		return this.index.add(element);
+	}
+	
+	/**
+	 * Notify that an element has changed (e.g. its stereotypes), so it is indexed again.
+	 * 
+	 * @param element the changed element
+	 * @return true if the type of the element changed
+	 */
+	public boolean elementChanged(IRPModelElement element) {
+		return this.index.update(element);
+	}
+	
+	/**
+	 * Notify that an element is about to be deleted from the model, so it (and its contents) are
+	 * removed from the type index. Must be called before the element is deleted.
+	 * 
+	 * @param element the element to be deleted
+	 * @return true if the element was indexed
+	 */
+	public boolean elementDeleted(IRPModelElement element) {
+		return this.index.remove(element);
+	}
+	
+	/**
+	 * Clear the type index, the next type query will traverse the model again. Use this if the
+	 * model was changed outside the driver.
+	 */
+	public void clearIndex() {
+		this.index.clear();
+	}
+	
+	/**
+	 * Answer the type queries from a mirror of the model, instead of the type index. The types
+	 * of the elements that are not in the mirror are read from Rhapsody.
+	 * 
+	 * @param mirror the mirror, or null to use the type index
+	 */
+	public void setMirror(RhapsodyMirror mirror) {
+		this.mirror = mirror;
+	}
 
 	private static final Logger LOG = LogManager.getLogger(RhapsodyMetaclasses.class);
 	
@@ -217,22 +324,31 @@ public class RhapsodyMetaclasses {
 	private final boolean cachingEnabled;
 	private final Path path;
 	private final IRPProject prj;
+	private final IRPModelElement root;
 	private final String modelName;
 	private final Set<String> stereotypes;
+	private final RhapsodyKindLattice lattice;
+	private final RhapsodyTypeIndex index;
+	private RhapsodyMirror mirror;
 	
 	private RhapsodyMetaclasses(
 		Path path,
 		boolean cachingEnabled,
 		IRPProject prj,
+		IRPModelElement root,
 		String modelName,
 		Set<String> metaclasses,
-		Set<String> stereotypes) {
+		Set<String> stereotypes,
+		RhapsodyKindLattice lattice) {
 		this.path = path;
 		this.prj = prj;
+		this.root = root;
 		this.modelName = modelName;
 		this.metaclasses = metaclasses;
 		this.stereotypes = stereotypes;
 		this.cachingEnabled = cachingEnabled;
+		this.lattice = lattice;
+		this.index = new RhapsodyTypeIndex(root, lattice);
 	}
 	
 	/**
@@ -257,11 +373,14 @@ public class RhapsodyMetaclasses {
 	 * @return the set of stereotype names
 	 */
 	private Set<String> stereotypes() {
+		if (this.mirror != null) {
+			return this.mirror.newTerms();
+		}
 		if (this.stereotypes.isEmpty() || !this.cachingEnabled) {
 			LOG.info("Loading stereotypes from model" );
 			this.stereotypes.clear();
 			IRPCollection sts = this.prj.getAllStereotypes();
-			for(int i=1;i<sts.getCount();i++) {
+			for(int i=1;i<=sts.getCount();i++) {
 				IRPStereotype stereotype = (IRPStereotype) sts.getItem(i);
 				if (stereotype.getIsNewTerm() == 1) {
 					stereotypes.add(stereotype.getName());
@@ -273,22 +392,53 @@ public class RhapsodyMetaclasses {
 	}
 	
 	/**
-	 * Get all the model elements that 
-	 * @param stereotype
-	 * @return
-	 * @throws EolModelElementTypeNotFoundException
+	 * Get all the model elements that have the stereotype as new term
+	 * @param stereotype the new term stereotype name
+	 * @return the matching elements
 	 */
-	private Collection<IRPModelElement> getAllByStereotype(String stereotype) throws EolModelElementTypeNotFoundException {
-		HashSet<IRPModelElement> matching = new HashSet<>();
-		var contents = prj.getNestedElementsRecursive();
-		for (int i=1; i<=contents.getCount(); i++) {
-			var element = (IRPModelElement)contents.getItem(i);
-			var newTerm =  element.getUserDefinedMetaClass();
-			if (newTerm != null && Objects.equals(stereotype, newTerm)) {
-				matching.add(element);	
+	private Collection<IRPModelElement> getAllByStereotype(String stereotype) {
+		if (this.mirror != null) {
+			return new ArrayList<>(this.mirror.ofNewTerm(stereotype));
+		}
+		return this.index.ofNewTerm(stereotype);
+	}
+	
+	private Collection<IRPModelElement> ofMetaclass(String metaclass) {
+		if (this.mirror != null) {
+			return new ArrayList<>(this.mirror.ofMetaclass(metaclass));
+		}
+		return this.index.ofMetaclass(metaclass);
+	}
+	
+	private Collection<IRPModelElement> ofKind(String kind) {
+		if (this.mirror == null) {
+			return this.index.ofKind(kind);
+		}
+		List<IRPModelElement> result = new ArrayList<>();
+		for (String metaclass : this.lattice.subKindsOf(kind)) {
+			result.addAll(this.mirror.ofMetaclass(metaclass));
+		}
+		return result;
+	}
+	
+	private String metaclassOf(IRPModelElement element) {
+		if (this.mirror != null) {
+			String result = this.mirror.metaclassOf(element);
+			if (result != null) {
+				return result;
 			}
 		}
-		return matching;
+		return element.getMetaClass();
+	}
+	
+	/**
+	 * @return the user defined metaclass of the element
+	 */
+	private String newTermOf(IRPModelElement element) {
+		if (this.mirror != null && this.mirror.contains(element)) {
+			return this.mirror.newTermOf(element);
+		}
+		return element.getUserDefinedMetaClass();
 	}
 
 }
@@ -0,0 +1,486 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.IRPStereotype;
+import com.telelogic.rhapsody.core.IRPTag;
+
+/**
+ * An in-memory copy of the model, so scripts run by several threads (e.g. by the parallel EOL
+ * and EVL modules) read it without calling Rhapsody. The mirror is filled in one traversal of
+ * the model with, for each element: its GUID, metaclass and new term (user defined metaclass),
+ * the values of its tags and the values of a set of properties (e.g. <code>name</code>). The new
+ * terms of the project are also copied.
+ * <p>
+ * The mirror is read by the {@link RhapsodyPropertyGetter} and the {@link RhapsodyMetaclasses}
+ * for the elements it contains, which are the elements it returns (e.g. the elements of a type).
+ * Element values (e.g. the element of a tag) are replaced by the mirrored element with the same
+ * GUID, so they can be read from the mirror too. Properties that are not copied, and elements
+ * that are not in the mirror, are read from Rhapsody.
+ * <p>
+ * The mirror can be read concurrently: the elements and their types are kept in immutable
+ * collections, and the copy of each element is immutable. Writes are made in Rhapsody, and then
+ * the copy of the written element is replaced ({@link #update(IRPModelElement)}). Added and
+ * deleted elements ({@link #add(IRPModelElement)} and {@link #remove(IRPModelElement)}) replace
+ * the collections, so their cost is proportional to the size of the model.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyMirror {
+
+	/**
+	 * Copy the model.
+	 *
+	 * @param prj the project, to copy its new terms
+	 * @param root the root of the model
+	 * @param properties the properties to copy, in addition to the tags
+	 * @param getter the getter used to read the values
+	 * @return the mirror
+	 */
+	public static RhapsodyMirror of(
+		IRPProject prj,
+		IRPModelElement root,
+		Collection<String> properties,
+		RhapsodyPropertyGetter getter) {
+		var result = new RhapsodyMirror(properties, getter, newTermsOf(prj));
+		result.fill(root);
+		return result;
+	}
+
+	/**
+	 * @return the number of elements in the mirror
+	 */
+	public int size() {
+		return this.snapshot.elements.size();
+	}
+
+	/**
+	 * @return the copied properties
+	 */
+	public Set<String> properties() {
+		return this.properties;
+	}
+
+	/**
+	 * @return the names of the new term stereotypes of the project
+	 */
+	public Set<String> newTerms() {
+		return this.newTerms;
+	}
+
+	/**
+	 * @param element the element
+	 * @return true, if the element is in the mirror (the same object, not an equal one)
+	 */
+	public boolean contains(Object element) {
+		return this.snapshot.copies.containsKey(element);
+	}
+
+	/**
+	 * @return the elements, in traversal order
+	 */
+	public List<IRPModelElement> elements() {
+		return this.snapshot.elements;
+	}
+
+	/**
+	 * @param metaclass the metaclass
+	 * @return the elements of the metaclass, in traversal order
+	 */
+	public List<IRPModelElement> ofMetaclass(String metaclass) {
+		return this.snapshot.byMetaclass.getOrDefault(metaclass, List.of());
+	}
+
+	/**
+	 * @param newTerm the new term
+	 * @return the elements that have the new term, in traversal order
+	 */
+	public List<IRPModelElement> ofNewTerm(String newTerm) {
+		return this.snapshot.byNewTerm.getOrDefault(newTerm, List.of());
+	}
+
+	/**
+	 * @param guid the GUID
+	 * @return the element with the GUID, or null if it is not in the mirror
+	 */
+	public IRPModelElement elementByGuid(String guid) {
+		return this.snapshot.byGuid.get(guid);
+	}
+
+	/**
+	 * @param element the element
+	 * @return the GUID of the element, or null if it is not in the mirror
+	 */
+	public String guidOf(IRPModelElement element) {
+		Copy copy = copyOf(element);
+		return copy == null ? null : copy.guid;
+	}
+
+	/**
+	 * @param element the element
+	 * @return the metaclass of the element, or null if it is not in the mirror
+	 */
+	public String metaclassOf(IRPModelElement element) {
+		Copy copy = copyOf(element);
+		return copy == null ? null : copy.metaclass;
+	}
+
+	/**
+	 * @param element the element
+	 * @return the user defined metaclass of the element (see
+	 * 		   {@link IRPModelElement#getUserDefinedMetaClass()}), or null if it is not in the mirror
+	 */
+	public String newTermOf(IRPModelElement element) {
+		Copy copy = copyOf(element);
+		return copy == null ? null : copy.newTerm;
+	}
+
+	/**
+	 * Replace the copy of an element, after it was written. Writing a tag replaces the copy of
+	 * the tag's owner.
+	 *
+	 * @param element the element
+	 * @return true, if the metaclass or new term of the element changed (a changed GUID is also
+	 * 		   indexed again, but does not change the elements of a type)
+	 */
+	public synchronized boolean update(IRPModelElement element) {
+		IRPModelElement mirrored = mirrored(element);
+		if (mirrored == null) {
+			if (element instanceof IRPTag) {
+				return update(element.getOwner());
+			}
+			return false;
+		}
+		Copy before = copyOf(mirrored);
+		Copy after = canonical(copy(mirrored), this.snapshot.byGuid);
+		this.snapshot.copies.get(mirrored).copy = after;
+		if (element instanceof IRPTag && element.getOwner() != null) {
+			update(element.getOwner());
+		}
+		boolean retyped = !Objects.equals(before.metaclass, after.metaclass) || !Objects.equals(before.newTerm, after.newTerm);
+		if (retyped || !Objects.equals(before.guid, after.guid)) {
+			this.snapshot = this.snapshot.retyped();
+		}
+		return retyped;
+	}
+
+	/**
+	 * Add a new element (and its contents) to the mirror.
+	 *
+	 * @param element the element
+	 * @return true, if the element was not in the mirror
+	 */
+	public synchronized boolean add(IRPModelElement element) {
+		if (mirrored(element) != null) {
+			return false;
+		}
+		List<IRPModelElement> added = new ArrayList<>();
+		added.add(element);
+		var contents = element.getNestedElementsRecursive();
+		for (int i=1; i <= contents.getCount(); i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement && item != element) {
+				added.add((IRPModelElement) item);
+			}
+		}
+		var copies = new IdentityHashMap<IRPModelElement, Slot>(this.snapshot.copies);
+		var elements = new ArrayList<IRPModelElement>(this.snapshot.elements);
+		Set<String> guids = new HashSet<>(this.snapshot.byGuid.keySet());
+		for (IRPModelElement e : added) {
+			Copy copy = copy(e);
+			if (guids.add(copy.guid)) {
+				copies.put(e, new Slot(copy));
+				elements.add(e);
+			}
+		}
+		this.snapshot = new Snapshot(copies, elements);
+		canonical(added);
+		return true;
+	}
+
+	/**
+	 * Remove an element (and its contents) from the mirror, before it is deleted.
+	 *
+	 * @param element the element
+	 * @return true, if the element was in the mirror
+	 */
+	public synchronized boolean remove(IRPModelElement element) {
+		IRPModelElement mirrored = mirrored(element);
+		if (mirrored == null) {
+			return false;
+		}
+		var copies = new IdentityHashMap<IRPModelElement, Slot>(this.snapshot.copies);
+		copies.remove(mirrored);
+		var contents = mirrored.getNestedElementsRecursive();
+		for (int i=1; i <= contents.getCount(); i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				var nested = mirrored((IRPModelElement) item);
+				if (nested != null) {
+					copies.remove(nested);
+				}
+			}
+		}
+		var elements = new ArrayList<IRPModelElement>(this.snapshot.elements);
+		elements.removeIf(e -> !copies.containsKey(e));
+		this.snapshot = new Snapshot(copies, elements);
+		return true;
+	}
+
+	/**
+	 * Get the value of a property of an element. The copy only has the values of native
+	 * properties and tags, so properties it doesn't have (e.g. the ones contributed to the
+	 * elements via the OperationContributorRegistry) are read from Rhapsody.
+	 *
+	 * @param element the element
+	 * @param property the property
+	 * @return the value, or null if the value is not in the mirror
+	 */
+	PropertyValue value(IRPModelElement element, String property) {
+		Copy copy = copyOf(element);
+		return copy == null ? null : copy.values.get(property);
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyMirror.class);
+	private static final RhapsodyAccessors ACCESSORS = RhapsodyAccessors.SHARED;
+
+	private final Set<String> properties;
+	private final RhapsodyPropertyGetter getter;
+	private final Set<String> newTerms;
+	private volatile Snapshot snapshot;
+
+	/**
+	 * The copy of an element.
+	 */
+	private static final class Copy {
+
+		private final String guid;
+		private final String metaclass;
+		private final String newTerm;
+		private final Map<String, PropertyValue> values;
+
+		private Copy(String guid, String metaclass, String newTerm, Map<String, PropertyValue> values) {
+			this.guid = guid;
+			this.metaclass = metaclass;
+			this.newTerm = newTerm;
+			this.values = values;
+		}
+
+	}
+
+	/**
+	 * Holds the current copy of an element.
+	 */
+	private static final class Slot {
+
+		private volatile Copy copy;
+
+		private Slot(Copy copy) {
+			this.copy = copy;
+		}
+
+	}
+
+	/**
+	 * The elements of the mirror, by identity, GUID and type. Snapshots are not modified, they
+	 * are replaced.
+	 */
+	private static final class Snapshot {
+
+		private final Map<IRPModelElement, Slot> copies;
+		private final List<IRPModelElement> elements;
+		private final Map<String, IRPModelElement> byGuid;
+		private final Map<String, List<IRPModelElement>> byMetaclass;
+		private final Map<String, List<IRPModelElement>> byNewTerm;
+
+		private Snapshot(Map<IRPModelElement, Slot> copies, List<IRPModelElement> elements) {
+			this.copies = Collections.unmodifiableMap(copies);
+			this.elements = Collections.unmodifiableList(elements);
+			Map<String, IRPModelElement> byGuid = new HashMap<>();
+			Map<String, List<IRPModelElement>> byMetaclass = new HashMap<>();
+			Map<String, List<IRPModelElement>> byNewTerm = new HashMap<>();
+			for (IRPModelElement element : elements) {
+				Copy copy = copies.get(element).copy;
+				byGuid.put(copy.guid, element);
+				byMetaclass.computeIfAbsent(copy.metaclass, k -> new ArrayList<>()).add(element);
+				// Elements without a new term report their metaclass as user defined metaclass
+				if (copy.newTerm != null && !copy.newTerm.isEmpty() && !copy.newTerm.equals(copy.metaclass)) {
+					byNewTerm.computeIfAbsent(copy.newTerm, k -> new ArrayList<>()).add(element);
+				}
+			}
+			byMetaclass.replaceAll((k, v) -> Collections.unmodifiableList(v));
+			byNewTerm.replaceAll((k, v) -> Collections.unmodifiableList(v));
+			this.byGuid = Collections.unmodifiableMap(byGuid);
+			this.byMetaclass = Collections.unmodifiableMap(byMetaclass);
+			this.byNewTerm = Collections.unmodifiableMap(byNewTerm);
+		}
+
+		/**
+		 * @return a snapshot with the same elements, after the type of an element changed
+		 */
+		private Snapshot retyped() {
+			return new Snapshot(new IdentityHashMap<>(this.copies), new ArrayList<>(this.elements));
+		}
+
+	}
+
+	private RhapsodyMirror(Collection<String> properties, RhapsodyPropertyGetter getter, Set<String> newTerms) {
+		this.properties = Collections.unmodifiableSet(new LinkedHashSet<>(properties));
+		this.getter = getter;
+		this.newTerms = newTerms;
+	}
+
+	private void fill(IRPModelElement root) {
+		LOG.info("Copying the model, with properties {}", this.properties);
+		var contents = root.getNestedElementsRecursive();
+		int count = contents.getCount();
+		Map<IRPModelElement, Slot> copies = new IdentityHashMap<>(count);
+		List<IRPModelElement> elements = new ArrayList<>(count);
+		for (int i=1; i <= count; i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				var element = (IRPModelElement) item;
+				if (!copies.containsKey(element)) {
+					copies.put(element, new Slot(copy(element)));
+					elements.add(element);
+				}
+			}
+		}
+		this.snapshot = new Snapshot(copies, elements);
+		canonical(elements);
+		LOG.info("Copied {} elements in {} metaclasses and {} new terms",
+				elements.size(), this.snapshot.byMetaclass.size(), this.snapshot.byNewTerm.size());
+	}
+
+	private Copy copyOf(Object element) {
+		Slot slot = this.snapshot.copies.get(element);
+		return slot == null ? null : slot.copy;
+	}
+
+	/**
+	 * @return the mirrored element, the same object or the element with the same GUID; null if
+	 * 		   the element is not in the mirror
+	 */
+	private IRPModelElement mirrored(IRPModelElement element) {
+		if (element == null) {
+			return null;
+		}
+		if (this.snapshot.copies.containsKey(element)) {
+			return element;
+		}
+		return this.snapshot.byGuid.get(element.getGUID());
+	}
+
+	/**
+	 * Read the copy of an element from Rhapsody.
+	 */
+	private Copy copy(IRPModelElement element) {
+		Map<String, PropertyValue> values = new LinkedHashMap<>();
+		for (String property : this.properties) {
+			PropertyValue value = this.getter.fetchValue(property, element);
+			if (value != null) {
+				values.put(property, value);
+			}
+		}
+		IRPCollection tags = element.getAllTags();
+		if (tags != null) {
+			for (int i=1; i <= tags.getCount(); i++) {
+				var item = tags.getItem(i);
+				if (item instanceof IRPTag) {
+					var tag = (IRPTag) item;
+					String name = tag.getName();
+					// Java properties hide tags with the same name
+					if (!values.containsKey(name) && ACCESSORS.find(element.getClass(), name) == null) {
+						values.put(name, this.getter.tagValue(tag));
+					}
+				}
+			}
+		}
+		return new Copy(element.getGUID(), element.getMetaClass(), element.getUserDefinedMetaClass(), values);
+	}
+
+	/**
+	 * Replace the element values of the copies of the elements by the mirrored elements.
+	 */
+	private void canonical(List<IRPModelElement> elements) {
+		var current = this.snapshot;
+		for (IRPModelElement element : elements) {
+			Slot slot = current.copies.get(element);
+			if (slot != null) {
+				slot.copy = canonical(slot.copy, current.byGuid);
+			}
+		}
+	}
+
+	private Copy canonical(Copy copy, Map<String, IRPModelElement> byGuid) {
+		Map<String, PropertyValue> values = new LinkedHashMap<>();
+		copy.values.forEach((property, value) -> {
+			if (value.isError()) {
+				values.put(property, value);
+			} else {
+				try {
+					values.put(property, new PropertyValue(canonical(value.get(), byGuid)));
+				} catch (EolRuntimeException e) {
+					values.put(property, value);
+				}
+			}
+		});
+		return new Copy(copy.guid, copy.metaclass, copy.newTerm, Collections.unmodifiableMap(values));
+	}
+
+	private static Object canonical(Object value, Map<String, IRPModelElement> byGuid) {
+		if (value instanceof IRPModelElement) {
+			IRPModelElement mirrored = byGuid.get(((IRPModelElement) value).getGUID());
+			return mirrored == null ? value : mirrored;
+		}
+		if (value instanceof List) {
+			List<Object> result = new ArrayList<>();
+			for (Object item : (List<?>) value) {
+				result.add(canonical(item, byGuid));
+			}
+			return Collections.unmodifiableList(result);
+		}
+		return value;
+	}
+
+	private static Set<String> newTermsOf(IRPProject prj) {
+		Set<String> result = new LinkedHashSet<>();
+		IRPCollection stereotypes = prj.getAllStereotypes();
+		for (int i=1; i <= stereotypes.getCount(); i++) {
+			var stereotype = (IRPStereotype) stereotypes.getItem(i);
+			if (stereotype.getIsNewTerm() == 1) {
+				result.add(stereotype.getName());
+			}
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+}
@@ -12,13 +12,13 @@ package cas.mcmaster.epsilon.emc;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -35,14 +35,15 @@ import org.eclipse.epsilon.eol.models.IModel;
 import org.eclipse.epsilon.eol.models.IRelativePathResolver;
 
 import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Weigher;
 import com.telelogic.rhapsody.core.IRPApplication;
 import com.telelogic.rhapsody.core.IRPCollection;
 import com.telelogic.rhapsody.core.IRPModelElement;
 import com.telelogic.rhapsody.core.IRPPackage;
 import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.IRPSearchManager;
 import com.telelogic.rhapsody.core.IRPStereotype;
-import com.telelogic.rhapsody.core.RhapsodyAppServer;
 import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
 
 /**
@@ -71,12 +72,51 @@ import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
  *  		This mode is useful for ANT workflows that benefit from not having to open a new Rhapsody 
  *  		connection and loading the model multiple times (e.g. EUnit). To dispose the model, 
  *  		the {@link #dispose()} method must be called twice.
+ *  <li> {@link RhapsodyModel#PROPERTY_ROOT_ELEM}: (optional) scope the model to a subtree of the
+ *  		project. If <code>true</code>, the element selected in Rhapsody is used as root. Other 
+ *  		values are interpreted as the GUID or the name of the package to use as root. When 
+ *  		scoped, the model contents, allOfType/allOfKind and stereotype instances are limited to 
+ *  		the root's subtree, and the main package is searched for (or defaults to) a package 
+ *  		in the subtree.
+ *  <li> {@link RhapsodyModel#PROPERTY_CACHE_DISABLED}, {@link RhapsodyModel#PROPERTY_CACHE_MAX_SIZE},
+ *  		{@link RhapsodyModel#PROPERTY_CACHE_MAX_WEIGHT}, {@link RhapsodyModel#PROPERTY_CACHE_EXPIRE_AFTER_ACCESS},
+ *  		{@link RhapsodyModel#PROPERTY_CACHE_EXPIRE_AFTER_WRITE}, {@link RhapsodyModel#PROPERTY_CACHE_SOFT_VALUES}: 
+ *  		(optional) the policy of the property value caches, see {@link RhapsodyCachePolicy}.
+ *  <li> {@link RhapsodyModel#PROPERTY_PREFETCH_THRESHOLD}, {@link RhapsodyModel#PROPERTY_PREFETCH_WINDOW},
+ *  		{@link RhapsodyModel#PROPERTY_PREFETCH_BUDGET}: (optional) when to prefetch a property for
+ *  		all the elements of a type, see {@link RhapsodyAdaptivePrefetcher}. Adaptive prefetching
+ *  		is disabled unless a threshold (larger than 0) is set.
+ *  <li> {@link RhapsodyModel#PROPERTY_TEXT_INDEX}: (optional) if true, the text of the elements is
+ *  		indexed the first time it is searched, and the index is kept up to date, see
+ *  		{@link #searchTerm(String)}. If false (the default), each search reads the text of all
+ *  		the elements.
+ *  <li> {@link RhapsodyModel#PROPERTY_NATIVE_SEARCH}: (optional) if true, selects on the elements
+ *  		of a type that compare the name or a tag with a string (e.g. 
+ *  		<code>Block.all.select(b | b.name = "Engine")</code>) find their candidates with the
+ *  		Rhapsody search engine, see {@link RhapsodySearch}. Defaults to false.
+ *  <li> {@link RhapsodyModel#PROPERTY_THREAD_CONFINED}: (optional) if true, all the calls to
+ *  		Rhapsody are run in a single thread, see {@link RhapsodyExecutor}, so the model can
+ *  		be used by the parallel EOL and EVL modules. Defaults to false.
+ *  <li> {@link RhapsodyModel#PROPERTY_MIRROR}, {@link RhapsodyModel#PROPERTY_MIRROR_PROPERTIES}:
+ *  		(optional) if true, the elements, their types and tags, and the given properties 
+ *  		(comma separated, defaults to <code>name</code>) are copied when the model is loaded,
+ *  		so they are read without calling Rhapsody, see {@link RhapsodyMirror}. Defaults to false.
+ *  		The mirror also confines the calls to Rhapsody to one thread, as if
+ *  		{@link RhapsodyModel#PROPERTY_THREAD_CONFINED} was true.
  * </ul>
  * <p>
  * Type operations (e.g. allOfType, allofKind, createInstance, etc) rely on two sources of information.
  * i) The <code>metaclasses.txt</code> file that contains the list of supported metaclass (type) names,
  * and ii) the existing <code>Stereotype</code>s in the model. For the latter, only Stereotypes that
  * are defined as <b>new terms</b> will be considered for type related operations. 
+ * <p>
+ * The model listens to Rhapsody events (see {@link RhapsodyModelListener}) so that property values,
+ * the type, reference and text indices and the cached collections reflect changes made outside the
+ * driver (e.g. in the Rhapsody UI) while a script runs.
+ * <p>
+ * The model connects to Rhapsody via the {@link RhapsodyApplicationFactory#APP_SERVER}. Other
+ * applications (e.g. in-memory applications for tests) can be used via
+ * {@link #setApplicationFactory(RhapsodyApplicationFactory)}.
  * 
  * @author Justin Dang - Initial Version
  * @author Horacio Hoyos Rodriguez - Refactoring and complete implementation
@@ -89,13 +129,23 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 	public static final String PROPERTY_MAIN_PACKAGE_NAME = "main_package";
 	public static final String PROPERTY_SOFT_DISPOSE = "soft_dispose";
 	public static final String PROPERTY_ROOT_ELEM = "root_elem";
+	public static final String PROPERTY_CACHE_DISABLED = "cache_disabled";
+	public static final String PROPERTY_CACHE_MAX_SIZE = "cache_max_size";
+	public static final String PROPERTY_CACHE_MAX_WEIGHT = "cache_max_weight";
+	public static final String PROPERTY_CACHE_EXPIRE_AFTER_ACCESS = "cache_expire_after_access";
+	public static final String PROPERTY_CACHE_EXPIRE_AFTER_WRITE = "cache_expire_after_write";
+	public static final String PROPERTY_CACHE_SOFT_VALUES = "cache_soft_values";
+	public static final String PROPERTY_PREFETCH_THRESHOLD = "prefetch_threshold";
+	public static final String PROPERTY_PREFETCH_WINDOW = "prefetch_window";
+	public static final String PROPERTY_PREFETCH_BUDGET = "prefetch_budget";
+	public static final String PROPERTY_TEXT_INDEX = "text_index";
+	public static final String PROPERTY_NATIVE_SEARCH = "native_search";
+	public static final String PROPERTY_THREAD_CONFINED = "thread_confined";
+	public static final String PROPERTY_MIRROR = "mirror";
+	public static final String PROPERTY_MIRROR_PROPERTIES = "mirror_properties";
 
 	public RhapsodyModel() {
-		// TODO Cache should be created during load to use user options.
-		this.propertyCache = Caffeine.newBuilder()
-				.expireAfterWrite(10, TimeUnit.MINUTES)
-			    .maximumSize(10_000)
-			    .build();
+		this.propertyCache = new RhapsodyCachePolicy().build(PROPERTY_WEIGHER);
 	}
 	
 	@Override
@@ -117,6 +167,12 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			LOG.error("No path to the Rhapsody installation provided");
 			throw new EolModelLoadingException(new IllegalArgumentException("No path to the Rhapsody installation provided"), this);
 		}
+		// With the mirror, the properties that are not mirrored are read from any thread
+		if ((properties.getBooleanProperty(PROPERTY_THREAD_CONFINED, false)
+				|| properties.getBooleanProperty(PROPERTY_MIRROR, false)) && this.executor == null) {
+			LOG.info("Calls to Rhapsody are confined to one thread");
+			this.executor = new RhapsodyExecutor();
+		}
 		try {
 			this.app = connectToRhapsody();
 		} catch (UnsatisfiedLinkError e) {
@@ -127,6 +183,15 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			throw new EolModelLoadingException(new IllegalStateException("Rhapsody not running"), this);
 		}
 		
+		this.idPattern = Pattern.compile(ID_REGEX);
+		try {
+			this.cachePolicy = RhapsodyCachePolicy.fromProperties(properties);
+			this.adaptivePrefetcher = RhapsodyAdaptivePrefetcher.fromProperties(properties, this::getAllOfType);
+		} catch (IllegalArgumentException e) {
+			throw new EolModelLoadingException(e, this);
+		}
+		LOG.info("Using cache policy {}", this.cachePolicy);
+		LOG.info("Using adaptive prefetch {}", this.adaptivePrefetcher);
 		this.softDispose = properties.getBooleanProperty(PROPERTY_SOFT_DISPOSE, false);
 		if (this.softDispose) {
 			LOG.info("Starting uno transaction");
@@ -154,13 +219,34 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			}
 			this.usingActivePrj = true;
 		}
+		this.root = this.prj;
+		if (properties.hasProperty(PROPERTY_ROOT_ELEM)) {
+			this.root = rootElement(properties.getProperty(PROPERTY_ROOT_ELEM));
+		}
 		if (properties.hasProperty(PROPERTY_MAIN_PACKAGE_NAME)) {
 			String pkgName = properties.getProperty(PROPERTY_MAIN_PACKAGE_NAME);
-			this.mainPackage = (IRPPackage) this.prj.findNestedElement(pkgName, "Package");
+			if (isScoped()) {
+				this.mainPackage = (this.root instanceof IRPPackage) && pkgName.equals(this.root.getName())
+						? (IRPPackage) this.root
+						: (IRPPackage) this.root.findNestedElementRecursive(pkgName, "Package");
+			} else {
+				this.mainPackage = (IRPPackage) this.prj.findNestedElement(pkgName, "Package");
+			}
 			if (this.mainPackage == null) {
 				LOG.error("A package with name {} to use as main package was not found", pkgName);
 				throw new EolModelLoadingException(new IllegalArgumentException("A package with name " + pkgName + " could not be found." ), this);
 			}
+		} else if (isScoped()) {
+			if (this.root instanceof IRPPackage) {
+				this.mainPackage = (IRPPackage) this.root;
+			} else {
+				IRPCollection rootPkgs = this.root.getNestedElementsByMetaClass("Package", 1);
+				if (rootPkgs.getCount() == 0) {
+					throw new EolModelLoadingException(new IllegalStateException("No packages found under the root element."), this);
+				}
+				this.mainPackage = (IRPPackage) rootPkgs.getItem(1);
+			}
+			LOG.info("Using package with name {} as main package.", this.mainPackage.getName());
 		} else {
 			IRPCollection allPkgs = this.prj.getPackages();
 			if (allPkgs.getCount() == 0) {
@@ -169,22 +255,46 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			this.mainPackage = (IRPPackage) allPkgs.getItem(1);
 			LOG.info("Using package with name {} as main package.", this.mainPackage.getName());
 		}
-		// TODO If not cached, register the model as an RPApplicationListener so if the model
-		// changes, we can clear the cache. https://www.ibm.com/docs/en/elms/esdr/8.4.0?topic=api-using-rpapplicationlistener-respond-events
-		// but still use the cache for improved performance
-		LOG.info("Current project is: {}", this.prj.getName());
+		this.projectName = this.prj.getName();
+		LOG.info("Current project is: {}", this.projectName);
 		this.types = new RhapsodyMetaclasses(
 				properties.getProperty(PROPERTY_INSTALLATION_DIRECTORY),
 				properties.getBooleanProperty(PROPERTY_CACHED, false),
 				this.prj,
+				this.root,
 				this.name
 				)
 			.load();
+		this.references = new RhapsodyReferenceIndex(this.root, this.ids);
+		this.text = properties.getBooleanProperty(PROPERTY_TEXT_INDEX, false)
+				? new RhapsodyTextIndex(this.root, this.ids)
+				: null;
+		this.nativeSearch = properties.getBooleanProperty(PROPERTY_NATIVE_SEARCH, false);
 		clearCache();
-		this.idPattern = Pattern.compile(ID_REGEX);
-		this.propertyGetter = new RhapsodyPropertyGetter(this.propertyCache, this.app);
-		this.propertySetter = new RhapsodyPropertySetter(this.propertyCache);
-		
+		this.propertyCache = this.cachePolicy.build(PROPERTY_WEIGHER, this::propertyRemoved);
+		this.propertyGetter = new RhapsodyPropertyGetter(
+				this.propertyCache,
+				this.cachePolicy.build(),
+				this.app,
+				this.ids);
+		((RhapsodyPropertyGetter) this.propertyGetter).setAdaptivePrefetcher(this.adaptivePrefetcher);
+		this.propertySetter = new RhapsodyPropertySetter(this.propertyCache, this.ids, this::elementWritten);
+		this.mirror = properties.getBooleanProperty(PROPERTY_MIRROR, false)
+				? RhapsodyMirror.of(
+						this.prj,
+						this.root,
+						mirrorProperties(properties.getProperty(PROPERTY_MIRROR_PROPERTIES, "name")),
+						(RhapsodyPropertyGetter) this.propertyGetter)
+				: null;
+		((RhapsodyPropertyGetter) this.propertyGetter).setMirror(this.mirror);
+		this.types.setMirror(this.mirror);
+		// Keep the caches in sync with changes made outside the driver
+		if (this.listener == null) {
+			this.listener = new RhapsodyModelListener(this);
+			if (!onRhapsody(() -> this.applicationFactory.listen(this.listener, RhapsodyExecutor.unwrap(this.app)))) {
+				LOG.warn("Unable to listen to Rhapsody events, changes made outside the model will not be reflected in the caches");
+			}
+		}
 	}
 
 	@Override
@@ -270,6 +380,14 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			factory = new ElementFactory(metaClass, name, sType);
 		}
 		IRPModelElement instance = factory.create(this.mainPackage);
+		this.types.elementAdded(instance);
+		this.references.add(instance);
+		if (this.text != null) {
+			this.text.add(instance);
+		}
+		if (this.mirror != null) {
+			this.mirror.add(instance);
+		}
 		if (isCachingEnabled()) {
 			addToCache(type, instance);
 		}
@@ -303,6 +421,10 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 		}
 		if (this.isModelElement(instance)) {
 			IRPModelElement element = (IRPModelElement) instance;
+			if (this.mirror != null && this.mirror.contains(element)) {
+				var newTerm = this.mirror.newTermOf(element);
+				return newTerm != null ? newTerm : this.mirror.metaclassOf(element);
+			}
 			var newTerm = element.getUserDefinedMetaClass();
 			if (newTerm != null) {
 				return newTerm;
@@ -325,7 +447,7 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			return false;
 		}
 		if (this.isModelElement(instance)) {
-			return this.getAllOfKind(type).contains(instance);
+			return this.types.isOfKind((IRPModelElement) instance, type);
 		}
 		throw new IllegalArgumentException("Instance must be an IRPModelElement in order to check its kind");
 	}
@@ -337,7 +459,7 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			return false;
 		}
 		if (this.isModelElement(instance)) {
-			return this.getAllOfType(type).contains(instance);
+			return this.types.isOfType((IRPModelElement) instance, type);
 		}
 		throw new IllegalArgumentException("Instance must be an IRPModelElement in order to check its type");
 	}
@@ -347,6 +469,12 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 		if (!this.idPattern.matcher(id).matches()) {
 			LOG.warn("Rhapsody ID have the format: GUID <UUID>. The supplied id: {} does not match this format.");
 		};
+		if (this.mirror != null) {
+			var element = this.mirror.elementByGuid(id);
+			if (element != null) {
+				return element;
+			}
+		}
 		return prj.findElementByGUID(id);
 	}
 
@@ -357,6 +485,12 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			throw new IllegalArgumentException("Can't get ID of null");
 		}
 		if (this.isModelElement(instance)) {
+			if (this.mirror != null) {
+				var guid = this.mirror.guidOf((IRPModelElement) instance);
+				if (guid != null) {
+					return guid;
+				}
+			}
 			return ((IRPModelElement)instance).getGUID();
 		}
 		throw new IllegalArgumentException("Instance must be an IRPModelElement in order to get its ID");
@@ -378,6 +512,10 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			};
 			var element = (IRPModelElement) instance;
 			element.setGUID(newId);
+			this.ids.forget(element);
+			if (this.mirror != null) {
+				this.mirror.update(element);
+			}
 		} else {
 			throw new IllegalArgumentException("Instance must be an IRPModelElement in order to set its ID");
 		}
@@ -388,8 +526,39 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 		if (!isModelElement(instance)) {
 			return false;
 		}
+		if (this.mirror != null && this.mirror.contains(instance)) {
+			return true;
+		}
 		var needle = (IRPModelElement)instance;
-		return this.prj.equals(needle.getProject());
+		if (!this.prj.equals(needle.getProject())) {
+			return false;
+		}
+		if (!isScoped()) {
+			return true;
+		}
+		while (needle != null) {
+			if (this.root.equals(needle)) {
+				return true;
+			}
+			needle = needle.getOwner();
+		}
+		return false;
+	}
+	
+	/**
+	 * Check if the model is scoped to a subtree of the project, see {@link #PROPERTY_ROOT_ELEM}.
+	 *
+	 * @return true, if the model root is not the project
+	 */
+	public boolean isScoped() {
+		return !this.prj.equals(this.root);
+	}
+	
+	/**
+	 * @return the root element of the model: the project, or the root of scoped models
+	 */
+	public IRPModelElement getRoot() {
+		return this.root;
 	}
 	
 	@Override
@@ -447,6 +616,145 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 		return propertySetter;
 	}
 	
+	/**
+	 * Fetch the values of the properties for all the elements in one pass, so that later reads
+	 * are served from the property cache. For example, in EOL (where <code>M</code> is the name
+	 * of the model):
+	 * <pre>
+	 * M.prefetch(Block.all, Sequence{"name", "description"});
+	 * Block.all.collect(b | b.name + b.description);
+	 * </pre>
+	 * Overloads that accept one to three property names are also provided.
+	 * 
+	 * @param elements the elements
+	 * @param properties the names of the properties
+	 * @return the number of values fetched
+	 * @see RhapsodyPropertyGetter#prefetch(Collection, Collection)
+	 */
+	public int prefetch(Collection<?> elements, Collection<String> properties) {
+		return ((RhapsodyPropertyGetter) this.propertyGetter).prefetch(elements, properties);
+	}
+	
+	public int prefetch(Collection<?> elements, String property) {
+		return prefetch(elements, List.of(property));
+	}
+	
+	public int prefetch(Collection<?> elements, String property1, String property2) {
+		return prefetch(elements, List.of(property1, property2));
+	}
+	
+	public int prefetch(Collection<?> elements, String property1, String property2, String property3) {
+		return prefetch(elements, List.of(property1, property2, property3));
+	}
+	
+	/**
+	 * The adaptive prefetcher keeps track of the number of prefetched values, and how many of
+	 * them were read. For example, in EOL: <code>M.adaptivePrefetcher.hitRatio().println();</code>
+	 * 
+	 * @return the adaptive prefetcher, or null if adaptive prefetching is disabled
+	 */
+	public RhapsodyAdaptivePrefetcher getAdaptivePrefetcher() {
+		return this.adaptivePrefetcher;
+	}
+	
+	/**
+	 * Set the search manager used by selects, see {@link #PROPERTY_NATIVE_SEARCH}. By default the
+	 * search manager of the Rhapsody application is used.
+	 * 
+	 * @param searchManager the search manager, null to use the application's
+	 */
+	public void setSearchManager(IRPSearchManager searchManager) {
+		this.searchManager = confined(searchManager);
+	}
+	
+	/**
+	 * Enable or disable the use of the Rhapsody search engine by selects, see
+	 * {@link #PROPERTY_NATIVE_SEARCH}.
+	 * 
+	 * @param nativeSearch true, to enable native search
+	 */
+	public void setNativeSearch(boolean nativeSearch) {
+		this.nativeSearch = nativeSearch;
+	}
+	
+	/**
+	 * Set the factory of the Rhapsody application the model connects to when it is loaded. By
+	 * default the {@link RhapsodyApplicationFactory#APP_SERVER} is used.
+	 * 
+	 * @param applicationFactory the factory
+	 */
+	public void setApplicationFactory(RhapsodyApplicationFactory applicationFactory) {
+		this.applicationFactory = applicationFactory;
+	}
+	
+	/**
+	 * @return the mirror of the model, or null if it is not enabled, see {@link #PROPERTY_MIRROR}
+	 */
+	public RhapsodyMirror getMirror() {
+		return this.mirror;
+	}
+	
+	/**
+	 * Get the elements that reference the given element: dependencies on it, relations to it,
+	 * and attributes, arguments, operations and tags typed by it or whose value is it. The
+	 * references of all the elements are indexed in one traversal of the model, the first time
+	 * this operation is used, see {@link RhapsodyReferenceIndex}. For example, in EOL (where
+	 * <code>M</code> is the name of the model):
+	 * <pre>
+	 * Block.all.select(b | M.getReferencesTo(b).isEmpty()).println("Unused: ");
+	 * </pre>
+	 * 
+	 * @param element the referenced element
+	 * @return the referencing elements
+	 */
+	public Collection<IRPModelElement> getReferencesTo(Object element) {
+		if (!isModelElement(element)) {
+			LOG.error("Get references to a non IRPModelElement {}", element);
+			throw new IllegalArgumentException("Instance must be an IRPModelElement in order to get its references");
+		}
+		return this.references.referencesTo((IRPModelElement) element);
+	}
+	
+	/**
+	 * Search the elements whose name, description, requirement id or tag values have all the
+	 * terms (words) of the query, ignoring case and in any order. For example, in EOL (where
+	 * <code>M</code> is the name of the model):
+	 * <pre>
+	 * M.searchTerm("brake pedal").println();
+	 * </pre>
+	 * If the {@link #PROPERTY_TEXT_INDEX} is enabled, the results come from the
+	 * {@link RhapsodyTextIndex}, else the text of all the elements is read for each search.
+	 * 
+	 * @param query the terms
+	 * @return the matching elements
+	 */
+	public Collection<IRPModelElement> searchTerm(String query) {
+		return textIndex().term(query);
+	}
+	
+	/**
+	 * Search the elements whose name, description, requirement id or tag values have a term
+	 * (word) that starts with the query, ignoring case, see {@link #searchTerm(String)}.
+	 * 
+	 * @param query the prefix
+	 * @return the matching elements
+	 */
+	public Collection<IRPModelElement> searchPrefix(String query) {
+		return textIndex().prefix(query);
+	}
+	
+	/**
+	 * Search the elements whose name, description, requirement id or a tag value has the terms
+	 * (words) of the query one after the other, ignoring case and punctuation, see
+	 * {@link #searchTerm(String)}.
+	 * 
+	 * @param query the phrase
+	 * @return the matching elements
+	 */
+	public Collection<IRPModelElement> searchPhrase(String query) {
+		return textIndex().phrase(query);
+	}
+	
 	public int appStatus() {
 		try {
 			return this.app.getApplicationStatus();
@@ -470,11 +778,20 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 
 	@Override
 	protected void disposeModel() {
+		if (this.adaptivePrefetcher != null) {
+			LOG.info("Adaptive prefetch: {} values prefetched, hit ratio {}",
+					this.adaptivePrefetcher.fetchedCount(),
+					this.adaptivePrefetcher.hitRatio());
+		}
 		this.propertyCache.invalidateAll();
 		if (this.softDispose && !this.canDispose) {
 			this.canDispose = true;
 		} else {
 			LOG.info("Model in normal mode. Storing and closing.");
+			if (this.listener != null) {
+				onRhapsody(this.listener::disconnect);
+				this.listener = null;
+			}
 			if (this.storeOnDisposal) {
 				this.store();
 			}
@@ -486,23 +803,159 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 			if(!this.rhapsodyWasActive && (this.app != null)) {
 				this.app.quit();
 			}
-			RhapsodyAppServer.CloseSession();
+			onRhapsody(() -> {
+				this.applicationFactory.closeSession();
+				return null;
+			});
+			if (this.executor != null) {
+				this.executor.close();
+				this.executor = null;
+			}
+		}
+	}
+	
+	@Override
+	public void clearCache() {
+		super.clearCache();
+		if (this.types != null) {
+			this.types.clearIndex();
+		}
+		if (this.references != null) {
+			this.references.clear();
+		}
+		if (this.text != null) {
+			this.text.clear();
+		}
+	}
+	
+	/**
+	 * Invalidate all the caches: property values, type, reference and text indices and model collections.
+	 */
+	public void invalidateCaches() {
+		if (this.propertyGetter != null) {
+			((RhapsodyPropertyGetter) this.propertyGetter).invalidateAll();
+		}
+		clearCache();
+	}
+	
+	/**
+	 * Elements were changed outside the driver: their property values are invalidated and they
+	 * are indexed again. Also used for deleted elements, in which case the elements can't be
+	 * found anymore.
+	 * 
+	 * @param guids the GUIDs of the changed elements
+	 */
+	void elementsChanged(Collection<String> guids) {
+		var getter = (RhapsodyPropertyGetter) this.propertyGetter;
+		boolean typesChanged = false;
+		for (String guid : guids) {
+			getter.invalidate(RhapsodyElementIds.parse(guid));
+			IRPModelElement element = this.prj.findElementByGUID(guid);
+			if (element != null && owns(element)) {
+				if (this.mirror != null) {
+					typesChanged |= this.mirror.update(element);
+				}
+				typesChanged |= this.types.elementChanged(element);
+				this.references.update(element);
+				if (this.text != null) {
+					this.text.update(element);
+				}
+			}
+		}
+		if (typesChanged) {
+			clearCollectionCaches();
 		}
 	}
 	
+	/**
+	 * An element was added outside the driver.
+	 * 
+	 * @param element the new element
+	 */
+	void elementAddedExternally(IRPModelElement element) {
+		element = confined(element);
+		if (!owns(element)) {
+			return;
+		}
+		invalidateOwner(element);
+		this.references.add(element);
+		if (this.text != null) {
+			this.text.add(element);
+		}
+		if (this.mirror != null) {
+			this.mirror.add(element);
+		}
+		if (this.types.elementAdded(element)) {
+			clearCollectionCaches();
+		}
+	}
+	
+	/**
+	 * An element is about to be deleted outside the driver.
+	 * 
+	 * @param element the element to be deleted
+	 */
+	void elementDeleting(IRPModelElement element) {
+		element = confined(element);
+		if (!owns(element)) {
+			return;
+		}
+		((RhapsodyPropertyGetter) this.propertyGetter).invalidate(this.ids.idOf(element));
+		invalidateOwner(element);
+		this.references.remove(element);
+		if (this.text != null) {
+			this.text.remove(element);
+		}
+		if (this.mirror != null) {
+			this.mirror.remove(element);
+		}
+		if (this.types.elementDeleted(element)) {
+			clearCollectionCaches();
+		}
+	}
+	
+	/**
+	 * A project was closed. If it is the model's project, all caches are invalidated.
+	 * 
+	 * @param name the project name
+	 */
+	void projectClosed(String name) {
+		if (name == null || name.equals(this.projectName)) {
+			invalidateCaches();
+		}
+	}
+	
+	/**
+	 * If native search is enabled, the elements are a {@link RhapsodySearchableList}. 
+	 */
+	@Override
+	public Collection<IRPModelElement> getAllOfType(String type) throws EolModelElementTypeNotFoundException {
+		return searchable(super.getAllOfType(type), type, false);
+	}
+	
+	/**
+	 * If native search is enabled, the elements are a {@link RhapsodySearchableList}. 
+	 */
+	@Override
+	public Collection<IRPModelElement> getAllOfKind(String kind) throws EolModelElementTypeNotFoundException {
+		return searchable(super.getAllOfKind(kind), kind, true);
+	}
+	
 	@Override
 	protected Object getCacheKeyForType(String type) throws EolModelElementTypeNotFoundException {
 		return type;
 	}
 
+	/**
+	 * The contents are provided as a lazy view of the Rhapsody collection, see
+	 * {@link RhapsodyCollectionList}, or are the elements of the mirror. 
+	 */
 	@Override
 	protected Collection<IRPModelElement> allContentsFromModel() {
-		@SuppressWarnings("unchecked")
-		List<Object> x = prj.getNestedElementsRecursive().toList();
-		return x.stream()
-				.filter(IRPModelElement.class::isInstance)
-				.map(IRPModelElement.class::cast)
-				.collect(Collectors.toList());
+		if (this.mirror != null) {
+			return new ArrayList<>(this.mirror.elements());
+		}
+		return new RhapsodyCollectionList(root.getNestedElementsRecursive());
 	}
 
 	@Override
@@ -529,7 +982,16 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 		} else {
 			factory = new ElementFactory( (IRPStereotype) this.prj.findNestedElementRecursive(type, "Stereotype"));
 		}
-		return factory.create(this.mainPackage);
+		IRPModelElement instance = factory.create(this.mainPackage);
+		this.types.elementAdded(instance);
+		this.references.add(instance);
+		if (this.text != null) {
+			this.text.add(instance);
+		}
+		if (this.mirror != null) {
+			this.mirror.add(instance);
+		}
+		return instance;
 	}
 
 	@Override
@@ -537,10 +999,25 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 		if (!isModelElement(instance)) {
 			return false;
 		}
+		var element = (IRPModelElement) instance;
+		this.types.elementDeleted(element);
+		this.references.remove(element);
+		if (this.text != null) {
+			this.text.remove(element);
+		}
+		if (this.mirror != null) {
+			this.mirror.remove(element);
+		}
 		try {
-			((IRPModelElement)instance).deleteFromProject();	
+			element.deleteFromProject();	
 		} catch(RhapsodyRuntimeException ex) {
 			LOG.error("Unable to delete element from model", ex);
+			// The element might have been partially deleted
+			this.types.clearIndex();
+			this.references.clear();
+			if (this.text != null) {
+				this.text.clear();
+			}
 			throw new EolRuntimeException("Unable to delete the eleement", ex);
 		}
 		return true;
@@ -552,12 +1029,29 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 	}
 	
 	private static final Logger LOG = LogManager.getLogger(RhapsodyModel.class);
+	private static final Weigher<IRPKey, PropertyValue> PROPERTY_WEIGHER = (k, v) -> v.weight();
 	private final String ID_REGEX = "^GUID\s[0-9a-fA-F]{8}-([0-9a-fA-F]{4}-){3}[0-9a-fA-F]{12}$";
-	private final Cache<IRPKey, PropertyValue> propertyCache;
+	private Cache<IRPKey, PropertyValue> propertyCache;
+	private RhapsodyCachePolicy cachePolicy;
+	private RhapsodyAdaptivePrefetcher adaptivePrefetcher;
+	private final RhapsodyElementIds ids = new RhapsodyElementIds();
 	
+	/** Runs the calls to Rhapsody, null if they are not confined to one thread */
+	private RhapsodyExecutor executor;
+	private RhapsodyApplicationFactory applicationFactory = RhapsodyApplicationFactory.APP_SERVER;
 	private IRPApplication app;
 	private IRPProject prj;
+	private String projectName;
+	private RhapsodyModelListener listener;
+	private IRPModelElement root;
 	private RhapsodyMetaclasses types;
+	private RhapsodyReferenceIndex references;
+	/** The text index, null if it is not enabled */
+	private RhapsodyTextIndex text;
+	private boolean nativeSearch;
+	/** The mirror of the model, null if it is not enabled */
+	private RhapsodyMirror mirror;
+	private IRPSearchManager searchManager;
 	private IRPPackage mainPackage;
 	private boolean softDispose;
 	
@@ -608,21 +1102,170 @@ public class RhapsodyModel extends CachedModel<IRPModelElement> implements IMode
 	}
 	
 	/**
-	 * Use the {@link RhapsodyAppServer} to connect to the active Rhapsody or launch a new one.
+	 * Find the root element for scoped models.
+	 * @param value the value of the {@link #PROPERTY_ROOT_ELEM} property
+	 * @return the root element, the project if the value is <code>false</code>
+	 * @throws EolModelLoadingException if the root element can't be found
+	 */
+	private IRPModelElement rootElement(String value) throws EolModelLoadingException {
+		IRPModelElement result;
+		if (Boolean.FALSE.toString().equalsIgnoreCase(value)) {
+			return this.prj;
+		}
+		if (Boolean.TRUE.toString().equalsIgnoreCase(value)) {
+			LOG.info("Using selected element as root");
+			result = this.app.getSelectedElement();
+		} else if (this.idPattern.matcher(value).matches()) {
+			LOG.info("Using element with id {} as root", value);
+			result = this.prj.findElementByGUID(value);
+		} else {
+			LOG.info("Using package with name {} as root", value);
+			result = this.prj.findNestedElementRecursive(value, "Package");
+		}
+		if (result == null) {
+			LOG.error("The root element {} was not found", value);
+			throw new EolModelLoadingException(new IllegalArgumentException("The root element " + value + " could not be found." ), this);
+		}
+		LOG.info("Model scoped to {} {}", result.getMetaClass(), result.getName());
+		return result;
+	}
+	
+	/**
+	 * Use the {@link RhapsodyApplicationFactory} to connect to the active Rhapsody or launch a new one.
 	 * @return the Rhapsody application to use.
-	 * @throws RhapsodyRuntimeException if the {@link RhapsodyAppServer} fails to find/create the {@link IRPApplication}
+	 * @throws RhapsodyRuntimeException if the {@link RhapsodyApplicationFactory} fails to find/create the {@link IRPApplication}
 	 */
 	private IRPApplication connectToRhapsody() throws RhapsodyRuntimeException {
-		IRPApplication result;
-		try {
-			result = RhapsodyAppServer.getActiveRhapsodyApplication();
-			this.rhapsodyWasActive = true;
-		} catch (RhapsodyRuntimeException e) {
-			result = RhapsodyAppServer.createRhapsodyApplication();
+		return confined(onRhapsody(() -> {
+			IRPApplication result;
+			try {
+				result = this.applicationFactory.getActiveApplication();
+				this.rhapsodyWasActive = true;
+			} catch (RhapsodyRuntimeException e) {
+				result = this.applicationFactory.createApplication();
+			}
+			return result;
+		}));
+	}
+	
+	/**
+	 * Run a call to Rhapsody that is not made through a Rhapsody object (e.g. to the
+	 * {@link RhapsodyApplicationFactory}), in the affinity thread if calls are confined.
+	 */
+	private <T> T onRhapsody(Supplier<T> call) {
+		return this.executor == null ? call.get() : this.executor.call(call);
+	}
+	
+	/**
+	 * Confine a Rhapsody object received from outside the model (e.g. in an event), if calls are
+	 * confined. Objects reached from a confined object are already confined.
+	 */
+	private <T> T confined(T object) {
+		return this.executor == null ? object : this.executor.confine(object);
+	}
+	
+	/**
+	 * The owner's collection properties (e.g. nestedElements) change when an element is added
+	 * or deleted.
+	 */
+	private void invalidateOwner(IRPModelElement element) {
+		IRPModelElement owner = element.getOwner();
+		if (owner != null) {
+			((RhapsodyPropertyGetter) this.propertyGetter).invalidate(this.ids.idOf(owner));
+		}
+	}
+	
+	/**
+	 * An element was written via the {@link RhapsodyPropertySetter}: its references and text are
+	 * indexed again.
+	 */
+	private void elementWritten(IRPModelElement element) {
+		this.references.update(element);
+		if (this.text != null) {
+			this.text.update(element);
+		}
+		if (this.mirror != null && this.mirror.update(element)) {
+			clearCollectionCaches();
+		}
+	}
+	
+	/**
+	 * @param value the value of the {@link #PROPERTY_MIRROR_PROPERTIES} property
+	 * @return the names of the properties to copy
+	 */
+	private static List<String> mirrorProperties(String value) {
+		List<String> result = new ArrayList<>();
+		for (String property : value.split(",")) {
+			if (!property.isBlank()) {
+				result.add(property.strip());
+			}
 		}
 		return result;
 	}
 	
+	/**
+	 * Wrap the elements of a type so selects on them can use the search manager. The elements
+	 * found by a search are matched to the elements of the type, so the candidates are elements
+	 * of the type even if the element type filters of the search are broader.
+	 */
+	private Collection<IRPModelElement> searchable(Collection<IRPModelElement> elements, String type, boolean kind) {
+		if (!this.nativeSearch || !(elements instanceof List)) {
+			return elements;
+		}
+		return new RhapsodySearchableList((List<IRPModelElement>) elements, (search, classes, context) -> {
+			IRPSearchManager manager = searchManager();
+			if (manager == null) {
+				return null;
+			}
+			try {
+				return search.run(manager, this.root, this.types.elementTypesOf(type, kind), classes, context);
+			} catch (RhapsodyRuntimeException ex) {
+				LOG.warn("Unable to search for {}, the select will check all the elements", type, ex);
+				return null;
+			}
+		}, this.ids);
+	}
+	
+	/**
+	 * Prefetched values that are removed from the property cache before they are read are no
+	 * longer waiting to be read, see {@link RhapsodyAdaptivePrefetcher#removed(IRPKey)}.
+	 */
+	private void propertyRemoved(IRPKey key, PropertyValue value, RemovalCause cause) {
+		RhapsodyAdaptivePrefetcher prefetcher = this.adaptivePrefetcher;
+		if (prefetcher != null && key != null && cause != RemovalCause.REPLACED) {
+			prefetcher.removed(key);
+		}
+	}
+	
+	private IRPSearchManager searchManager() {
+		if (this.searchManager == null && this.app != null) {
+			try {
+				this.searchManager = this.app.getSearchManager();
+			} catch (RhapsodyRuntimeException ex) {
+				LOG.warn("Unable to get the Rhapsody search manager", ex);
+			}
+		}
+		return this.searchManager;
+	}
+	
+	/**
+	 * The index used for searches: the text index if it is enabled, else a new one, filled by
+	 * the search and then discarded.
+	 */
+	private RhapsodyTextIndex textIndex() {
+		return this.text != null ? this.text : new RhapsodyTextIndex(this.root, this.ids);
+	}
+	
+	/**
+	 * Clear the {@link CachedModel} collections (contents, types and kinds), but not the type
+	 * index.
+	 */
+	private void clearCollectionCaches() {
+		if (isCachingEnabled()) {
+			super.clearCache();
+		}
+	}
+	
 	/*
 	 * public Boolean checkIfChanged() { return prj.isModifiedRecursive()==1; }
 	 * 
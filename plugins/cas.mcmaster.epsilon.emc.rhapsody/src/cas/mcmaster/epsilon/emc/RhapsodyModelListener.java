@@ -0,0 +1,150 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPDiagram;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.RPApplicationListener;
+
+/**
+ * Listens to changes made to the model outside the driver (e.g. in the Rhapsody UI) so the
+ * {@link RhapsodyModel} caches can be kept in sync: the property values of changed and deleted
+ * elements are invalidated, and the type index is updated with added, changed and deleted
+ * elements. When the project is closed all the caches are cleared.
+ * <p>
+ * The listener is connected to the Rhapsody application when the model is loaded. The event
+ * methods can also be called directly, e.g. to replay events.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyModelListener extends RPApplicationListener {
+
+	public RhapsodyModelListener(RhapsodyModel model) {
+		super();
+		this.model = model;
+	}
+
+	@Override
+	public boolean onElementsChanged(String elementsGUIDs) {
+		LOG.info("Elements changed: {}", elementsGUIDs);
+		try {
+			this.model.elementsChanged(guids(elementsGUIDs));
+		} catch (RuntimeException e) {
+			invalidateAll(e);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean afterAddElement(IRPModelElement pModelElement) {
+		try {
+			this.model.elementAddedExternally(pModelElement);
+		} catch (RuntimeException e) {
+			invalidateAll(e);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean beforeDeleteElement(IRPModelElement modelElement) {
+		try {
+			this.model.elementDeleting(modelElement);
+		} catch (RuntimeException e) {
+			invalidateAll(e);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean afterDeleteElement(String elementGUID) {
+		LOG.info("Element deleted: {}", elementGUID);
+		try {
+			this.model.elementsChanged(guids(elementGUID));
+		} catch (RuntimeException e) {
+			invalidateAll(e);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean afterProjectClose(String bstrProjectName) {
+		LOG.info("Project closed: {}", bstrProjectName);
+		this.model.projectClosed(bstrProjectName);
+		return false;
+	}
+
+	@Override
+	public boolean beforeProjectClose(IRPProject pProject) {
+		return false;
+	}
+
+	@Override
+	public String getId() {
+		return ID_PREFIX + this.model.getName();
+	}
+
+	@Override
+	public boolean onDiagramOpen(IRPDiagram pDiagram) {
+		return false;
+	}
+
+	@Override
+	public boolean onDoubleClick(IRPModelElement pModelElement) {
+		return false;
+	}
+
+	@Override
+	public boolean onFeaturesOpen(IRPModelElement pModelElement) {
+		return false;
+	}
+
+	/**
+	 * Split a list of GUIDs, as provided by {@link #onElementsChanged(String)}.
+	 *
+	 * @param elementsGUIDs the GUIDs, separated by commas or semicolons
+	 * @return the list of GUIDs
+	 */
+	public static List<String> guids(String elementsGUIDs) {
+		List<String> result = new ArrayList<>();
+		if (elementsGUIDs == null) {
+			return result;
+		}
+		for (String guid : elementsGUIDs.split("[,;]")) {
+			guid = guid.trim();
+			if (!guid.isEmpty()) {
+				result.add(guid);
+			}
+		}
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyModelListener.class);
+	private static final String ID_PREFIX = "cas.mcmaster.epsilon.emc.rhapsody.";
+
+	private final RhapsodyModel model;
+
+	/**
+	 * Events are called from Rhapsody, so exceptions should not be propagated. If an event can't
+	 * be processed, all caches are cleared.
+	 */
+	private void invalidateAll(RuntimeException e) {
+		LOG.error("Unable to process Rhapsody event, clearing all caches", e);
+		this.model.invalidateCaches();
+	}
+
+}
@@ -13,21 +13,26 @@ package cas.mcmaster.epsilon.emc;
 import java.lang.reflect.Method;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.concurrent.TimeUnit;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.eclipse.epsilon.common.module.ModuleElement;
 import org.eclipse.epsilon.eol.exceptions.EolIllegalPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolInternalException;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.eclipse.epsilon.eol.execute.context.IEolContext;
 import org.eclipse.epsilon.eol.execute.introspection.IPropertyGetter;
 import org.eclipse.epsilon.eol.execute.introspection.java.ObjectMethod;
 import org.eclipse.epsilon.eol.execute.operations.contributors.OperationContributorRegistry;
-import org.eclipse.epsilon.eol.util.ReflectionUtil;
 
 import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
 import com.telelogic.rhapsody.core.IRPApplication;
 import com.telelogic.rhapsody.core.IRPCollection;
 import com.telelogic.rhapsody.core.IRPInstanceValue;
@@ -36,6 +41,7 @@ import com.telelogic.rhapsody.core.IRPModelElement;
 import com.telelogic.rhapsody.core.IRPTag;
 import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
 
+import cas.mcmaster.epsilon.emc.RhapsodyAccessors.Accessor;
 import dev.failsafe.Failsafe;
 import dev.failsafe.RetryPolicy;
 
@@ -49,12 +55,25 @@ import dev.failsafe.RetryPolicy;
 public class RhapsodyPropertyGetter implements IPropertyGetter {
 
 	public RhapsodyPropertyGetter(Cache<IRPKey, PropertyValue> cache, IRPApplication app) {
+		this(cache, app, new RhapsodyElementIds());
+	}
+	
+	public RhapsodyPropertyGetter(
+		Cache<IRPKey, PropertyValue> cache,
+		IRPApplication app,
+		RhapsodyElementIds ids) {
+		this(cache, new RhapsodyCachePolicy().build(), app, ids);
+	}
+	
+	public RhapsodyPropertyGetter(
+		Cache<IRPKey, PropertyValue> cache,
+		Cache<IRPKey, Boolean> hasCache,
+		IRPApplication app,
+		RhapsodyElementIds ids) {
 		this.cache = cache;
-		this.hasCache = Caffeine.newBuilder()
-				.expireAfterWrite(10, TimeUnit.MINUTES)
-			    .maximumSize(10_000)
-			    .build();
+		this.hasCache = hasCache;
 		this.app = app;
+		this.ids = ids;
 	}
 
 	@Override
@@ -63,9 +82,13 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 			return false;
 		}
 		IRPModelElement element = (IRPModelElement) object;
+		if (mirrored(element, property) != null) {
+			return true;
+		}
 		return this.hasCache.get(new IRPKey(
-				element.getGUID(), property),
+				this.ids.idOf(element), property),
 				k -> {
+					this.properties.add(property);
 					try (ObjectMethod om = getMethodFor(element, property, context)) {
 							if (om.getMethod() != null) {
 								return true;
@@ -84,25 +107,38 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 		if (!(target instanceof IRPModelElement)) {
 			throw new IllegalArgumentException("Can't get ptoperty of none IRPModelElement");
 		}
-		// Connection to Rhapsody can fail, so we want to retry
-		RetryPolicy<Object> retryPolicy = RetryPolicy.builder()
-				  .handle(RhapsodyRuntimeException.class)
-				  .withDelay(Duration.ofMillis(300))
-				  .withMaxRetries(3)
-				  .build();
-	
 		IRPModelElement element = (IRPModelElement) target;
+		// Mirrored values don't need to go to Rhapsody either
+		PropertyValue mirrored = mirrored(element, property);
+		if (mirrored != null) {
+			return mirrored.get();
+		}
+		IRPKey key = new IRPKey(this.ids.idOf(element), property);
+		// Cache hits don't need to go to Rhapsody
+		PropertyValue cached = this.cache.getIfPresent(key);
+		if (cached != null) {
+			RhapsodyAdaptivePrefetcher prefetcher = this.adaptivePrefetcher;
+			if (prefetcher != null) {
+				adaptivePrefetch(prefetcher, prefetcher.read(key));
+			}
+			return cached.get();
+		}
 		try {
-			PropertyValue value =  (PropertyValue) Failsafe.with(retryPolicy)
+			PropertyValue value =  (PropertyValue) Failsafe.with(RETRY_POLICY)
 					.onFailure(e -> LOG.error("Failed to getting value from Rhapsody", e.getException()))
 					.get(() -> {
-						LOG.info("Getting property {} from {}", property, element.getGUID());
+						LOG.info("Getting property {}", key);
 						return this.cache.get(
-								new IRPKey(element.getGUID(), property),
+								key,
 								k -> {
+									this.properties.add(property);
 									return computeValue(property, context, element);
 								});
 					});
+			RhapsodyAdaptivePrefetcher prefetcher = this.adaptivePrefetcher;
+			if (prefetcher != null && !value.isError()) {
+				adaptivePrefetch(prefetcher, prefetcher.missed(element, property));
+			}
 			return value.get();
 		} catch (RhapsodyRuntimeException ex) {
 			String msg;
@@ -115,7 +151,75 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 		}
 	}	
 	
+	/**
+	 * Get the values of the properties for all the elements and store them in the cache, so
+	 * that later reads are cache hits. Only native (getX, isX, hasX) properties and stereotype
+	 * tags are fetched. Values that are already cached, properties the element does not have,
+	 * and values that can't be read (e.g. the connection to Rhapsody fails) are skipped; reading
+	 * them later follows the normal path. At most as many values as the cache can hold are
+	 * fetched, and none if caching is disabled.
+	 * 
+	 * @param elements the elements, objects that are not IRPModelElements are ignored
+	 * @param properties the names of the properties
+	 * @return the number of values fetched
+	 */
+	public int prefetch(Collection<?> elements, Collection<String> properties) {
+		return prefetch(elements, properties, Long.MAX_VALUE, k -> { });
+	}
+	
+	/**
+	 * Prefetch values automatically, when a script reads the same property of many elements of
+	 * a type. By default values are only prefetched when requested, see
+	 * {@link #prefetch(Collection, Collection)}.
+	 * 
+	 * @param adaptivePrefetcher the prefetcher, or null to disable adaptive prefetching
+	 */
+	public void setAdaptivePrefetcher(RhapsodyAdaptivePrefetcher adaptivePrefetcher) {
+		this.adaptivePrefetcher = adaptivePrefetcher;
+	}
+	
+	public RhapsodyAdaptivePrefetcher getAdaptivePrefetcher() {
+		return this.adaptivePrefetcher;
+	}
+	
+	/**
+	 * Read the values of the elements in the mirror from the mirror, see {@link RhapsodyMirror}.
+	 * 
+	 * @param mirror the mirror, or null to read all values from Rhapsody
+	 */
+	public void setMirror(RhapsodyMirror mirror) {
+		this.mirror = mirror;
+	}
+	
+	public RhapsodyMirror getMirror() {
+		return this.mirror;
+	}
+	
+	/**
+	 * Invalidate the cached values (and property existence) of all the properties of an element.
+	 * 
+	 * @param id the id of the element, see {@link RhapsodyElementIds}
+	 */
+	public void invalidate(UUID id) {
+		for (String property : this.properties) {
+			IRPKey key = new IRPKey(id, property);
+			this.cache.invalidate(key);
+			this.hasCache.invalidate(key);
+		}
+	}
+	
+	/**
+	 * Invalidate all cached values.
+	 */
+	public void invalidateAll() {
+		this.cache.invalidateAll();
+		this.hasCache.invalidateAll();
+	}
+	
 	public boolean knowsAboutProperty(IRPModelElement instance, String property) {
+		if (mirrored(instance, property) != null) {
+			return true;
+		}
 		Method om = nativeMethod(instance, property);
 		if (om != null) {
 			return true;
@@ -125,32 +229,156 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 	}
 	
 	private static final Logger LOG = LogManager.getLogger(RhapsodyPropertyGetter.class);
+	private static final RhapsodyAccessors ACCESSORS = RhapsodyAccessors.SHARED;
+	// Connection to Rhapsody can fail, so we want to retry
+	private static final RetryPolicy<Object> RETRY_POLICY = RetryPolicy.builder()
+			  .handle(RhapsodyRuntimeException.class)
+			  .withDelay(Duration.ofMillis(300))
+			  .withMaxRetries(3)
+			  .build();
 	
 	private final Cache<IRPKey, PropertyValue> cache;
 	private final Cache<IRPKey, Boolean> hasCache;
 	private final IRPApplication app;
+	private final RhapsodyElementIds ids;
+	/** The names of all the properties that have been cached */
+	private final Set<String> properties = ConcurrentHashMap.newKeySet();
+	private OperationContributorRegistry missesRegistry;
+	private Set<String> registryMisses;
+	private RhapsodyAdaptivePrefetcher adaptivePrefetcher;
+	private RhapsodyMirror mirror;
 	
-	private PropertyValue computeValue(String property, IEolContext context, IRPModelElement element) {
-		LOG.info("Property {} value not cached, computing", property);
-		try (ObjectMethod objectMethod = getMethodFor(element, property, context)) {
-			if (objectMethod.getMethod() != null) {
-				LOG.info("Execuing method {} to get property {}.",
-						objectMethod.getMethod().getName(),
-						property);
-				ModuleElement ast = context.getExecutorFactory().getActiveModuleElement();
-				Object value = null;
+	/**
+	 * @return the value in the mirror, or null if there is no mirror or it doesn't have the value
+	 */
+	private PropertyValue mirrored(IRPModelElement element, String property) {
+		RhapsodyMirror mirror = this.mirror;
+		return mirror == null ? null : mirror.value(element, property);
+	}
+	
+	/**
+	 * Fetch at most <code>limit</code> values.
+	 * 
+	 * @param onFetch called with the key of each fetched value
+	 */
+	private int prefetch(
+		Collection<?> elements,
+		Collection<String> properties,
+		long limit,
+		Consumer<IRPKey> onFetch) {
+		long capacity = capacity();
+		if (capacity == 0) {
+			LOG.info("Caching is disabled, values are not prefetched");
+			return 0;
+		}
+		limit = Math.min(limit, capacity);
+		LOG.info("Prefetching properties {} of {} elements", properties, elements.size());
+		this.properties.addAll(properties);
+		int fetched = 0;
+		for (Object object : elements) {
+			if (!(object instanceof IRPModelElement)) {
+				continue;
+			}
+			IRPModelElement element = (IRPModelElement) object;
+			UUID id;
+			try {
+				id = this.ids.idOf(element);
+			} catch (RhapsodyRuntimeException e) {
+				continue;
+			}
+			for (String property : properties) {
+				IRPKey key = new IRPKey(id, property);
+				if (this.cache.getIfPresent(key) != null) {
+					continue;
+				}
+				PropertyValue value;
 				try {
-					value = objectMethod.execute(ast, context);
+					value = fetchValue(property, element);
 				} catch (RhapsodyRuntimeException e) {
-					return new PropertyValue(new EolRuntimeException("Error invoking Rhapsody API.", e));
-				} catch (EolRuntimeException e) {
-					return new PropertyValue(e);
+					continue;
 				}
-				if (value != null) {
-					if (value instanceof IRPCollection) {
-						return new PropertyValue(((IRPCollection)value).toList());
+				if (value != null && !value.isError()) {
+					this.cache.put(key, value);
+					onFetch.accept(key);
+					if (++fetched >= limit) {
+						LOG.info("Prefetch limit reached");
+						return fetched;
+					}
+				}
+			}
+		}
+		LOG.info("Prefetched {} values", fetched);
+		return fetched;
+	}
+	
+	/**
+	 * @return the maximum size (or weight) of the cache, {@link Long#MAX_VALUE} if it is not
+	 * 		   bounded, 0 if caching is disabled
+	 */
+	private long capacity() {
+		return this.cache.policy().eviction()
+				.map(Policy.Eviction::getMaximum)
+				.orElse(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * @return the number (or weight) of values that can be added to the cache without evicting
+	 * 		   others, {@link Long#MAX_VALUE} if it is not bounded
+	 */
+	private long freeCapacity() {
+		return this.cache.policy().eviction()
+				.map(e -> Math.max(0, e.getMaximum() - e.weightedSize().orElse(this.cache.estimatedSize())))
+				.orElse(Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Prefetch a batch suggested by the {@link RhapsodyAdaptivePrefetcher}, within its remaining
+	 * budget and the free capacity of the cache, so prefetched values don't evict the values
+	 * that are being read. Prefetching is done in the calling thread, as calls to the Rhapsody
+	 * API from other threads are not safe.
+	 * 
+	 * @param batch the batch, or null if there is nothing to prefetch
+	 */
+	private void adaptivePrefetch(RhapsodyAdaptivePrefetcher prefetcher, RhapsodyAdaptivePrefetcher.Batch batch) {
+		if (batch == null) {
+			return;
+		}
+		long limit = Math.min(prefetcher.remainingBudget(), freeCapacity());
+		if (limit > 0) {
+			prefetch(batch.elements(), List.of(batch.property()), limit, batch::fetched);
+			LOG.info("Adaptive prefetch: {}", prefetcher);
+		}
+	}
+	
+	private PropertyValue computeValue(String property, IEolContext context, IRPModelElement element) {
+		LOG.info("Property {} value not cached, computing", property);
+		Accessor accessor = ACCESSORS.find(element.getClass(), property);
+		if (accessor != null) {
+			LOG.info("Execuing method {} to get property {}.",
+					accessor.method().getName(),
+					property);
+			PropertyValue value = accessorValue(accessor, element);
+			if (value != null) {
+				return value;
+			}
+		} else {
+			try (ObjectMethod objectMethod = getMethodFor(element, property, context)) {
+				if (objectMethod.getMethod() != null) {
+					LOG.info("Execuing method {} to get property {}.",
+							objectMethod.getMethod().getName(),
+							property);
+					ModuleElement ast = context.getExecutorFactory().getActiveModuleElement();
+					Object value = null;
+					try {
+						value = objectMethod.execute(ast, context);
+					} catch (RhapsodyRuntimeException e) {
+						return new PropertyValue(new EolRuntimeException("Error invoking Rhapsody API.", e));
+					} catch (EolRuntimeException e) {
+						return new PropertyValue(e);
+					}
+					if (value != null) {
+						return propertyValue(value);
 					}
-					return new PropertyValue(value);
 				}
 			}
 		}
@@ -165,6 +393,50 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 					context.getExecutorFactory().getActiveModuleElement(),
 					context));
 		}
+		return tagValue(tag);
+	}
+	
+	/**
+	 * Get the value of the property, if the element has an accessor or a tag for it. As opposed
+	 * to {@link #computeValue(String, IEolContext, IRPModelElement)}, the
+	 * {@link OperationContributorRegistry} is not used and missing properties are not reported.
+	 * 
+	 * @return the value, or null if the element does not have the property
+	 */
+	PropertyValue fetchValue(String property, IRPModelElement element) {
+		Accessor accessor = ACCESSORS.find(element.getClass(), property);
+		if (accessor != null) {
+			PropertyValue value = accessorValue(accessor, element);
+			if (value != null) {
+				return value;
+			}
+		}
+		IRPTag tag = element.getTag(property);
+		if (tag == null) {
+			return null;
+		}
+		return tagValue(tag);
+	}
+	
+	/**
+	 * @return the value, or null if the accessor returned null
+	 */
+	private PropertyValue accessorValue(Accessor accessor, IRPModelElement element) {
+		Object value = null;
+		try {
+			value = accessor.invoke(element);
+		} catch (RhapsodyRuntimeException e) {
+			return new PropertyValue(new EolRuntimeException("Error invoking Rhapsody API.", e));
+		} catch (Throwable e) {
+			return new PropertyValue(new EolInternalException(e));
+		}
+		if (value != null) {
+			return propertyValue(value);
+		}
+		return null;
+	}
+	
+	PropertyValue tagValue(IRPTag tag) {
 		var valSpecs = tag.getValueSpecifications();
 		var looper = valSpecs.toList().iterator();
 		var result = new ArrayList<Object>();
@@ -188,6 +460,14 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 			return new PropertyValue(result);
 		}
 	}
+	
+	private PropertyValue propertyValue(Object value) {
+		if (value instanceof IRPCollection) {
+			return new PropertyValue(((IRPCollection)value).toList());
+		}
+		return new PropertyValue(value);
+	}
+	
 	/**
 	 * Gets the {@link IRPLiteralSpecification} value and tries to cast it to the correct Java
 	 * primitive.
@@ -197,8 +477,17 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 	 * @return the primitive value, or the string representation if casting failed.
 	 */
 	private Object getLiteralSpecAsPrimitive(IRPTag tag, IRPLiteralSpecification valSpec) {
-		var valSpecVal = valSpec.getValue();
-		var tagTypeName = tag.getType().getName();
+		return literalValue(valSpec.getValue(), tag.getType().getName());
+	}
+
+	/**
+	 * Cast the value of a literal specification to the Java primitive that matches the tag type.
+	 *
+	 * @param valSpecVal the literal value
+	 * @param tagTypeName the name of the tag type, e.g. <code>RhpInteger</code>
+	 * @return the primitive value, or the string representation if casting failed.
+	 */
+	public static Object literalValue(String valSpecVal, String tagTypeName) {
 		Object result = null;
 		try {
 			switch(tagTypeName) {
@@ -243,6 +532,9 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 	 * need to use <code>element.hasNestedElements</code>.
 	 * 
 	 * If a Java (native) method can't be found, the Epsilon OperationContributorRegistry is used.
+	 * Native methods are resolved once per element class (see {@link RhapsodyAccessors}), and
+	 * properties that the registry can't provide are remembered (per registry) so they are only
+	 * searched once per element class.
 	 * 
 	 * @param element
 	 * @param property
@@ -258,8 +550,13 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 		if (element.getTag(property) != null) {
 			return new ObjectMethod(element, null);
 		}
-		LOG.info("Looking for method for property {} in the OperationContributorRegistry", property);
 		OperationContributorRegistry registry = context.getOperationContributorRegistry();
+		String missKey = element.getClass().getName() + "#" + property;
+		Set<String> misses = registryMisses(registry);
+		if (misses.contains(missKey)) {
+			return new ObjectMethod(element);
+		}
+		LOG.info("Looking for method for property {} in the OperationContributorRegistry", property);
 		
 		// Look for an X() method
 		ObjectMethod om = registry.findContributedMethodForEvaluatedParameters(element, property, new Object[]{}, context);
@@ -277,28 +574,21 @@ public class RhapsodyPropertyGetter implements IPropertyGetter {
 		om = registry.findContributedMethodForEvaluatedParameters(element, "has" + property, new Object[]{}, context);
 		if (om != null) return om;
 		
+		misses.add(missKey);
 		return new ObjectMethod(element);
 	}
 	
+	private synchronized Set<String> registryMisses(OperationContributorRegistry registry) {
+		if (registry != this.missesRegistry) {
+			this.missesRegistry = registry;
+			this.registryMisses = ConcurrentHashMap.newKeySet();
+		}
+		return this.registryMisses;
+	}
 	
 	private Method nativeMethod(IRPModelElement instance, String property) {
-		LOG.info("Looking for native method for property {}", property);
-		Method om = null;
-		try {
-			om = ReflectionUtil.getMethodFor(instance, "get" + property, new Object[]{}, true, true);
-			if (om == null) {
-				// Look for an isX() method
-				om = ReflectionUtil.getMethodFor(instance, "is" + property, new Object[]{}, true, true);
-			}
-			if (om == null) {
-				// Look for a hasX() method
-				om = ReflectionUtil.getMethodFor(instance, "has" + property, new Object[]{}, true, true);
-			}
-		} catch (SecurityException e) {
-			// We can't determine if the method exists
-			LOG.error("Unable to get property methods", e);
-		}
-		return om;
+		Accessor accessor = ACCESSORS.find(instance.getClass(), property);
+		return accessor == null ? null : accessor.method();
 	}
 
 }
@@ -11,6 +11,7 @@
 package cas.mcmaster.epsilon.emc;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -28,6 +29,11 @@ import com.telelogic.rhapsody.core.IRPTag;
 /**
  * This {@link IPropertySetter} implementation supports for Java property setter and a custom
  * implementation to support SysML Stereotype tags (as properties).
+ * <p>
+ * If a write listener is given, it is notified of each written element, so indices of the model
+ * can index the element again, e.g. the {@link RhapsodyReferenceIndex} (the written property can
+ * be a reference) and the {@link RhapsodyTextIndex} (the written property can be the name, the
+ * description or a tag value).
  * 
  * @author Horacio Hoyos Rodriguez
  *
@@ -35,7 +41,17 @@ import com.telelogic.rhapsody.core.IRPTag;
 public class RhapsodyPropertySetter extends JavaPropertySetter {
 
 	public RhapsodyPropertySetter(Cache<IRPKey, PropertyValue> cache) {
+		this(cache, new RhapsodyElementIds());
+	}
+	
+	public RhapsodyPropertySetter(Cache<IRPKey, PropertyValue> cache, RhapsodyElementIds ids) {
+		this(cache, ids, null);
+	}
+	
+	public RhapsodyPropertySetter(Cache<IRPKey, PropertyValue> cache, RhapsodyElementIds ids, Consumer<IRPModelElement> written) {
 		this.cache = cache;
+		this.ids = ids;
+		this.written = written;
 	}
 
 	@Override
@@ -54,7 +70,8 @@ public class RhapsodyPropertySetter extends JavaPropertySetter {
 						context.getExecutorFactory().getActiveModuleElement(),
 						context,
 						value);		
-				this.cache.invalidate(new IRPKey(element.getGUID(), property));
+				this.cache.invalidate(new IRPKey(this.ids.idOf(element), property));
+				written(element);
 				return;
 			}
 		}
@@ -68,7 +85,7 @@ public class RhapsodyPropertySetter extends JavaPropertySetter {
 					context.getExecutorFactory().getActiveModuleElement(),
 					context);
 		}
-		this.cache.invalidate(new IRPKey(element.getGUID(), property));
+		this.cache.invalidate(new IRPKey(this.ids.idOf(element), property));
 		element.setTagElementValue(tag, null);
 		element.setTagValue(tag, null);
 		if (value instanceof Collection<?>) {
@@ -87,9 +104,18 @@ public class RhapsodyPropertySetter extends JavaPropertySetter {
 				element.setTagValue(tag, String.valueOf(value));
 			}
 		}	
+		written(element);
 	}
 	
 	private static final Logger LOG = LogManager.getLogger(RhapsodyPropertySetter.class);
 	private final Cache<IRPKey, PropertyValue> cache;
+	private final RhapsodyElementIds ids;
+	private final Consumer<IRPModelElement> written;
+	
+	private void written(IRPModelElement element) {
+		if (this.written != null) {
+			this.written.accept(element);
+		}
+	}
 
 }
@@ -0,0 +1,290 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPDependency;
+import com.telelogic.rhapsody.core.IRPGeneralization;
+import com.telelogic.rhapsody.core.IRPInstanceValue;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPOperation;
+import com.telelogic.rhapsody.core.IRPRelation;
+import com.telelogic.rhapsody.core.IRPVariable;
+
+/**
+ * Index of the elements that reference each element, to answer "who references this element"
+ * queries without calling {@link IRPModelElement#getReferences()} per element. The index is
+ * filled by a single traversal of the model the first time it is queried, and then gives the
+ * references to an element in time proportional to their number.
+ * <p>
+ * An element references the elements it points to through the API:
+ * <ul>
+ * 	<li> Dependencies, the element they depend on ({@link IRPDependency#getDependsOn()}).
+ * 	<li> Relations, the other end ({@link IRPRelation#getOtherClass()}).
+ * 	<li> Generalizations, the base class ({@link IRPGeneralization#getBaseClass()}).
+ * 	<li> Attributes, arguments and tags ({@link IRPVariable}), their type and the elements of
+ * 		 their values ({@link IRPInstanceValue#getValue()}). Local tag values are tags nested in
+ * 		 the element, so tag element values are references of the tag.
+ * 	<li> Operations, their return type ({@link IRPOperation#getReturns()}).
+ * </ul>
+ * Elements are identified by GUID (see {@link RhapsodyElementIds}), as the Rhapsody API can
+ * return a new proxy for the same element.
+ * <p>
+ * As with the {@link RhapsodyTypeIndex}, elements created or deleted via the model must be
+ * reported via {@link #add(IRPModelElement)} and {@link #remove(IRPModelElement)}, and elements
+ * whose references might have changed via {@link #update(IRPModelElement)}. Alternatively,
+ * {@link #clear()} can be used to force a new traversal.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyReferenceIndex {
+
+	public RhapsodyReferenceIndex(IRPModelElement root, RhapsodyElementIds ids) {
+		this.root = root;
+		this.ids = ids;
+		this.incoming = new HashMap<>();
+		this.outgoing = new HashMap<>();
+	}
+
+	/**
+	 * Get the elements that reference the given element.
+	 *
+	 * @param element the referenced element
+	 * @return the referencing elements, in traversal order
+	 */
+	public synchronized Collection<IRPModelElement> referencesTo(IRPModelElement element) {
+		fill();
+		var sources = this.incoming.get(this.ids.idOf(element));
+		if (sources == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(sources.values());
+	}
+
+	/**
+	 * Add a (new) element to the index. If the index has not been filled, this is a no-op as
+	 * the element will be found during traversal.
+	 *
+	 * @param element the element to add
+	 * @return true if the element references other elements, or the index has not been filled
+	 */
+	public synchronized boolean add(IRPModelElement element) {
+		if (!this.filled) {
+			return true;
+		}
+		return index(element);
+	}
+
+	/**
+	 * Remove an element and all its nested elements from the index, both as the source and as
+	 * the target of references. This method must be called before the element is deleted from
+	 * the project, while its contents can still be accessed.
+	 *
+	 * @param element the element to remove
+	 * @return true if a reference was removed, or the index has not been filled
+	 */
+	public synchronized boolean remove(IRPModelElement element) {
+		if (!this.filled) {
+			return true;
+		}
+		boolean removed = forget(element);
+		var contents = element.getNestedElementsRecursive();
+		for (int i=1; i <= contents.getCount(); i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				removed |= forget((IRPModelElement) item);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Index the references of the element again, e.g. after it has been changed. The local tags
+	 * of the element are indexed again too, as setting a tag value changes the references of
+	 * the tag.
+	 *
+	 * @param element the changed element
+	 * @return true if the references of the element or its tags changed
+	 */
+	public synchronized boolean update(IRPModelElement element) {
+		if (!this.filled) {
+			return false;
+		}
+		boolean changed = reindex(element);
+		var tags = element.getLocalTags();
+		if (tags != null) {
+			for (int i=1; i <= tags.getCount(); i++) {
+				var tag = tags.getItem(i);
+				if (tag instanceof IRPModelElement) {
+					changed |= reindex((IRPModelElement) tag);
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Clear the index. The next query will traverse the model again.
+	 */
+	public synchronized void clear() {
+		this.incoming.clear();
+		this.outgoing.clear();
+		this.filled = false;
+	}
+
+	/**
+	 * Get the elements that the given element references, as listed in the class comment.
+	 *
+	 * @param element the element
+	 * @return the referenced elements, can contain duplicates
+	 */
+	public static List<IRPModelElement> referencedBy(IRPModelElement element) {
+		List<IRPModelElement> result = new ArrayList<>();
+		if (element instanceof IRPDependency) {
+			addTo(result, ((IRPDependency) element).getDependsOn());
+		}
+		if (element instanceof IRPRelation) {
+			addTo(result, ((IRPRelation) element).getOtherClass());
+		}
+		if (element instanceof IRPGeneralization) {
+			addTo(result, ((IRPGeneralization) element).getBaseClass());
+		}
+		if (element instanceof IRPVariable) {
+			var variable = (IRPVariable) element;
+			addTo(result, variable.getType());
+			IRPCollection values = variable.getValueSpecifications();
+			if (values != null) {
+				for (int i=1; i <= values.getCount(); i++) {
+					var value = values.getItem(i);
+					if (value instanceof IRPInstanceValue) {
+						addTo(result, ((IRPInstanceValue) value).getValue());
+					}
+				}
+			}
+		}
+		if (element instanceof IRPOperation) {
+			addTo(result, ((IRPOperation) element).getReturns());
+		}
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyReferenceIndex.class);
+
+	private final IRPModelElement root;
+	private final RhapsodyElementIds ids;
+	/** The sources of the references to each element, by id */
+	private final Map<UUID, Map<UUID, IRPModelElement>> incoming;
+	/** The targets of the references of each element */
+	private final Map<UUID, Set<UUID>> outgoing;
+	private boolean filled = false;
+
+	private void fill() {
+		if (this.filled) {
+			return;
+		}
+		LOG.info("Building reference index");
+		var contents = this.root.getNestedElementsRecursive();
+		int count = contents.getCount();
+		for (int i=1; i <= count; i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				index((IRPModelElement) item);
+			}
+		}
+		this.filled = true;
+		LOG.info("Indexed the references of {} elements to {} elements", count, this.incoming.size());
+	}
+
+	private boolean index(IRPModelElement element) {
+		var targets = referencedBy(element);
+		if (targets.isEmpty()) {
+			return false;
+		}
+		UUID source = this.ids.idOf(element);
+		var targetIds = this.outgoing.computeIfAbsent(source, k -> new LinkedHashSet<>());
+		for (IRPModelElement target : targets) {
+			UUID id = this.ids.idOf(target);
+			targetIds.add(id);
+			this.incoming
+				.computeIfAbsent(id, k -> new LinkedHashMap<>())
+				.put(source, element);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove the references of the element.
+	 *
+	 * @return the ids of the elements it referenced, empty if it was not indexed
+	 */
+	private Set<UUID> unindex(UUID source) {
+		var targets = this.outgoing.remove(source);
+		if (targets == null) {
+			return Set.of();
+		}
+		for (UUID target : targets) {
+			var sources = this.incoming.get(target);
+			if (sources != null) {
+				sources.remove(source);
+				if (sources.isEmpty()) {
+					this.incoming.remove(target);
+				}
+			}
+		}
+		return targets;
+	}
+
+	private boolean reindex(IRPModelElement element) {
+		UUID source = this.ids.idOf(element);
+		var before = unindex(source);
+		index(element);
+		return !before.equals(this.outgoing.getOrDefault(source, Set.of()));
+	}
+
+	/**
+	 * Remove the element as source and target of references.
+	 */
+	private boolean forget(IRPModelElement element) {
+		UUID id = this.ids.idOf(element);
+		boolean removed = !unindex(id).isEmpty();
+		var sources = this.incoming.remove(id);
+		if (sources != null) {
+			for (UUID source : sources.keySet()) {
+				var targets = this.outgoing.get(source);
+				if (targets != null) {
+					targets.remove(id);
+				}
+			}
+			removed = true;
+		}
+		return removed;
+	}
+
+	private static void addTo(List<IRPModelElement> result, IRPModelElement target) {
+		if (target != null) {
+			result.add(target);
+		}
+	}
+
+}
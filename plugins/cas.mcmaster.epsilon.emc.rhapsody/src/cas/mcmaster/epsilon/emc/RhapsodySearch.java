@@ -0,0 +1,258 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.dom.AndOperatorExpression;
+import org.eclipse.epsilon.eol.dom.EqualsOperatorExpression;
+import org.eclipse.epsilon.eol.dom.Expression;
+import org.eclipse.epsilon.eol.dom.NameExpression;
+import org.eclipse.epsilon.eol.dom.PropertyCallExpression;
+import org.eclipse.epsilon.eol.dom.StringLiteral;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPSearchManager;
+import com.telelogic.rhapsody.core.IRPSearchQuery;
+import com.telelogic.rhapsody.core.IRPSearchResult;
+import com.telelogic.rhapsody.core.SearchFindAsEnum;
+
+/**
+ * The part of a select condition that can be run by the Rhapsody search engine
+ * ({@link IRPSearchManager}), so the elements are filtered inside Rhapsody instead of reading a
+ * property of each element. The condition (or one of the operands of a conjunction) must
+ * compare a property of the iterator with a string, or with a variable holding a string:
+ * <pre>
+ * Block.all.select(b | b.name = "Engine")
+ * Block.all.select(b | b.name = name and b.safetyLevel = "ASIL-D")
+ * </pre>
+ * The <code>name</code> property is searched as the element name. Properties that are not Java
+ * properties of the elements (see {@link RhapsodyAccessors}) are tags, as for the
+ * {@link RhapsodyPropertyGetter}, and are searched as the tag value. Other comparisons are not
+ * translated.
+ * <p>
+ * The search finds the candidates for the select, it does not replace it: the condition must
+ * still be evaluated for the elements found, e.g. for the operands that were not translated.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodySearch {
+
+	/**
+	 * Runs a search for a collection, see {@link RhapsodySearchableList}.
+	 */
+	@FunctionalInterface
+	public interface Runner {
+
+		/**
+		 * Run the search.
+		 *
+		 * @param search the search
+		 * @param classes the classes of the elements in the collection
+		 * @param context the context, to resolve the compared values
+		 * @return the elements found, or null if the search can't be used
+		 * @throws EolRuntimeException if the search fails
+		 */
+		Collection<IRPModelElement> run(RhapsodySearch search, Set<Class<?>> classes, IEolContext context) throws EolRuntimeException;
+
+	}
+
+	/**
+	 * Translate the condition of a select.
+	 *
+	 * @param iterator the name of the iterator variable
+	 * @param condition the condition
+	 * @return the search, or null if no part of the condition can be searched
+	 */
+	public static RhapsodySearch of(String iterator, Expression condition) {
+		Map<String, Expression> comparisons = new LinkedHashMap<>();
+		collect(iterator, condition, comparisons);
+		if (comparisons.isEmpty()) {
+			return null;
+		}
+		return new RhapsodySearch(comparisons);
+	}
+
+	/**
+	 * @return the properties compared by the condition, and the expressions of their values
+	 */
+	public Map<String, Expression> getComparisons() {
+		return this.comparisons;
+	}
+
+	/**
+	 * Create and run the search query. The name and (one) tag comparisons are used as filters of
+	 * the query, others are left to the select.
+	 *
+	 * @param manager the search manager
+	 * @param scope the element to search in (with its descendants)
+	 * @param elementTypes the metaclasses or new terms of the elements to find
+	 * @param classes the classes of the elements in the collection, to tell tags from Java
+	 * 		  properties
+	 * @param context the context, to resolve the compared values
+	 * @return the elements found, or null if no comparison can be used as a filter, or a compared
+	 * 		   value is not a string
+	 */
+	public Collection<IRPModelElement> run(
+		IRPSearchManager manager,
+		IRPModelElement scope,
+		Collection<String> elementTypes,
+		Set<Class<?>> classes,
+		IEolContext context) {
+		String name = null;
+		String tag = null;
+		String tagValue = null;
+		for (var comparison : this.comparisons.entrySet()) {
+			String property = comparison.getKey();
+			if (NAME.equals(property)) {
+				name = valueOf(comparison.getValue(), context);
+				if (name == null) {
+					return null;
+				}
+			} else if (tag == null && isTag(property, classes)) {
+				tag = property;
+				tagValue = valueOf(comparison.getValue(), context);
+				if (tagValue == null) {
+					return null;
+				}
+			}
+		}
+		if ((name == null && tag == null) || elementTypes.isEmpty()) {
+			return null;
+		}
+		IRPSearchQuery query = manager.createSearchQuery();
+		query.addSearchScope(scope);
+		query.setIncludeDescendants(1);
+		elementTypes.forEach(query::addFilterElementType);
+		query.addFilterSearchInField(IRPSearchQuery.SearchInField.NAME);
+		query.setMatchCase(1);
+		if (name != null) {
+			query.setSearchText(name);
+			query.setMatchWholeWord(1);
+			query.setSearchFindAsOption(SearchFindAsEnum.RP_SEARCH_EXACT);
+		} else {
+			// Any name, the elements are found by the tag filter
+			query.setSearchText("*");
+			query.setSearchFindAsOption(SearchFindAsEnum.RP_SEARCH_WILDCARD);
+		}
+		if (tag != null) {
+			query.setFilterTag(tag, tagValue, 1, 1, SearchFindAsEnum.RP_SEARCH_EXACT);
+		}
+		LOG.info("Searching {} with name {} and tag {} = {}", elementTypes, name, tag, tagValue);
+		return elements(manager.search(query));
+	}
+
+	/**
+	 * Checks if a property is a tag for all the classes, i.e. none of them has a Java property
+	 * with that name.
+	 *
+	 * @param property the property
+	 * @param classes the element classes
+	 * @return true, if the property is a tag
+	 */
+	public static boolean isTag(String property, Set<Class<?>> classes) {
+		for (Class<?> type : classes) {
+			if (ACCESSORS.find(type, property) != null) {
+				return false;
+			}
+		}
+		return !classes.isEmpty();
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodySearch.class);
+	private static final RhapsodyAccessors ACCESSORS = RhapsodyAccessors.SHARED;
+	private static final String NAME = "name";
+
+	private final Map<String, Expression> comparisons;
+
+	private RhapsodySearch(Map<String, Expression> comparisons) {
+		this.comparisons = comparisons;
+	}
+
+	/**
+	 * Collect the comparisons of a property of the iterator with a value, in the operands of
+	 * conjunctions. Only the first comparison of each property is kept.
+	 */
+	private static void collect(String iterator, Expression condition, Map<String, Expression> comparisons) {
+		if (condition instanceof AndOperatorExpression) {
+			var and = (AndOperatorExpression) condition;
+			collect(iterator, and.getFirstOperand(), comparisons);
+			collect(iterator, and.getSecondOperand(), comparisons);
+		} else if (condition instanceof EqualsOperatorExpression) {
+			var equals = (EqualsOperatorExpression) condition;
+			if (!compare(iterator, equals.getFirstOperand(), equals.getSecondOperand(), comparisons)) {
+				compare(iterator, equals.getSecondOperand(), equals.getFirstOperand(), comparisons);
+			}
+		}
+	}
+
+	private static boolean compare(String iterator, Expression property, Expression value, Map<String, Expression> comparisons) {
+		if (!(property instanceof PropertyCallExpression)) {
+			return false;
+		}
+		var call = (PropertyCallExpression) property;
+		if (!(call.getTargetExpression() instanceof NameExpression)
+				|| !iterator.equals(((NameExpression) call.getTargetExpression()).getName())) {
+			return false;
+		}
+		boolean isValue = value instanceof StringLiteral
+				|| (value instanceof NameExpression && !iterator.equals(((NameExpression) value).getName()));
+		if (isValue) {
+			comparisons.putIfAbsent(call.getName(), value);
+		}
+		return isValue;
+	}
+
+	/**
+	 * @return the string value of the expression, or null if the value is not a string
+	 */
+	private static String valueOf(Expression expression, IEolContext context) {
+		Object value;
+		if (expression instanceof StringLiteral) {
+			value = ((StringLiteral) expression).getValue();
+		} else {
+			var variable = context.getFrameStack().get(((NameExpression) expression).getName());
+			value = variable == null ? null : variable.getValue();
+		}
+		return value instanceof String ? (String) value : null;
+	}
+
+	/**
+	 * The search returns the elements, or search results for them.
+	 */
+	private static List<IRPModelElement> elements(IRPCollection found) {
+		List<IRPModelElement> result = new ArrayList<>();
+		if (found == null) {
+			return result;
+		}
+		for (int i=1; i <= found.getCount(); i++) {
+			var item = found.getItem(i);
+			if (item instanceof IRPSearchResult) {
+				item = ((IRPSearchResult) item).getMatchedObject();
+			}
+			if (item instanceof IRPModelElement) {
+				result.add((IRPModelElement) item);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,147 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.UUID;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.execute.operations.AbstractOperation;
+import org.eclipse.epsilon.eol.execute.operations.declarative.IAbstractOperationContributor;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * A {@link List} of the elements of a type (e.g. <code>Block.all</code>) whose selects can be run
+ * by the Rhapsody search engine. The list contributes the <code>select</code> operation (also
+ * used by <code>selectOne</code>, <code>reject</code>, <code>exists</code>, etc.), see
+ * {@link RhapsodySelectOperation}. Other operations use the elements of the list, which is a
+ * view of the given list.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodySearchableList extends AbstractList<IRPModelElement> implements RandomAccess, IAbstractOperationContributor {
+
+	/**
+	 * @param elements the elements of the type
+	 * @param runner runs the searches for the type
+	 * @param ids the ids of the elements, used to match the elements found by a search
+	 */
+	public RhapsodySearchableList(List<IRPModelElement> elements, RhapsodySearch.Runner runner, RhapsodyElementIds ids) {
+		this.elements = elements;
+		this.runner = runner;
+		this.ids = ids;
+	}
+
+	@Override
+	public AbstractOperation getAbstractOperation(String name) {
+		if (SELECT.equals(name)) {
+			return new RhapsodySelectOperation();
+		}
+		return null;
+	}
+
+	/**
+	 * Find the elements of the list that can match a select, using the Rhapsody search engine.
+	 * The search returns other objects for the elements, in the order it finds them, so the
+	 * elements of the list are matched to the ones found by id. The ids of the elements of the
+	 * list are usually known (e.g. from reading their properties), so only the GUIDs of the
+	 * objects found are read from Rhapsody, and the list is only visited until all of them are
+	 * matched. As the list has the elements of the type, found objects of other types are
+	 * dropped.
+	 *
+	 * @param search the translated condition of the select
+	 * @param context the context
+	 * @return the candidates, in the order of the list, or null if the search can't be used
+	 * @throws EolRuntimeException if the search fails
+	 */
+	public List<IRPModelElement> search(RhapsodySearch search, IEolContext context) throws EolRuntimeException {
+		Collection<IRPModelElement> found = this.runner.run(search, classes(), context);
+		if (found == null) {
+			return null;
+		}
+		if (found.isEmpty()) {
+			return List.of();
+		}
+		Set<UUID> remaining = new HashSet<>();
+		for (IRPModelElement element : found) {
+			remaining.add(this.ids.idOf(element));
+		}
+		List<IRPModelElement> result = new ArrayList<>(remaining.size());
+		for (IRPModelElement element : this.elements) {
+			if (remaining.isEmpty()) {
+				break;
+			}
+			if (remaining.remove(this.ids.idOf(element))) {
+				result.add(element);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public IRPModelElement get(int index) {
+		return this.elements.get(index);
+	}
+
+	@Override
+	public int size() {
+		return this.elements.size();
+	}
+
+	@Override
+	public synchronized IRPModelElement set(int index, IRPModelElement element) {
+		this.classes = null;
+		return this.elements.set(index, element);
+	}
+
+	@Override
+	public synchronized void add(int index, IRPModelElement element) {
+		this.classes = null;
+		this.elements.add(index, element);
+	}
+
+	@Override
+	public synchronized IRPModelElement remove(int index) {
+		this.classes = null;
+		return this.elements.remove(index);
+	}
+
+	private static final String SELECT = "select";
+
+	private final List<IRPModelElement> elements;
+	private final RhapsodySearch.Runner runner;
+	private final RhapsodyElementIds ids;
+	private Set<Class<?>> classes;
+
+	/**
+	 * @return the classes of the elements, to tell Java properties from tags. They are computed
+	 * 		   again after the list is modified.
+	 */
+	private synchronized Set<Class<?>> classes() {
+		if (this.classes == null) {
+			Set<Class<?>> result = new HashSet<>();
+			for (IRPModelElement element : this.elements) {
+				result.add(element.getClass());
+			}
+			this.classes = result;
+		}
+		return this.classes;
+	}
+
+}
@@ -0,0 +1,60 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.dom.Expression;
+import org.eclipse.epsilon.eol.dom.NameExpression;
+import org.eclipse.epsilon.eol.dom.Parameter;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.eclipse.epsilon.eol.execute.operations.declarative.SelectOperation;
+
+/**
+ * A select on a {@link RhapsodySearchableList} that uses the Rhapsody search engine to find the
+ * candidates, when the condition can be translated (see {@link RhapsodySearch}). The condition
+ * is then evaluated for the candidates only, in the order of the collection, so the result is
+ * the same as the one of a select over all the elements. If the condition can't be
+ * translated, or the search is not available, the select is evaluated for all the elements.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodySelectOperation extends SelectOperation {
+
+	@Override
+	public Collection<?> execute(
+		boolean returnOnFirstMatch,
+		Object target,
+		NameExpression operationNameExpression,
+		List<Parameter> iterators,
+		Expression expression,
+		IEolContext context) throws EolRuntimeException {
+		Object source = target;
+		if (target instanceof RhapsodySearchableList && iterators.size() == 1) {
+			var search = RhapsodySearch.of(iterators.get(0).getName(), expression);
+			if (search != null) {
+				var candidates = ((RhapsodySearchableList) target).search(search, context);
+				if (candidates != null) {
+					LOG.info("Select on {} candidates found by the search", candidates.size());
+					source = candidates;
+				}
+			}
+		}
+		return super.execute(returnOnFirstMatch, source, operationNameExpression, iterators, expression, context);
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodySelectOperation.class);
+
+}
@@ -0,0 +1,403 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPRequirement;
+import com.telelogic.rhapsody.core.IRPTag;
+
+/**
+ * Full-text index of the model elements, to search names and descriptions without reading the
+ * text of every element from Rhapsody. The text of an element is its name, its description
+ * ({@link IRPModelElement#getDescriptionPlainText()}), the requirement id of requirements and
+ * the values of its local tags. The text is split in terms, sequences of letters and digits,
+ * that are compared ignoring case. The index is filled by a single traversal of the model the
+ * first time it is queried.
+ * <p>
+ * Three kinds of queries are supported:
+ * <ul>
+ * 	<li> {@link #term(String)}: the elements that have all the terms of the query.
+ * 	<li> {@link #prefix(String)}: the elements that have a term that starts with the query.
+ * 	<li> {@link #phrase(String)}: the elements that have the terms of the query, in order and in
+ * 		 the same text (e.g. the description).
+ * </ul>
+ * Results are in traversal order.
+ * <p>
+ * As with the {@link RhapsodyTypeIndex}, elements created or deleted via the model must be
+ * reported via {@link #add(IRPModelElement)} and {@link #remove(IRPModelElement)}, and elements
+ * whose text might have changed via {@link #update(IRPModelElement)}. Alternatively,
+ * {@link #clear()} can be used to force a new traversal.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyTextIndex {
+
+	public RhapsodyTextIndex(IRPModelElement root, RhapsodyElementIds ids) {
+		this.root = root;
+		this.ids = ids;
+		this.documents = new ArrayList<>();
+		this.documentIds = new HashMap<>();
+		this.postings = new TreeMap<>();
+	}
+
+	/**
+	 * Get the elements whose text has all the terms of the query, e.g. <code>brake pedal</code>
+	 * finds the elements that have both terms, in any order.
+	 *
+	 * @param query the terms
+	 * @return the matching elements, in traversal order
+	 */
+	public synchronized Collection<IRPModelElement> term(String query) {
+		fill();
+		List<String> terms = terms(query);
+		if (terms.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return elements(allOf(terms));
+	}
+
+	/**
+	 * Get the elements whose text has a term that starts with the query, e.g. <code>brak</code>
+	 * finds the elements with <code>brake</code> or <code>braking</code>.
+	 *
+	 * @param query the prefix
+	 * @return the matching elements, in traversal order
+	 */
+	public synchronized Collection<IRPModelElement> prefix(String query) {
+		fill();
+		String prefix = query.toLowerCase(Locale.ROOT).trim();
+		BitSet result = new BitSet();
+		if (!prefix.isEmpty()) {
+			for (Set<Integer> documents : this.postings.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+				documents.forEach(result::set);
+			}
+		}
+		return elements(result);
+	}
+
+	/**
+	 * Get the elements whose text has the terms of the query one after the other, e.g.
+	 * <code>"shall stop"</code> finds the elements with "... shall stop ...", but not the ones
+	 * with "... stop, it shall ...".
+	 *
+	 * @param query the phrase
+	 * @return the matching elements, in traversal order
+	 */
+	public synchronized Collection<IRPModelElement> phrase(String query) {
+		fill();
+		List<String> terms = terms(query);
+		if (terms.isEmpty()) {
+			return new ArrayList<>();
+		}
+		BitSet candidates = allOf(terms);
+		for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+			if (!this.documents.get(id).contains(terms)) {
+				candidates.clear(id);
+			}
+		}
+		return elements(candidates);
+	}
+
+	/**
+	 * Add a (new) element to the index. If the index has not been filled, this is a no-op as
+	 * the element will be found during traversal.
+	 *
+	 * @param element the element to add
+	 * @return true if the element was not in the index, or the index has not been filled
+	 */
+	public synchronized boolean add(IRPModelElement element) {
+		if (!this.filled) {
+			return true;
+		}
+		if (this.documentIds.containsKey(this.ids.idOf(element))) {
+			return false;
+		}
+		index(element);
+		return true;
+	}
+
+	/**
+	 * Remove an element and all its nested elements from the index. This method must be called
+	 * before the element is deleted from the project, while its contents can still be accessed.
+	 *
+	 * @param element the element to remove
+	 * @return true if an element was removed, or the index has not been filled
+	 */
+	public synchronized boolean remove(IRPModelElement element) {
+		if (!this.filled) {
+			return true;
+		}
+		boolean removed = unindex(this.ids.idOf(element)) >= 0;
+		var contents = element.getNestedElementsRecursive();
+		for (int i=1; i <= contents.getCount(); i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				removed |= unindex(this.ids.idOf((IRPModelElement) item)) >= 0;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Index the text of the element again, e.g. after it has been changed. As the values of
+	 * local tags are text of the element that owns them, changed tags also update their owner.
+	 *
+	 * @param element the changed element
+	 */
+	public synchronized void update(IRPModelElement element) {
+		if (!this.filled) {
+			return;
+		}
+		reindex(element);
+		if (element instanceof IRPTag) {
+			updateOwner(element);
+		}
+	}
+
+	/**
+	 * Clear the index. The next query will traverse the model again.
+	 */
+	public synchronized void clear() {
+		this.documents.clear();
+		this.documentIds.clear();
+		this.postings.clear();
+		this.filled = false;
+	}
+
+	/**
+	 * Split a text in terms: the sequences of letters and digits, in lower case.
+	 *
+	 * @param text the text, can be null
+	 * @return the terms, in order
+	 */
+	public static List<String> terms(String text) {
+		List<String> result = new ArrayList<>();
+		if (text == null) {
+			return result;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the texts of an element: its name, description, requirement id and local tag values.
+	 *
+	 * @param element the element
+	 * @return the texts, null values are not included
+	 */
+	public static List<String> textsOf(IRPModelElement element) {
+		List<String> result = new ArrayList<>();
+		addTo(result, element.getName());
+		addTo(result, element.getDescriptionPlainText());
+		if (element instanceof IRPRequirement) {
+			addTo(result, ((IRPRequirement) element).getRequirementID());
+		}
+		var tags = element.getLocalTags();
+		if (tags != null) {
+			for (int i=1; i <= tags.getCount(); i++) {
+				var tag = tags.getItem(i);
+				if (tag instanceof IRPTag) {
+					addTo(result, ((IRPTag) tag).getValue());
+				}
+			}
+		}
+		return result;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyTextIndex.class);
+
+	private final IRPModelElement root;
+	private final RhapsodyElementIds ids;
+	/** The indexed elements, by document id. Removed elements leave a null */
+	private final List<Document> documents;
+	private final Map<UUID, Integer> documentIds;
+	/** The documents of each term, sorted by term for prefix queries */
+	private final NavigableMap<String, Set<Integer>> postings;
+	private boolean filled = false;
+
+	private void fill() {
+		if (this.filled) {
+			return;
+		}
+		LOG.info("Building text index");
+		var contents = this.root.getNestedElementsRecursive();
+		int count = contents.getCount();
+		for (int i=1; i <= count; i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				index((IRPModelElement) item);
+			}
+		}
+		this.filled = true;
+		LOG.info("Indexed the text of {} elements, {} terms", count, this.postings.size());
+	}
+
+	private void index(IRPModelElement element) {
+		UUID id = this.ids.idOf(element);
+		Integer documentId = this.documentIds.get(id);
+		if (documentId == null) {
+			documentId = this.documents.size();
+			this.documents.add(null);
+			this.documentIds.put(id, documentId);
+		}
+		var document = new Document(element, textsOf(element));
+		this.documents.set(documentId, document);
+		for (String term : document.terms()) {
+			this.postings.computeIfAbsent(term, k -> new HashSet<>()).add(documentId);
+		}
+	}
+
+	/**
+	 * Remove the terms of an element from the index.
+	 *
+	 * @return the document id of the element, or -1 if it was not indexed
+	 */
+	private int unindex(UUID id) {
+		Integer documentId = this.documentIds.remove(id);
+		if (documentId == null) {
+			return -1;
+		}
+		unpost(documentId);
+		this.documents.set(documentId, null);
+		return documentId;
+	}
+
+	/**
+	 * Index an element again, keeping its document id so results stay in traversal order.
+	 */
+	private void reindex(IRPModelElement element) {
+		Integer documentId = this.documentIds.get(this.ids.idOf(element));
+		if (documentId != null) {
+			unpost(documentId);
+		}
+		index(element);
+	}
+
+	private void unpost(int documentId) {
+		var document = this.documents.get(documentId);
+		if (document == null) {
+			return;
+		}
+		for (String term : document.terms()) {
+			var documents = this.postings.get(term);
+			if (documents != null) {
+				documents.remove(documentId);
+				if (documents.isEmpty()) {
+					this.postings.remove(term);
+				}
+			}
+		}
+	}
+
+	private void updateOwner(IRPModelElement tag) {
+		var owner = tag.getOwner();
+		if (owner != null && this.documentIds.containsKey(this.ids.idOf(owner))) {
+			reindex(owner);
+		}
+	}
+
+	/**
+	 * @return the documents that have all the terms
+	 */
+	private BitSet allOf(List<String> terms) {
+		BitSet result = null;
+		for (String term : terms) {
+			BitSet documents = new BitSet();
+			this.postings.getOrDefault(term, Set.of()).forEach(documents::set);
+			if (result == null) {
+				result = documents;
+			} else {
+				result.and(documents);
+			}
+			if (result.isEmpty()) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	private Collection<IRPModelElement> elements(BitSet documents) {
+		List<IRPModelElement> result = new ArrayList<>(documents.cardinality());
+		for (int id = documents.nextSetBit(0); id >= 0; id = documents.nextSetBit(id + 1)) {
+			result.add(this.documents.get(id).element);
+		}
+		return result;
+	}
+
+	private static void addTo(List<String> texts, String text) {
+		if (text != null && !text.isEmpty()) {
+			texts.add(text);
+		}
+	}
+
+	/**
+	 * The terms of an element, per text, for phrase queries.
+	 */
+	private static class Document {
+
+		Document(IRPModelElement element, List<String> texts) {
+			this.element = element;
+			this.texts = new ArrayList<>(texts.size());
+			for (String text : texts) {
+				this.texts.add(RhapsodyTextIndex.terms(text));
+			}
+		}
+
+		Set<String> terms() {
+			Set<String> result = new HashSet<>();
+			this.texts.forEach(result::addAll);
+			return result;
+		}
+
+		/**
+		 * @return true, if one of the texts has the terms one after the other
+		 */
+		boolean contains(List<String> phrase) {
+			for (List<String> terms : this.texts) {
+				if (Collections.indexOfSubList(terms, phrase) >= 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private final IRPModelElement element;
+		private final List<List<String>> texts;
+
+	}
+
+}
@@ -0,0 +1,224 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * Index of the model elements by metaclass and by new term stereotype. The index is filled by a
+ * single traversal of the model the first time it is queried, so that all the type and kind
+ * queries of a script share the cost of one walk over the Rhapsody API.
+ * <p>
+ * Kind queries use a {@link RhapsodyKindLattice} to find the metaclasses that are a kind of the
+ * requested metaclass.
+ * <p>
+ * Elements created or deleted via the model must be reported via {@link #add(IRPModelElement)}
+ * and {@link #remove(IRPModelElement)}, and elements whose metaclass or new term might have 
+ * changed via {@link #update(IRPModelElement)}. Alternatively, {@link #clear()} can be used to
+ * force a new traversal.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class RhapsodyTypeIndex {
+
+	public RhapsodyTypeIndex(IRPModelElement root, RhapsodyKindLattice lattice) {
+		this.root = root;
+		this.lattice = lattice;
+		this.byMetaclass = new HashMap<>();
+		this.byNewTerm = new HashMap<>();
+	}
+
+	/**
+	 * Get all the elements whose metaclass is the given metaclass.
+	 *
+	 * @param metaclass the metaclass name
+	 * @return the matching elements, in traversal order
+	 */
+	public synchronized Collection<IRPModelElement> ofMetaclass(String metaclass) {
+		fill();
+		return copyOf(this.byMetaclass.get(metaclass));
+	}
+
+	/**
+	 * Get all the elements that have the given new term stereotype applied.
+	 *
+	 * @param newTerm the name of the new term stereotype
+	 * @return the matching elements, in traversal order
+	 */
+	public synchronized Collection<IRPModelElement> ofNewTerm(String newTerm) {
+		fill();
+		return copyOf(this.byNewTerm.get(newTerm));
+	}
+
+	/**
+	 * Get all the elements whose metaclass is the given metaclass or one of its sub-metaclasses.
+	 *
+	 * @param kind the metaclass name
+	 * @return the matching elements
+	 */
+	public synchronized Collection<IRPModelElement> ofKind(String kind) {
+		fill();
+		List<IRPModelElement> result = new ArrayList<>();
+		for (String metaclass : this.lattice.subKindsOf(kind)) {
+			var elements = this.byMetaclass.get(metaclass);
+			if (elements != null) {
+				result.addAll(elements);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Add a (new) element to the index. If the index has not been filled, this is a no-op as
+	 * the element will be found during traversal.
+	 *
+	 * @param element the element to add
+	 * @return true if the element was not in the index, or the index has not been filled
+	 */
+	public synchronized boolean add(IRPModelElement element) {
+		if (!this.filled) {
+			return true;
+		}
+		return index(element);
+	}
+
+	/**
+	 * Remove an element and all its nested elements from the index. This method must be called
+	 * before the element is deleted from the project, while its contents can still be accessed.
+	 *
+	 * @param element the element to remove
+	 * @return true if an element was removed, or the index has not been filled
+	 */
+	public synchronized boolean remove(IRPModelElement element) {
+		if (!this.filled) {
+			return true;
+		}
+		boolean removed = false;
+		var contents = element.getNestedElementsRecursive();
+		for (int i=1; i <= contents.getCount(); i++) {
+			removed |= unindex(contents.getItem(i));
+		}
+		return removed;
+	}
+
+	/**
+	 * Index the element again, e.g. after it has been changed. Only the element is indexed
+	 * again, not its nested elements.
+	 *
+	 * @param element the changed element
+	 * @return true if the metaclass or new term of the element changed
+	 */
+	public synchronized boolean update(IRPModelElement element) {
+		if (!this.filled) {
+			return false;
+		}
+		var before = bucketsOf(element);
+		unindex(element);
+		index(element);
+		return !before.equals(bucketsOf(element));
+	}
+
+	/**
+	 * Clear the index. The next query will traverse the model again.
+	 */
+	public synchronized void clear() {
+		this.byMetaclass.clear();
+		this.byNewTerm.clear();
+		this.filled = false;
+	}
+
+	private static final Logger LOG = LogManager.getLogger(RhapsodyTypeIndex.class);
+
+	private final IRPModelElement root;
+	private final RhapsodyKindLattice lattice;
+	private final Map<String, Set<IRPModelElement>> byMetaclass;
+	private final Map<String, Set<IRPModelElement>> byNewTerm;
+	private boolean filled = false;
+
+	private void fill() {
+		if (this.filled) {
+			return;
+		}
+		LOG.info("Building type index");
+		var contents = this.root.getNestedElementsRecursive();
+		int count = contents.getCount();
+		for (int i=1; i <= count; i++) {
+			var item = contents.getItem(i);
+			if (item instanceof IRPModelElement) {
+				index((IRPModelElement) item);
+			}
+		}
+		this.filled = true;
+		LOG.info("Indexed {} elements in {} metaclasses and {} new terms",
+				count, this.byMetaclass.size(), this.byNewTerm.size());
+	}
+
+	private boolean index(IRPModelElement element) {
+		var metaclass = element.getMetaClass();
+		boolean added = this.byMetaclass
+			.computeIfAbsent(metaclass, k -> new LinkedHashSet<>())
+			.add(element);
+		// Elements without a new term report their metaclass as user defined metaclass
+		var newTerm = element.getUserDefinedMetaClass();
+		if (newTerm != null && !newTerm.isEmpty() && !newTerm.equals(metaclass)) {
+			added |= this.byNewTerm
+				.computeIfAbsent(newTerm, k -> new LinkedHashSet<>())
+				.add(element);
+		}
+		return added;
+	}
+
+	private boolean unindex(Object element) {
+		boolean removed = false;
+		for (var elements : this.byMetaclass.values()) {
+			removed |= elements.remove(element);
+		}
+		for (var elements : this.byNewTerm.values()) {
+			removed |= elements.remove(element);
+		}
+		return removed;
+	}
+
+	private Set<String> bucketsOf(IRPModelElement element) {
+		Set<String> result = new HashSet<>();
+		this.byMetaclass.forEach((k, v) -> {
+			if (v.contains(element)) {
+				result.add(k);
+			}
+		});
+		this.byNewTerm.forEach((k, v) -> {
+			if (v.contains(element)) {
+				result.add("<<" + k + ">>");
+			}
+		});
+		return result;
+	}
+
+	private static Collection<IRPModelElement> copyOf(Set<IRPModelElement> elements) {
+		if (elements == null) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(elements);
+	}
+
+}
@@ -0,0 +1,108 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import cas.mcmaster.epsilon.emc.IRPKey;
+import cas.mcmaster.epsilon.emc.PropertyValue;
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+
+/**
+ * Cost of the {@link IRPKey}s of the property caches, for the element ids of a model.
+ * <code>fromId</code> creates a key (and its hash) from the id of an element, as the property
+ * getter does. <code>fromGuid</code> creates it from the GUID string, which is parsed.
+ * <code>hashMapGet</code> and <code>cacheGet</code> look up a new key in a map and in a Caffeine
+ * cache with an entry per element, so they also measure {@link IRPKey#equals(Object)} and the
+ * memory access of large maps.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IRPKeyBenchmark {
+
+	/** The number of elements of the model */
+	@Param({"1000", "100000", "1000000"})
+	public int elements;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.guids = new String[this.elements];
+		this.ids = new UUID[this.elements];
+		this.map = new HashMap<>();
+		this.cache = Caffeine.newBuilder().build();
+		var value = new PropertyValue("value");
+		for (int i = 0; i < this.elements; i++) {
+			this.guids[i] = String.format("GUID %08x-0000-4000-8000-%012d", i, i);
+			this.ids[i] = RhapsodyElementIds.parse(this.guids[i]);
+			this.map.put(new IRPKey(this.ids[i], PROPERTY), value);
+			this.cache.put(new IRPKey(this.ids[i], PROPERTY), value);
+		}
+	}
+
+	@Benchmark
+	public IRPKey fromId() {
+		return new IRPKey(this.ids[next()], PROPERTY);
+	}
+
+	@Benchmark
+	public IRPKey fromGuid() {
+		return new IRPKey(this.guids[next()], PROPERTY);
+	}
+
+	@Benchmark
+	public PropertyValue hashMapGet() {
+		return this.map.get(new IRPKey(this.ids[next()], PROPERTY));
+	}
+
+	@Benchmark
+	public PropertyValue cacheGet() {
+		return this.cache.getIfPresent(new IRPKey(this.ids[next()], PROPERTY));
+	}
+
+	private static final String PROPERTY = "name";
+
+	private String[] guids;
+	private UUID[] ids;
+	private Map<IRPKey, PropertyValue> map;
+	private Cache<IRPKey, PropertyValue> cache;
+	private int index;
+
+	private int next() {
+		this.index = (this.index + 1) % this.elements;
+		return this.index;
+	}
+
+}
@@ -0,0 +1,93 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyMetaclasses;
+
+/**
+ * Time of {@link RhapsodyMetaclasses#getAllOfType(String)} on {@link SyntheticModels}, where one in
+ * five elements are classes and one in ten have a new term. <code>ofMetaclass</code> and
+ * <code>ofNewTerm</code> query the filled type index. <code>ofMetaclassUnindexed</code> clears
+ * the index first, so it measures the traversal of the model that fills it (as the first query
+ * of a script, or a query after the caches are invalidated). The stereotypes are not cached, as
+ * in a model loaded with the default properties.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetaclassesBenchmark {
+
+	/** Simulated latency of a call to the Rhapsody API */
+	@Param({"0", "1000"})
+	public long latencyNanos;
+
+	/** The number of elements of the model */
+	@Param({"1000", "100000", "1000000"})
+	public int elements;
+
+	@Setup(Level.Trial)
+	public void setup() throws EolModelElementTypeNotFoundException {
+		var model = SyntheticModels.of(this.elements);
+		this.types = new RhapsodyMetaclasses(
+				model.installation().toString(),
+				false,
+				model.project(),
+				"Model")
+			.load();
+		model.latency(this.latencyNanos);
+		this.types.getAllOfType(METACLASS);
+	}
+
+	@Benchmark
+	public Collection<IRPModelElement> ofMetaclass() throws EolModelElementTypeNotFoundException {
+		return this.types.getAllOfType(METACLASS);
+	}
+
+	@Benchmark
+	public Collection<IRPModelElement> ofNewTerm() throws EolModelElementTypeNotFoundException {
+		return this.types.getAllOfType(SyntheticModels.NEW_TERM);
+	}
+
+	@Benchmark
+	public Collection<IRPModelElement> ofMetaclassUnindexed() throws EolModelElementTypeNotFoundException {
+		this.types.clearIndex();
+		return this.types.getAllOfType(METACLASS);
+	}
+
+	private static final String METACLASS = "Class";
+
+	private RhapsodyMetaclasses types;
+
+}
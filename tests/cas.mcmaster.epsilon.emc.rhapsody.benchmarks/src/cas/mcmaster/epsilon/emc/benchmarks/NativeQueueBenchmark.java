@@ -0,0 +1,123 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyExecutor;
+
+/**
+ * Time of a property read by 8 threads that share the Rhapsody thread, on the elements of
+ * {@link SyntheticModels} with a simulated API latency. The threads read the names of the first <code>elements</code> elements,
+ * in turns, so with few elements they often read the same name at the same time.
+ * <code>locked</code> serializes the reads with a lock, as a model without an affinity thread
+ * would need to. <code>queued</code> runs each read in the {@link RhapsodyExecutor}, without
+ * coalescing. <code>coalesced</code> reads a confined element, so queued reads of the same name
+ * share one call.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class NativeQueueBenchmark {
+
+	/** Simulated latency of a call to the Rhapsody API */
+	@Param({"20000"})
+	public long latencyNanos;
+
+	/** The number of elements read by the threads */
+	@Param({"4", "1024"})
+	public int elements;
+
+	/**
+	 * The next element read by a thread.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		int next;
+
+		@Setup
+		public void setup() {
+			this.next = (int) Thread.currentThread().getId();
+		}
+
+	}
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.executor = new RhapsodyExecutor();
+		this.raw = SyntheticModels.of(this.elements).latency(this.latencyNanos).elements();
+		this.confined = new ArrayList<>(this.elements);
+		for (IRPModelElement element : this.raw) {
+			this.confined.add(this.executor.confine(element));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.executor.close();
+	}
+
+	@Benchmark
+	public String locked(Cursor cursor) {
+		IRPModelElement element = this.raw.get(next(cursor));
+		synchronized (this.lock) {
+			return element.getName();
+		}
+	}
+
+	@Benchmark
+	public String queued(Cursor cursor) {
+		IRPModelElement element = this.raw.get(next(cursor));
+		return this.executor.call(element::getName);
+	}
+
+	@Benchmark
+	public String coalesced(Cursor cursor) {
+		return this.confined.get(next(cursor)).getName();
+	}
+
+	private final Object lock = new Object();
+	private RhapsodyExecutor executor;
+	private List<IRPModelElement> raw;
+	private List<IRPModelElement> confined;
+
+	private int next(Cursor cursor) {
+		cursor.next = (cursor.next + 1) % this.elements;
+		return cursor.next;
+	}
+
+}
@@ -0,0 +1,113 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.IRPKey;
+import cas.mcmaster.epsilon.emc.PropertyValue;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+import dev.failsafe.Failsafe;
+import dev.failsafe.RetryPolicy;
+
+/**
+ * Cost of a property cache hit. <code>guidKeyed</code> reproduces the previous implementation,
+ * that got the element's GUID (a call to the Rhapsody API) and created a retry policy for each
+ * access. <code>identityKeyed</code> uses the {@link RhapsodyPropertyGetter}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyCacheBenchmark {
+
+	/** Simulated latency of a call to the Rhapsody API */
+	@Param({"0", "1000", "20000"})
+	public long latencyNanos;
+
+	@Param({"1000"})
+	public int size;
+
+	@Setup
+	public void setup() throws EolRuntimeException {
+		this.cache = Caffeine.newBuilder().build();
+		this.getter = new RhapsodyPropertyGetter(this.cache, null);
+		this.elements = new IRPModelElement[this.size];
+		var model = SyntheticModels.of(this.size).latency(this.latencyNanos);
+		for (int i = 0; i < this.size; i++) {
+			var element = model.elements().get(i);
+			this.cache.put(new IRPKey(element.getGUID(), PROPERTY), new PropertyValue(element.getName()));
+			// Warm the getter's element ids
+			this.getter.invoke(element, PROPERTY, null);
+			this.elements[i] = element;
+		}
+	}
+
+	@Benchmark
+	public Object guidKeyed() {
+		IRPModelElement element = next();
+		RetryPolicy<Object> retryPolicy = RetryPolicy.builder()
+				  .handle(RhapsodyRuntimeException.class)
+				  .withDelay(Duration.ofMillis(300))
+				  .withMaxRetries(3)
+				  .build();
+		return Failsafe.with(retryPolicy)
+				.onFailure(e -> LOG.error("Failed to getting value from Rhapsody", e.getException()))
+				.get(() -> {
+					LOG.info("Getting property {} from {}", PROPERTY, element.getGUID());
+					return this.cache.get(new IRPKey(element.getGUID(), PROPERTY), k -> null);
+				});
+	}
+
+	@Benchmark
+	public Object identityKeyed() throws EolRuntimeException {
+		return this.getter.invoke(next(), PROPERTY, null);
+	}
+
+	private static final Logger LOG = LogManager.getLogger(PropertyCacheBenchmark.class);
+	private static final String PROPERTY = "name";
+
+	private Cache<IRPKey, PropertyValue> cache;
+	private RhapsodyPropertyGetter getter;
+	private IRPModelElement[] elements;
+	private int index;
+
+	private IRPModelElement next() {
+		this.index = (this.index + 1) % this.elements.length;
+		return this.elements[this.index];
+	}
+
+}
@@ -0,0 +1,125 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.eclipse.epsilon.eol.execute.context.IEolContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyCachePolicy;
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Time of {@link RhapsodyPropertyGetter#invoke(Object, String, IEolContext)} and
+ * {@link RhapsodyPropertyGetter#hasProperty(Object, String, IEolContext)} over all the elements of
+ * {@link SyntheticModels}, in turns. <code>invokeCached</code> and <code>hasPropertyCached</code>
+ * read values that are cached (all the values fit in the cache). <code>invokeUncached</code> and
+ * <code>hasPropertyUncached</code> use a getter whose caches are disabled, so each read calls the
+ * fake API (the element ids are still cached). <code>hasTag</code> checks a property that is a
+ * tag, which is looked up on the element.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyGetterBenchmark {
+
+	/** Simulated latency of a call to the Rhapsody API */
+	@Param({"0", "1000"})
+	public long latencyNanos;
+
+	/** The number of elements of the model */
+	@Param({"1000", "100000", "1000000"})
+	public int elements;
+
+	@Setup(Level.Trial)
+	public void setup() throws EolRuntimeException {
+		this.model = SyntheticModels.of(this.elements).latency(this.latencyNanos);
+		this.context = new EolContext();
+		this.cached = new RhapsodyPropertyGetter(
+				Caffeine.newBuilder().build(),
+				Caffeine.newBuilder().build(),
+				null,
+				new RhapsodyElementIds());
+		var disabled = new RhapsodyCachePolicy(true, 0, 0, 0, 0, false);
+		this.uncached = new RhapsodyPropertyGetter(disabled.build(), disabled.build(), null, new RhapsodyElementIds());
+		for (IRPModelElement element : this.model.elements()) {
+			this.cached.invoke(element, PROPERTY, this.context);
+			this.cached.hasProperty(element, PROPERTY, this.context);
+			this.cached.hasProperty(element, TAG, this.context);
+			this.uncached.invoke(element, PROPERTY, this.context);
+		}
+	}
+
+	@Benchmark
+	public Object invokeCached() throws EolRuntimeException {
+		return this.cached.invoke(next(), PROPERTY, this.context);
+	}
+
+	@Benchmark
+	public Object invokeUncached() throws EolRuntimeException {
+		return this.uncached.invoke(next(), PROPERTY, this.context);
+	}
+
+	@Benchmark
+	public boolean hasPropertyCached() {
+		return this.cached.hasProperty(next(), PROPERTY, this.context);
+	}
+
+	@Benchmark
+	public boolean hasPropertyUncached() {
+		return this.uncached.hasProperty(next(), PROPERTY, this.context);
+	}
+
+	@Benchmark
+	public boolean hasTag() {
+		return this.uncached.hasProperty(next(), TAG, this.context);
+	}
+
+	private static final String PROPERTY = "name";
+	private static final String TAG = SyntheticModels.TAG;
+
+	private SyntheticModels model;
+	private IEolContext context;
+	private RhapsodyPropertyGetter cached;
+	private RhapsodyPropertyGetter uncached;
+	private int index;
+
+	private IRPModelElement next() {
+		List<IRPModelElement> elements = this.model.elements();
+		this.index = (this.index + 1) % elements.size();
+		return elements.get(this.index);
+	}
+
+}
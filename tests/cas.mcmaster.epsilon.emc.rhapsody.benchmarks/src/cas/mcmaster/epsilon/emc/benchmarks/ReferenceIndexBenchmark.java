@@ -0,0 +1,113 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodySnapshot;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+
+/**
+ * Time of an impact analysis on a synthetic project (see {@link SyntheticProjects}): finding the
+ * elements that reference each class of a package. The reverse reference index of the store is
+ * built by the first query (the snapshot is opened by each invocation, so it is included), vs
+ * scanning the fields of all the elements for each class.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReferenceIndexBenchmark {
+
+	@Param({"500"})
+	public int units;
+
+	@Setup
+	public void setup() throws IOException, XMLStreamException {
+		this.directory = Files.createTempDirectory("rhapsody-references");
+		Path projectFile = SyntheticProjects.write(this.directory, this.units, CLASSES, ATTRIBUTES);
+		this.snapshot = this.directory.resolve("project.snapshot");
+		RhapsodySnapshot.write(RhapsodyElementStore.of(RhapsodyFileProject.load(projectFile, NEW_TERMS)), this.snapshot);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticProjects.delete(this.directory);
+	}
+
+	@Benchmark
+	public int indexed() throws IOException {
+		RhapsodyElementStore store = RhapsodySnapshot.open(this.snapshot);
+		int result = 0;
+		for (RhapsodyStoreElement target : targets(store)) {
+			result += store.getReferencesTo(target).size();
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int scanned() throws IOException {
+		RhapsodyElementStore store = RhapsodySnapshot.open(this.snapshot);
+		int result = 0;
+		for (RhapsodyStoreElement target : targets(store)) {
+			for (RhapsodyStoreElement element : store.getContents()) {
+				for (String field : element.getFieldNames()) {
+					if (target.equals(element.getField(field))) {
+						result++;
+						break;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static final int CLASSES = 40;
+	private static final int ATTRIBUTES = 5;
+	private static final Set<String> NEW_TERMS = Set.of();
+
+	private Path directory;
+	private Path snapshot;
+
+	/**
+	 * @return the classes of the package in the middle of the project
+	 */
+	private List<RhapsodyStoreElement> targets(RhapsodyElementStore store) {
+		return store.find("Package" + this.units / 2, "Package").getNestedElements();
+	}
+
+}
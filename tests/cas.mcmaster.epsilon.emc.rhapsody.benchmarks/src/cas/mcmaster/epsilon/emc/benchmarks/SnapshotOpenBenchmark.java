@@ -0,0 +1,92 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodySnapshot;
+
+/**
+ * Startup time of a synthetic project (see {@link SyntheticProjects}): reading the project
+ * files into a {@link RhapsodyElementStore} vs opening a {@link RhapsodySnapshot} of it. Opening
+ * the snapshot maps the file, so the benchmark also reads the name of an element in the middle
+ * of the project, to include the cost of the first query.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SnapshotOpenBenchmark {
+
+	@Param({"500"})
+	public int units;
+
+	@Setup
+	public void setup() throws IOException, XMLStreamException {
+		this.directory = Files.createTempDirectory("rhapsody-snapshot");
+		this.projectFile = SyntheticProjects.write(this.directory, this.units, CLASSES, ATTRIBUTES);
+		this.snapshot = this.directory.resolve("project.snapshot");
+		RhapsodySnapshot.write(RhapsodyElementStore.of(RhapsodyFileProject.load(this.projectFile, NEW_TERMS)), this.snapshot);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticProjects.delete(this.directory);
+	}
+
+	@Benchmark
+	public String loadProject() throws IOException, XMLStreamException {
+		return firstQuery(RhapsodyElementStore.of(RhapsodyFileProject.load(this.projectFile, NEW_TERMS)));
+	}
+
+	@Benchmark
+	public String openSnapshot() throws IOException {
+		return firstQuery(RhapsodySnapshot.open(this.snapshot));
+	}
+
+	private static final int CLASSES = 40;
+	private static final int ATTRIBUTES = 5;
+	private static final Set<String> NEW_TERMS = Set.of();
+
+	private Path directory;
+	private Path projectFile;
+	private Path snapshot;
+
+	private static String firstQuery(RhapsodyElementStore store) {
+		return store.element(store.contentSize() / 2).getName();
+	}
+
+}
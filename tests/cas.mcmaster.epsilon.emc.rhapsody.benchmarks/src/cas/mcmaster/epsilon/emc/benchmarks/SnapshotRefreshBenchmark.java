@@ -0,0 +1,106 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodySnapshot;
+
+/**
+ * Time to bring a snapshot of a synthetic project (see {@link SyntheticProjects}) up to date
+ * after one of its units changed: reading the project files and writing the snapshot again vs
+ * refreshing the snapshot, which only reads the changed unit. Before each iteration, the
+ * benchmark changes a different unit.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SnapshotRefreshBenchmark {
+
+	@Param({"500"})
+	public int units;
+
+	@Setup
+	public void setup() throws IOException, XMLStreamException {
+		this.directory = Files.createTempDirectory("rhapsody-snapshot");
+		this.projectFile = SyntheticProjects.write(this.directory, this.units, CLASSES, ATTRIBUTES);
+		this.snapshot = this.directory.resolve("project.snapshot");
+		RhapsodySnapshot.write(RhapsodyElementStore.of(RhapsodyFileProject.load(this.projectFile, NEW_TERMS)), this.snapshot);
+		try (Stream<Path> files = Files.list(this.projectFile.resolveSibling("Synthetic_rpy"))) {
+			this.unitFiles = files.sorted().toArray(Path[]::new);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void changeUnit() throws IOException {
+		// A trailing line changes the size and hash of the unit, not its elements
+		Path unit = this.unitFiles[this.changed++ % this.unitFiles.length];
+		Files.writeString(unit, System.lineSeparator(), StandardOpenOption.APPEND);
+		Files.setLastModifiedTime(unit, FileTime.fromMillis(System.currentTimeMillis() + this.changed * 1000L));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticProjects.delete(this.directory);
+	}
+
+	@Benchmark
+	public RhapsodyElementStore writeSnapshot() throws IOException, XMLStreamException {
+		RhapsodySnapshot.write(RhapsodyElementStore.of(RhapsodyFileProject.load(this.projectFile, NEW_TERMS)), this.snapshot);
+		return RhapsodySnapshot.open(this.snapshot);
+	}
+
+	@Benchmark
+	public RhapsodyElementStore refreshSnapshot() throws IOException, XMLStreamException {
+		return RhapsodySnapshot.refresh(this.snapshot, this.projectFile, NEW_TERMS);
+	}
+
+	private static final int CLASSES = 40;
+	private static final int ATTRIBUTES = 5;
+	private static final Set<String> NEW_TERMS = Set.of();
+
+	private Path directory;
+	private Path projectFile;
+	private Path snapshot;
+	private Path[] unitFiles;
+	private int changed;
+
+}
@@ -0,0 +1,110 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreDiff;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+
+/**
+ * Time to compare two baselines of a synthetic project (see {@link SyntheticProjects}) that
+ * differ in the name of one class: the {@link RhapsodyStoreDiff}, that hashes both stores and
+ * skips unchanged subtrees, vs comparing each element with the element with the same GUID, field
+ * by field.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StoreDiffBenchmark {
+
+	@Param({"500"})
+	public int units;
+
+	@Setup
+	public void setup() throws IOException, XMLStreamException {
+		this.directory = Files.createTempDirectory("rhapsody-diff");
+		Path leftProject = SyntheticProjects.write(this.directory.resolve("left"), this.units, CLASSES, ATTRIBUTES);
+		Path rightProject = SyntheticProjects.write(this.directory.resolve("right"), this.units, CLASSES, ATTRIBUTES);
+		int changed = this.units / 2;
+		Path unit = rightProject.resolveSibling("Synthetic_rpy").resolve("Package" + changed + ".sbsx");
+		Files.writeString(unit, Files.readString(unit).replace(">Class" + changed + "_1<", ">Renamed<"));
+		this.left = RhapsodyElementStore.of(RhapsodyFileProject.load(leftProject, NEW_TERMS));
+		this.right = RhapsodyElementStore.of(RhapsodyFileProject.load(rightProject, NEW_TERMS));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticProjects.delete(this.directory);
+	}
+
+	@Benchmark
+	public int hashedDiff() {
+		return new RhapsodyStoreDiff(this.left, this.right).changes().size();
+	}
+
+	@Benchmark
+	public int elementWiseDiff() {
+		int result = 0;
+		for (RhapsodyStoreElement element : this.left.getContents()) {
+			RhapsodyStoreElement other = this.right.getElement(element.getGUID());
+			if (other == null
+					|| !element.getName().equals(other.getName())
+					|| !Objects.equals(element.getOwner() == null ? null : element.getOwner().getGUID(), other.getOwner() == null ? null : other.getOwner().getGUID())) {
+				result++;
+				continue;
+			}
+			for (String field : element.getFieldNames()) {
+				if (!Objects.equals(String.valueOf(element.getField(field)), String.valueOf(other.getField(field)))) {
+					result++;
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	private static final int CLASSES = 40;
+	private static final int ATTRIBUTES = 5;
+	private static final Set<String> NEW_TERMS = Set.of();
+
+	private Path directory;
+	private RhapsodyElementStore left;
+	private RhapsodyElementStore right;
+
+}
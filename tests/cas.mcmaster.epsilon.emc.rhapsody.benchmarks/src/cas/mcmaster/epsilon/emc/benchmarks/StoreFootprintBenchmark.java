@@ -0,0 +1,145 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+
+/**
+ * Memory footprint of a synthetic project (see {@link SyntheticProjects}) held as
+ * {@link RhapsodyFileElement}s vs in a {@link RhapsodyElementStore}. JMH does not measure
+ * retained memory, so run {@link #main(String[])} to print the heap used per element by each
+ * representation. The JMH benchmarks measure the cost of the flyweights: a scan that reads the
+ * name and a field of every element.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreFootprintBenchmark {
+
+	@Param({"100"})
+	public int units;
+
+	@Param({"40"})
+	public int classes;
+
+	@Setup
+	public void setup() throws IOException, XMLStreamException {
+		this.directory = Files.createTempDirectory("rhapsody-store");
+		this.project = RhapsodyFileProject.load(
+				SyntheticProjects.write(this.directory, this.units, this.classes, ATTRIBUTES),
+				NEW_TERMS);
+		this.store = RhapsodyElementStore.of(this.project);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticProjects.delete(this.directory);
+	}
+
+	@Benchmark
+	public int scanFileElements() {
+		int result = 0;
+		for (RhapsodyFileElement element : this.project.getContents()) {
+			result += element.getName().length();
+			result += element.hasField(MODIFIED_TIME) ? 1 : 0;
+		}
+		return result;
+	}
+
+	@Benchmark
+	public int scanStoreElements() {
+		int result = 0;
+		for (RhapsodyStoreElement element : this.store.getContents()) {
+			result += element.getName().length();
+			result += element.hasField(MODIFIED_TIME) ? 1 : 0;
+		}
+		return result;
+	}
+
+	/**
+	 * Print the heap used per element by each representation, for projects of increasing size.
+	 *
+	 * @param args not used
+	 * @throws IOException if the project can't be written
+	 * @throws XMLStreamException if the project can't be read
+	 */
+	public static void main(String[] args) throws IOException, XMLStreamException {
+		System.out.println("Elements\tFile B/element\tStore B/element\tRatio");
+		for (int units : new int[] {10, 100, 500}) {
+			Path directory = Files.createTempDirectory("rhapsody-store");
+			try {
+				Path projectFile = SyntheticProjects.write(directory, units, 40, ATTRIBUTES);
+				long base = usedHeap();
+				RhapsodyFileProject project = RhapsodyFileProject.load(projectFile, NEW_TERMS);
+				long fileBytes = usedHeap() - base;
+				RhapsodyElementStore store = RhapsodyElementStore.of(project);
+				int elements = store.contentSize();
+				project = null;
+				long storeBytes = usedHeap() - base;
+				System.out.printf("%d\t%.1f\t%.1f\t%.2f%n",
+						elements,
+						(double) fileBytes / elements,
+						(double) storeBytes / elements,
+						(double) fileBytes / storeBytes);
+				// Keep the store reachable until it is measured
+				store.size();
+			} finally {
+				SyntheticProjects.delete(directory);
+			}
+		}
+	}
+
+	private static final int ATTRIBUTES = 5;
+	private static final Set<String> NEW_TERMS = Set.of();
+	private static final String MODIFIED_TIME = "_modifiedTime";
+
+	private Path directory;
+	private RhapsodyFileProject project;
+	private RhapsodyElementStore store;
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,152 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.IRPStereotype;
+import com.telelogic.rhapsody.core.IRPTag;
+
+import cas.mcmaster.epsilon.emc.fake.FakeProfile;
+import cas.mcmaster.epsilon.emc.fake.FakeRhapsody;
+
+/**
+ * A project with a given number of elements in a {@link FakeRhapsody}, built via the Rhapsody
+ * API. The metaclass of the element <code>i</code> is <code>METACLASSES[i % 5]</code> and its
+ * name is the metaclass followed by <code>i</code>. One in ten elements (all of them classes)
+ * have the {@link #NEW_TERM} new term, whose {@link #TAG} tag has the value <code>High</code>.
+ * The elements are nested in packages of at most {@link #PACKAGE_SIZE} elements, so the
+ * project is not a flat list.
+ * <p>
+ * The project is built without latency; the latency of the calls made by the benchmarks is set
+ * with {@link #latency(long)}.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class SyntheticModels {
+
+	/** The metaclasses of the elements */
+	public static final List<String> METACLASSES = List.of("Class", "Attribute", "Operation", "Dependency", "Package");
+
+	/** The new term of one in ten elements */
+	public static final String NEW_TERM = "Block";
+
+	/** The tag of the new term */
+	public static final String TAG = "safety";
+
+	/** The maximum number of elements in a package */
+	public static final int PACKAGE_SIZE = 1000;
+
+	/**
+	 * Create a project.
+	 *
+	 * @param size the number of elements
+	 * @return the model
+	 */
+	public static SyntheticModels of(int size) {
+		return new SyntheticModels(size);
+	}
+
+	/**
+	 * Set the latency of the calls to the API.
+	 *
+	 * @param latencyNanos the latency of each call
+	 * @return this model
+	 */
+	public SyntheticModels latency(long latencyNanos) {
+		this.rhapsody.setProfile(new FakeProfile(latencyNanos, 0, 0));
+		return this;
+	}
+
+	/**
+	 * @return the Rhapsody of the project
+	 */
+	public FakeRhapsody rhapsody() {
+		return this.rhapsody;
+	}
+
+	/**
+	 * @return the project, the root of the model
+	 */
+	public IRPProject project() {
+		return this.project;
+	}
+
+	/**
+	 * @return the elements, without the project, packages, stereotype and tag that contain them
+	 */
+	public List<IRPModelElement> elements() {
+		return this.elements;
+	}
+
+	/**
+	 * Create a Rhapsody installation folder with the <code>Doc/metaclasses.txt</code> file, see
+	 * {@link FakeRhapsody#installation(Path)}.
+	 *
+	 * @return the path of the installation
+	 */
+	public Path installation() {
+		try {
+			Path result = this.rhapsody.installation(Files.createTempDirectory("rhapsody"));
+			result.toFile().deleteOnExit();
+			return result;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private final FakeRhapsody rhapsody;
+	private final IRPProject project;
+	private final List<IRPModelElement> elements;
+
+	private SyntheticModels(int size) {
+		this.rhapsody = new FakeRhapsody();
+		this.project = this.rhapsody.create("Synthetic");
+		List<IRPModelElement> elements = new ArrayList<>(size);
+		IRPModelElement pkg = null;
+		IRPStereotype newTerm = null;
+		for (int i = 0; i < size; i++) {
+			if (i % PACKAGE_SIZE == 0) {
+				pkg = this.project.addNewAggr("Package", "Package" + (i / PACKAGE_SIZE));
+			}
+			String metaclass = METACLASSES.get(i % METACLASSES.size());
+			IRPModelElement element = pkg.addNewAggr(metaclass, metaclass + i);
+			if (i % 10 == 0) {
+				if (newTerm == null) {
+					newTerm = newTerm(element);
+				} else {
+					element.addSpecificStereotype(newTerm);
+				}
+			}
+			elements.add(element);
+		}
+		this.elements = Collections.unmodifiableList(elements);
+	}
+
+	/**
+	 * Create the new term in the package of the element, and apply it to the element.
+	 */
+	private static IRPStereotype newTerm(IRPModelElement element) {
+		IRPStereotype result = element.addStereotype(NEW_TERM, "Class");
+		result.setIsNewTerm(1);
+		((IRPTag) result.addNewAggr("Tag", TAG)).setValue("High");
+		return result;
+	}
+
+}
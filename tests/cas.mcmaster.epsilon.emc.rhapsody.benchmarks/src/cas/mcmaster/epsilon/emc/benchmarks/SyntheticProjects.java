@@ -0,0 +1,185 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Rhapsody projects written to disk in the unit file format, to benchmark loading projects from
+ * their files. The project has one package unit (<code>.sbsx</code>) per unit, each with the
+ * given number of classes. Each class has attributes, the <code>Block</code> new term stereotype
+ * (defined in the first unit) and a dependency on a class of the next unit, so GUID references
+ * cross units.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+public class SyntheticProjects {
+
+	/**
+	 * Write a project.
+	 *
+	 * @param directory the directory to write the project to
+	 * @param units the number of package units
+	 * @param classes the number of classes in each unit
+	 * @param attributes the number of attributes of each class
+	 * @return the path to the project file
+	 * @throws IOException if the files can't be written
+	 */
+	public static Path write(Path directory, int units, int classes, int attributes) throws IOException {
+		Path unitsDirectory = Files.createDirectories(directory.resolve(NAME + "_rpy"));
+		Path projectFile = directory.resolve(NAME + ".rpyx");
+		try (Writer out = Files.newBufferedWriter(projectFile, StandardCharsets.UTF_8)) {
+			header(out);
+			out.write("\t<IProject type=\"e\">\n");
+			field(out, "_id", guid(PROJECT, 0, 0));
+			field(out, "_name", NAME);
+			out.write("\t\t<AggregatesList type=\"e\">\n");
+			for (int u = 0; u < units; u++) {
+				out.write("\t\t\t<value>" + guid(PACKAGE, u, 0) + "</value>\n");
+			}
+			out.write("\t\t</AggregatesList>\n");
+			out.write("\t</IProject>\n");
+			for (int u = 0; u < units; u++) {
+				out.write("\t<ISubsystem type=\"e\">\n");
+				field(out, "fileName", packageName(u));
+				field(out, "_id", guid(PACKAGE, u, 0));
+				out.write("\t</ISubsystem>\n");
+			}
+			footer(out);
+		}
+		for (int u = 0; u < units; u++) {
+			writeUnit(unitsDirectory.resolve(packageName(u) + ".sbsx"), u, (u + 1) % units, classes, attributes);
+		}
+		return projectFile;
+	}
+
+	/**
+	 * Delete a directory and its contents.
+	 *
+	 * @param directory the directory
+	 * @throws IOException if a file can't be deleted
+	 */
+	public static void delete(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	private static final String NAME = "Synthetic";
+	private static final int PROJECT = 0;
+	private static final int PACKAGE = 1;
+	private static final int CLASS = 2;
+	private static final int ATTRIBUTE = 3;
+	private static final int DEPENDENCY = 4;
+	private static final int STEREOTYPE = 5;
+
+	private static void writeUnit(Path file, int unit, int next, int classes, int attributes) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			header(out);
+			out.write("\t<ISubsystem type=\"e\">\n");
+			field(out, "_id", guid(PACKAGE, unit, 0));
+			field(out, "_name", packageName(unit));
+			field(out, "_modifiedTime", "8.15.2023::14:27:51");
+			out.write("\t\t<AggregatesList type=\"e\">\n");
+			if (unit == 0) {
+				out.write("\t\t\t<value>" + guid(STEREOTYPE, 0, 0) + "</value>\n");
+			}
+			for (int c = 0; c < classes; c++) {
+				out.write("\t\t\t<value>" + guid(CLASS, unit, c) + "</value>\n");
+			}
+			out.write("\t\t</AggregatesList>\n");
+			out.write("\t</ISubsystem>\n");
+			if (unit == 0) {
+				out.write("\t<IStereotype type=\"e\">\n");
+				field(out, "_id", guid(STEREOTYPE, 0, 0));
+				field(out, "_name", "Block");
+				field(out, "_newTerm", "1");
+				out.write("\t</IStereotype>\n");
+			}
+			for (int c = 0; c < classes; c++) {
+				out.write("\t<IClass type=\"e\">\n");
+				field(out, "_id", guid(CLASS, unit, c));
+				field(out, "_name", "Class" + unit + "_" + c);
+				field(out, "_modifiedTime", "8.15.2023::14:27:51");
+				out.write("\t\t<Stereotypes type=\"c\">\n\t\t\t<IRPYRawContainer type=\"e\">\n");
+				handle(out, "IStereotype", "Block", guid(STEREOTYPE, 0, 0));
+				out.write("\t\t\t</IRPYRawContainer>\n\t\t</Stereotypes>\n");
+				out.write("\t\t<AggregatesList type=\"e\">\n");
+				for (int a = 0; a < attributes; a++) {
+					out.write("\t\t\t<value>" + guid(ATTRIBUTE, unit, c * attributes + a) + "</value>\n");
+				}
+				out.write("\t\t\t<value>" + guid(DEPENDENCY, unit, c) + "</value>\n");
+				out.write("\t\t</AggregatesList>\n");
+				out.write("\t</IClass>\n");
+				for (int a = 0; a < attributes; a++) {
+					out.write("\t<IAttribute type=\"e\">\n");
+					field(out, "_id", guid(ATTRIBUTE, unit, c * attributes + a));
+					field(out, "_name", "attribute" + a);
+					field(out, "_defaultValue", Integer.toString(a));
+					out.write("\t</IAttribute>\n");
+				}
+				out.write("\t<IDependency type=\"e\">\n");
+				field(out, "_id", guid(DEPENDENCY, unit, c));
+				field(out, "_name", "dependsOn" + next);
+				out.write("\t\t<_dependsOn type=\"r\">\n");
+				handle(out, "IClass", "Class" + next + "_" + c, guid(CLASS, next, c));
+				out.write("\t\t</_dependsOn>\n");
+				out.write("\t</IDependency>\n");
+			}
+			footer(out);
+		}
+	}
+
+	private static String packageName(int unit) {
+		return "Package" + unit;
+	}
+
+	/**
+	 * @return a deterministic GUID, so the same project is written for the same parameters
+	 */
+	private static String guid(int kind, int unit, int index) {
+		return "GUID " + new UUID(((long) kind << 32) | unit, index);
+	}
+
+	private static void header(Writer out) throws IOException {
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<RhapsodyArchive>\n");
+		out.write("\t<version>109.0.1</version>\n\t<RHAPSODY-MODEL>\n");
+	}
+
+	private static void footer(Writer out) throws IOException {
+		out.write("\t</RHAPSODY-MODEL>\n</RhapsodyArchive>\n");
+	}
+
+	private static void field(Writer out, String name, String value) throws IOException {
+		out.write("\t\t<" + name + " type=\"a\">" + value + "</" + name + ">\n");
+	}
+
+	private static void handle(Writer out, String m2Class, String name, String guid) throws IOException {
+		out.write("\t\t\t\t<IHandle type=\"e\">\n");
+		out.write("\t\t\t\t\t<_hm2Class type=\"a\">" + m2Class + "</_hm2Class>\n");
+		out.write("\t\t\t\t\t<_hname type=\"a\">" + name + "</_hname>\n");
+		out.write("\t\t\t\t\t<_hid type=\"a\">" + guid + "</_hid>\n");
+		out.write("\t\t\t\t</IHandle>\n");
+	}
+
+}
@@ -0,0 +1,101 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyTextIndex;
+
+/**
+ * Time of a text search (the elements whose text has a term) on {@link SyntheticModels} with a
+ * simulated API latency, whose elements have descriptions. <code>indexed</code> queries a filled {@link RhapsodyTextIndex}, as
+ * the model does when the text index is enabled. <code>scanned</code> reads the name and
+ * description of all the elements for each search.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextIndexBenchmark {
+
+	/** Simulated latency of a call to the Rhapsody API */
+	@Param({"1000"})
+	public long latencyNanos;
+
+	@Param({"10000"})
+	public int size;
+
+	@Setup
+	public void setup() {
+		var model = SyntheticModels.of(this.size);
+		for (int i = 0; i < this.size; i++) {
+			model.elements().get(i).setDescription("The system shall handle event " + i + " within " + (i % 100) + " ms.");
+		}
+		this.root = model.latency(this.latencyNanos).project();
+		this.index = new RhapsodyTextIndex(this.root, new RhapsodyElementIds());
+		this.index.term(query());
+	}
+
+	@Benchmark
+	public Collection<IRPModelElement> indexed() {
+		return this.index.term(query());
+	}
+
+	@Benchmark
+	public Collection<IRPModelElement> scanned() {
+		String term = query();
+		List<IRPModelElement> result = new ArrayList<>();
+		var contents = this.root.getNestedElementsRecursive();
+		for (int i=1; i <= contents.getCount(); i++) {
+			var element = (IRPModelElement) contents.getItem(i);
+			if (RhapsodyTextIndex.terms(element.getName()).contains(term)
+					|| RhapsodyTextIndex.terms(element.getDescriptionPlainText()).contains(term)) {
+				result.add(element);
+			}
+		}
+		return result;
+	}
+
+	private IRPModelElement root;
+	private RhapsodyTextIndex index;
+	private int queries;
+
+	/**
+	 * @return the next query, the number of an event
+	 */
+	private String query() {
+		this.queries = (this.queries + 1) % this.size;
+		return String.valueOf(this.queries);
+	}
+
+}
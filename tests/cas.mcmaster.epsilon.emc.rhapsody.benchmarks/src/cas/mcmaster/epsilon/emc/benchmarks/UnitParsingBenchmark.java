@@ -0,0 +1,115 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+
+/**
+ * Time to load a synthetic project of 500 units from its files, see {@link SyntheticProjects},
+ * with different numbers of parse threads. Units are parsed in parallel and linked in a single
+ * thread, so the speedup is bound by the link phase. Run {@link #main(String[])} to print the
+ * speedup curve (relative to one thread) after the JMH results.
+ *
+ * @author Horacio Hoyos Rodriguez
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UnitParsingBenchmark {
+
+	@Param({"1", "2", "4", "8"})
+	public int parallelism;
+
+	@Param({"500"})
+	public int units;
+
+	@Param({"40"})
+	public int classes;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = Files.createTempDirectory("rhapsody-units");
+		this.projectFile = SyntheticProjects.write(this.directory, this.units, this.classes, ATTRIBUTES);
+		this.pool = new ForkJoinPool(this.parallelism);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.pool.shutdown();
+		SyntheticProjects.delete(this.directory);
+	}
+
+	@Benchmark
+	public RhapsodyFileProject load() throws IOException, XMLStreamException {
+		return RhapsodyFileProject.load(this.projectFile, NEW_TERMS, this.pool);
+	}
+
+	/**
+	 * Run the benchmark and print the speedup for each parallelism.
+	 *
+	 * @param args not used
+	 * @throws RunnerException if the benchmark fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(UnitParsingBenchmark.class.getSimpleName())
+				.build();
+		Collection<RunResult> results = new Runner(options).run();
+		var times = new TreeMap<Integer, Double>();
+		for (RunResult result : results) {
+			int parallelism = Integer.parseInt(result.getParams().getParam("parallelism"));
+			times.put(parallelism, result.getPrimaryResult().getScore());
+		}
+		double base = times.firstEntry().getValue();
+		System.out.println("Threads\tms/load\tSpeedup");
+		times.forEach((threads, time) -> System.out.printf("%d\t%.1f\t%.2f%n", threads, time, base / time));
+	}
+
+	private static final int ATTRIBUTES = 5;
+	private static final Set<String> NEW_TERMS = Set.of();
+
+	private Path directory;
+	private Path projectFile;
+	private ForkJoinPool pool;
+
+}
@@ -0,0 +1,88 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyAccessors;
+
+/**
+ * Uses an in-memory {@link IRPClass}, so these tests don't need a Rhapsody installation.
+ */
+public class RhapsodyAccessorsTests {
+
+	@BeforeEach
+	void setup() {
+		element = (IRPClass) Proxy.newProxyInstance(
+				IRPClass.class.getClassLoader(),
+				new Class<?>[] {IRPClass.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getName":
+						return "Car";
+					case "getIsAbstract":
+						return 1;
+					case "getDescription":
+						throw new RhapsodyRuntimeException("Not connected");
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	@Test
+	void accessor_is_resolved_ignoring_case() throws Throwable {
+		var underTest = new RhapsodyAccessors();
+		var accessor = underTest.find(element.getClass(), "name");
+		assertEquals("getName", accessor.method().getName());
+		assertEquals("Car", accessor.invoke(element));
+	}
+
+	@Test
+	void get_has_priority_over_has() {
+		var underTest = new RhapsodyAccessors();
+		assertEquals("getNestedElements", underTest.find(element.getClass(), "nestedElements").method().getName());
+	}
+
+	@Test
+	void accessors_are_resolved_once() {
+		var underTest = new RhapsodyAccessors();
+		assertSame(underTest.find(element.getClass(), "isAbstract"), underTest.find(element.getClass(), "isAbstract"));
+	}
+
+	@Test
+	void missing_accessor_is_null() {
+		var underTest = new RhapsodyAccessors();
+		assertNull(underTest.find(element.getClass(), "wheels"));
+		assertNull(underTest.find(element.getClass(), "wheels"));
+	}
+
+	@Test
+	void exceptions_are_not_wrapped() {
+		var underTest = new RhapsodyAccessors();
+		var accessor = underTest.find(element.getClass(), "description");
+		assertThrows(RhapsodyRuntimeException.class, () -> accessor.invoke(element));
+	}
+
+	private IRPClass element;
+
+}
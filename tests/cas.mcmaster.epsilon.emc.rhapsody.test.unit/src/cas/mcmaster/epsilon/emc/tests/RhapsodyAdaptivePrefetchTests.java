@@ -0,0 +1,251 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.IRPKey;
+import cas.mcmaster.epsilon.emc.PropertyValue;
+import cas.mcmaster.epsilon.emc.RhapsodyAdaptivePrefetcher;
+import cas.mcmaster.epsilon.emc.RhapsodyCachePolicy;
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Uses in-memory {@link IRPModelElement}s, so these tests don't need a Rhapsody installation.
+ */
+public class RhapsodyAdaptivePrefetchTests {
+
+	@BeforeEach
+	void setup() {
+		getNameCalls = new AtomicInteger();
+		ofTypeCalls = new AtomicInteger();
+		blocks = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			blocks.add(element(i, "Block"));
+		}
+		requirements = new ArrayList<>();
+		for (int i = 20; i < 25; i++) {
+			requirements.add(element(i, ""));
+		}
+		underTest = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null);
+	}
+
+	@Test
+	void property_is_prefetched_after_threshold_reads() throws EolRuntimeException {
+		var prefetcher = prefetcher(4, 16, 100);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (IRPModelElement block : blocks) {
+			underTest.invoke(block, "name", null);
+		}
+		assertEquals(20, getNameCalls.get());
+		assertEquals(16, prefetcher.fetchedCount());
+		assertEquals(16, prefetcher.hitCount());
+		assertEquals(1.0, prefetcher.hitRatio());
+	}
+
+	@Test
+	void other_types_are_not_prefetched() throws EolRuntimeException {
+		var prefetcher = prefetcher(4, 16, 100);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (int i = 0; i < 4; i++) {
+			underTest.invoke(blocks.get(i), "name", null);
+		}
+		int calls = getNameCalls.get();
+		for (IRPModelElement requirement : requirements.subList(0, 3)) {
+			underTest.invoke(requirement, "name", null);
+		}
+		assertEquals(calls + 3, getNameCalls.get());
+		assertEquals(16, prefetcher.fetchedCount());
+		assertEquals(0, prefetcher.hitRatio());
+	}
+
+	@Test
+	void prefetched_values_are_limited_by_budget() throws EolRuntimeException {
+		var prefetcher = prefetcher(4, 16, 5);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (IRPModelElement block : blocks) {
+			underTest.invoke(block, "name", null);
+		}
+		assertEquals(5, prefetcher.fetchedCount());
+		assertEquals(0, prefetcher.remainingBudget());
+	}
+
+	@Test
+	void reads_outside_the_window_are_not_counted() throws EolRuntimeException {
+		var prefetcher = prefetcher(4, 4, 100);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (int i = 0; i < 5; i++) {
+			underTest.invoke(blocks.get(i), "name", null);
+			underTest.invoke(requirements.get(i), "name", null);
+		}
+		assertEquals(0, prefetcher.fetchedCount());
+	}
+
+	@Test
+	void settings_are_read_from_properties() {
+		var properties = new StringProperties();
+		assertNull(RhapsodyAdaptivePrefetcher.fromProperties(properties, this::ofType));
+		properties.put(RhapsodyModel.PROPERTY_PREFETCH_THRESHOLD, "0");
+		assertNull(RhapsodyAdaptivePrefetcher.fromProperties(properties, this::ofType));
+		properties.put(RhapsodyModel.PROPERTY_PREFETCH_THRESHOLD, "32");
+		assertEquals(32, RhapsodyAdaptivePrefetcher.fromProperties(properties, this::ofType).getThreshold());
+		properties.put(RhapsodyModel.PROPERTY_PREFETCH_THRESHOLD, "8");
+		properties.put(RhapsodyModel.PROPERTY_PREFETCH_WINDOW, "4");
+		assertThrows(IllegalArgumentException.class, () -> RhapsodyAdaptivePrefetcher.fromProperties(properties, this::ofType));
+		properties.put(RhapsodyModel.PROPERTY_PREFETCH_WINDOW, "many");
+		assertThrows(IllegalArgumentException.class, () -> RhapsodyAdaptivePrefetcher.fromProperties(properties, this::ofType));
+	}
+
+	@Test
+	void unknown_types_are_not_prefetched() throws EolRuntimeException {
+		var prefetcher = prefetcher(4, 16, 100);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		var unknown = new ArrayList<IRPModelElement>();
+		for (int i = 30; i < 40; i++) {
+			unknown.add(element(i, "Unknown"));
+		}
+		for (IRPModelElement element : unknown) {
+			underTest.invoke(element, "name", null);
+			underTest.invoke(element, "description", null);
+		}
+		assertEquals(0, prefetcher.fetchedCount());
+		assertEquals(1, ofTypeCalls.get());
+	}
+
+	@Test
+	void batches_follow_the_reads() throws EolRuntimeException {
+		var prefetcher = new RhapsodyAdaptivePrefetcher(2, 16, 100, 4, this::ofType);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (int i = 0; i < 6; i++) {
+			underTest.invoke(blocks.get(i), "name", null);
+		}
+		// The first batch, and one more each time half of the pending values are read
+		assertEquals(10, prefetcher.fetchedCount());
+		for (IRPModelElement block : blocks) {
+			underTest.invoke(block, "name", null);
+		}
+		assertEquals(20, getNameCalls.get());
+		assertEquals(18, prefetcher.fetchedCount());
+		assertEquals(18, prefetcher.hitCount());
+		assertEquals(0, prefetcher.pendingCount());
+	}
+
+	@Test
+	void prefetch_is_limited_to_the_free_cache_capacity() throws EolRuntimeException {
+		underTest = new RhapsodyPropertyGetter(Caffeine.newBuilder().executor(Runnable::run).maximumSize(10).build(), null);
+		var prefetcher = prefetcher(4, 16, 100);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (int i = 0; i < 4; i++) {
+			underTest.invoke(blocks.get(i), "name", null);
+		}
+		assertEquals(6, prefetcher.fetchedCount());
+	}
+
+	@Test
+	void removed_values_are_not_pending() throws EolRuntimeException {
+		var prefetcher = prefetcher(4, 16, 100);
+		var cache = new RhapsodyCachePolicy().<IRPKey, PropertyValue>build(
+				(k, v) -> 1,
+				(k, v, cause) -> prefetcher.removed(k));
+		underTest = new RhapsodyPropertyGetter(cache, null);
+		underTest.setAdaptivePrefetcher(prefetcher);
+		for (int i = 0; i < 4; i++) {
+			underTest.invoke(blocks.get(i), "name", null);
+		}
+		assertEquals(16, prefetcher.pendingCount());
+		cache.invalidateAll();
+		await(() -> prefetcher.pendingCount() == 0);
+		assertEquals(0, prefetcher.hitRatio());
+	}
+
+	private AtomicInteger getNameCalls;
+	private AtomicInteger ofTypeCalls;
+	private List<IRPModelElement> blocks;
+	private List<IRPModelElement> requirements;
+	private RhapsodyPropertyGetter underTest;
+
+	/**
+	 * Wait for the removal listener, which runs in the cache executor.
+	 */
+	private static void await(BooleanSupplier condition) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.onSpinWait();
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+
+	private RhapsodyAdaptivePrefetcher prefetcher(int threshold, int window, long budget) {
+		return new RhapsodyAdaptivePrefetcher(threshold, window, budget, this::ofType);
+	}
+
+	private List<IRPModelElement> ofType(String type) throws EolModelElementTypeNotFoundException {
+		ofTypeCalls.incrementAndGet();
+		switch (type) {
+		case "Block":
+			return blocks;
+		case "Requirement":
+			return requirements;
+		default:
+			throw new EolModelElementTypeNotFoundException("Rhapsody", type);
+		}
+	}
+
+	private IRPModelElement element(int index, String newTerm) {
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPModelElement.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getGUID":
+						return String.format("GUID 00000000-0000-0000-0000-%012d", index);
+					case "getName":
+						getNameCalls.incrementAndGet();
+						return "Element" + index;
+					case "getDescription":
+						return "";
+					case "getMetaClass":
+						return newTerm.isEmpty() ? "Requirement" : "Class";
+					case "getUserDefinedMetaClass":
+						return newTerm;
+					case "getTag":
+						return null;
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+}
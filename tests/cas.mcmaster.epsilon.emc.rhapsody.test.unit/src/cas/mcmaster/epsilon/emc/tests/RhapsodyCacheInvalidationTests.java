@@ -0,0 +1,98 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyModelListener;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Uses in-memory {@link IRPModelElement}s, so these tests don't need a Rhapsody installation.
+ */
+public class RhapsodyCacheInvalidationTests {
+
+	@BeforeEach
+	void setup() {
+		ids = new RhapsodyElementIds();
+		getter = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null, ids);
+		car = element("GUID 5c3d1a52-7d8e-4c1b-9a0f-0c2e3b4d5f60", "Car");
+		bike = element("GUID 00000000-0000-0000-0000-000000000001", "Bike");
+	}
+
+	@Test
+	void invalidate_only_affects_element() throws EolRuntimeException {
+		assertEquals("Car", getter.invoke(car, "name", null));
+		assertEquals("Bike", getter.invoke(bike, "name", null));
+		names[0] = "Truck";
+		names[1] = "Scooter";
+		assertEquals("Car", getter.invoke(car, "name", null));
+		getter.invalidate(RhapsodyElementIds.parse("GUID 5c3d1a52-7d8e-4c1b-9a0f-0c2e3b4d5f60"));
+		assertEquals("Truck", getter.invoke(car, "name", null));
+		assertEquals("Bike", getter.invoke(bike, "name", null));
+	}
+
+	@Test
+	void invalidate_all() throws EolRuntimeException {
+		assertEquals("Car", getter.invoke(car, "name", null));
+		names[0] = "Truck";
+		getter.invalidateAll();
+		assertEquals("Truck", getter.invoke(car, "name", null));
+	}
+
+	@Test
+	void changed_guids_are_split() {
+		assertEquals(
+				List.of("GUID 5c3d1a52-7d8e-4c1b-9a0f-0c2e3b4d5f60", "GUID 00000000-0000-0000-0000-000000000001"),
+				RhapsodyModelListener.guids("GUID 5c3d1a52-7d8e-4c1b-9a0f-0c2e3b4d5f60, GUID 00000000-0000-0000-0000-000000000001;"));
+		assertTrue(RhapsodyModelListener.guids(null).isEmpty());
+	}
+
+	private RhapsodyElementIds ids;
+	private RhapsodyPropertyGetter getter;
+	private IRPModelElement car;
+	private IRPModelElement bike;
+	private final String[] names = {"Car", "Bike"};
+
+	private IRPModelElement element(String guid, String name) {
+		int index = names[0].equals(name) ? 0 : 1;
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPModelElement.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getGUID":
+						return guid;
+					case "getName":
+						return names[index];
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+}
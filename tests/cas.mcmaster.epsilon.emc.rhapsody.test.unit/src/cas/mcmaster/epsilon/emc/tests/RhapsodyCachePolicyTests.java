@@ -0,0 +1,106 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import cas.mcmaster.epsilon.emc.RhapsodyCachePolicy;
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+
+public class RhapsodyCachePolicyTests {
+
+	@Test
+	void defaults_match_previous_cache() {
+		var underTest = RhapsodyCachePolicy.fromProperties(new StringProperties());
+		Cache<String, String> cache = underTest.build();
+		assertEquals(10_000, cache.policy().eviction().get().getMaximum());
+		assertEquals(600, cache.policy().expireAfterWrite().get().getExpiresAfter(TimeUnit.SECONDS));
+		assertFalse(cache.policy().expireAfterAccess().isPresent());
+	}
+
+	@Test
+	void max_weight_replaces_default_size() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_MAX_WEIGHT, "500");
+		var underTest = RhapsodyCachePolicy.fromProperties(properties);
+		Cache<String, String> cache = underTest.build((k, v) -> v.length());
+		assertTrue(cache.policy().eviction().get().isWeighted());
+		assertEquals(500, cache.policy().eviction().get().getMaximum());
+	}
+
+	@Test
+	void expire_after_access_replaces_default_write() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_ACCESS, "30");
+		var underTest = RhapsodyCachePolicy.fromProperties(properties);
+		Cache<String, String> cache = underTest.build();
+		assertEquals(30, cache.policy().expireAfterAccess().get().getExpiresAfter(TimeUnit.SECONDS));
+		assertFalse(cache.policy().expireAfterWrite().isPresent());
+	}
+
+	@Test
+	void zero_disables_expiry() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_EXPIRE_AFTER_WRITE, "0");
+		var underTest = RhapsodyCachePolicy.fromProperties(properties);
+		Cache<String, String> cache = underTest.build();
+		assertFalse(cache.policy().expireAfterWrite().isPresent());
+	}
+
+	@Test
+	void soft_values() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_SOFT_VALUES, "true");
+		var underTest = RhapsodyCachePolicy.fromProperties(properties);
+		assertTrue(underTest.hasSoftValues());
+		Cache<String, String> cache = underTest.build();
+		cache.put("a", "b");
+		assertEquals("b", cache.getIfPresent("a"));
+	}
+
+	@Test
+	void disabled_cache_keeps_no_values() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_DISABLED, "true");
+		var underTest = RhapsodyCachePolicy.fromProperties(properties);
+		Cache<String, String> cache = underTest.build();
+		cache.put("a", "b");
+		cache.cleanUp();
+		assertNull(cache.getIfPresent("a"));
+	}
+
+	@Test
+	void size_and_weight_are_exclusive() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_MAX_WEIGHT, "500");
+		properties.put(RhapsodyModel.PROPERTY_CACHE_MAX_SIZE, "500");
+		assertThrows(IllegalArgumentException.class, () -> RhapsodyCachePolicy.fromProperties(properties));
+	}
+
+	@Test
+	void values_must_be_numbers() {
+		var properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_CACHE_MAX_SIZE, "many");
+		assertThrows(IllegalArgumentException.class, () -> RhapsodyCachePolicy.fromProperties(properties));
+	}
+
+}
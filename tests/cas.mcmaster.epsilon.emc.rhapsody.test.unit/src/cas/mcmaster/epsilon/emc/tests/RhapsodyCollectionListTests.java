@@ -0,0 +1,164 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyCollectionList;
+
+/**
+ * Uses an in-memory {@link IRPCollection}, so these tests don't need a Rhapsody installation.
+ */
+public class RhapsodyCollectionListTests {
+
+	@BeforeEach
+	void setup() {
+		elements = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			elements.add((IRPModelElement) Proxy.newProxyInstance(
+					IRPModelElement.class.getClassLoader(),
+					new Class<?>[] {IRPModelElement.class},
+					(p, m, a) -> m.getName().equals("hashCode") ? System.identityHashCode(p) : m.getName().equals("equals") ? p == a[0] : null));
+		}
+		items = new ArrayList<>(elements);
+		getItemCalls = new AtomicInteger();
+		collection = (IRPCollection) Proxy.newProxyInstance(
+				IRPCollection.class.getClassLoader(),
+				new Class<?>[] {IRPCollection.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getCount":
+						return items.size();
+					case "getItem":
+						getItemCalls.incrementAndGet();
+						return items.get((Integer) a[0] - 1);
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	@Test
+	void size_does_not_fetch_items() {
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		assertEquals(100, underTest.size());
+		assertEquals(0, getItemCalls.get());
+	}
+
+	@Test
+	void get_fetches_only_the_page() {
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		assertSame(elements.get(25), underTest.get(25));
+		assertEquals(10, getItemCalls.get());
+		assertEquals(1, underTest.fetchedPages());
+		assertSame(elements.get(29), underTest.get(29));
+		assertEquals(10, getItemCalls.get());
+	}
+
+	@Test
+	void first_match_short_circuits() {
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		var match = underTest.stream().filter(e -> e == elements.get(3)).findFirst();
+		assertTrue(match.isPresent());
+		assertEquals(1, underTest.fetchedPages());
+	}
+
+	@Test
+	void last_page_can_be_partial() {
+		var underTest = new RhapsodyCollectionList(collection, 30);
+		assertSame(elements.get(99), underTest.get(99));
+		assertEquals(10, getItemCalls.get());
+	}
+
+	@Test
+	void out_of_bounds_throws() {
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		assertThrows(IndexOutOfBoundsException.class, () -> underTest.get(100));
+	}
+
+	@Test
+	void modifications_are_supported() {
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		var removed = elements.get(0);
+		assertTrue(underTest.remove(removed));
+		assertEquals(99, underTest.size());
+		underTest.add(removed);
+		assertEquals(100, underTest.size());
+		assertSame(removed, underTest.get(99));
+		assertEquals(100, getItemCalls.get());
+	}
+
+	@Test
+	void contents_match_collection() {
+		var underTest = new RhapsodyCollectionList(collection, 7);
+		assertEquals(elements, new ArrayList<>(underTest));
+	}
+
+	@Test
+	void items_that_are_not_elements_keep_their_slot() {
+		items.add(15, "not an element");
+		items.add("not an element");
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		assertEquals(102, underTest.size());
+		assertSame(elements.get(3), underTest.get(3));
+		assertNull(underTest.get(15));
+		assertSame(elements.get(15), underTest.get(16));
+		assertEquals(elements, new ArrayList<>(underTest));
+		assertEquals(102, underTest.size());
+		assertSame(elements.get(99), underTest.get(100));
+		assertNull(underTest.get(101));
+	}
+
+	@Test
+	void modifications_keep_the_slots_of_items_that_are_not_elements() {
+		items.add(15, "not an element");
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		underTest.remove(0);
+		assertEquals(100, underTest.size());
+		assertNull(underTest.get(14));
+		assertEquals(elements.subList(1, 100), new ArrayList<>(underTest));
+	}
+
+	@Test
+	void iterators_skip_items_that_are_not_elements() {
+		items.add("not an element");
+		var underTest = new RhapsodyCollectionList(collection, 10);
+		var match = underTest.stream().filter(e -> e == elements.get(3)).findFirst();
+		assertTrue(match.isPresent());
+		assertEquals(1, underTest.fetchedPages());
+		assertEquals(100, underTest.stream().count());
+		List<IRPModelElement> iterated = new ArrayList<>();
+		underTest.iterator().forEachRemaining(iterated::add);
+		assertEquals(elements, iterated);
+	}
+
+	private List<IRPModelElement> elements;
+	/** The items of the collection, the elements unless a test adds other items */
+	private List<Object> items;
+	private IRPCollection collection;
+	private AtomicInteger getItemCalls;
+
+}
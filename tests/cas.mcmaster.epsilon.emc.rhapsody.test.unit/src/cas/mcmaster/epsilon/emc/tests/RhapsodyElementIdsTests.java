@@ -0,0 +1,92 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.IRPKey;
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+
+/**
+ * Uses an in-memory {@link IRPModelElement}, so these tests don't need a Rhapsody installation.
+ */
+public class RhapsodyElementIdsTests {
+
+	@BeforeEach
+	void setup() {
+		getGUIDCalls = new AtomicInteger();
+		guid = "GUID 5c3d1a52-7d8e-4c1b-9a0f-0c2e3b4d5f60";
+		element = (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPModelElement.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getGUID":
+						getGUIDCalls.incrementAndGet();
+						return guid;
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	@Test
+	void guid_is_fetched_once() {
+		var underTest = new RhapsodyElementIds();
+		var id = underTest.idOf(element);
+		assertEquals(UUID.fromString("5c3d1a52-7d8e-4c1b-9a0f-0c2e3b4d5f60"), id);
+		assertEquals(id, underTest.idOf(element));
+		assertEquals(1, getGUIDCalls.get());
+	}
+
+	@Test
+	void forget_fetches_new_guid() {
+		var underTest = new RhapsodyElementIds();
+		var id = underTest.idOf(element);
+		guid = "GUID 00000000-0000-0000-0000-000000000001";
+		underTest.forget(element);
+		assertNotEquals(id, underTest.idOf(element));
+		assertEquals(2, getGUIDCalls.get());
+	}
+
+	@Test
+	void unexpected_guid_format_is_supported() {
+		assertEquals(RhapsodyElementIds.parse("not-a-guid"), RhapsodyElementIds.parse("not-a-guid"));
+		assertNotEquals(RhapsodyElementIds.parse("not-a-guid"), RhapsodyElementIds.parse("another"));
+	}
+
+	@Test
+	void keys_match_for_guid_and_id() {
+		var underTest = new RhapsodyElementIds();
+		assertEquals(new IRPKey(guid, "name"), new IRPKey(underTest.idOf(element), "name"));
+		assertEquals(new IRPKey(guid, "name").hashCode(), new IRPKey(underTest.idOf(element), "name").hashCode());
+		assertNotEquals(new IRPKey(guid, "name"), new IRPKey(guid, "owner"));
+	}
+
+	private AtomicInteger getGUIDCalls;
+	private String guid;
+	private IRPModelElement element;
+
+}
@@ -0,0 +1,333 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPCollection;
+import com.telelogic.rhapsody.core.IRPInstanceValue;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPTag;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyExecutor;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Calls to confined Rhapsody objects must run in the affinity thread, whichever thread makes
+ * them, and cached values must be read without calling Rhapsody.
+ */
+public class RhapsodyExecutorTests {
+
+	@BeforeEach
+	void setup() {
+		THREADS.clear();
+		NESTED.clear();
+		TAGS.clear();
+		CALLS.set(0);
+		executor = new RhapsodyExecutor();
+	}
+
+	@AfterEach
+	void close() {
+		executor.close();
+	}
+
+	@Test
+	void calls_run_in_the_affinity_thread() {
+		Thread caller = Thread.currentThread();
+		Thread affinity = executor.call(Thread::currentThread);
+		assertNotSame(caller, affinity);
+		assertSame(affinity, executor.call(Thread::currentThread));
+		assertFalse(executor.isAffinityThread());
+		assertTrue(executor.call(executor::isAffinityThread));
+	}
+
+	@Test
+	void nested_calls_run_directly() {
+		assertEquals("nested", executor.call(() -> executor.call(() -> "nested")));
+	}
+
+	@Test
+	void exceptions_are_thrown_to_the_caller() {
+		var error = new RhapsodyRuntimeException("Not found");
+		assertSame(error, assertThrows(RhapsodyRuntimeException.class, () -> executor.call(() -> {
+			throw error;
+		})));
+		var element = executor.confine(element("GUID 00000000-0000-0000-0000-000000000001", "Car"));
+		assertEquals("getOwner", assertThrows(UnsupportedOperationException.class, element::getOwner).getMessage());
+	}
+
+	@Test
+	void confined_objects_call_in_the_affinity_thread() {
+		var car = element("GUID 00000000-0000-0000-0000-000000000001", "Car");
+		var wheel = element("GUID 00000000-0000-0000-0000-000000000002", "Wheel");
+		NESTED.put(car, List.of(wheel));
+		var confined = executor.confine(car);
+		assertTrue(confined instanceof IRPClass);
+		assertSame(confined, executor.confine(confined));
+		assertSame(car, RhapsodyExecutor.unwrap(confined));
+		IRPCollection nested = confined.getNestedElements();
+		var item = (IRPModelElement) nested.getItem(1);
+		assertNotSame(wheel, item);
+		assertSame(wheel, RhapsodyExecutor.unwrap(item));
+		assertEquals("Wheel", item.getName());
+		assertEquals(Set.of(executor.call(Thread::currentThread)), THREADS);
+	}
+
+	@Test
+	void arguments_are_unwrapped() {
+		var car = element("GUID 00000000-0000-0000-0000-000000000001", "Car");
+		var confined = executor.confine(car);
+		assertTrue(confined.equals(executor.confine(car)));
+		assertTrue(confined.equals(confined));
+	}
+
+	@Test
+	void equals_and_hash_code_stay_in_the_calling_thread() {
+		var car = element("GUID 00000000-0000-0000-0000-000000000001", "Car");
+		var wheel = element("GUID 00000000-0000-0000-0000-000000000002", "Wheel");
+		var confined = executor.confine(car);
+		assertTrue(confined.equals(executor.confine(car)));
+		assertFalse(confined.equals(executor.confine(wheel)));
+		assertEquals(System.identityHashCode(car), confined.hashCode());
+		assertEquals(0, CALLS.get());
+		assertEquals(0, executor.callCount());
+	}
+
+	@Test
+	void collection_and_tag_values_are_confined() throws EolRuntimeException {
+		var getter = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null, new RhapsodyElementIds());
+		var car = element("GUID 00000000-0000-0000-0000-000000000001", "Car");
+		var wheel = element("GUID 00000000-0000-0000-0000-000000000002", "Wheel");
+		var engine = element("GUID 00000000-0000-0000-0000-000000000003", "Engine");
+		NESTED.put(car, List.of(wheel));
+		TAGS.put(car, tag(engine));
+		var confined = executor.confine(car);
+		var nested = (List<?>) getter.invoke(confined, "nestedElements", new EolContext());
+		assertEquals("Wheel", ((IRPModelElement) nested.get(0)).getName());
+		var part = (IRPModelElement) getter.invoke(confined, "part", new EolContext());
+		assertEquals("Engine", part.getName());
+		assertEquals(Set.of(executor.call(Thread::currentThread)), THREADS);
+	}
+
+	@Test
+	void calls_from_parallel_threads_run_in_one_thread() {
+		var elements = IntStream.range(0, 100)
+				.mapToObj(i -> executor.confine(element(String.format("GUID 00000000-0000-0000-0000-%012d", i), "E" + i)))
+				.toList();
+		var names = elements.parallelStream().map(IRPModelElement::getName).toList();
+		assertEquals("E99", names.get(99));
+		assertEquals(Set.of(executor.call(Thread::currentThread)), THREADS);
+	}
+
+	@Test
+	void cache_hits_stay_in_the_calling_thread() throws EolRuntimeException {
+		var getter = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null, new RhapsodyElementIds());
+		var car = executor.confine(element("GUID 00000000-0000-0000-0000-000000000001", "Car"));
+		assertEquals("Car", getter.invoke(car, "name", null));
+		int calls = CALLS.get();
+		assertTrue(calls > 0);
+		IntStream.range(0, 100).parallel().forEach(i -> {
+			try {
+				assertEquals("Car", getter.invoke(car, "name", null));
+			} catch (EolRuntimeException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertEquals(calls, CALLS.get());
+	}
+
+	@Test
+	void queued_reads_are_coalesced() throws Exception {
+		var car = executor.confine(element("GUID 00000000-0000-0000-0000-000000000001", "Car"));
+		var readers = Executors.newFixedThreadPool(8);
+		try {
+			var names = blocked(8, () -> {
+				for (int i = 0; i < 8; i++) {
+					readers.submit(car::getName);
+				}
+			}, readers);
+			assertEquals(1, names);
+			assertEquals(7, executor.coalescedCount());
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	@Test
+	void writes_are_not_coalesced() throws Exception {
+		var car = executor.confine(element("GUID 00000000-0000-0000-0000-000000000001", "Car"));
+		var writers = Executors.newFixedThreadPool(4);
+		try {
+			var calls = blocked(4, () -> {
+				for (int i = 0; i < 4; i++) {
+					writers.submit(() -> car.setName("Truck"));
+				}
+			}, writers);
+			assertEquals(4, calls);
+			assertEquals(0, executor.coalescedCount());
+		} finally {
+			writers.shutdownNow();
+		}
+	}
+
+	@Test
+	void queued_calls_are_run_in_batches() throws Exception {
+		var callers = Executors.newFixedThreadPool(10);
+		try {
+			blocked(10, () -> {
+				for (int i = 0; i < 10; i++) {
+					var element = executor.confine(element(String.format("GUID 00000000-0000-0000-0000-%012d", i), "E" + i));
+					callers.submit(element::getName);
+				}
+			}, callers);
+			// The blocking call, and one batch with the queued calls
+			assertEquals(2, executor.batchCount());
+			assertEquals(11, executor.callCount());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	void closed_executors_fail() {
+		executor.close();
+		var car = executor.confine(element("GUID 00000000-0000-0000-0000-000000000001", "Car"));
+		assertThrows(RhapsodyRuntimeException.class, car::getName);
+	}
+
+	static private final Set<Thread> THREADS = ConcurrentHashMap.newKeySet();
+	static private final AtomicInteger CALLS = new AtomicInteger();
+	static private final Map<Object, List<IRPModelElement>> NESTED = Collections.synchronizedMap(new IdentityHashMap<>());
+	static private final Map<Object, IRPTag> TAGS = Collections.synchronizedMap(new IdentityHashMap<>());
+	static private RhapsodyExecutor executor;
+
+	/**
+	 * Make the calls while the affinity thread is busy, so they are queued.
+	 *
+	 * @param queued the number of calls that are queued (or coalesced)
+	 * @return the number of calls to the elements
+	 */
+	static private int blocked(int queued, Runnable calls, ExecutorService callers) throws Exception {
+		var busy = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var blocking = new Thread(() -> executor.call(() -> {
+			busy.countDown();
+			try {
+				return release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}));
+		blocking.start();
+		busy.await();
+		CALLS.set(0);
+		calls.run();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (executor.pendingCount() + executor.coalescedCount() < queued && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		release.countDown();
+		blocking.join();
+		callers.shutdown();
+		callers.awaitTermination(10, TimeUnit.SECONDS);
+		return CALLS.get();
+	}
+
+	/**
+	 * An element that records the threads that call it.
+	 */
+	static private IRPModelElement element(String guid, String name) {
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPClass.class},
+				(p, m, a) -> {
+					THREADS.add(Thread.currentThread());
+					CALLS.incrementAndGet();
+					switch (m.getName()) {
+					case "hashCode":
+						return guid.hashCode();
+					case "equals":
+						return p == a[0];
+					case "toString":
+						return name;
+					case "getGUID":
+						return guid;
+					case "getName":
+						return name;
+					case "setName":
+						return null;
+					case "getNestedElements":
+						return RhapsodyProxies.collection(NESTED.getOrDefault(p, List.of()), () -> THREADS.add(Thread.currentThread()));
+					case "getTag":
+						return TAGS.get(p);
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	/**
+	 * A tag with an instance value.
+	 */
+	static private IRPTag tag(IRPModelElement value) {
+		var instance = (IRPInstanceValue) Proxy.newProxyInstance(
+				IRPInstanceValue.class.getClassLoader(),
+				new Class<?>[] {IRPInstanceValue.class},
+				(p, m, a) -> {
+					THREADS.add(Thread.currentThread());
+					if ("getValue".equals(m.getName())) {
+						return value;
+					}
+					throw new UnsupportedOperationException(m.getName());
+				});
+		return (IRPTag) Proxy.newProxyInstance(
+				IRPTag.class.getClassLoader(),
+				new Class<?>[] {IRPTag.class},
+				(p, m, a) -> {
+					THREADS.add(Thread.currentThread());
+					if ("getValueSpecifications".equals(m.getName())) {
+						return RhapsodyProxies.collection(List.of(instance), () -> THREADS.add(Thread.currentThread()));
+					}
+					throw new UnsupportedOperationException(m.getName());
+				});
+	}
+
+}
@@ -0,0 +1,290 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolEnumerationValueNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyExecutor;
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+import cas.mcmaster.epsilon.emc.fake.FakeProfile;
+import cas.mcmaster.epsilon.emc.fake.FakeRhapsody;
+
+/**
+ * Loads the test models in a {@link FakeRhapsody}, so the live model can be tested without a
+ * Rhapsody installation. The expected values match the ones of the file model tests.
+ */
+public class RhapsodyFakeTests {
+
+	@BeforeAll
+	static void load() throws EolModelLoadingException, IOException, XMLStreamException {
+		fake = new FakeRhapsody(FakeProfile.none(), List.of("Block"));
+		// The installation lists the metaclasses of the project
+		fake.open(Path.of("resources/TestModelA/TestModelA.rpyx"));
+		fake.installation(installation);
+		fake.getActiveApplication().quit();
+		underTest = new RhapsodyModel();
+		underTest.setApplicationFactory(fake);
+		underTest.load(properties("resources/TestModelA/TestModelA.rpyx"));
+	}
+
+	@AfterAll
+	static void unload() {
+		if (underTest != null) {
+			underTest.dispose();
+			assertFalse(fake.isRunning());
+		}
+	}
+
+	@AfterEach
+	void reset() {
+		fake.setProfile(FakeProfile.none());
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"'GUID 78738b66-2aaf-4411-904d-4c02a5215d1a',Project",
+		"'GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6',Package",
+		"'GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba',Block",
+		"'GUID 78f445b6-f602-4fa4-abc7-619306770217',Vehicle",
+		"'GUID d914b866-81ee-4763-b6b7-9a38589b7d26',Event"})
+	void get_element_by_id(String id, String type) {
+		var element = underTest.getElementById(id);
+		assertEquals(id, underTest.getElementId(element));
+		assertEquals(type, underTest.getTypeNameOf(element));
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"Package,1",
+		"Block,6",
+		"Vehicle,1",
+		"Requirement,0"})
+	void get_all_by_type(String type, int expected) throws EolModelElementTypeNotFoundException {
+		assertEquals(expected, underTest.getAllOfType(type).size());
+	}
+
+	@Test
+	void elements_implement_the_api_of_their_metaclass() throws EolRuntimeException {
+		var block = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		assertTrue(block instanceof IRPClass);
+		assertTrue(underTest.isOfType(block, "Class"));
+		assertEquals("TestingPkg::Block1", underTest.getPropertyGetter().invoke(block, "fullPathName", new EolContext()));
+		assertThrows(UnsupportedOperationException.class, () -> ((IRPClass) block).getOperations());
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void get_property_from_tag(String tagName, Object expected) throws EolRuntimeException {
+		Object block = underTest.getElementById("GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17");
+		var value = underTest.getPropertyGetter().invoke(block, tagName, new EolContext());
+		if (value instanceof Collection<?>) {
+			assertArrayEquals((Object[]) expected, ((Collection<?>) value).toArray());
+		} else {
+			assertEquals(expected, value);
+		}
+	}
+
+	@Test
+	void get_enumeration_value() throws EolEnumerationValueNotFoundException {
+		assertEquals("1", underTest.getEnumerationValue("TestEnum", "TEST_1"));
+		assertEquals("2", underTest.getEnumerationValue("TestEnum", "TEST_2"));
+	}
+
+	@Test
+	void create_set_and_delete() throws EolRuntimeException {
+		var created = underTest.createInstance("Class");
+		underTest.getPropertySetter().invoke(created, "name", "Wheel", new EolContext());
+		var id = underTest.getElementId(created);
+		assertEquals(created, underTest.getElementById(id));
+		assertEquals("Wheel", underTest.getPropertyGetter().invoke(created, "name", new EolContext()));
+		assertTrue(underTest.getAllOfType("Class").contains(created));
+		underTest.deleteElement(created);
+		assertNull(underTest.getElementById(id));
+		assertFalse(underTest.getAllOfType("Class").contains(created));
+		assertThrows(RhapsodyRuntimeException.class, created::getName);
+	}
+
+	@Test
+	void setting_a_stereotype_tag_overrides_it() throws EolRuntimeException {
+		Object block = underTest.getElementById("GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17");
+		Object other = underTest.createInstance("Class");
+		((IRPModelElement) other).addStereotype("TagTypes", "Class");
+		underTest.getPropertySetter().invoke(other, "strVal", "otherValue", new EolContext());
+		assertEquals("otherValue", underTest.getPropertyGetter().invoke(other, "strVal", new EolContext()));
+		assertEquals("strValue", underTest.getPropertyGetter().invoke(block, "strVal", new EolContext()));
+		underTest.deleteElement(other);
+	}
+
+	@Test
+	void the_profile_adds_latency() {
+		var block = (IRPModelElement) underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		var profile = new FakeProfile(2_000_000, 0, 0);
+		fake.setProfile(profile);
+		long start = System.nanoTime();
+		assertEquals("Block1", block.getName());
+		assertTrue(System.nanoTime() - start >= 2_000_000);
+		assertEquals(1, profile.callCount());
+	}
+
+	@Test
+	void the_profile_injects_failures() throws EolRuntimeException {
+		var block = (IRPModelElement) underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		// Read a property before, so the id of the element is known
+		underTest.getPropertyGetter().invoke(block, "name", new EolContext());
+		var profile = new FakeProfile(0, 1, 0);
+		fake.setProfile(profile);
+		assertThrows(RhapsodyRuntimeException.class, block::getName);
+		assertThrows(
+				EolRuntimeException.class,
+				() -> underTest.getPropertyGetter().invoke(block, "displayName", new EolContext()));
+		assertTrue(profile.failureCount() > 1);
+		assertEquals(profile.callCount(), profile.failureCount());
+	}
+
+	@Test
+	void failures_are_repeatable() {
+		var block = (IRPModelElement) underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		var first = failures(block, new FakeProfile(0, 0.5, 42));
+		assertEquals(first, failures(block, new FakeProfile(0, 0.5, 42)));
+		assertNotEquals(first, failures(block, new FakeProfile(0, 0.5, 7)));
+		assertTrue(first.contains(true) && first.contains(false));
+	}
+
+	@Test
+	void uses_the_active_project() throws EolModelLoadingException {
+		var other = new RhapsodyModel();
+		other.setApplicationFactory(fake);
+		var properties = properties("resources/TestModelA/TestModelA.rpyx");
+		properties.remove(RhapsodyModel.PROPERTY_PROJECT_PATH);
+		other.load(properties);
+		assertEquals(
+				underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba"),
+				other.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba"));
+		other.dispose();
+		assertTrue(fake.isRunning());
+	}
+
+	@Test
+	void the_mirror_confines_the_calls() throws Exception {
+		var other = new RhapsodyModel();
+		other.setApplicationFactory(fake);
+		var properties = properties("resources/TestModelA/TestModelA.rpyx");
+		properties.remove(RhapsodyModel.PROPERTY_PROJECT_PATH);
+		properties.put(RhapsodyModel.PROPERTY_MIRROR, "true");
+		other.load(properties);
+		try {
+			Object block = other.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+			assertNotSame(block, RhapsodyExecutor.unwrap(block));
+			// Not mirrored, so it is read from Rhapsody in the affinity thread
+			var worker = Executors.newSingleThreadExecutor();
+			try {
+				assertEquals(
+						"TestingPkg::Block1",
+						worker.submit(() -> other.getPropertyGetter().invoke(block, "fullPathName", new EolContext())).get());
+			} finally {
+				worker.shutdown();
+			}
+		} finally {
+			other.dispose();
+		}
+	}
+
+	@Test
+	void missing_project_fails() {
+		var other = new RhapsodyModel();
+		other.setApplicationFactory(fake);
+		assertThrows(
+				EolModelLoadingException.class,
+				() -> other.load(properties("resources/TestModelC/TestModelC.rpyx")));
+	}
+
+	static Stream<Arguments> get_property_from_tag() {
+		Object block1 = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		Object block2 = underTest.getElementById("GUID b285a059-d9e9-43bc-a144-426af8afcc73");
+		return Stream.of(
+				arguments("boolVal", true),
+				arguments("floatOther", "wrongFloat"),
+				arguments("floatVal", 2.3f),
+				arguments("instanceVal", block1),
+				arguments("intOther", "wrongInt"),
+				arguments("intVal", 10),
+				arguments("multiInstanceVal", new Object[] {block1, block2}),
+				arguments("multiIntVal", new Integer[] {23, 35}),
+				arguments("multiStringVal", new String[] {"first", "second"}),
+				arguments("strVal", "strValue")
+			);
+	}
+
+	@TempDir
+	static private Path installation;
+	static private FakeRhapsody fake;
+	static private RhapsodyModel underTest;
+
+	static private List<Boolean> failures(IRPModelElement element, FakeProfile profile) {
+		fake.setProfile(profile);
+		List<Boolean> result = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			try {
+				element.getName();
+				result.add(false);
+			} catch (RhapsodyRuntimeException e) {
+				result.add(true);
+			}
+		}
+		return result;
+	}
+
+	static private StringProperties properties(String path) {
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_PROJECT_PATH, path);
+		properties.put(RhapsodyModel.PROPERTY_INSTALLATION_DIRECTORY, installation.toString());
+		return properties;
+	}
+
+}
@@ -0,0 +1,131 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileModel;
+
+public class RhapsodyFileLoadOnDemandTests {
+
+	@BeforeEach
+	void load() throws EolModelLoadingException {
+		underTest = new RhapsodyFileModel();
+		underTest.load(properties(true));
+	}
+
+	@AfterEach
+	void unload() {
+		underTest.dispose();
+	}
+
+	@Test
+	void only_the_project_file_is_read_at_load() {
+		assertTrue(underTest.getProject().isLoadOnDemand());
+		assertEquals(1, underTest.getProject().getLoadedUnitCount());
+		assertEquals(3, underTest.getProject().getUnitCount());
+		assertFalse(underTest.isCachingEnabled());
+	}
+
+	@Test
+	void units_are_read_when_traversed() {
+		RhapsodyFileElement project = underTest.getProject().getProject();
+		assertEquals(1, project.hasNestedElements());
+		assertEquals(1, underTest.getProject().getLoadedUnitCount());
+		List<String> names = project.getNestedElements().stream()
+				.map(RhapsodyFileElement::getName)
+				.collect(Collectors.toList());
+		assertTrue(names.containsAll(List.of("TestingPkg", "DefaultComponent")));
+		RhapsodyFileElement pkg = (RhapsodyFileElement) underTest.getElementById(PACKAGE);
+		assertEquals(project, pkg.getOwner());
+	}
+
+	@Test
+	void element_by_id_reads_its_unit() {
+		var block = (RhapsodyFileElement) underTest.getElementById(BLOCK1);
+		assertEquals("TestingPkg::Block1", block.getFullPathName());
+		assertEquals("Block", underTest.getTypeNameOf(block));
+		assertTrue(underTest.owns(block));
+		assertNull(underTest.getElementById("GUID 00005c0c-4ae9-4aa2-a03a-921ecade1f3c"));
+	}
+
+	@Test
+	void contents_match_the_full_load() throws EolModelLoadingException, EolModelElementTypeNotFoundException {
+		var full = new RhapsodyFileModel();
+		full.load(properties(false));
+		assertEquals(ids(full.allContents()), ids(underTest.allContents()));
+		assertEquals(full.getAllOfType("Block").size(), underTest.getAllOfType("Block").size());
+		assertEquals(full.getAllOfKind("Classifier").size(), underTest.getAllOfKind("Classifier").size());
+		full.dispose();
+	}
+
+	@Test
+	void tag_values_resolve_across_units() throws EolRuntimeException {
+		Object block = underTest.getElementById(BLOCK_WITH_TAGS);
+		assertEquals(true, underTest.getPropertyGetter().invoke(block, "boolVal", new EolContext()));
+		assertEquals(
+				underTest.getElementById(BLOCK1),
+				underTest.getPropertyGetter().invoke(block, "instanceVal", new EolContext()));
+	}
+
+	@Test
+	void unloaded_units_are_read_again() {
+		var block = (RhapsodyFileElement) underTest.getElementById(BLOCK1);
+		underTest.getProject().unloadUnits();
+		assertEquals(1, underTest.getProject().getLoadedUnitCount());
+		// Elements in use remain valid
+		assertEquals("Block1", block.getName());
+		assertEquals("TestingPkg", block.getOwner().getName());
+		var reloaded = (RhapsodyFileElement) underTest.getElementById(BLOCK1);
+		assertNotSame(block, reloaded);
+		assertEquals(block.getGUID(), reloaded.getGUID());
+		assertEquals("TestingPkg::Block1", reloaded.getFullPathName());
+	}
+
+	static private final String PACKAGE = "GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6";
+	static private final String BLOCK1 = "GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba";
+	static private final String BLOCK_WITH_TAGS = "GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17";
+
+	private RhapsodyFileModel underTest;
+
+	static private StringProperties properties(boolean onDemand) {
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyFileModel.PROPERTY_PROJECT_PATH, "resources/TestModelA/TestModelA.rpyx");
+		properties.put(RhapsodyFileModel.PROPERTY_NEW_TERMS, "Block");
+		properties.put(RhapsodyFileModel.PROPERTY_LOAD_ON_DEMAND, Boolean.toString(onDemand));
+		return properties;
+	}
+
+	static private List<String> ids(Collection<?> elements) {
+		return elements.stream()
+				.map(e -> ((RhapsodyFileElement) e).getGUID())
+				.collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,347 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolIllegalPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolReadOnlyPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolEnumerationValueNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.exceptions.models.EolNotInstantiableModelElementTypeException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileModel;
+
+/**
+ * Reads the test models from the files, so these tests don't need a Rhapsody installation. The
+ * expected values match the ones of the tests of the live model.
+ */
+public class RhapsodyFileModelTests {
+
+	@BeforeAll
+	static void load() throws EolModelLoadingException {
+		underTest = new RhapsodyFileModel();
+		underTest.load(properties("resources/TestModelA/TestModelA.rpyx"));
+	}
+
+	@AfterAll
+	static void unload() {
+		if (underTest != null) {
+			underTest.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"'GUID 78738b66-2aaf-4411-904d-4c02a5215d1a',Project",
+		"'GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6',Package",
+		"'GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba',Block",
+		"'GUID 78f445b6-f602-4fa4-abc7-619306770217',Vehicle",
+		"'GUID d914b866-81ee-4763-b6b7-9a38589b7d26',Event"})
+	void get_element_by_id(String id, String type) {
+		Object element = underTest.getElementById(id);
+		assertEquals(type, underTest.getTypeNameOf(element));
+		assertEquals(id, underTest.getElementId(element));
+		assertTrue(underTest.owns(element));
+	}
+
+	@Test
+	void get_element_by_id_wrong_id() {
+		assertNull(underTest.getElementById("GUID 00005c0c-4ae9-4aa2-a03a-921ecade1f3c"));
+	}
+
+	@Test
+	void containment_spans_units() {
+		var pkg = (RhapsodyFileElement) underTest.getElementById("GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6");
+		var block = (RhapsodyFileElement) underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		assertEquals("TestingPkg", pkg.getName());
+		assertEquals(pkg.getProject(), pkg.getOwner());
+		assertEquals(pkg, block.getOwner());
+		assertEquals("TestingPkg::Block1", block.getFullPathName());
+		assertTrue(underTest.allContents().contains(block));
+	}
+
+	@Test
+	void get_all_by_type_fails_if_unknown_stereotype_or_type() {
+		EolModelElementTypeNotFoundException thrown = assertThrows(
+				EolModelElementTypeNotFoundException.class,
+				() -> underTest.getAllOfType("car"));
+		assertTrue(thrown.getMessage().contains("Cannot find meta-class 'car' in model"));
+	}
+
+	@Test
+	void get_all_by_type_fails_if_no_new_term_stereotype() {
+		assertThrows(
+				EolModelElementTypeNotFoundException.class,
+				() -> underTest.getAllOfType("TagTypes"));
+		assertFalse(underTest.hasType("Usage"));
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"Package,1",
+		"Class,9",
+		"Reception,1",
+		"EventReception,1",
+		"Block,6",
+		"Vehicle,1",
+		"Requirement,0"})
+	void get_all_by_type(String type, int expected) throws EolModelElementTypeNotFoundException {
+		assertEquals(expected, underTest.getAllOfType(type).size());
+	}
+
+	@Test
+	void get_all_by_kind_for_metaclass() throws EolModelElementTypeNotFoundException {
+		List<String> classifiers = underTest.getAllOfKind("Classifier").stream()
+				.map(RhapsodyFileElement::getName)
+				.collect(Collectors.toList());
+		assertTrue(classifiers.containsAll(List.of("Block1", "Ambulance", "TestEnum")));
+		assertFalse(classifiers.contains("TestingPkg"));
+		assertEquals(6, underTest.getAllOfKind("Block").size());
+	}
+
+	@Test
+	void get_all_by_kind_matches_is_of_kind() throws EolModelElementTypeNotFoundException {
+		List<RhapsodyFileElement> expected = new ArrayList<>();
+		for (Object element : underTest.allContents()) {
+			if (underTest.isOfKind(element, "Classifier")) {
+				expected.add((RhapsodyFileElement) element);
+			}
+		}
+		var result = underTest.getAllOfKind("Classifier");
+		assertEquals(expected.size(), result.size());
+		assertTrue(result.containsAll(expected));
+	}
+
+	@Test
+	void is_of_type_and_kind() throws EolModelElementTypeNotFoundException {
+		Object block = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		assertTrue(underTest.isOfType(block, "Class"));
+		assertTrue(underTest.isOfType(block, "Block"));
+		assertFalse(underTest.isOfType(block, "Classifier"));
+		assertTrue(underTest.isOfKind(block, "Classifier"));
+		assertEquals("IRPClass", underTest.getTypeOf(block));
+	}
+
+	@Test
+	void stereotypes_are_resolved() {
+		var block = (RhapsodyFileElement) underTest.getElementById("GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17");
+		var stereotypes = block.getStereotypes();
+		assertEquals(2, stereotypes.size());
+		assertEquals("Block", stereotypes.get(0).getName());
+		assertEquals(1, stereotypes.get(0).getIsExternal());
+		assertEquals("TagTypes", stereotypes.get(1).getName());
+		assertEquals(0, stereotypes.get(1).getIsNewTerm());
+		assertFalse(underTest.owns(stereotypes.get(0)));
+	}
+
+	@Test
+	void reception_takes_the_event_name() throws EolModelElementTypeNotFoundException {
+		var reception = underTest.getAllOfType("Reception").iterator().next();
+		assertEquals("start", reception.getName());
+		assertEquals("system", reception.getOwner().getName());
+	}
+
+	@Test
+	void get_enumeration_value_matches() throws EolEnumerationValueNotFoundException {
+		assertEquals("1", underTest.getEnumerationValue("TestEnum", "TEST_1"));
+		assertEquals("2", underTest.getEnumerationValue("TestEnum", "TEST_2"));
+	}
+
+	@ParameterizedTest
+	@CsvSource({"TestEnumWrong,SOME_VALUE", "TestEnum,SOME_VALUE", "Speed,SOME_VALUE"})
+	void enumeration_value_fails(String enumeration, String label) {
+		EolEnumerationValueNotFoundException thrown = assertThrows(
+				EolEnumerationValueNotFoundException.class,
+				() -> underTest.getEnumerationValue(enumeration, label));
+		assertTrue(thrown.getMessage().contains("Cannot find enumeration literal " + enumeration + "#" + label + " in model"));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void has_property(String property, boolean expected) {
+		Object block = underTest.getElementById("GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17");
+		assertEquals(expected, underTest.getPropertyGetter().hasProperty(block, property, new EolContext()));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void get_property_from_api(String property, Object expected) throws EolRuntimeException {
+		Object block = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		assertEquals(expected, underTest.getPropertyGetter().invoke(block, property, new EolContext()));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void get_property_from_tag(String tagName, Object expected) throws EolRuntimeException {
+		Object block = underTest.getElementById("GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17");
+		var value = underTest.getPropertyGetter().invoke(block, tagName, new EolContext());
+		if (value instanceof Collection<?>) {
+			assertArrayEquals((Object[]) expected, ((Collection<?>) value).toArray());
+		} else {
+			assertEquals(expected, value);
+		}
+	}
+
+	@Test
+	void get_unknown_property_throws() {
+		Object block = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		assertThrows(
+				EolIllegalPropertyException.class,
+				() -> underTest.getPropertyGetter().invoke(block, "film", new EolContext()));
+	}
+
+	@Test
+	void model_is_read_only() {
+		Object block = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		assertThrows(
+				EolReadOnlyPropertyException.class,
+				() -> underTest.getPropertySetter().invoke(block, "name", "other", new EolContext()));
+		assertThrows(
+				EolNotInstantiableModelElementTypeException.class,
+				() -> underTest.createInstance("Class"));
+		assertThrows(EolRuntimeException.class, () -> underTest.deleteElement(block));
+		assertFalse(underTest.isInstantiable("Class"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"Block", ""})
+	void loads_project_with_inline_elements(String newTerms) throws EolModelLoadingException, EolModelElementTypeNotFoundException {
+		var other = new RhapsodyFileModel();
+		var properties = properties("resources/TestModelB/TestModelB.rpyx");
+		properties.put(RhapsodyFileModel.PROPERTY_NEW_TERMS, newTerms);
+		other.load(properties);
+		assertEquals("Default", other.getAllOfType("Package").iterator().next().getName());
+		assertEquals(1, other.getAllOfType("Class").size());
+		assertEquals(1, other.getAllOfType("StructureDiagram").size());
+		assertEquals(!newTerms.isEmpty(), other.hasType("Block"));
+		assertFalse(underTest.owns(other.getAllOfType("Class").iterator().next()));
+		other.dispose();
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 4})
+	void parallel_parsing_gives_the_same_contents(int parallelism) throws EolModelLoadingException {
+		var other = new RhapsodyFileModel();
+		var properties = properties("resources/TestModelA/TestModelA.rpyx");
+		properties.put(RhapsodyFileModel.PROPERTY_PARSE_PARALLELISM, Integer.toString(parallelism));
+		other.load(properties);
+		assertEquals(
+				ids(underTest.allContents()),
+				ids(other.allContents()));
+		other.dispose();
+	}
+
+	@Test
+	void malformed_unit_fails(@TempDir Path directory) throws IOException {
+		Path source = Paths.get("resources/TestModelA");
+		Files.createDirectories(directory.resolve("TestModelA_rpy"));
+		Files.copy(source.resolve("TestModelA.rpyx"), directory.resolve("TestModelA.rpyx"));
+		Files.copy(source.resolve("TestModelA_rpy/TestingPkg.sbsx"), directory.resolve("TestModelA_rpy/TestingPkg.sbsx"));
+		Files.writeString(directory.resolve("TestModelA_rpy/DefaultComponent.cmpx"), "<RhapsodyArchive><RHAPSODY-MODEL>");
+		EolModelLoadingException thrown = assertThrows(
+				EolModelLoadingException.class,
+				() -> new RhapsodyFileModel().load(properties(directory.resolve("TestModelA.rpyx").toString())));
+		assertTrue(thrown.getCause() instanceof XMLStreamException);
+	}
+
+	@Test
+	void missing_project_fails() {
+		assertThrows(
+				EolModelLoadingException.class,
+				() -> new RhapsodyFileModel().load(properties("resources/TestModelC/TestModelC.rpyx")));
+	}
+
+	static Stream<Arguments> has_property() {
+		return Stream.of(
+				arguments("name", true),
+				arguments("readOnly", true),
+				arguments("hasNestedElements", true),
+				arguments("modifiedTime", true),
+				arguments("boolVal", true),
+				arguments("planet", false)
+			);
+	}
+
+	static Stream<Arguments> get_property_from_api() {
+		return Stream.of(
+				arguments("name", "Block1"),
+				arguments("readOnly", 0),
+				arguments("hasNestedElements", 1),
+				arguments("modifiedTime", "5.31.2023::19:45:30")
+			);
+	}
+
+	static Stream<Arguments> get_property_from_tag() {
+		Object block1 = underTest.getElementById("GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba");
+		Object block2 = underTest.getElementById("GUID b285a059-d9e9-43bc-a144-426af8afcc73");
+		return Stream.of(
+				arguments("boolVal", true),
+				arguments("floatOther", "wrongFloat"),
+				arguments("floatVal", 2.3f),
+				arguments("instanceVal", block1),
+				arguments("intOther", "wrongInt"),
+				arguments("intVal", 10),
+				arguments("multiInstanceVal", new Object[] {block1, block2}),
+				arguments("multiIntVal", new Integer[] {23, 35}),
+				arguments("multiStringVal", new String[] {"first", "second"}),
+				arguments("strVal", "strValue")
+			);
+	}
+
+	static private RhapsodyFileModel underTest;
+
+	static private List<String> ids(Collection<?> elements) {
+		return elements.stream()
+				.map(e -> ((RhapsodyFileElement) e).getGUID())
+				.collect(Collectors.toList());
+	}
+
+	static private StringProperties properties(String path) {
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyFileModel.PROPERTY_PROJECT_PATH, path);
+		properties.put(RhapsodyFileModel.PROPERTY_NEW_TERMS, "Block");
+		return properties;
+	}
+
+}
@@ -0,0 +1,74 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+
+/**
+ * The lattice only depends on the Rhapsody API interfaces, so these tests don't need a Rhapsody
+ * installation.
+ */
+public class RhapsodyKindLatticeTests {
+
+	@Test
+	void metaclass_is_kind_of_itself() {
+		assertTrue(underTest.isKindOf("Class", "Class"));
+		assertTrue(underTest.isKindOf("Flow", "Flow"));
+	}
+
+	@Test
+	void metaclass_is_kind_of_super_interface_metaclass() {
+		assertTrue(underTest.isKindOf("Profile", "Package"));
+		assertTrue(underTest.isKindOf("Port", "Object"));
+	}
+
+	@Test
+	void metaclass_is_not_kind_of_sub_interface_metaclass() {
+		assertFalse(underTest.isKindOf("Package", "Profile"));
+		assertFalse(underTest.isKindOf("Class", "Type"));
+	}
+
+	@Test
+	void reception_matches_event_reception() {
+		assertTrue(underTest.isKindOf("EventReception", "Reception"));
+	}
+
+	@Test
+	void sub_kinds_include_sub_interface_metaclasses() {
+		assertEquals(Set.of("Package", "Profile", "Project"), underTest.subKindsOf("Package"));
+	}
+
+	@Test
+	void unknown_metaclass_is_only_kind_of_itself() {
+		assertEquals(Set.of("car"), underTest.subKindsOf("car"));
+		assertFalse(underTest.isKindOf("car", "Package"));
+	}
+
+	@Test
+	void contains_the_given_metaclasses() {
+		assertTrue(underTest.contains("Package"));
+		assertTrue(underTest.contains("EventReception"));
+		assertFalse(underTest.contains("Classifier"));
+	}
+
+	static private RhapsodyKindLattice underTest = new RhapsodyKindLattice(List.of(
+			"Package", "Profile", "Project", "Class", "Type", "Object", "Port", "Reception", "Flow"));
+
+}
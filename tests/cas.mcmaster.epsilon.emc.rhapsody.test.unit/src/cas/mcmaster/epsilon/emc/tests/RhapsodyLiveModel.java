@@ -0,0 +1,96 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+/**
+ * A live model of proxies of the Rhapsody API, whose calls are answered from a map of values
+ * per element. It counts the traversals of the root (calls to its
+ * <code>getNestedElementsRecursive</code>), so the tests of the indexes can check that the model
+ * is only read once.
+ */
+final class RhapsodyLiveModel {
+
+	/**
+	 * Create an element. Its GUID is given by the index, and the values answer the calls by
+	 * method name. The values can be changed later, see {@link #values(IRPModelElement)}.
+	 *
+	 * @param type the API interface of the element
+	 * @param index the index of the element, used for its GUID
+	 * @param values the values, by method name
+	 * @return the element
+	 */
+	IRPModelElement element(Class<? extends IRPModelElement> type, int index, Map<String, Object> values) {
+		Map<String, Object> answers = new HashMap<>(values);
+		answers.put("getGUID", String.format("GUID 00000000-0000-0000-0000-%012d", index));
+		answers.putIfAbsent("getLocalTags", RhapsodyProxies.collection(List.of()));
+		IRPModelElement result = (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {type},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					case "toString":
+						return String.valueOf(answers.get("getGUID"));
+					case "getNestedElementsRecursive":
+						if (p == this.root) {
+							this.traversals.incrementAndGet();
+						}
+						return answers.getOrDefault(m.getName(), RhapsodyProxies.collection(List.of(p)));
+					default:
+						return answers.get(m.getName());
+					}
+				});
+		this.values.put(result, answers);
+		return result;
+	}
+
+	/**
+	 * Set the root of the model and its contents.
+	 *
+	 * @param root the root
+	 * @param elements the elements nested in the root
+	 */
+	void contents(IRPModelElement root, IRPModelElement... elements) {
+		this.root = root;
+		values(root).put("getNestedElementsRecursive", RhapsodyProxies.collection(List.of(elements)));
+	}
+
+	/**
+	 * @param element an element of the model
+	 * @return the values of the element, which can be modified
+	 */
+	Map<String, Object> values(IRPModelElement element) {
+		return this.values.get(element);
+	}
+
+	/**
+	 * @return the number of traversals of the root
+	 */
+	int traversals() {
+		return this.traversals.get();
+	}
+
+	private final Map<Object, Map<String, Object>> values = new HashMap<>();
+	private IRPModelElement root;
+	private final AtomicInteger traversals = new AtomicInteger();
+
+}
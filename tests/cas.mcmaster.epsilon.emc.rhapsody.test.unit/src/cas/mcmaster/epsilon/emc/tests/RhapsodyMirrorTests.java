@@ -0,0 +1,313 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.eclipse.epsilon.eol.exceptions.EolIllegalPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.eclipse.epsilon.eol.execute.operations.contributors.OperationContributor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPPackage;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.IRPStereotype;
+import com.telelogic.rhapsody.core.IRPTag;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyMirror;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Once the mirror is filled, the mirrored values and types must be read without calling
+ * Rhapsody, and writes, additions and deletions must be reflected in the mirror.
+ */
+public class RhapsodyMirrorTests {
+
+	@BeforeEach
+	void model() {
+		CALLS.set(0);
+		STATE.clear();
+		vehicle = element(IRPPackage.class, "GUID 00000000-0000-0000-0000-000000000001", "Vehicle", null);
+		engine = element(IRPClass.class, "GUID 00000000-0000-0000-0000-000000000002", "Engine", vehicle);
+		brake = element(IRPClass.class, "GUID 00000000-0000-0000-0000-000000000003", "Brake", vehicle);
+		state(brake).newTerm = "Block";
+		state(brake).tags.put("safety", "High");
+		state(vehicle).nested.addAll(List.of(vehicle, engine, brake));
+		getter = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null, new RhapsodyElementIds());
+		mirror = RhapsodyMirror.of(project(), vehicle, List.of("name", "owner"), getter);
+		getter.setMirror(mirror);
+	}
+
+	@Test
+	void the_model_is_copied() {
+		assertEquals(3, mirror.size());
+		assertEquals(List.of(vehicle, engine, brake), mirror.elements());
+		assertEquals(List.of(engine, brake), mirror.ofMetaclass("Class"));
+		assertEquals(List.of(brake), mirror.ofNewTerm("Block"));
+		assertEquals(Set.of("Block"), mirror.newTerms());
+		assertSame(engine, mirror.elementByGuid("GUID 00000000-0000-0000-0000-000000000002"));
+		assertEquals("Class", mirror.metaclassOf(engine));
+		assertNull(mirror.metaclassOf(element(IRPClass.class, "GUID 00000000-0000-0000-0000-000000000009", "Wheel", vehicle)));
+	}
+
+	@Test
+	void reads_do_not_call_rhapsody() throws Exception {
+		var context = new EolContext();
+		CALLS.set(0);
+		IntStream.range(0, 100).parallel().forEach(i -> {
+			try {
+				assertEquals("Brake", getter.invoke(brake, "name", context));
+				assertEquals("High", getter.invoke(brake, "safety", context));
+				assertTrue(getter.hasProperty(brake, "safety", context));
+				assertEquals("Class", mirror.metaclassOf(engine));
+			} catch (EolRuntimeException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		assertEquals(0, CALLS.get());
+	}
+
+	@Test
+	void element_values_are_mirrored() throws Exception {
+		// The owner read from Rhapsody is a different object than the mirrored one
+		var owner = getter.invoke(engine, "owner", new EolContext());
+		assertSame(vehicle, owner);
+	}
+
+	@Test
+	void missing_properties_are_reported() throws Exception {
+		var context = new EolContext();
+		// Not in the copy, Rhapsody (or the registry) decides
+		assertFalse(getter.hasProperty(engine, "safety", context));
+		assertThrows(EolIllegalPropertyException.class, () -> getter.invoke(engine, "safety", context));
+		// Not copied, read from Rhapsody
+		CALLS.set(0);
+		assertEquals("Engine description", getter.invoke(engine, "description", context));
+		assertTrue(CALLS.get() > 0);
+	}
+
+	@Test
+	void contributed_properties_are_read_from_the_registry() throws Exception {
+		var context = new EolContext();
+		context.getOperationContributorRegistry().add(new OperationContributor() {
+
+			@Override
+			public boolean contributesTo(Object target) {
+				return target instanceof IRPModelElement;
+			}
+
+			@SuppressWarnings("unused")
+			public String label() {
+				return "The " + ((IRPModelElement) getTarget()).getName();
+			}
+
+		});
+		assertTrue(getter.hasProperty(engine, "label", context));
+		assertEquals("The Engine", getter.invoke(engine, "label", context));
+		assertEquals("The Brake", getter.invoke(brake, "label", context));
+	}
+
+	@Test
+	void writes_are_mirrored() throws Exception {
+		var context = new EolContext();
+		state(engine).name = "Motor";
+		assertFalse(mirror.update(engine));
+		assertEquals("Motor", getter.invoke(engine, "name", context));
+		state(engine).newTerm = "Block";
+		assertTrue(mirror.update(engine));
+		assertEquals(List.of(engine, brake), mirror.ofNewTerm("Block"));
+	}
+
+	@Test
+	void added_and_removed_elements_are_mirrored() throws Exception {
+		var wheel = element(IRPClass.class, "GUID 00000000-0000-0000-0000-000000000004", "Wheel", vehicle);
+		var tyre = element(IRPClass.class, "GUID 00000000-0000-0000-0000-000000000005", "Tyre", wheel);
+		state(wheel).nested.addAll(List.of(wheel, tyre));
+		assertTrue(mirror.add(wheel));
+		assertFalse(mirror.add(wheel));
+		assertEquals(List.of(vehicle, engine, brake, wheel, tyre), mirror.elements());
+		assertSame(wheel, getter.invoke(tyre, "owner", new EolContext()));
+		assertTrue(mirror.remove(wheel));
+		assertEquals(List.of(vehicle, engine, brake), mirror.elements());
+		assertFalse(mirror.contains(tyre));
+		assertEquals(List.of(engine, brake), mirror.ofMetaclass("Class"));
+	}
+
+	static private final AtomicInteger CALLS = new AtomicInteger();
+	static private final Map<Object, State> STATE = new HashMap<>();
+	static private IRPModelElement vehicle;
+	static private IRPModelElement engine;
+	static private IRPModelElement brake;
+	static private RhapsodyPropertyGetter getter;
+	static private RhapsodyMirror mirror;
+
+	/**
+	 * The values of a fake element.
+	 */
+	static private class State {
+
+		private final String guid;
+		private final String metaclass;
+		private final IRPModelElement owner;
+		private final Map<String, String> tags = new HashMap<>();
+		private final List<IRPModelElement> nested = new ArrayList<>();
+		private String name;
+		private String newTerm;
+
+		private State(String guid, String metaclass, String name, IRPModelElement owner) {
+			this.guid = guid;
+			this.metaclass = metaclass;
+			this.name = name;
+			this.owner = owner;
+		}
+
+	}
+
+	static private State state(IRPModelElement element) {
+		return STATE.get(element);
+	}
+
+	/**
+	 * An element that counts the calls made to it. The owner is a copy, as Rhapsody returns a
+	 * new object for each call.
+	 */
+	static private IRPModelElement element(Class<? extends IRPModelElement> type, String guid, String name, IRPModelElement owner) {
+		var state = new State(guid, type.getSimpleName().substring(3), name, owner);
+		var result = (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {type},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					case "toString":
+						return state.name;
+					default:
+					}
+					CALLS.incrementAndGet();
+					switch (m.getName()) {
+					case "getGUID":
+						return state.guid;
+					case "getName":
+						return state.name;
+					case "getDescription":
+						return state.name + " description";
+					case "getMetaClass":
+						return state.metaclass;
+					case "getUserDefinedMetaClass":
+						return state.newTerm == null ? state.metaclass : state.newTerm;
+					case "getOwner":
+						return state.owner == null ? null : copy(state.owner);
+					case "getAllTags":
+						return RhapsodyProxies.collection(state.tags.entrySet().stream().map(e -> tag(e.getKey(), e.getValue())).toList());
+					case "getTag":
+						return state.tags.containsKey(a[0]) ? tag((String) a[0], state.tags.get(a[0])) : null;
+					case "getNestedElementsRecursive":
+						return RhapsodyProxies.collection(state.nested);
+					default:
+						return null;
+					}
+				});
+		STATE.put(result, state);
+		return result;
+	}
+
+	/**
+	 * @return a different object for the same element
+	 */
+	static private IRPModelElement copy(IRPModelElement element) {
+		State state = state(element);
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				element.getClass().getInterfaces(),
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					case "getGUID":
+						return state.guid;
+					default:
+						return m.invoke(element, a);
+					}
+				});
+	}
+
+	static private IRPTag tag(String name, String value) {
+		return (IRPTag) Proxy.newProxyInstance(
+				IRPTag.class.getClassLoader(),
+				new Class<?>[] {IRPTag.class},
+				(p, m, a) -> {
+					CALLS.incrementAndGet();
+					switch (m.getName()) {
+					case "getName":
+						return name;
+					case "getValue":
+						return value;
+					case "getValueSpecifications":
+						return RhapsodyProxies.collection(List.of());
+					default:
+						return null;
+					}
+				});
+	}
+
+	static private IRPProject project() {
+		var block = (IRPStereotype) Proxy.newProxyInstance(
+				IRPStereotype.class.getClassLoader(),
+				new Class<?>[] {IRPStereotype.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getName":
+						return "Block";
+					case "getIsNewTerm":
+						return 1;
+					default:
+						return null;
+					}
+				});
+		return (IRPProject) Proxy.newProxyInstance(
+				IRPProject.class.getClassLoader(),
+				new Class<?>[] {IRPProject.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getAllStereotypes":
+						return RhapsodyProxies.collection(List.of(block));
+					default:
+						return null;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,133 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Collection;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPPackage;
+
+import cas.mcmaster.epsilon.emc.RhapsodyModel;
+import cas.mcmaster.epsilon.emc.RhapsodyModelListener;
+
+/**
+ * Changes are made directly via the Rhapsody API (i.e. outside the model) and the events are
+ * sent to a listener that is not connected to Rhapsody, so the tests don't depend on the 
+ * event delivery.
+ */
+public class RhapsodyModelListenerTests {
+
+	@BeforeAll
+	static void load() throws EolModelLoadingException, EolModelElementTypeNotFoundException {
+		underTest = new RhapsodyModel();
+		underTest.load(defaultProperties());
+		events = new RhapsodyModelListener(underTest);
+		pkg = (IRPPackage) underTest.getAllOfType("Package").stream()
+				.filter(p -> "TestingPkg".equals(p.getName()))
+				.findFirst()
+				.orElseThrow();
+	}
+
+	@AfterAll
+	static void unload() {
+		if(underTest != null) {
+			underTest.dispose();
+		}
+	}
+
+	@Test
+	void changed_element_is_read_again() throws EolRuntimeException {
+		var element = pkg.addNewAggr("Class", "ListenerClass");
+		try {
+			assertEquals("ListenerClass", name(element));
+			element.setName("RenamedListenerClass");
+			assertEquals("ListenerClass", name(element));
+			events.onElementsChanged(element.getGUID());
+			assertEquals("RenamedListenerClass", name(element));
+		} finally {
+			element.deleteFromProject();
+		}
+	}
+
+	@Test
+	void added_and_deleted_elements_update_type_index() throws EolRuntimeException {
+		int before = underTest.getAllOfType("Class").size();
+		var element = pkg.addNewAggr("Class", "ListenerAddedClass");
+		events.afterAddElement(element);
+		assertEquals(before + 1, underTest.getAllOfType("Class").size());
+		var guid = element.getGUID();
+		events.beforeDeleteElement(element);
+		element.deleteFromProject();
+		events.afterDeleteElement(guid);
+		assertEquals(before, underTest.getAllOfType("Class").size());
+	}
+
+	@Test
+	void owner_is_read_again_after_add() throws EolRuntimeException {
+		int before = nestedElements(pkg);
+		var element = pkg.addNewAggr("Class", "ListenerNestedClass");
+		try {
+			events.afterAddElement(element);
+			assertEquals(before + 1, nestedElements(pkg));
+		} finally {
+			events.beforeDeleteElement(element);
+			element.deleteFromProject();
+		}
+		assertEquals(before, nestedElements(pkg));
+	}
+
+	@Test
+	void other_project_close_keeps_caches() throws EolRuntimeException {
+		var element = pkg.addNewAggr("Class", "ListenerCloseClass");
+		try {
+			assertEquals("ListenerCloseClass", name(element));
+			element.setName("RenamedListenerCloseClass");
+			events.afterProjectClose("AnotherProject");
+			assertEquals("ListenerCloseClass", name(element));
+			events.afterProjectClose("TestModelA");
+			assertEquals("RenamedListenerCloseClass", name(element));
+		} finally {
+			element.deleteFromProject();
+		}
+	}
+
+	static private RhapsodyModel underTest;
+	static private RhapsodyModelListener events;
+	static private IRPPackage pkg;
+
+	static private Object name(IRPModelElement element) throws EolRuntimeException {
+		return underTest.getPropertyGetter().invoke(element, "name", new EolContext());
+	}
+
+	static private int nestedElements(IRPModelElement element) throws EolRuntimeException {
+		return ((Collection<?>) underTest.getPropertyGetter().invoke(element, "nestedElements", new EolContext())).size();
+	}
+
+	static private StringProperties defaultProperties() {
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyModel.PROPERTY_INSTALLATION_DIRECTORY, System.getenv("RHAPSODY_PATH"));
+		properties.put(RhapsodyModel.PROPERTY_PROJECT_PATH, "resources/TestModelA/TestModelA.rpyx");
+		properties.put(RhapsodyModel.PROPERTY_MAIN_PACKAGE_NAME, "TestingPkg");
+		return properties;
+	}
+
+}
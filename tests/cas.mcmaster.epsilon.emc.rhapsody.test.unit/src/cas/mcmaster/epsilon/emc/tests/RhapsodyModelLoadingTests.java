@@ -188,6 +188,35 @@ public class RhapsodyModelLoadingTests {
 		model.dispose();
 	}
 	
+	@Test
+	void loads_scoped_to_root_package() {
+		model = new RhapsodyModel();
+		try {
+			StringProperties properties = defaultProperties();
+			properties.put(RhapsodyModel.PROPERTY_ROOT_ELEM, "TestingPkg");
+			model.load(properties);
+		} catch (EolModelLoadingException e) {
+			fail("Should not throw exception", e);
+		}
+		RhapsodyModel rModel = (RhapsodyModel) model;
+		assertTrue(rModel.isScoped());
+		assertTrue(rModel.allContents().stream().noneMatch(e -> e.getMetaClass().equals("Project")));
+		assertTrue(rModel.allContents().stream().allMatch(rModel::owns));
+	}
+	
+	@Test
+	void cant_load_if_root_doesnt_exists() {
+		model = new RhapsodyModel();
+		EolModelLoadingException thrown = Assertions.assertThrows(
+				EolModelLoadingException.class,
+				() -> {
+					StringProperties properties = defaultProperties();
+					properties.put(RhapsodyModel.PROPERTY_ROOT_ELEM, "UnkownPkg");
+					model.load(properties);
+				});
+		assertTrue(thrown.getMessage().contains("The root element UnkownPkg could not be found"));
+	}
+	
 
 	private IModel model;
 	
@@ -0,0 +1,120 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyCachePolicy;
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+
+/**
+ * Uses in-memory {@link IRPModelElement}s, so these tests don't need a Rhapsody installation.
+ */
+public class RhapsodyPrefetchTests {
+
+	@BeforeEach
+	void setup() {
+		calls = new AtomicInteger();
+		elements = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			elements.add(element(i));
+		}
+		underTest = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null);
+	}
+
+	@Test
+	void prefetched_values_are_cache_hits() throws EolRuntimeException {
+		assertEquals(20, underTest.prefetch(elements, List.of("name", "description")));
+		int afterPrefetch = calls.get();
+		for (int i = 0; i < 10; i++) {
+			assertEquals("Element" + i, underTest.invoke(elements.get(i), "name", null));
+			assertEquals("Description" + i, underTest.invoke(elements.get(i), "description", null));
+		}
+		assertEquals(afterPrefetch, calls.get());
+	}
+
+	@Test
+	void cached_values_are_not_fetched_again() throws EolRuntimeException {
+		underTest.invoke(elements.get(0), "name", null);
+		assertEquals(9, underTest.prefetch(elements, List.of("name")));
+	}
+
+	@Test
+	void missing_properties_and_errors_are_skipped() {
+		assertEquals(0, underTest.prefetch(elements, List.of("wheels")));
+		assertEquals(0, underTest.prefetch(elements, List.of("mainDiagram")));
+	}
+
+	@Test
+	void other_objects_are_ignored() {
+		List<Object> mixed = new ArrayList<>(elements);
+		mixed.add("Element");
+		assertEquals(10, underTest.prefetch(mixed, List.of("name")));
+	}
+
+	@Test
+	void nothing_is_fetched_if_caching_is_disabled() {
+		var disabled = new RhapsodyPropertyGetter(new RhapsodyCachePolicy(true, 0, 0, 0, 0, false).build(), null);
+		assertEquals(0, disabled.prefetch(elements, List.of("name")));
+		assertEquals(0, calls.get());
+	}
+
+	@Test
+	void prefetch_is_limited_to_the_cache_size() {
+		var small = new RhapsodyPropertyGetter(Caffeine.newBuilder().maximumSize(4).build(), null);
+		assertEquals(4, small.prefetch(elements, List.of("name", "description")));
+	}
+
+	private AtomicInteger calls;
+	private List<IRPModelElement> elements;
+	private RhapsodyPropertyGetter underTest;
+
+	private IRPModelElement element(int index) {
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPModelElement.class},
+				(p, m, a) -> {
+					calls.incrementAndGet();
+					switch (m.getName()) {
+					case "getGUID":
+						return String.format("GUID 00000000-0000-0000-0000-%012d", index);
+					case "getName":
+						return "Element" + index;
+					case "getDescription":
+						return "Description" + index;
+					case "getMainDiagram":
+						throw new RhapsodyRuntimeException("Not connected");
+					case "getTag":
+						return null;
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+}
@@ -0,0 +1,60 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.telelogic.rhapsody.core.IRPCollection;
+
+/**
+ * Proxies of the Rhapsody API shared by the tests that don't need a Rhapsody installation.
+ */
+final class RhapsodyProxies {
+
+	/**
+	 * @param items the items of the collection
+	 * @return a collection of the items
+	 */
+	static IRPCollection collection(List<?> items) {
+		return collection(items, () -> { });
+	}
+
+	/**
+	 * @param items the items of the collection
+	 * @param onCall run before each call to the collection
+	 * @return a collection of the items
+	 */
+	static IRPCollection collection(List<?> items, Runnable onCall) {
+		return (IRPCollection) Proxy.newProxyInstance(
+				IRPCollection.class.getClassLoader(),
+				new Class<?>[] {IRPCollection.class},
+				(p, m, a) -> {
+					onCall.run();
+					switch (m.getName()) {
+					case "getCount":
+						return items.size();
+					case "getItem":
+						// IRPCollection indexes start at 1
+						return items.get((Integer) a[0] - 1);
+					case "toList":
+						return new ArrayList<>(items);
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	private RhapsodyProxies() {
+	}
+
+}
@@ -0,0 +1,155 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPAttribute;
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPDependency;
+import com.telelogic.rhapsody.core.IRPInstanceValue;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPPackage;
+import com.telelogic.rhapsody.core.IRPTag;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyReferenceIndex;
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+
+/**
+ * The reference index must give the elements that reference an element, from one traversal of
+ * the model.
+ */
+public class RhapsodyReferenceIndexTests {
+
+	@BeforeEach
+	void model() {
+		model = new RhapsodyLiveModel();
+		target = model.element(IRPClass.class, 1, Map.of("getName", "Target"));
+		other = model.element(IRPClass.class, 2, Map.of("getName", "Other"));
+		dependency = model.element(IRPDependency.class, 3, Map.of("getDependsOn", target));
+		attribute = model.element(IRPAttribute.class, 4, Map.of("getType", target, "getValueSpecifications", RhapsodyProxies.collection(List.of())));
+		IRPModelElement value = model.element(IRPInstanceValue.class, 5, Map.of("getValue", target));
+		tag = model.element(IRPTag.class, 6, Map.of("getValueSpecifications", RhapsodyProxies.collection(List.of(value))));
+		root = model.element(IRPPackage.class, 0, Map.of());
+		model.contents(root, target, other, dependency, attribute, value, tag);
+	}
+
+	@Test
+	void references_are_found_in_one_traversal() {
+		var underTest = new RhapsodyReferenceIndex(root, new RhapsodyElementIds());
+		assertEquals(List.of(dependency, attribute, tag), new ArrayList<>(underTest.referencesTo(target)));
+		assertEquals(List.of(), new ArrayList<>(underTest.referencesTo(other)));
+		assertEquals(List.of(), new ArrayList<>(underTest.referencesTo(dependency)));
+		assertEquals(1, model.traversals());
+	}
+
+	@Test
+	void updated_elements_are_indexed_again() {
+		var underTest = new RhapsodyReferenceIndex(root, new RhapsodyElementIds());
+		underTest.referencesTo(target);
+		model.values(dependency).put("getDependsOn", other);
+		assertTrue(underTest.update(dependency));
+		assertEquals(List.of(attribute, tag), new ArrayList<>(underTest.referencesTo(target)));
+		assertEquals(List.of(dependency), new ArrayList<>(underTest.referencesTo(other)));
+		assertEquals(1, model.traversals());
+	}
+
+	@Test
+	void removed_elements_are_not_references() {
+		var underTest = new RhapsodyReferenceIndex(root, new RhapsodyElementIds());
+		underTest.referencesTo(target);
+		assertTrue(underTest.remove(attribute));
+		assertEquals(List.of(dependency, tag), new ArrayList<>(underTest.referencesTo(target)));
+		var added = model.element(IRPDependency.class, 7, Map.of("getDependsOn", target));
+		assertTrue(underTest.add(added));
+		assertEquals(List.of(dependency, tag, added), new ArrayList<>(underTest.referencesTo(target)));
+		underTest.clear();
+		underTest.referencesTo(target);
+		assertEquals(2, model.traversals());
+	}
+
+	@Test
+	void store_references_include_handles_and_tag_values() throws IOException, XMLStreamException {
+		var store = store();
+		var block1 = store.getElement(BLOCK1);
+		List<String> sources = names(store.getReferencesTo(block1));
+		assertTrue(sources.contains("BlockWithTags"), sources.toString());
+		assertTrue(sources.contains("InstanceValue"), sources.toString());
+		assertEquals(block1.getReferences(), store.getReferencesTo(block1));
+	}
+
+	@Test
+	void store_references_include_guid_strings() throws IOException, XMLStreamException {
+		var store = store();
+		var topLevel = store.getElement(TOP_LEVEL);
+		List<String> metaclasses = store.getReferencesTo(topLevel).stream()
+				.map(RhapsodyStoreElement::getMetaClass)
+				.collect(Collectors.toList());
+		assertTrue(metaclasses.contains("Package"), metaclasses.toString());
+	}
+
+	@Test
+	void store_references_are_in_contents_order() throws IOException, XMLStreamException {
+		var store = store();
+		for (RhapsodyStoreElement element : store.getContents()) {
+			List<Integer> indices = element.getReferences().stream()
+					.map(RhapsodyStoreElement::getIndex)
+					.collect(Collectors.toList());
+			assertEquals(indices.stream().distinct().sorted().collect(Collectors.toList()), indices);
+		}
+	}
+
+	@Test
+	void store_references_need_elements_of_the_store() throws IOException, XMLStreamException {
+		var store = store();
+		var other = store();
+		assertThrows(IllegalArgumentException.class, () -> store.getReferencesTo(other.getElement(BLOCK1)));
+	}
+
+	static private final String BLOCK1 = "GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba";
+	static private final String TOP_LEVEL = "GUID fbfcbe4a-6c2b-4335-b399-16055851dc89";
+	static private RhapsodyLiveModel model;
+	static private IRPModelElement root;
+	static private IRPModelElement target;
+	static private IRPModelElement other;
+	static private IRPModelElement dependency;
+	static private IRPModelElement attribute;
+	static private IRPModelElement tag;
+
+	static private RhapsodyElementStore store() throws IOException, XMLStreamException {
+		return RhapsodyElementStore.of(RhapsodyFileProject.load(Path.of("resources/TestModelA/TestModelA.rpyx"), Set.of("Block")));
+	}
+
+	static private List<String> names(List<RhapsodyStoreElement> elements) {
+		return elements.stream()
+				.map(e -> e.getName().isEmpty() ? e.getMetaClass() : e.getName())
+				.collect(Collectors.toList());
+	}
+
+}
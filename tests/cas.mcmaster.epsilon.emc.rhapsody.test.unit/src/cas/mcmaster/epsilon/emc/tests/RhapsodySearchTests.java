@@ -0,0 +1,315 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.epsilon.eol.EolModule;
+import org.eclipse.epsilon.eol.dom.ExpressionStatement;
+import org.eclipse.epsilon.eol.dom.FirstOrderOperationCallExpression;
+import org.eclipse.epsilon.eol.execute.context.Variable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPPackage;
+import com.telelogic.rhapsody.core.IRPSearchManager;
+import com.telelogic.rhapsody.core.IRPSearchQuery;
+import com.telelogic.rhapsody.core.SearchFindAsEnum;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodySearch;
+import cas.mcmaster.epsilon.emc.RhapsodySearchableList;
+
+/**
+ * Selects on a {@link RhapsodySearchableList} must find their candidates with the search
+ * manager when the condition can be translated, and give the same result as a select over all
+ * the elements.
+ */
+public class RhapsodySearchTests {
+
+	@BeforeEach
+	void model() {
+		QUERY.clear();
+		FOUND.clear();
+		READS.set(0);
+		GUID_READS.set(0);
+		ids = new RhapsodyElementIds();
+		scope = element(IRPPackage.class, "Vehicle");
+		engine = element(IRPClass.class, "Engine");
+		brake = element(IRPClass.class, "Brake");
+		wheel = element(IRPClass.class, "Wheel");
+		searches = 0;
+	}
+
+	@Test
+	void names_are_searched() throws Exception {
+		FOUND.add(brake);
+		var result = select("return Items.select(e | e.name = \"Brake\");");
+		assertEquals(List.of(brake), result);
+		assertEquals(1, searches);
+		assertEquals("Brake", QUERY.get("setSearchText"));
+		assertEquals(IRPSearchQuery.SearchInField.NAME, QUERY.get("addFilterSearchInField"));
+		assertEquals(SearchFindAsEnum.RP_SEARCH_EXACT, QUERY.get("setSearchFindAsOption"));
+		assertEquals("Class", QUERY.get("addFilterElementType"));
+		assertEquals(scope, QUERY.get("addSearchScope"));
+		// Only the candidate is checked
+		assertEquals(1, READS.get());
+	}
+
+	@Test
+	void variables_are_searched() throws Exception {
+		FOUND.add(brake);
+		var result = select("var n = \"Brake\"; return Items.select(e | n == e.name);");
+		assertEquals(List.of(brake), result);
+		assertEquals("Brake", QUERY.get("setSearchText"));
+	}
+
+	@Test
+	void candidates_are_checked() throws Exception {
+		FOUND.addAll(List.of(engine, brake));
+		var result = select("return Items.select(e | e.name = \"Brake\" and e.metaClass = \"Class\");");
+		assertEquals(List.of(brake), result);
+		assertEquals(1, searches);
+	}
+
+	@Test
+	void other_conditions_check_all_elements() throws Exception {
+		var result = select("return Items.select(e | e.name.startsWith(\"B\"));");
+		assertEquals(List.of(brake), result);
+		assertEquals(0, searches);
+		assertEquals(3, READS.get());
+	}
+
+	@Test
+	void other_values_check_all_elements() throws Exception {
+		var result = select("var n = 1; return Items.select(e | e.name = n);");
+		assertEquals(List.of(), result);
+		assertEquals(0, searches);
+		assertEquals(3, READS.get());
+	}
+
+	@Test
+	void select_based_operations_use_the_search() throws Exception {
+		FOUND.add(wheel);
+		assertEquals(wheel, run("return Items.selectOne(e | e.name = \"Wheel\");"));
+		assertEquals(true, run("return Items.exists(e | e.name = \"Wheel\");"));
+		assertEquals(2, searches);
+	}
+
+	@Test
+	void the_order_of_the_collection_is_kept() throws Exception {
+		var rear = element(IRPClass.class, "Brake");
+		// The search finds other objects for the elements, in its own order
+		FOUND.addAll(List.of(copy(rear), copy(brake)));
+		var result = new ArrayList<>((Collection<?>) run(
+				"return Items.select(e | e.name = \"Brake\");",
+				List.of(engine, brake, wheel, rear)));
+		assertEquals(List.of(brake, rear), result);
+		assertEquals(1, searches);
+	}
+
+	@Test
+	void found_elements_are_matched_by_id() throws Exception {
+		List<IRPModelElement> elements = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			elements.add(element(IRPClass.class, "Part" + i));
+		}
+		var part = elements.get(500);
+		FOUND.addAll(List.of(copy(part), copy(scope)));
+		// The ids of the elements are known once their properties are read
+		elements.forEach(ids::idOf);
+		GUID_READS.set(0);
+		var result = new ArrayList<>((Collection<?>) run("return Items.select(e | e.name = \"Part500\");", elements));
+		assertEquals(List.of(part), result);
+		// Only the objects found are read from Rhapsody
+		assertEquals(2, GUID_READS.get());
+		assertEquals(1, READS.get());
+	}
+
+	@Test
+	void matching_stops_once_all_are_found() throws Exception {
+		List<IRPModelElement> elements = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			elements.add(element(IRPClass.class, "Part" + i));
+		}
+		var part = elements.get(1);
+		FOUND.add(copy(part));
+		GUID_READS.set(0);
+		var result = new ArrayList<>((Collection<?>) run("return Items.select(e | e.name = \"Part1\");", elements));
+		assertEquals(List.of(part), result);
+		assertEquals(3, GUID_READS.get());
+	}
+
+	@Test
+	void modifications_update_the_element_classes() throws Exception {
+		List<Set<Class<?>>> searched = new ArrayList<>();
+		var items = new RhapsodySearchableList(
+				new ArrayList<>(List.of(scope)),
+				(search, classes, context) -> {
+					searched.add(Set.copyOf(classes));
+					return List.of();
+				},
+				ids);
+		var module = new EolModule();
+		module.parse("Items.select(e | e.name = \"Brake\");");
+		var select = (FirstOrderOperationCallExpression) ((ExpressionStatement) module.getMain().getStatements().get(0)).getExpression();
+		var search = RhapsodySearch.of(select.getParameters().get(0).getName(), select.getExpressions().get(0));
+		items.search(search, module.getContext());
+		items.set(0, brake);
+		items.search(search, module.getContext());
+		items.add(scope);
+		items.search(search, module.getContext());
+		items.remove(1);
+		items.search(search, module.getContext());
+		assertEquals(
+				List.of(
+					Set.of(scope.getClass()),
+					Set.of(brake.getClass()),
+					Set.of(brake.getClass(), scope.getClass()),
+					Set.of(brake.getClass())),
+				searched);
+	}
+
+	@Test
+	void properties_without_accessor_are_tags() throws Exception {
+		var module = new EolModule();
+		module.parse("Items.select(e | e.safety = \"High\" and e.name = \"Brake\");");
+		var select = (FirstOrderOperationCallExpression) ((ExpressionStatement) module.getMain().getStatements().get(0)).getExpression();
+		var search = RhapsodySearch.of(select.getParameters().get(0).getName(), select.getExpressions().get(0));
+		assertEquals(Set.of("safety", "name"), search.getComparisons().keySet());
+		FOUND.add(brake);
+		Set<Class<?>> classes = Set.of(brake.getClass());
+		var found = search.run(manager(), scope, List.of("Class"), classes, module.getContext());
+		assertEquals(List.of(brake), found);
+		assertEquals(List.of("safety", "High", 1, 1, SearchFindAsEnum.RP_SEARCH_EXACT), QUERY.get("setFilterTag"));
+		assertTrue(RhapsodySearch.isTag("safety", classes));
+		assertTrue(!RhapsodySearch.isTag("metaClass", classes));
+	}
+
+	@Test
+	void other_comparisons_are_not_translated() throws Exception {
+		var module = new EolModule();
+		module.parse("Items.select(e | e.name <> \"Brake\" or e.owner = e);");
+		var select = (FirstOrderOperationCallExpression) ((ExpressionStatement) module.getMain().getStatements().get(0)).getExpression();
+		assertNull(RhapsodySearch.of(select.getParameters().get(0).getName(), select.getExpressions().get(0)));
+	}
+
+	static private final Map<String, Object> QUERY = new HashMap<>();
+	static private final List<IRPModelElement> FOUND = new ArrayList<>();
+	static private final AtomicInteger READS = new AtomicInteger();
+	static private final AtomicInteger GUIDS = new AtomicInteger();
+	static private final AtomicInteger GUID_READS = new AtomicInteger();
+	static private RhapsodyElementIds ids;
+	static private IRPModelElement scope;
+	static private IRPModelElement engine;
+	static private IRPModelElement brake;
+	static private IRPModelElement wheel;
+	static private int searches;
+
+	static private Collection<?> select(String code) throws Exception {
+		return new ArrayList<>((Collection<?>) run(code));
+	}
+
+	static private Object run(String code) throws Exception {
+		return run(code, List.of(engine, brake, wheel));
+	}
+
+	static private Object run(String code, List<IRPModelElement> elements) throws Exception {
+		var items = new RhapsodySearchableList(
+				new ArrayList<>(elements),
+				(search, classes, context) -> search.run(manager(), scope, List.of("Class"), classes, context),
+				ids);
+		var module = new EolModule();
+		module.parse(code);
+		module.getContext().getFrameStack().put(Variable.createReadOnlyVariable("Items", items));
+		return module.execute();
+	}
+
+	/**
+	 * A search manager that records the query, and finds the {@link #FOUND} elements.
+	 */
+	static private IRPSearchManager manager() {
+		IRPSearchQuery query = (IRPSearchQuery) Proxy.newProxyInstance(
+				IRPSearchQuery.class.getClassLoader(),
+				new Class<?>[] {IRPSearchQuery.class},
+				(p, m, a) -> {
+					QUERY.put(m.getName(), a == null ? null : a.length == 1 ? a[0] : List.of(a));
+					return null;
+				});
+		return (IRPSearchManager) Proxy.newProxyInstance(
+				IRPSearchManager.class.getClassLoader(),
+				new Class<?>[] {IRPSearchManager.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "createSearchQuery":
+						return query;
+					case "search":
+						searches++;
+						return RhapsodyProxies.collection(FOUND);
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+	static private IRPModelElement element(Class<? extends IRPModelElement> type, String name) {
+		return element(type, name, "GUID " + GUIDS.incrementAndGet());
+	}
+
+	/**
+	 * @return a different object for the same element, as returned by the search
+	 */
+	static private IRPModelElement copy(IRPModelElement element) {
+		@SuppressWarnings("unchecked")
+		var type = (Class<? extends IRPModelElement>) element.getClass().getInterfaces()[0];
+		return element(type, element.toString(), element.getGUID());
+	}
+
+	static private IRPModelElement element(Class<? extends IRPModelElement> type, String name, String guid) {
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {type},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					case "toString":
+						return name;
+					case "getName":
+						READS.incrementAndGet();
+						return name;
+					case "getMetaClass":
+						return type.getSimpleName().substring(3);
+					case "getGUID":
+						GUID_READS.incrementAndGet();
+						return guid;
+					default:
+						return null;
+					}
+				});
+	}
+
+}
@@ -0,0 +1,239 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodySnapshot;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreModel;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStorePropertyGetter;
+
+/**
+ * A refreshed store must have the same elements as a store built from the changed project.
+ */
+public class RhapsodySnapshotRefreshTests {
+
+	@BeforeEach
+	void copy() throws IOException, XMLStreamException {
+		try (Stream<Path> files = Files.walk(SOURCE)) {
+			for (Path file : files.collect(Collectors.toList())) {
+				Path target = directory.resolve(SOURCE.relativize(file).toString());
+				if (Files.isDirectory(file)) {
+					Files.createDirectories(target);
+				} else {
+					Files.copy(file, target);
+				}
+			}
+		}
+		this.project = this.directory.resolve("TestModelA.rpyx");
+		store = RhapsodyElementStore.of(RhapsodyFileProject.load(project, NEW_TERMS));
+	}
+
+	@Test
+	void store_knows_its_units() {
+		assertEquals(
+				List.of("TestModelA.rpyx", "TestModelA_rpy/DefaultComponent.cmpx", "TestModelA_rpy/TestingPkg.sbsx"),
+				store.getUnitFiles().stream().sorted().collect(Collectors.toList()));
+	}
+
+	@Test
+	void unchanged_units_are_not_read() throws IOException, XMLStreamException {
+		assertSame(store, store.refresh(project, NEW_TERMS));
+	}
+
+	@Test
+	void units_saved_without_changes_keep_the_elements() throws IOException, XMLStreamException {
+		Path unit = directory.resolve(TESTING_PKG);
+		Files.setLastModifiedTime(unit, FileTime.fromMillis(Files.getLastModifiedTime(unit).toMillis() + 10_000));
+		var refreshed = store.refresh(project, NEW_TERMS);
+		assertEquals(describe(store), describe(refreshed));
+		assertSame(refreshed, refreshed.refresh(project, NEW_TERMS));
+	}
+
+	@Test
+	void changed_unit_is_read_again() throws IOException, XMLStreamException, EolRuntimeException {
+		edit(TESTING_PKG, "<_name type=\"a\">Block1</_name>", "<_name type=\"a\">Renamed</_name>");
+		edit(TESTING_PKG, "<_value type=\"a\">10</_value>", "<_value type=\"a\">42</_value>");
+		var refreshed = store.refresh(project, NEW_TERMS);
+		assertNotSame(store, refreshed);
+		assertEquals(describe(load()), describe(refreshed));
+		assertEquals("Renamed", refreshed.getElement(BLOCK1).getName());
+		assertEquals(42, new RhapsodyStorePropertyGetter().invoke(refreshed.getElement(BLOCK_WITH_TAGS), "intVal", new EolContext()));
+		assertEquals(6, refreshed.ofNewTerm("Block").size());
+	}
+
+	@Test
+	void changed_project_file_is_read_again() throws IOException, XMLStreamException {
+		edit("TestModelA.rpyx", "<_name type=\"a\">TestModelA</_name>", "<_name type=\"a\">Renamed</_name>");
+		var refreshed = store.refresh(project, NEW_TERMS);
+		assertEquals(describe(load()), describe(refreshed));
+		assertEquals("Renamed", refreshed.getProject().getName());
+	}
+
+	@Test
+	void removed_unit_is_removed() throws IOException, XMLStreamException {
+		Files.delete(directory.resolve(TESTING_PKG));
+		var refreshed = store.refresh(project, NEW_TERMS);
+		assertEquals(describe(load()), describe(refreshed));
+		assertNull(refreshed.getElement(BLOCK1));
+		assertEquals(List.of("TestModelA.rpyx", "TestModelA_rpy/DefaultComponent.cmpx"), refreshed.getUnitFiles());
+	}
+
+	@Test
+	void snapshot_is_refreshed() throws IOException, XMLStreamException {
+		Path snapshot = directory.resolve("TestModelA.snapshot");
+		RhapsodySnapshot.write(store, snapshot);
+		edit(TESTING_PKG, "<_name type=\"a\">Block1</_name>", "<_name type=\"a\">Renamed</_name>");
+		var refreshed = RhapsodySnapshot.refresh(snapshot, project, NEW_TERMS);
+		assertEquals(describe(load()), describe(refreshed));
+		assertEquals(describe(refreshed), describe(RhapsodySnapshot.open(snapshot)));
+		assertEquals(store.getUnitFiles(), refreshed.getUnitFiles());
+	}
+
+	@Test
+	void snapshot_is_refreshed_in_the_pool() throws IOException, XMLStreamException {
+		Path snapshot = directory.resolve("TestModelA.snapshot");
+		RhapsodySnapshot.write(store, snapshot);
+		edit(TESTING_PKG, "<_name type=\"a\">Block1</_name>", "<_name type=\"a\">Renamed</_name>");
+		Set<Thread> workers = ConcurrentHashMap.newKeySet();
+		ForkJoinPool pool = new ForkJoinPool(2, p -> {
+			var worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			workers.add(worker);
+			return worker;
+		}, null, false);
+		try {
+			var refreshed = RhapsodySnapshot.refresh(snapshot, project, NEW_TERMS, pool);
+			assertEquals("Renamed", refreshed.getElement(BLOCK1).getName());
+			assertFalse(workers.isEmpty());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void model_refreshes_the_snapshot() throws IOException, EolModelLoadingException {
+		Path snapshot = directory.resolve("model.snapshot");
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyStoreModel.PROPERTY_PROJECT_PATH, project.toString());
+		properties.put(RhapsodyStoreModel.PROPERTY_NEW_TERMS, "Block");
+		properties.put(RhapsodyStoreModel.PROPERTY_SNAPSHOT, snapshot.toString());
+		var written = new RhapsodyStoreModel();
+		written.load(properties);
+		written.dispose();
+		edit(TESTING_PKG, "<_name type=\"a\">Block1</_name>", "<_name type=\"a\">Renamed</_name>");
+		var refreshed = new RhapsodyStoreModel();
+		refreshed.load(properties);
+		assertEquals("Renamed", ((RhapsodyStoreElement) refreshed.getElementById(BLOCK1)).getName());
+		assertTrue(RhapsodySnapshot.isSnapshot(snapshot));
+		refreshed.dispose();
+	}
+
+	static private final Path SOURCE = Path.of("resources/TestModelA");
+	static private final String TESTING_PKG = "TestModelA_rpy/TestingPkg.sbsx";
+	static private final Set<String> NEW_TERMS = Set.of("Block");
+	static private final String BLOCK1 = "GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba";
+	static private final String BLOCK_WITH_TAGS = "GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17";
+
+	@TempDir
+	private Path directory;
+	private Path project;
+	private RhapsodyElementStore store;
+
+	private RhapsodyElementStore load() throws IOException, XMLStreamException {
+		return RhapsodyElementStore.of(RhapsodyFileProject.load(project, NEW_TERMS));
+	}
+
+	private void edit(String file, String from, String to) throws IOException {
+		Path path = directory.resolve(file);
+		String contents = Files.readString(path);
+		assertTrue(contents.contains(from), from);
+		Files.writeString(path, contents.replace(from, to));
+		// The modification time may not change if the file is written in the same tick
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10_000));
+	}
+
+	/**
+	 * @return a description of each content element: its structure, fields and tag values
+	 */
+	static private List<String> describe(RhapsodyElementStore store) {
+		var getter = new RhapsodyStorePropertyGetter();
+		List<String> result = new ArrayList<>();
+		for (RhapsodyStoreElement element : store.getContents()) {
+			StringBuilder description = new StringBuilder()
+					.append(element.getGUID()).append(' ')
+					.append(element.getName()).append(' ')
+					.append(element.getMetaClass()).append(' ')
+					.append(element.getFullPathName()).append(' ')
+					.append(element.getIsExternal()).append(' ')
+					.append(element.getOwner() == null ? null : element.getOwner().getGUID()).append(' ')
+					.append(id(element.getStereotypes())).append(' ')
+					.append(id(element.getNewTermStereotype()));
+			for (String field : element.getFieldNames().stream().sorted().collect(Collectors.toList())) {
+				description.append(' ').append(field).append('=').append(id(element.getField(field)));
+			}
+			for (RhapsodyStoreElement tag : element.getLocalTags()) {
+				try {
+					description.append(' ').append(tag.getName()).append(':')
+							.append(id(getter.invoke(element, tag.getName(), new EolContext())));
+				} catch (EolRuntimeException e) {
+					description.append(' ').append(tag.getName()).append(':').append(e.getMessage());
+				}
+			}
+			result.add(description.toString());
+		}
+		return result;
+	}
+
+	/**
+	 * @return the value, with elements as their GUIDs
+	 */
+	static private Object id(Object value) {
+		if (value instanceof RhapsodyStoreElement) {
+			return ((RhapsodyStoreElement) value).getGUID();
+		}
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).stream().map(RhapsodySnapshotRefreshTests::id).collect(Collectors.toList());
+		}
+		return value;
+	}
+
+}
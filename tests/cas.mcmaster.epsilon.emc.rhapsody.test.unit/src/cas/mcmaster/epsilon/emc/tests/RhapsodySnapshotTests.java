@@ -0,0 +1,264 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodySnapshot;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreModel;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStorePropertyGetter;
+
+/**
+ * A snapshot must give the same results as the store it was written from.
+ */
+public class RhapsodySnapshotTests {
+
+	@BeforeAll
+	static void write() throws IOException, XMLStreamException {
+		directory = Files.createTempDirectory("rhapsody-snapshot");
+		snapshot = directory.resolve("TestModelA.snapshot");
+		store = RhapsodyElementStore.of(RhapsodyFileProject.load(PROJECT, Set.of("Block")));
+		RhapsodySnapshot.write(store, snapshot);
+		underTest = RhapsodySnapshot.open(snapshot);
+	}
+
+	@AfterAll
+	static void delete() throws IOException {
+		underTest = null;
+		store = null;
+		Files.deleteIfExists(snapshot);
+		Files.deleteIfExists(directory);
+	}
+
+	@Test
+	void contents_match_the_store() {
+		assertEquals(store.size(), underTest.size());
+		assertEquals(store.contentSize(), underTest.contentSize());
+		assertEquals(ids(store.getContents()), ids(underTest.getContents()));
+		for (int i = 0; i < store.size(); i++) {
+			var expected = store.element(i);
+			var actual = underTest.element(i);
+			assertEquals(expected.getName(), actual.getName());
+			assertEquals(expected.getMetaClass(), actual.getMetaClass());
+			assertEquals(expected.getUserDefinedMetaClass(), actual.getUserDefinedMetaClass());
+			assertEquals(expected.getFullPathName(), actual.getFullPathName());
+			assertEquals(expected.getIsExternal(), actual.getIsExternal());
+		}
+	}
+
+	@Test
+	void types_and_new_terms_match_the_store() {
+		assertEquals(store.getMetaclasses(), underTest.getMetaclasses());
+		assertEquals(store.getNewTerms(), underTest.getNewTerms());
+		assertEquals(store.getAttributeNames(), underTest.getAttributeNames());
+		assertEquals(ids(store.ofNewTerm("Block")), ids(underTest.ofNewTerm("Block")));
+	}
+
+	@Test
+	void elements_are_found_by_guid() {
+		var block = underTest.getElement(BLOCK1);
+		assertEquals("Block1", block.getName());
+		assertEquals("TestingPkg", block.getOwner().getName());
+		assertNull(underTest.getElement("GUID 00005c0c-4ae9-4aa2-a03a-921ecade1f3c"));
+	}
+
+	@Test
+	void symbols_are_found_in_the_mapped_table() {
+		assertTrue(underTest.getSymbols().find("Block1") >= 0);
+		assertEquals("Block1", underTest.getSymbols().get(underTest.getSymbols().find("Block1")));
+		assertEquals(-1, underTest.getSymbols().find("NotASymbol"));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void tag_values_are_mapped(String tagName, Object expected) throws EolRuntimeException {
+		var block = underTest.getElement(BLOCK_WITH_TAGS);
+		var value = new RhapsodyStorePropertyGetter().invoke(block, tagName, new EolContext());
+		if (value instanceof Collection<?>) {
+			assertArrayEquals((Object[]) expected, ((Collection<?>) value).toArray());
+		} else {
+			assertEquals(expected, value);
+		}
+	}
+
+	@Test
+	void other_files_are_not_snapshots(@TempDir Path other) throws IOException {
+		Path file = Files.writeString(other.resolve("other.snapshot"), "Not a snapshot of a model");
+		assertFalse(RhapsodySnapshot.isSnapshot(file));
+		assertTrue(RhapsodySnapshot.isSnapshot(snapshot));
+		assertThrows(IOException.class, () -> RhapsodySnapshot.open(file));
+	}
+
+	@Test
+	void model_writes_and_opens_the_snapshot(@TempDir Path other)
+			throws EolModelLoadingException, EolModelElementTypeNotFoundException, EolRuntimeException {
+		Path file = other.resolve("model.snapshot");
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyStoreModel.PROPERTY_PROJECT_PATH, PROJECT.toString());
+		properties.put(RhapsodyStoreModel.PROPERTY_NEW_TERMS, "Block");
+		properties.put(RhapsodyStoreModel.PROPERTY_SNAPSHOT, file.toString());
+		var written = new RhapsodyStoreModel();
+		written.load(properties);
+		assertTrue(RhapsodySnapshot.isSnapshot(file));
+
+		properties.remove(RhapsodyStoreModel.PROPERTY_PROJECT_PATH);
+		var opened = new RhapsodyStoreModel();
+		opened.load(properties);
+		assertEquals(ids(written.allContents()), ids(opened.allContents()));
+		assertEquals(6, opened.getAllOfType("Block").size());
+		Object block = opened.getElementById(BLOCK1);
+		assertEquals("5.31.2023::19:45:30", opened.getPropertyGetter().invoke(block, "modifiedTime", new EolContext()));
+		written.dispose();
+		opened.dispose();
+	}
+
+	@Test
+	void model_needs_a_project_or_a_snapshot() {
+		assertThrows(EolModelLoadingException.class, () -> new RhapsodyStoreModel().load(new StringProperties()));
+	}
+
+	@Test
+	void live_elements_are_snapshot_with_selected_properties(@TempDir Path other) throws IOException {
+		IRPModelElement project = live("Project", "Project", null, 0);
+		IRPModelElement pkg = live("Package", "Package", project, 1);
+		IRPModelElement block = live("Block1", "Class", pkg, 2);
+		children(project, pkg);
+		children(pkg, block);
+		var getter = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null);
+		Path file = other.resolve("live.snapshot");
+		RhapsodySnapshot.write(RhapsodyElementStore.of(project, getter, List.of("description")), file);
+
+		var opened = RhapsodySnapshot.open(file);
+		assertEquals(List.of("Project", "Package", "Block1"),
+				opened.getContents().stream().map(RhapsodyStoreElement::getName).collect(Collectors.toList()));
+		var snapshotBlock = opened.getElement(guid(2));
+		assertEquals("Package", snapshotBlock.getOwner().getName());
+		assertEquals("Class", snapshotBlock.getMetaClass());
+		assertEquals("Description of Block1", snapshotBlock.getField("description"));
+		assertFalse(snapshotBlock.hasField("name"));
+	}
+
+	static Stream<Arguments> tag_values_are_mapped() {
+		var block1 = underTest.getElement(BLOCK1);
+		var block2 = underTest.getElement("GUID b285a059-d9e9-43bc-a144-426af8afcc73");
+		return Stream.of(
+				arguments("boolVal", true),
+				arguments("floatVal", 2.3f),
+				arguments("instanceVal", block1),
+				arguments("intVal", 10),
+				arguments("multiInstanceVal", new Object[] {block1, block2}),
+				arguments("multiIntVal", new Integer[] {23, 35}),
+				arguments("multiStringVal", new String[] {"first", "second"}),
+				arguments("strVal", "strValue")
+			);
+	}
+
+	static private final Path PROJECT = Path.of("resources/TestModelA/TestModelA.rpyx");
+	static private final String BLOCK1 = "GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba";
+	static private final String BLOCK_WITH_TAGS = "GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17";
+
+	static private Path directory;
+	static private Path snapshot;
+	static private RhapsodyElementStore store;
+	static private RhapsodyElementStore underTest;
+	static private final Map<IRPModelElement, List<IRPModelElement>> NESTED = new IdentityHashMap<>();
+
+	static private List<String> ids(Collection<?> elements) {
+		return elements.stream()
+				.map(e -> ((RhapsodyStoreElement) e).getGUID())
+				.collect(Collectors.toList());
+	}
+
+	static private String guid(int index) {
+		return String.format("GUID 00000000-0000-0000-0000-%012d", index);
+	}
+
+	static private void children(IRPModelElement owner, IRPModelElement... nested) {
+		NESTED.put(owner, List.of(nested));
+	}
+
+	static private IRPModelElement live(String name, String metaclass, IRPModelElement owner, int index) {
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPModelElement.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getGUID":
+						return guid(index);
+					case "getName":
+						return name;
+					case "getMetaClass":
+						return metaclass;
+					case "getDescription":
+						return "Description of " + name;
+					case "getOwner":
+						return owner;
+					case "getIsExternal":
+						return 0;
+					case "getNestedElements":
+						return RhapsodyProxies.collection(NESTED.getOrDefault(p, List.of()));
+					case "getStereotypes":
+					case "getAllTags":
+						return RhapsodyProxies.collection(List.of());
+					case "getNewTermStereotype":
+					case "getTag":
+						return null;
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+}
@@ -0,0 +1,219 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.telelogic.rhapsody.core.IRPModelElement;
+
+import cas.mcmaster.epsilon.emc.RhapsodyPropertyGetter;
+import cas.mcmaster.epsilon.emc.file.RhapsodyElementStore;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileProject;
+import cas.mcmaster.epsilon.emc.file.RhapsodySnapshot;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreChange;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreChange.Kind;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreDiff;
+
+/**
+ * The diff must report the elements that changed between two stores, matched by GUID.
+ */
+public class RhapsodyStoreDiffTests {
+
+	@BeforeEach
+	void baseline() {
+		NESTED.clear();
+		IRPModelElement project = live("Project", "Project", null, 0, "");
+		IRPModelElement pkgA = live("PkgA", "Package", project, 1, "");
+		IRPModelElement pkgB = live("PkgB", "Package", project, 2, "");
+		IRPModelElement block1 = live("Block1", "Class", pkgA, 3, "first");
+		IRPModelElement block2 = live("Block2", "Class", pkgA, 4, "second");
+		IRPModelElement block3 = live("Block3", "Class", pkgB, 5, "third");
+		IRPModelElement port = live("Port", "Port", block3, 6, "");
+		children(project, pkgA, pkgB);
+		children(pkgA, block1, block2);
+		children(pkgB, block3);
+		children(block3, port);
+		left = store(project);
+	}
+
+	@Test
+	void same_stores_have_no_changes() {
+		var diff = new RhapsodyStoreDiff(left, left);
+		assertTrue(diff.isEmpty());
+		assertEquals(List.of(), diff.changes());
+	}
+
+	@Test
+	void changes_are_reported_by_guid() {
+		NESTED.clear();
+		IRPModelElement project = live("Project", "Project", null, 0, "");
+		IRPModelElement pkgA = live("PkgA", "Package", project, 1, "");
+		IRPModelElement pkgB = live("PkgB", "Package", project, 2, "");
+		IRPModelElement pkgC = live("PkgC", "Package", project, 7, "");
+		// Block1 is renamed, Block2 moved to PkgB, Block3 removed, Port moved to the new PkgC
+		IRPModelElement block1 = live("Renamed", "Class", pkgA, 3, "first");
+		IRPModelElement block2 = live("Block2", "Class", pkgB, 4, "described");
+		IRPModelElement port = live("Port", "Port", pkgC, 6, "");
+		children(project, pkgA, pkgB, pkgC);
+		children(pkgA, block1);
+		children(pkgB, block2);
+		children(pkgC, port);
+		var diff = new RhapsodyStoreDiff(left, store(project));
+
+		assertFalse(diff.isEmpty());
+		assertEquals(
+				List.of(
+						"CHANGED Block1 [name: Block1 -> Renamed]",
+						"MOVED Block2 PkgA -> PkgB",
+						"CHANGED Block2 [description: second -> described]",
+						"REMOVED Block3",
+						"ADDED PkgC",
+						"MOVED Port Block3 -> PkgC"),
+				describe(diff.changes()));
+	}
+
+	@Test
+	void unchanged_subtrees_are_skipped() {
+		NESTED.clear();
+		IRPModelElement project = live("Project", "Project", null, 0, "");
+		IRPModelElement pkgA = live("PkgA", "Package", project, 1, "");
+		IRPModelElement pkgB = live("PkgB", "Package", project, 2, "");
+		IRPModelElement block1 = live("Block1", "Class", pkgA, 3, "first");
+		IRPModelElement block2 = live("Block2", "Class", pkgA, 4, "second");
+		IRPModelElement block3 = live("Block3", "Class", pkgB, 5, "changed");
+		IRPModelElement port = live("Port", "Port", block3, 6, "");
+		// The order of nested elements does not matter
+		children(project, pkgB, pkgA);
+		children(pkgA, block2, block1);
+		children(pkgB, block3);
+		children(block3, port);
+		List<RhapsodyStoreChange> changes = new ArrayList<>();
+		new RhapsodyStoreDiff(left, store(project)).diff(changes::add);
+		assertEquals(List.of("CHANGED Block3 [description: third -> changed]"), describe(changes));
+	}
+
+	@Test
+	void file_stores_report_tag_deltas(@TempDir Path directory) throws IOException, XMLStreamException {
+		Path project = Path.of("resources/TestModelA/TestModelA.rpyx");
+		var baseline = RhapsodyElementStore.of(RhapsodyFileProject.load(project, Set.of("Block")));
+		Path snapshot = directory.resolve("baseline.snapshot");
+		RhapsodySnapshot.write(baseline, snapshot);
+		var changed = copy(directory.resolve("changed"));
+		var diff = new RhapsodyStoreDiff(RhapsodySnapshot.open(snapshot), RhapsodyElementStore.of(RhapsodyFileProject.load(changed, Set.of("Block"))));
+		List<String> changes = diff.changes().stream()
+				.filter(c -> c.getKind() == Kind.CHANGED)
+				.flatMap(c -> c.getDeltas().stream().filter(d -> !d.getName().startsWith("_modified")).map(d -> c.getRight().getName() + " " + d))
+				.collect(Collectors.toList());
+		assertTrue(changes.contains("Renamed name: Block1 -> Renamed"), changes.toString());
+		assertTrue(changes.contains("BlockWithTags tag intVal: 10 -> 42"), changes.toString());
+	}
+
+	static private final Map<IRPModelElement, List<IRPModelElement>> NESTED = new IdentityHashMap<>();
+	static private RhapsodyElementStore left;
+
+	static private List<String> describe(List<RhapsodyStoreChange> changes) {
+		return changes.stream().map(c -> {
+			switch (c.getKind()) {
+			case MOVED:
+				return "MOVED " + c.getRight().getName() + " " + c.getLeft().getOwner().getName() + " -> " + c.getRight().getOwner().getName();
+			case CHANGED:
+				return "CHANGED " + c.getLeft().getName() + " " + c.getDeltas();
+			case ADDED:
+				return "ADDED " + c.getRight().getName();
+			default:
+				return "REMOVED " + c.getLeft().getName();
+			}
+		}).collect(Collectors.toList());
+	}
+
+	static private Path copy(Path target) throws IOException {
+		Path source = Path.of("resources/TestModelA");
+		Files.createDirectories(target.resolve("TestModelA_rpy"));
+		for (String file : List.of("TestModelA.rpyx", "TestModelA_rpy/DefaultComponent.cmpx", "TestModelA_rpy/Default.sbsx")) {
+			Files.copy(source.resolve(file), target.resolve(file));
+		}
+		String unit = Files.readString(source.resolve("TestModelA_rpy/TestingPkg.sbsx"))
+				.replace("<_name type=\"a\">Block1</_name>", "<_name type=\"a\">Renamed</_name>")
+				.replace("<_value type=\"a\">10</_value>", "<_value type=\"a\">42</_value>");
+		Files.writeString(target.resolve("TestModelA_rpy/TestingPkg.sbsx"), unit);
+		return target.resolve("TestModelA.rpyx");
+	}
+
+	static private RhapsodyElementStore store(IRPModelElement project) {
+		var getter = new RhapsodyPropertyGetter(Caffeine.newBuilder().build(), null);
+		return RhapsodyElementStore.of(project, getter, List.of("description"));
+	}
+
+	static private String guid(int index) {
+		return String.format("GUID 00000000-0000-0000-0000-%012d", index);
+	}
+
+	static private void children(IRPModelElement owner, IRPModelElement... nested) {
+		NESTED.put(owner, List.of(nested));
+	}
+
+	static private IRPModelElement live(String name, String metaclass, IRPModelElement owner, int index, String description) {
+		return (IRPModelElement) Proxy.newProxyInstance(
+				IRPModelElement.class.getClassLoader(),
+				new Class<?>[] {IRPModelElement.class},
+				(p, m, a) -> {
+					switch (m.getName()) {
+					case "getGUID":
+						return guid(index);
+					case "getName":
+						return name;
+					case "getMetaClass":
+						return metaclass;
+					case "getDescription":
+						return description;
+					case "getOwner":
+						return owner;
+					case "getIsExternal":
+						return 0;
+					case "getNestedElements":
+						return RhapsodyProxies.collection(NESTED.getOrDefault(p, List.of()));
+					case "getStereotypes":
+					case "getAllTags":
+						return RhapsodyProxies.collection(List.of());
+					case "getNewTermStereotype":
+					case "getTag":
+						return null;
+					case "hashCode":
+						return System.identityHashCode(p);
+					case "equals":
+						return p == a[0];
+					default:
+						throw new UnsupportedOperationException(m.getName());
+					}
+				});
+	}
+
+}
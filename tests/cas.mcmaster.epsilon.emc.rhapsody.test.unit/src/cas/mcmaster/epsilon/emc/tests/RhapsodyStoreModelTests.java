@@ -0,0 +1,275 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.epsilon.common.util.StringProperties;
+import org.eclipse.epsilon.eol.exceptions.EolIllegalPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolReadOnlyPropertyException;
+import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
+import org.eclipse.epsilon.eol.exceptions.models.EolEnumerationValueNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelElementTypeNotFoundException;
+import org.eclipse.epsilon.eol.exceptions.models.EolModelLoadingException;
+import org.eclipse.epsilon.eol.execute.context.EolContext;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyFileModel;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreElement;
+import cas.mcmaster.epsilon.emc.file.RhapsodyStoreModel;
+
+/**
+ * The store model must give the same results as the file model.
+ */
+public class RhapsodyStoreModelTests {
+
+	@BeforeAll
+	static void load() throws EolModelLoadingException {
+		underTest = new RhapsodyStoreModel();
+		underTest.load(properties());
+		fileModel = new RhapsodyFileModel();
+		fileModel.load(properties());
+	}
+
+	@AfterAll
+	static void unload() {
+		underTest.dispose();
+		fileModel.dispose();
+	}
+
+	@Test
+	void contents_match_the_file_model() {
+		assertEquals(
+				fileModel.allContents().stream()
+					.map(RhapsodyFileElement::getGUID)
+					.collect(Collectors.toList()),
+				ids(underTest.allContents()));
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"'GUID 78738b66-2aaf-4411-904d-4c02a5215d1a',Project",
+		"'GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6',Package",
+		"'GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba',Block",
+		"'GUID 78f445b6-f602-4fa4-abc7-619306770217',Vehicle",
+		"'GUID d914b866-81ee-4763-b6b7-9a38589b7d26',Event"})
+	void get_element_by_id(String id, String type) {
+		Object element = underTest.getElementById(id);
+		assertEquals(type, underTest.getTypeNameOf(element));
+		assertEquals(id, underTest.getElementId(element));
+		assertTrue(underTest.owns(element));
+	}
+
+	@Test
+	void get_element_by_id_wrong_id() {
+		assertNull(underTest.getElementById("GUID 00005c0c-4ae9-4aa2-a03a-921ecade1f3c"));
+		assertNull(underTest.getElementById("Block1"));
+	}
+
+	@Test
+	void elements_are_flyweights() {
+		Object block = underTest.getElementById(BLOCK1);
+		Object other = underTest.getElementById(BLOCK1);
+		assertNotSame(block, other);
+		assertEquals(block, other);
+		assertEquals(block.hashCode(), other.hashCode());
+	}
+
+	@Test
+	void containment_is_navigable() {
+		var pkg = (RhapsodyStoreElement) underTest.getElementById("GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6");
+		var block = (RhapsodyStoreElement) underTest.getElementById(BLOCK1);
+		assertEquals(pkg.getProject(), pkg.getOwner());
+		assertEquals(pkg, block.getOwner());
+		assertTrue(pkg.getNestedElements().contains(block));
+		assertTrue(pkg.getNestedElementsRecursive().containsAll(block.getNestedElementsRecursive()));
+		assertEquals("TestingPkg::Block1", block.getFullPathName());
+		var filePkg = (RhapsodyFileElement) fileModel.getElementById("GUID 9d852c72-9a2a-4e2e-8649-222f80d796d6");
+		assertEquals(
+				filePkg.getNestedElements().stream().map(RhapsodyFileElement::getGUID).collect(Collectors.toList()),
+				ids(pkg.getNestedElements()));
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"Package,1",
+		"Class,9",
+		"Reception,1",
+		"EventReception,1",
+		"Block,6",
+		"Vehicle,1",
+		"Requirement,0"})
+	void get_all_by_type(String type, int expected) throws EolModelElementTypeNotFoundException {
+		assertEquals(expected, underTest.getAllOfType(type).size());
+	}
+
+	@Test
+	void get_all_by_type_fails_if_unknown_type() {
+		assertThrows(
+				EolModelElementTypeNotFoundException.class,
+				() -> underTest.getAllOfType("car"));
+		assertFalse(underTest.hasType("TagTypes"));
+	}
+
+	@Test
+	void get_all_by_kind_for_metaclass() throws EolModelElementTypeNotFoundException {
+		List<String> classifiers = underTest.getAllOfKind("Classifier").stream()
+				.map(RhapsodyStoreElement::getName)
+				.collect(Collectors.toList());
+		assertTrue(classifiers.containsAll(List.of("Block1", "Ambulance", "TestEnum")));
+		assertFalse(classifiers.contains("TestingPkg"));
+		assertEquals(fileModel.getAllOfKind("Classifier").size(), classifiers.size());
+	}
+
+	@Test
+	void is_of_type_and_kind() throws EolModelElementTypeNotFoundException {
+		Object block = underTest.getElementById(BLOCK1);
+		assertTrue(underTest.isOfType(block, "Class"));
+		assertTrue(underTest.isOfType(block, "Block"));
+		assertFalse(underTest.isOfType(block, "Classifier"));
+		assertTrue(underTest.isOfKind(block, "Classifier"));
+		assertEquals("IRPClass", underTest.getTypeOf(block));
+	}
+
+	@Test
+	void stereotypes_are_resolved() {
+		var block = (RhapsodyStoreElement) underTest.getElementById(BLOCK_WITH_TAGS);
+		var stereotypes = block.getStereotypes();
+		assertEquals(2, stereotypes.size());
+		assertEquals("Block", stereotypes.get(0).getName());
+		assertEquals(1, stereotypes.get(0).getIsExternal());
+		assertEquals(1, stereotypes.get(0).getIsNewTerm());
+		assertEquals("TagTypes", stereotypes.get(1).getName());
+		assertEquals(0, stereotypes.get(1).getIsNewTerm());
+		assertFalse(underTest.owns(stereotypes.get(0)));
+	}
+
+	@Test
+	void reception_takes_the_event_name() throws EolModelElementTypeNotFoundException {
+		var reception = underTest.getAllOfType("Reception").iterator().next();
+		assertEquals("start", reception.getName());
+		assertEquals("system", reception.getOwner().getName());
+	}
+
+	@Test
+	void get_enumeration_value_matches() throws EolEnumerationValueNotFoundException {
+		assertEquals("1", underTest.getEnumerationValue("TestEnum", "TEST_1"));
+		assertEquals("2", underTest.getEnumerationValue("TestEnum", "TEST_2"));
+		assertThrows(
+				EolEnumerationValueNotFoundException.class,
+				() -> underTest.getEnumerationValue("TestEnum", "SOME_VALUE"));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void get_property(String property, Object expected) throws EolRuntimeException {
+		Object block = underTest.getElementById(BLOCK1);
+		assertTrue(underTest.knowsAboutProperty(block, property));
+		assertEquals(expected, underTest.getPropertyGetter().invoke(block, property, new EolContext()));
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void get_property_from_tag(String tagName, Object expected) throws EolRuntimeException {
+		Object block = underTest.getElementById(BLOCK_WITH_TAGS);
+		var value = underTest.getPropertyGetter().invoke(block, tagName, new EolContext());
+		if (value instanceof Collection<?>) {
+			assertArrayEquals((Object[]) expected, ((Collection<?>) value).toArray());
+		} else {
+			assertEquals(expected, value);
+		}
+	}
+
+	@Test
+	void get_unknown_property_throws() {
+		Object block = underTest.getElementById(BLOCK1);
+		assertFalse(underTest.knowsAboutProperty(block, "film"));
+		assertThrows(
+				EolIllegalPropertyException.class,
+				() -> underTest.getPropertyGetter().invoke(block, "film", new EolContext()));
+	}
+
+	@Test
+	void model_is_read_only() {
+		Object block = underTest.getElementById(BLOCK1);
+		assertThrows(
+				EolReadOnlyPropertyException.class,
+				() -> underTest.getPropertySetter().invoke(block, "name", "other", new EolContext()));
+		assertThrows(EolRuntimeException.class, () -> underTest.deleteElement(block));
+		assertFalse(underTest.isInstantiable("Class"));
+	}
+
+	static Stream<Arguments> get_property() {
+		return Stream.of(
+				arguments("name", "Block1"),
+				arguments("readOnly", 0),
+				arguments("hasNestedElements", 1),
+				arguments("modifiedTime", "5.31.2023::19:45:30"),
+				arguments("metaClass", "Class")
+			);
+	}
+
+	static Stream<Arguments> get_property_from_tag() {
+		Object block1 = underTest.getElementById(BLOCK1);
+		Object block2 = underTest.getElementById("GUID b285a059-d9e9-43bc-a144-426af8afcc73");
+		return Stream.of(
+				arguments("boolVal", true),
+				arguments("floatOther", "wrongFloat"),
+				arguments("floatVal", 2.3f),
+				arguments("instanceVal", block1),
+				arguments("intOther", "wrongInt"),
+				arguments("intVal", 10),
+				arguments("multiInstanceVal", new Object[] {block1, block2}),
+				arguments("multiIntVal", new Integer[] {23, 35}),
+				arguments("multiStringVal", new String[] {"first", "second"}),
+				arguments("strVal", "strValue")
+			);
+	}
+
+	static private final String BLOCK1 = "GUID 4247c7c8-d0f2-499f-bfe3-a9dd964f78ba";
+	static private final String BLOCK_WITH_TAGS = "GUID 331dc17e-2f5f-49eb-8cca-8a68d7288c17";
+
+	static private RhapsodyStoreModel underTest;
+	static private RhapsodyFileModel fileModel;
+
+	static private List<String> ids(Collection<?> elements) {
+		return elements.stream()
+				.map(e -> ((RhapsodyStoreElement) e).getGUID())
+				.collect(Collectors.toList());
+	}
+
+	static private StringProperties properties() {
+		StringProperties properties = new StringProperties();
+		properties.put(RhapsodyStoreModel.PROPERTY_PROJECT_PATH, "resources/TestModelA/TestModelA.rpyx");
+		properties.put(RhapsodyStoreModel.PROPERTY_NEW_TERMS, "Block");
+		return properties;
+	}
+
+}
@@ -19,12 +19,34 @@ import org.junit.platform.suite.api.SuiteDisplayName;
 @SuiteDisplayName("Rhapsody Test Suite")
 @SelectPackages("cas.mcmaster.tests")
 @SelectClasses({
+	RhapsodyAccessorsTests.class,
+	RhapsodyAdaptivePrefetchTests.class,
+	RhapsodyCacheInvalidationTests.class,
+	RhapsodyCachePolicyTests.class,
+	RhapsodyCollectionListTests.class,
+	RhapsodyElementIdsTests.class,
+	RhapsodyExecutorTests.class,
+	RhapsodyFakeTests.class,
+	RhapsodyFileLoadOnDemandTests.class,
+	RhapsodyFileModelTests.class,
+	RhapsodyKindLatticeTests.class,
 	RhapsodyMetaclassesTests.class,
+	RhapsodyMirrorTests.class,
+	RhapsodyModelListenerTests.class,
 	RhapsodyModelLoadingTests.class,
 	RhapsodyModelTests.class,
 	RhapsodyModelTypesTests.class,
+	RhapsodyPrefetchTests.class,
 	RhapsodyPropertySetterTests.class,
-	RhapsodyPropertyGetterTests.class})
+	RhapsodyPropertyGetterTests.class,
+	RhapsodyReferenceIndexTests.class,
+	RhapsodySearchTests.class,
+	RhapsodySnapshotRefreshTests.class,
+	RhapsodySnapshotTests.class,
+	RhapsodyStoreDiffTests.class,
+	RhapsodyStoreModelTests.class,
+	RhapsodyTextIndexTests.class,
+	RhapsodyTypeIndexTests.class})
 public class RhapsodySuite {
 
 }
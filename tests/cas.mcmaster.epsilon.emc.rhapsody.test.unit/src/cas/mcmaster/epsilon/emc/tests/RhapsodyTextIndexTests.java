@@ -0,0 +1,139 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPClass;
+import com.telelogic.rhapsody.core.IRPModelElement;
+import com.telelogic.rhapsody.core.IRPPackage;
+import com.telelogic.rhapsody.core.IRPRequirement;
+import com.telelogic.rhapsody.core.IRPTag;
+
+import cas.mcmaster.epsilon.emc.RhapsodyElementIds;
+import cas.mcmaster.epsilon.emc.RhapsodyTextIndex;
+
+/**
+ * The text index must find elements by the terms of their name, description, requirement id and
+ * tag values, from one traversal of the model.
+ */
+public class RhapsodyTextIndexTests {
+
+	@BeforeEach
+	void model() {
+		model = new RhapsodyLiveModel();
+		pedal = model.element(IRPClass.class, 1, Map.of(
+				"getName", "BrakePedal",
+				"getDescriptionPlainText", "The pedal the driver presses to stop the car."));
+		requirement = model.element(IRPRequirement.class, 2, Map.of(
+				"getName", "Braking",
+				"getDescriptionPlainText", "The car shall stop within 40 m, when braking at 100 km/h.",
+				"getRequirementID", "REQ-042"));
+		tag = model.element(IRPTag.class, 3, Map.of("getName", "owner", "getValue", "Chassis team", "getOwner", pedal));
+		model.values(pedal).put("getLocalTags", RhapsodyProxies.collection(List.of(tag)));
+		engine = model.element(IRPClass.class, 4, Map.of("getName", "Engine"));
+		root = model.element(IRPPackage.class, 0, Map.of("getName", "Car"));
+		model.contents(root, pedal, requirement, tag, engine);
+	}
+
+	@Test
+	void terms_are_words_in_lower_case() {
+		assertEquals(List.of("req", "042", "shall", "stop"), RhapsodyTextIndex.terms("REQ-042: Shall stop."));
+		assertEquals(List.of(), RhapsodyTextIndex.terms(" -- "));
+		assertEquals(List.of(), RhapsodyTextIndex.terms(null));
+	}
+
+	@Test
+	void terms_are_found_in_one_traversal() {
+		var underTest = new RhapsodyTextIndex(root, new RhapsodyElementIds());
+		assertEquals(List.of(pedal, requirement), new ArrayList<>(underTest.term("car stop")));
+		assertEquals(List.of(requirement), new ArrayList<>(underTest.term("req-042")));
+		assertEquals(List.of(pedal), new ArrayList<>(underTest.term("CHASSIS")));
+		assertEquals(List.of(engine), new ArrayList<>(underTest.term("engine")));
+		assertEquals(List.of(), new ArrayList<>(underTest.term("car engine")));
+		assertEquals(List.of(), new ArrayList<>(underTest.term("")));
+		assertEquals(1, model.traversals());
+	}
+
+	@Test
+	void prefixes_match_the_start_of_terms() {
+		var underTest = new RhapsodyTextIndex(root, new RhapsodyElementIds());
+		assertEquals(List.of(pedal, requirement), new ArrayList<>(underTest.prefix("Brak")));
+		assertEquals(List.of(engine), new ArrayList<>(underTest.prefix("eng")));
+		assertEquals(List.of(), new ArrayList<>(underTest.prefix("gine")));
+		assertEquals(List.of(), new ArrayList<>(underTest.prefix(" ")));
+	}
+
+	@Test
+	void phrases_match_consecutive_terms_of_a_text() {
+		var underTest = new RhapsodyTextIndex(root, new RhapsodyElementIds());
+		assertEquals(List.of(requirement), new ArrayList<>(underTest.phrase("shall stop")));
+		assertEquals(List.of(), new ArrayList<>(underTest.phrase("stop shall")));
+		assertEquals(List.of(pedal), new ArrayList<>(underTest.phrase("presses to stop the car")));
+		// Name and description are different texts
+		assertEquals(List.of(), new ArrayList<>(underTest.phrase("braking the car")));
+	}
+
+	@Test
+	void updated_elements_are_indexed_again() {
+		var underTest = new RhapsodyTextIndex(root, new RhapsodyElementIds());
+		underTest.term("engine");
+		model.values(engine).put("getName", "Motor");
+		underTest.update(engine);
+		assertEquals(List.of(), new ArrayList<>(underTest.term("engine")));
+		assertEquals(List.of(engine), new ArrayList<>(underTest.term("motor")));
+		assertEquals(1, model.traversals());
+	}
+
+	@Test
+	void updated_tags_update_their_owner() {
+		var underTest = new RhapsodyTextIndex(root, new RhapsodyElementIds());
+		underTest.term("chassis");
+		model.values(tag).put("getValue", "Powertrain team");
+		underTest.update(tag);
+		assertEquals(List.of(), new ArrayList<>(underTest.term("chassis")));
+		assertEquals(List.of(pedal), new ArrayList<>(underTest.term("powertrain")));
+		assertEquals(1, model.traversals());
+	}
+
+	@Test
+	void removed_elements_are_not_found() {
+		var underTest = new RhapsodyTextIndex(root, new RhapsodyElementIds());
+		underTest.term("car");
+		assertTrue(underTest.remove(requirement));
+		assertFalse(underTest.remove(requirement));
+		assertEquals(List.of(pedal), new ArrayList<>(underTest.term("car")));
+		var added = model.element(IRPClass.class, 5, Map.of("getName", "Car"));
+		assertTrue(underTest.add(added));
+		assertFalse(underTest.add(added));
+		assertEquals(List.of(pedal, added), new ArrayList<>(underTest.term("car")));
+		underTest.clear();
+		underTest.term("car");
+		assertEquals(2, model.traversals());
+	}
+
+	static private RhapsodyLiveModel model;
+	static private IRPModelElement root;
+	static private IRPModelElement pedal;
+	static private IRPModelElement requirement;
+	static private IRPModelElement tag;
+	static private IRPModelElement engine;
+
+}
@@ -0,0 +1,113 @@
+/********************************************************************************
+ * Copyright (c) 2023 McMaster University
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0, or the Apache License, Version 2.0
+ * which is available at https://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR Apache-2.0
+ ********************************************************************************/
+package cas.mcmaster.epsilon.emc.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.telelogic.rhapsody.core.IRPApplication;
+import com.telelogic.rhapsody.core.IRPPackage;
+import com.telelogic.rhapsody.core.IRPProject;
+import com.telelogic.rhapsody.core.RhapsodyAppServer;
+import com.telelogic.rhapsody.core.RhapsodyRuntimeException;
+
+import cas.mcmaster.epsilon.emc.RhapsodyKindLattice;
+import cas.mcmaster.epsilon.emc.RhapsodyTypeIndex;
+
+public class RhapsodyTypeIndexTests {
+
+	@BeforeAll
+	static void load() {
+		try {
+			app = RhapsodyAppServer.getActiveRhapsodyApplication();
+			rhapsodyWasActive = true;
+		} catch (RhapsodyRuntimeException e) {
+			app = RhapsodyAppServer.createRhapsodyApplication();
+		}
+		Path fullPath = Paths.get("resources/TestModelA/TestModelA.rpyx").toAbsolutePath();
+		prj = app.openProject(fullPath.toString());
+		String mcList;
+		try(BufferedReader brTest = new BufferedReader(
+				new FileReader(Paths.get(System.getenv("RHAPSODY_PATH"),"Doc/Metaclasses.txt").toFile()))) {
+			mcList = brTest .readLine();	
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to load Rhapsody's Metaclasses names", e);
+		}
+		lattice = new RhapsodyKindLattice(Arrays.asList(mcList.split(",")));
+	}
+
+	@AfterAll
+	static void unload() {
+		if (prj != null) {
+			prj.close();
+		}
+		if(!rhapsodyWasActive && (app != null)) {
+			app.quit();
+		}
+	}
+
+	@Test
+	void of_metaclass_matches_metaclass() {
+		var underTest = new RhapsodyTypeIndex(prj, lattice);
+		assertEquals(14, underTest.ofMetaclass("Package").size());
+	}
+
+	@Test
+	void of_metaclass_is_empty_for_unknown() {
+		var underTest = new RhapsodyTypeIndex(prj, lattice);
+		assertTrue(underTest.ofMetaclass("car").isEmpty());
+	}
+
+	@Test
+	void of_new_term_matches_stereotype() {
+		var underTest = new RhapsodyTypeIndex(prj, lattice);
+		assertEquals(6, underTest.ofNewTerm("Block").size());
+	}
+
+	@Test
+	void of_kind_includes_sub_metaclasses() {
+		var underTest = new RhapsodyTypeIndex(prj, lattice);
+		assertEquals(19, underTest.ofKind("Package").size());
+	}
+
+	@Test
+	void added_and_removed_elements_are_indexed() {
+		var underTest = new RhapsodyTypeIndex(prj, lattice);
+		var pkg = (IRPPackage) prj.findNestedElement("TestingPkg", "Package");
+		int before = underTest.ofMetaclass("Class").size();
+		var added = pkg.addNewAggr("Class", "IndexedClass");
+		underTest.add(added);
+		assertEquals(before + 1, underTest.ofMetaclass("Class").size());
+		assertTrue(underTest.ofMetaclass("Class").contains(added));
+		underTest.remove(added);
+		added.deleteFromProject();
+		assertEquals(before, underTest.ofMetaclass("Class").size());
+		assertFalse(underTest.ofMetaclass("Class").contains(added));
+	}
+
+	static private IRPApplication app;
+	static private IRPProject prj;
+	static private boolean rhapsodyWasActive;
+	static private RhapsodyKindLattice lattice;
+
+}